@@ -64,6 +64,18 @@ public final class DnsConfig {
 
     public boolean experimentalBuglyEnable;
 
+    public final int batchLookupWindowMills;
+    public final int maxNumOfBatchLookupDomains;
+
+    public final boolean enableHttpPipelining;
+
+    public final int maxNumOfCacheEntries;
+    public final long maxCacheBytes;
+
+    public final int prefetchMaxHosts;
+    public final int prefetchMaxRequestsPerMinute;
+    public final boolean enableCooccurrencePrefetch;
+
     private DnsConfig(int logLevel, String appId, String userId, boolean initBuiltInReporters, String dnsId,
                       String dnsKey, String token, int timeoutMills, Set<WildcardDomain> protectedDomains,
                       Set<String> preLookupDomains, boolean enablePersistentCache, Set<String> persistentCacheDomains,
@@ -71,7 +83,10 @@ public final class DnsConfig {
                       int customNetStack, DnsExecutors.ExecutorSupplier executorSupplier,
                       ILookedUpListener lookedUpListener, List<ILogNode> logNodes, List<IReporter> reporters,
                       boolean useExpiredIpEnable, boolean cachedIpEnable, String routeIp,
-                      Boolean experimentalBuglyEnable) {
+                      Boolean experimentalBuglyEnable, int batchLookupWindowMills, int maxNumOfBatchLookupDomains,
+                      boolean enableHttpPipelining, int maxNumOfCacheEntries, long maxCacheBytes,
+                      int prefetchMaxHosts, int prefetchMaxRequestsPerMinute,
+                      boolean enableCooccurrencePrefetch) {
         this.logLevel = logLevel;
         this.appId = appId;
         this.userId = userId;
@@ -95,6 +110,14 @@ public final class DnsConfig {
         this.cachedIpEnable = cachedIpEnable;
         this.routeIp = routeIp;
         this.experimentalBuglyEnable = experimentalBuglyEnable;
+        this.batchLookupWindowMills = batchLookupWindowMills;
+        this.maxNumOfBatchLookupDomains = maxNumOfBatchLookupDomains;
+        this.enableHttpPipelining = enableHttpPipelining;
+        this.maxNumOfCacheEntries = maxNumOfCacheEntries;
+        this.maxCacheBytes = maxCacheBytes;
+        this.prefetchMaxHosts = prefetchMaxHosts;
+        this.prefetchMaxRequestsPerMinute = prefetchMaxRequestsPerMinute;
+        this.enableCooccurrencePrefetch = enableCooccurrencePrefetch;
     }
 
     boolean needProtect(/* @Nullable */String hostname) {
@@ -139,6 +162,14 @@ public final class DnsConfig {
                 + ", enableDomainServer=" + enableDomainServer
                 + ", routeIp=" + routeIp
                 + ", experimentalBuglyEnable=" + experimentalBuglyEnable
+                + ", batchLookupWindowMills=" + batchLookupWindowMills
+                + ", maxNumOfBatchLookupDomains=" + maxNumOfBatchLookupDomains
+                + ", enableHttpPipelining=" + enableHttpPipelining
+                + ", maxNumOfCacheEntries=" + maxNumOfCacheEntries
+                + ", maxCacheBytes=" + maxCacheBytes
+                + ", prefetchMaxHosts=" + prefetchMaxHosts
+                + ", prefetchMaxRequestsPerMinute=" + prefetchMaxRequestsPerMinute
+                + ", enableCooccurrencePrefetch=" + enableCooccurrencePrefetch
                 + '}';
     }
 
@@ -186,6 +217,8 @@ public final class DnsConfig {
 
         private static final int DEFAULT_MAX_NUM_OF_PRE_LOOKUP_DOMAINS = 10;
         private static final int DEFAULT_MAX_NUM_OF_IP_RANK_ITEMS = 10;
+        private static final int DEFAULT_MAX_NUM_OF_BATCH_LOOKUP_DOMAINS = 10;
+        private static final int DEFAULT_MAX_NUM_OF_CACHE_ENTRIES = 1000;
 
         private int mLogLevel = Log.WARN;
 
@@ -229,6 +262,14 @@ public final class DnsConfig {
         private boolean mCachedIpEnable = false;
         private String mRouteIp = "";
         private boolean mExperimentalBuglyEnable = false;
+        private int mBatchLookupWindowMills = 0;
+        private int mMaxNumOfBatchLookupDomains = DEFAULT_MAX_NUM_OF_BATCH_LOOKUP_DOMAINS;
+        private boolean mEnableHttpPipelining = false;
+        private int mMaxNumOfCacheEntries = DEFAULT_MAX_NUM_OF_CACHE_ENTRIES;
+        private long mMaxCacheBytes = 0;
+        private int mPrefetchMaxHosts = 0;
+        private int mPrefetchMaxRequestsPerMinute = 0;
+        private boolean mEnableCooccurrencePrefetch = false;
 
         /**
          * 设置最低日志等级, 低于设置等级的日志不会输出
@@ -744,6 +785,97 @@ public final class DnsConfig {
             return this;
         }
 
+        /**
+         * 启用批量解析合并, 收集窗口内未命中缓存的单域名解析请求会合并为一次批量解析请求
+         * 不设置时, 默认不进行合并, 每个域名单独发起解析请求
+         *
+         * @param windowMills     收集窗口时长, 单位为ms, 建议设置为5ms左右, 窗口内的解析请求会多等待至多该时长
+         * @param maxNumOfDomains 单次批量解析的最大域名数, 达到后立即发起批量解析请求, 不设置时默认为10
+         * @return 当前Builder实例, 方便链式调用
+         * @throws IllegalArgumentException windowMills或maxNumOfDomains小于等于0时抛出
+         */
+        public Builder batchLookup(int windowMills, int maxNumOfDomains) {
+            if (0 >= windowMills) {
+                throw new IllegalArgumentException("windowMills".concat(Const.LESS_THAN_0_TIPS));
+            }
+            if (0 >= maxNumOfDomains) {
+                throw new IllegalArgumentException("maxNumOfDomains".concat(Const.LESS_THAN_0_TIPS));
+            }
+            mBatchLookupWindowMills = windowMills;
+            mMaxNumOfBatchLookupDomains = maxNumOfDomains;
+            return this;
+        }
+
+        /**
+         * 设置是否启用HTTP pipelining, 仅对非阻塞方式的HTTP解析请求生效
+         * 启用后, 同时发往同一服务地址的多个解析请求会在同一连接上连续发送, 服务端不支持时自动退化为每个请求单独使用一个连接
+         *
+         * @param enableHttpPipelining 是否启用HTTP pipelining, 默认不启用
+         * @return 当前Builder实例, 方便链式调用
+         */
+        public Builder enableHttpPipelining(boolean enableHttpPipelining) {
+            mEnableHttpPipelining = enableHttpPipelining;
+            return this;
+        }
+
+        /**
+         * 设置内存缓存的容量限制, 超出时优先淘汰最近未被访问的域名
+         * 不设置时, 默认最多缓存1000个域名, 不限制内存占用
+         *
+         * @param maxNumOfEntries 最多缓存的域名数
+         * @param maxBytes        缓存估算内存占用的上限, 单位为字节, 为0时不限制
+         * @return 当前Builder实例, 方便链式调用
+         * @throws IllegalArgumentException maxNumOfEntries小于等于0或maxBytes小于0时抛出
+         */
+        public Builder cacheLimit(int maxNumOfEntries, long maxBytes) {
+            if (0 >= maxNumOfEntries) {
+                throw new IllegalArgumentException("maxNumOfEntries".concat(Const.LESS_THAN_0_TIPS));
+            }
+            if (0 > maxBytes) {
+                throw new IllegalArgumentException("maxBytes".concat(Const.LESS_THAN_0_TIPS));
+            }
+            mMaxNumOfCacheEntries = maxNumOfEntries;
+            mMaxCacheBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * 开启热点域名预取, 按访问频率及最近访问时间统计域名热度, 在最热的若干域名的缓存过期前批量刷新
+         * 与persistentCacheDomains不同, 预取范围随访问情况变化, 变冷的域名不再刷新
+         * 不设置时, 默认不开启
+         *
+         * @param maxHosts             最多预取的域名数
+         * @param maxRequestsPerMinute 每分钟最多发起的预取请求数, 一次批量解析计为一次
+         * @return 当前Builder实例, 方便链式调用
+         * @throws IllegalArgumentException maxHosts或maxRequestsPerMinute小于等于0时抛出
+         */
+        public Builder prefetch(int maxHosts, int maxRequestsPerMinute) {
+            if (0 >= maxHosts) {
+                throw new IllegalArgumentException("maxHosts".concat(Const.LESS_THAN_0_TIPS));
+            }
+            if (0 >= maxRequestsPerMinute) {
+                throw new IllegalArgumentException("maxRequestsPerMinute".concat(Const.LESS_THAN_0_TIPS));
+            }
+            mPrefetchMaxHosts = maxHosts;
+            mPrefetchMaxRequestsPerMinute = maxRequestsPerMinute;
+            return this;
+        }
+
+        /**
+         * 设置是否开启伴随域名预取
+         * 开启后SDK学习哪些域名总是先后被解析, 解析一个域名时, 同时解析其未缓存或即将过期的伴随域名
+         * 设置了批量解析合并窗口时, 伴随域名与该域名合并为同一个批量解析请求
+         * 开启本地缓存时, 学习到的模型与缓存一起保存
+         * 不设置时, 默认不开启
+         *
+         * @param enableCooccurrencePrefetch 是否开启伴随域名预取
+         * @return 当前Builder实例, 方便链式调用
+         */
+        public Builder enableCooccurrencePrefetch(boolean enableCooccurrencePrefetch) {
+            mEnableCooccurrencePrefetch = enableCooccurrencePrefetch;
+            return this;
+        }
+
         /**
          * 构建DnsConfig实例
          *
@@ -763,7 +895,9 @@ public final class DnsConfig {
                     mTimeoutMills, mProtectedDomains, mPreLookupDomains, mEnablePersistentCache,
                     mPersistentCacheDomains, mIpRankItems, mChannel, mEnableReport, mBlockFirst, mCustomNetStack,
                     mExecutorSupplier, mLookedUpListener, mLogNodes, mReporters, mUseExpiredIpEnable, mCachedIpEnable,
-                    mRouteIp, mExperimentalBuglyEnable);
+                    mRouteIp, mExperimentalBuglyEnable, mBatchLookupWindowMills, mMaxNumOfBatchLookupDomains,
+                    mEnableHttpPipelining, mMaxNumOfCacheEntries, mMaxCacheBytes, mPrefetchMaxHosts,
+                    mPrefetchMaxRequestsPerMinute, mEnableCooccurrencePrefetch);
         }
     }
 }
@@ -13,6 +13,8 @@ import com.tencent.msdk.dns.base.report.IReporter;
 import com.tencent.msdk.dns.base.report.ReportManager;
 import com.tencent.msdk.dns.base.utils.CommonUtils;
 import com.tencent.msdk.dns.base.utils.IpValidator;
+import com.tencent.msdk.dns.base.utils.NetworkStack;
+import com.tencent.msdk.dns.core.BatchIpSet;
 import com.tencent.msdk.dns.core.ConfigFromServer;
 import com.tencent.msdk.dns.core.Const;
 import com.tencent.msdk.dns.core.DnsDescription;
@@ -21,19 +23,31 @@ import com.tencent.msdk.dns.core.IDns;
 import com.tencent.msdk.dns.core.ILookupListener;
 import com.tencent.msdk.dns.core.IStatisticsMerge;
 import com.tencent.msdk.dns.core.IpSet;
+import com.tencent.msdk.dns.core.LookupBatcher;
 import com.tencent.msdk.dns.core.LookupParameters;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.cache.Cache;
+import com.tencent.msdk.dns.core.cache.CacheStats;
+import com.tencent.msdk.dns.core.cache.CooccurrenceModel;
+import com.tencent.msdk.dns.core.cache.PopularityTracker;
+import com.tencent.msdk.dns.core.cache.PrefetchStats;
+import com.tencent.msdk.dns.core.rest.share.HttpPipeline;
 import com.tencent.msdk.dns.core.rest.share.LookupExtra;
+import com.tencent.msdk.dns.core.rest.share.NetworkChangeCoordinator;
+import com.tencent.msdk.dns.core.rest.share.NetworkChangeStats;
 import com.tencent.msdk.dns.core.stat.StatisticsMerge;
 import com.tencent.msdk.dns.report.CacheStatisticsReport;
+import com.tencent.msdk.dns.report.LookupEventQueue;
 import com.tencent.msdk.dns.report.ReportHelper;
 import com.tencent.msdk.dns.report.SpendReportResolver;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * SDK对外接口类
@@ -98,7 +112,7 @@ public final class DnsService {
             SpendReportResolver.getInstance().init();
             NetworkChangeManager.install(appContext);
             ActivityLifecycleDetector.install(appContext);
-            // Room 本地数据读取
+            // 本地缓存快照读取
             DnsExecutors.WORK.execute(new Runnable() {
                 @Override
                 public void run() {
@@ -108,6 +122,22 @@ public final class DnsService {
             ReportHelper.init(config);
             DnsExecutors.sExecutorSupplier = sConfig.executorSupplier;
             setLookedUpListener(config.lookedUpListener);
+            if (0 < config.batchLookupWindowMills) {
+                DnsManager.setLookupBatcher(
+                        new LookupBatcher(config.batchLookupWindowMills, config.maxNumOfBatchLookupDomains));
+            }
+            HttpPipeline.setEnabled(config.enableHttpPipelining);
+            // 解析及命中缓存时在WORK线程预测伴随域名, 按默认通道预取
+            CooccurrenceModel.getInstance().setPredictionListener(new CooccurrenceModel.PredictionListener() {
+                @Override
+                public void onPredicted(String hostname, List<String> companions) {
+                    LookupParameters<?> lookupParams = buildLookupParameters(hostname, sConfig.channel, false,
+                            false);
+                    if (null != lookupParams) {
+                        DnsManager.prefetchCompanions(lookupParams, companions);
+                    }
+                }
+            });
 
             // NOTE: addReporters需保证在ReportManager init之后调用
             addReporters(config.reporters);
@@ -197,7 +227,7 @@ public final class DnsService {
      */
     public static String getDnsDetail(String hostname) {
         String dnsIp = BackupResolver.getInstance().getDnsIp();
-        final LookupResult<IStatisticsMerge> lookupResult =
+        LookupResult<IStatisticsMerge> lookupResult =
                 DnsManager.getResultFromCache(new LookupParameters.Builder<LookupExtra>()
                         .context(sAppContext)
                         .hostname(hostname)
@@ -212,16 +242,38 @@ public final class DnsService {
                         .build());
 
         // 收集命中缓存的数据
-        DnsExecutors.WORK.execute(new Runnable() {
-            @Override
-            public void run() {
-                CacheStatisticsReport.add(lookupResult);
-            }
-        });
+        LookupEventQueue.offerCacheHit(lookupResult);
         StatisticsMerge statMerge = (StatisticsMerge) lookupResult.stat;
         return statMerge.toJsonResult();
     }
 
+    /**
+     * 获取内存缓存的统计数据
+     *
+     * @return {@link CacheStats}实例, 即命中, 未命中, 淘汰及过期清理次数等统计数据
+     */
+    public static CacheStats getCacheStats() {
+        return Cache.getInstance().getStats();
+    }
+
+    /**
+     * 获取热点域名预取的统计数据
+     *
+     * @return {@link PrefetchStats}实例, 即预取次数, 请求数, 命中及浪费次数等统计数据
+     */
+    public static PrefetchStats getPrefetchStats() {
+        return PopularityTracker.getInstance().getStats();
+    }
+
+    /**
+     * 获取网络切换后缓存重建的统计数据
+     *
+     * @return {@link NetworkChangeStats}实例, 即网络切换次数, 重建次数及最近一次重建的耗时等统计数据
+     */
+    public static NetworkChangeStats getNetworkChangeStats() {
+        return NetworkChangeCoordinator.getInstance().getStats();
+    }
+
     private static boolean enableAsyncLookup(String domain) {
         return sConfig.persistentCacheDomains != null && sConfig.persistentCacheDomains.contains(domain);
     }
@@ -275,6 +327,135 @@ public final class DnsService {
             DnsLog.d("Hostname is empty");
             return IpSet.EMPTY;
         }
+        IpSet ipSet;
+        if (!enableAsyncLookup && null != (ipSet = getIpSetFromCacheFast(hostname, channel))) {
+            return ipSet;
+        }
+        ipSet = getIpSetIfIp(hostname);
+        if (null != ipSet) {
+            return ipSet;
+        }
+        LookupParameters<?> lookupParams = buildLookupParameters(hostname, channel, fallback2Local,
+                enableAsyncLookup);
+        if (null == lookupParams) {
+            return IpSet.EMPTY;
+        }
+        return DnsManager.lookupWrapper(lookupParams).ipSet;
+    }
+
+    /**
+     * 批量进行域名解析
+     * 访问HTTPDNS服务失败时fallback到LocalDNS进行域名解析
+     *
+     * @param hostnames 域名列表, 忽略空域名及重复域名
+     * @return {@link BatchIpSet}实例, 即按域名区分的解析得到的Ip集合, IP不带"域名:"前缀
+     * @throws IllegalStateException 没有初始化时抛出
+     */
+    public static BatchIpSet getAddrsByNames(/* @Nullable */List<String> hostnames) {
+        if (!sInited) {
+            throw new IllegalStateException("DnsService".concat(Const.NOT_INIT_TIPS));
+        }
+        if (CommonUtils.isEmpty(hostnames)) {
+            DnsLog.d("Hostnames is empty");
+            return BatchIpSet.EMPTY;
+        }
+        Map<String, IpSet> ipSets = new LinkedHashMap<>();
+        List<String> hostnamesToLookup = new ArrayList<>();
+        for (String hostname : hostnames) {
+            if (TextUtils.isEmpty(hostname) || TextUtils.isEmpty(hostname = hostname.trim())
+                    || ipSets.containsKey(hostname)) {
+                continue;
+            }
+            IpSet ipSet = getIpSetIfIp(hostname);
+            if (null == ipSet) {
+                ipSet = IpSet.EMPTY;
+                hostnamesToLookup.add(hostname);
+            }
+            ipSets.put(hostname, ipSet);
+        }
+        if (1 == hostnamesToLookup.size()) {
+            // NOTE: 单域名解析不带"域名:"前缀, 可使用快速缓存及批量解析合并
+            String hostname = hostnamesToLookup.get(0);
+            ipSets.put(hostname, getAddrsByName(hostname, sConfig.channel, true, false));
+        } else if (1 < hostnamesToLookup.size()) {
+            String hostnameList = CommonUtils.toStringList(
+                    hostnamesToLookup.toArray(new String[hostnamesToLookup.size()]), ",");
+            BatchIpSet batchIpSet = getAddrsByName(hostnameList, sConfig.channel, true, false).batchIpSet;
+            if (null != batchIpSet) {
+                for (String hostname : hostnamesToLookup) {
+                    ipSets.put(hostname, batchIpSet.get(hostname));
+                }
+            }
+        }
+        return new BatchIpSet(ipSets);
+    }
+
+    /**
+     * 异步进行域名解析, 不阻塞调用线程
+     * 命中缓存时在调用线程直接回调, 否则在解析完成后于SDK内部线程回调
+     *
+     * @param hostname       域名
+     * @param fallback2Local 访问HTTPDNS服务失败时, 是否fallback到LocalDNS进行域名解析
+     * @param callback       {@link ILookupCallback}实例, 解析完成后的回调
+     * @throws IllegalStateException 没有初始化时抛出
+     */
+    public static void lookupAsync(/* @Nullable */String hostname, boolean fallback2Local,
+                                   final ILookupCallback callback) {
+        if (!sInited) {
+            throw new IllegalStateException("DnsService".concat(Const.NOT_INIT_TIPS));
+        }
+        if (null == callback) {
+            throw new IllegalArgumentException("callback".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (TextUtils.isEmpty(hostname) || TextUtils.isEmpty(hostname = hostname.trim())) {
+            DnsLog.d("Hostname is empty");
+            callback.onLookedUp(hostname, IpSet.EMPTY);
+            return;
+        }
+        IpSet ipSet = getIpSetFromCacheFast(hostname, sConfig.channel);
+        if (null == ipSet) {
+            ipSet = getIpSetIfIp(hostname);
+        }
+        if (null != ipSet) {
+            callback.onLookedUp(hostname, ipSet);
+            return;
+        }
+        final LookupParameters<?> lookupParams = buildLookupParameters(hostname, sConfig.channel,
+                fallback2Local, false);
+        if (null == lookupParams) {
+            callback.onLookedUp(hostname, IpSet.EMPTY);
+            return;
+        }
+        DnsManager.lookupWrapperAsync(lookupParams, new ILookupListener() {
+            @Override
+            public void onLookedUp(LookupParameters lookupParameters, LookupResult<IStatisticsMerge> lookupResult) {
+                callback.onLookedUp(lookupParams.hostname, lookupResult.ipSet);
+            }
+        });
+    }
+
+    // 命中未过期的单域名缓存时直接返回预先计算好的IpSet, 不创建LookupParameters, LookupContext及统计对象
+    // NOTE: 设置了ILookedUpListener时需要回调完整的统计数据, 不走快速路径
+    // NOTE: 不在保护域名列表中的域名与完整流程一致, 不返回HTTPDNS的缓存结果
+    /* @Nullable */
+    private static IpSet getIpSetFromCacheFast(String hostname, /* @Nullable */String channel) {
+        if (null != sConfig.lookedUpListener || Const.LOCAL_CHANNEL.equals(channel)
+                || !sConfig.needProtect(hostname)) {
+            return null;
+        }
+        int curNetStack = !NetworkStack.isInvalid(sConfig.customNetStack) && 0 < sConfig.customNetStack
+                ? sConfig.customNetStack : NetworkStack.get();
+        IpSet ipSet = Cache.getInstance().getFreshIpSet(hostname, curNetStack);
+        if (null != ipSet) {
+            CacheStatisticsReport.addFastHit(hostname);
+            PopularityTracker.getInstance().recordAccess(hostname, false);
+            CooccurrenceModel.getInstance().onCacheHit(hostname);
+        }
+        return ipSet;
+    }
+
+    /* @Nullable */
+    private static IpSet getIpSetIfIp(String hostname) {
         if (IpValidator.isV4Ip(hostname)) {
             DnsLog.d("Hostname %s is an v4 ip, just return it", hostname);
             return new IpSet(new String[]{hostname}, Const.EMPTY_IPS);
@@ -283,6 +464,13 @@ public final class DnsService {
             DnsLog.d("Hostname %s is an v6 ip, just return it", hostname);
             return new IpSet(Const.EMPTY_IPS, new String[]{hostname});
         }
+        return null;
+    }
+
+    // return: 既不在保护域名列表中, 也不允许fallback到LocalDNS时返回null
+    /* @Nullable */
+    private static LookupParameters<?> buildLookupParameters(String hostname,
+            /* @Nullable */String channel, boolean fallback2Local, boolean enableAsyncLookup) {
         if (TextUtils.isEmpty(channel)) {
             channel = sConfig.channel;
         }
@@ -293,37 +481,33 @@ public final class DnsService {
         DnsLog.v("DnsService.getAddrsByName(%s, %s, %b, %b) called", hostname, channel, fallback2Local,
                 enableAsyncLookup);
         if (sConfig.needProtect(hostname)) {
-            LookupResult lookupResult = DnsManager
-                    .lookupWrapper(new LookupParameters.Builder<LookupExtra>()
-                            .context(sAppContext)
-                            .hostname(hostname)
-                            .timeoutMills(sConfig.timeoutMills)
-                            .dnsIp(dnsIp)
-                            .lookupExtra(sConfig.lookupExtra)
-                            .channel(channel)
-                            .fallback2Local(fallback2Local)
-                            .blockFirst(sConfig.blockFirst)
-                            .enableAsyncLookup(enableAsyncLookup)
-                            .customNetStack(sConfig.customNetStack)
-                            .build());
-            return lookupResult.ipSet;
+            return new LookupParameters.Builder<LookupExtra>()
+                    .context(sAppContext)
+                    .hostname(hostname)
+                    .timeoutMills(sConfig.timeoutMills)
+                    .dnsIp(dnsIp)
+                    .lookupExtra(sConfig.lookupExtra)
+                    .channel(channel)
+                    .fallback2Local(fallback2Local)
+                    .blockFirst(sConfig.blockFirst)
+                    .enableAsyncLookup(enableAsyncLookup)
+                    .customNetStack(sConfig.customNetStack)
+                    .build();
         }
         if (fallback2Local) {
             DnsLog.d("Hostname %s is not in protected domain list, just lookup by LocalDns", hostname);
-            return DnsManager
-                    .lookupWrapper(new LookupParameters.Builder<>()
-                            .context(sAppContext)
-                            .hostname(hostname)
-                            .timeoutMills(sConfig.timeoutMills)
-                            .dnsIp(dnsIp)
-                            .lookupExtra(IDns.ILookupExtra.EMPTY)
-                            .channel(Const.LOCAL_CHANNEL)
-                            .fallback2Local(false)
-                            .blockFirst(sConfig.blockFirst)
-                            .build())
-                    .ipSet;
-        }
-        return IpSet.EMPTY;
+            return new LookupParameters.Builder<>()
+                    .context(sAppContext)
+                    .hostname(hostname)
+                    .timeoutMills(sConfig.timeoutMills)
+                    .dnsIp(dnsIp)
+                    .lookupExtra(IDns.ILookupExtra.EMPTY)
+                    .channel(Const.LOCAL_CHANNEL)
+                    .fallback2Local(false)
+                    .blockFirst(sConfig.blockFirst)
+                    .build();
+        }
+        return null;
     }
 
     /**
@@ -0,0 +1,18 @@
+package com.tencent.msdk.dns;
+
+import com.tencent.msdk.dns.core.IpSet;
+
+/**
+ * 异步域名解析结果的回调接口
+ */
+public interface ILookupCallback {
+
+    /**
+     * 域名解析完成后的回调
+     * 命中缓存时在调用线程直接回调, 否则在SDK内部线程回调, 回调中不要执行耗时操作
+     *
+     * @param hostname 域名
+     * @param ipSet    {@link IpSet}实例, 即解析得到的Ip集合
+     */
+    void onLookedUp(String hostname, IpSet ipSet);
+}
@@ -5,15 +5,20 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
-import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.jni.JniWrapper;
 import com.tencent.msdk.dns.base.log.DnsLog;
 import com.tencent.msdk.dns.base.log.ILogNode;
 import com.tencent.msdk.dns.base.utils.CommonUtils;
 import com.tencent.msdk.dns.base.utils.NetworkStack;
+import com.tencent.msdk.dns.core.BatchIpSet;
 import com.tencent.msdk.dns.core.Const;
 import com.tencent.msdk.dns.core.IpSet;
 import com.tencent.msdk.dns.core.cache.Cache;
+import com.tencent.msdk.dns.core.cache.CacheStats;
+import com.tencent.msdk.dns.core.cache.PrefetchStats;
+import com.tencent.msdk.dns.core.rest.share.NetworkChangeStats;
+
+import java.util.List;
 
 public class MSDKDnsResolver {
     public static final String DES_HTTP_CHANNEL = Const.DES_HTTP_CHANNEL;
@@ -285,16 +290,10 @@ public class MSDKDnsResolver {
      */
     public void getAddrByNameAsync(final String domain, final String tag) {
         if (!DnsService.getDnsConfig().useExpiredIpEnable) {
-            DnsExecutors.WORK.execute(new Runnable() {
+            lookupAsync(domain, new ILookupCallback() {
                 @Override
-                public void run() {
-                    String result = getAddrByNameNormal(domain);
-                    if (sHttpDnsResponseObserver != null) {
-                        sHttpDnsResponseObserver.onHttpDnsResponse(tag, domain, result);
-                    } else {
-                        // try to send to unity
-                        JniWrapper.sendToUnity(tag);
-                    }
+                public void onLookedUp(String hostname, IpSet ipSet) {
+                    notifyHttpDnsResponse(tag, domain, CommonUtils.getIpfromSet(ipSet));
                 }
             });
         } else {
@@ -353,6 +352,29 @@ public class MSDKDnsResolver {
         return ipSet;
     }
 
+    /**
+     * 批量进行域名解析
+     * 接口区分本地网络栈进行解析, 按域名返回结果, 无需再拆分"域名:IP"格式的字符串
+     * 返回：BatchIpSet{ipSets={qq.com=IpSet{v4Ips=[123.151.137.18, 183.3.226.35], v6Ips=[], ips=null}, ...}}
+     * NOTE: 不受useExpiredIpEnable影响, 总是返回未过期的解析结果
+     *
+     * @param domains 域名列表
+     * @return 解析结果, 未初始化或解析失败时对应域名的结果为{@link IpSet#EMPTY}
+     */
+    public BatchIpSet getAddrsByNames(List<String> domains) {
+        DnsLog.v("MSDKDnsResolver.getAddrsByNames() called.");
+
+        BatchIpSet batchIpSet = BatchIpSet.EMPTY;
+        // NOTE: 兼容旧版本实现, 未调用init时不crash
+        try {
+            batchIpSet = DnsService.getAddrsByNames(domains);
+        } catch (Exception ignored) {
+            DnsLog.e("exception: %s", ignored);
+        }
+
+        return batchIpSet;
+    }
+
     /**
      * 常规域名解析（批量）
      *
@@ -376,16 +398,10 @@ public class MSDKDnsResolver {
      */
     public void getAddrsByNameAsync(final String domain, final String tag) {
         if (!DnsService.getDnsConfig().useExpiredIpEnable) {
-            DnsExecutors.WORK.execute(new Runnable() {
+            lookupAsync(domain, new ILookupCallback() {
                 @Override
-                public void run() {
-                    IpSet result = getAddrsByNameNormal(domain);
-                    if (sHttpDnsResponseObserver != null) {
-                        sHttpDnsResponseObserver.onHttpDnsResponse(tag, domain, result);
-                    } else {
-                        // try to send to unity
-                        JniWrapper.sendToUnity(tag);
-                    }
+                public void onLookedUp(String hostname, IpSet ipSet) {
+                    notifyHttpDnsResponse(tag, domain, ipSet);
                 }
             });
         } else {
@@ -398,6 +414,26 @@ public class MSDKDnsResolver {
         }
     }
 
+    private void lookupAsync(String domain, ILookupCallback callback) {
+        DnsLog.v("MSDKDnsResolver.lookupAsync() called.");
+        // NOTE: 兼容旧版本实现, 未调用init时不crash
+        try {
+            DnsService.lookupAsync(domain, true, callback);
+        } catch (Exception ignored) {
+            DnsLog.e("exception: %s", ignored);
+            callback.onLookedUp(domain, IpSet.EMPTY);
+        }
+    }
+
+    private void notifyHttpDnsResponse(String tag, String domain, Object ipResult) {
+        if (sHttpDnsResponseObserver != null) {
+            sHttpDnsResponseObserver.onHttpDnsResponse(tag, domain, ipResult);
+        } else {
+            // try to send to unity
+            JniWrapper.sendToUnity(tag);
+        }
+    }
+
     public String getDnsDetail(String domain) {
         DnsLog.v("MSDKDnsResolver.getDnsDetail() called.");
         try {
@@ -434,6 +470,33 @@ public class MSDKDnsResolver {
         Cache.getInstance().clearCache(domain);
     }
 
+    /**
+     * 获取内存缓存的统计数据
+     *
+     * @return 命中, 未命中, 淘汰及过期清理次数等统计数据
+     */
+    public CacheStats getCacheStats() {
+        return DnsService.getCacheStats();
+    }
+
+    /**
+     * 获取热点域名预取的统计数据
+     *
+     * @return 预取次数, 请求数, 命中及浪费次数等统计数据
+     */
+    public PrefetchStats getPrefetchStats() {
+        return DnsService.getPrefetchStats();
+    }
+
+    /**
+     * 获取网络切换后缓存重建的统计数据
+     *
+     * @return 网络切换次数, 重建次数及最近一次重建的耗时等统计数据
+     */
+    public NetworkChangeStats getNetworkChangeStats() {
+        return DnsService.getNetworkChangeStats();
+    }
+
     @SuppressWarnings("unused")
     public void addLogNode(ILogNode logNode) {
         DnsLog.addLogNode(logNode);
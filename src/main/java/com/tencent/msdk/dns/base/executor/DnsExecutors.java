@@ -7,8 +7,8 @@ import android.os.Process;
 
 import com.tencent.msdk.dns.base.log.DnsLog;
 
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -109,7 +109,7 @@ public final class DnsExecutors {
         private final HandlerThread mMainThread;
         private final Handler mMainHandler;
 
-        private final Map<Runnable, Runnable> mTaskWrapperMap = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Runnable, Runnable> mTaskWrapperMap = new ConcurrentHashMap<>();
 
         private MainExecutor() {
             mMainThread = new HandlerThread("dns-main");
@@ -126,14 +126,22 @@ public final class DnsExecutors {
         }
 
         @Override
-        public void schedule(Runnable task, long delayMills) {
+        public void schedule(final Runnable task, long delayMills) {
             if (null != task) {
-                Runnable taskWrapper = wrapTask(task);
+                final Runnable realTaskWrapper = wrapTask(task);
                 if (0 < delayMills) {
+                    // 执行时移除映射, 避免mTaskWrapperMap持续增长
+                    Runnable taskWrapper = new Runnable() {
+                        @Override
+                        public void run() {
+                            mTaskWrapperMap.remove(task, this);
+                            realTaskWrapper.run();
+                        }
+                    };
                     mTaskWrapperMap.put(task, taskWrapper);
                     mMainHandler.postDelayed(taskWrapper, delayMills);
                 } else {
-                    execute(taskWrapper);
+                    execute(realTaskWrapper);
                 }
             }
         }
@@ -141,7 +149,7 @@ public final class DnsExecutors {
         @Override
         public void cancel(Runnable task) {
             if (null != task) {
-                Runnable taskWrapper = mTaskWrapperMap.get(task);
+                Runnable taskWrapper = mTaskWrapperMap.remove(task);
                 if (null != taskWrapper) {
                     mMainHandler.removeCallbacks(taskWrapper);
                 }
@@ -0,0 +1,258 @@
+package com.tencent.msdk.dns.base.executor;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.IClock;
+import com.tencent.msdk.dns.core.Const;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 哈希时间轮, 用于管理大量截止时间
+ * <p>
+ * 截止时间向上取整到tick后放入对应的槽, 同一tick到期的条目在一次回调中批量处理
+ * 添加, 取消及重新调度均为O(1), 仅在存在即将到期的条目时于MAIN线程唤醒
+ *
+ * @param <T> 条目类型
+ */
+public final class TimingWheel<T> {
+
+    /**
+     * 条目到期的回调
+     *
+     * @param <T> 条目类型
+     */
+    public interface TimeoutListener<T> {
+
+        /**
+         * 在MAIN线程回调, 不应执行耗时操作
+         *
+         * @param items 同一tick到期的条目, 不为空
+         */
+        void onTimeout(List<T> items);
+    }
+
+    /**
+     * 已调度的条目, 用于取消及重新调度
+     *
+     * @param <T> 条目类型
+     */
+    public static final class Timeout<T> {
+
+        public final T item;
+
+        // 以下字段由所属时间轮保护
+        private long mTick;
+        private int mBucket = -1;
+        private Timeout<T> mPrev;
+        private Timeout<T> mNext;
+
+        private Timeout(T item) {
+            this.item = item;
+        }
+    }
+
+    private final long mTickMills;
+    private final int mMask;
+    private final TimeoutListener<T> mListener;
+    private final IScheduledExecutor mExecutor;
+    private final IClock mClock;
+    private final long mStartTime;
+
+    // 以下字段由this保护
+    private final Timeout<T>[] mBuckets;
+    private int mSize = 0;
+    // 已处理的最后一个tick
+    private long mCurrentTick = 0;
+    // 已调度唤醒的tick, 没有时为Long.MAX_VALUE
+    private long mWakeUpTick = Long.MAX_VALUE;
+
+    private final Runnable mTickTask = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+
+    /**
+     * 构造函数
+     *
+     * @param tickMills 每个tick的时长, 单位为ms, 同一tick内到期的条目合并处理
+     * @param wheelSize 槽数, 向上取整为2的幂
+     * @param listener  条目到期的回调
+     * @throws IllegalArgumentException tickMills或wheelSize不大于0, 或listener为null时抛出
+     */
+    public TimingWheel(long tickMills, int wheelSize, TimeoutListener<T> listener) {
+        this(tickMills, wheelSize, listener, DnsExecutors.MAIN, IClock.SYSTEM);
+    }
+
+    /**
+     * 使用指定的唤醒线程及时钟, 用于单元测试
+     *
+     * @param executor 唤醒及回调所在的线程
+     * @param clock    时钟
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMills, int wheelSize, TimeoutListener<T> listener, IScheduledExecutor executor,
+                IClock clock) {
+        if (0 >= tickMills) {
+            throw new IllegalArgumentException("tickMills".concat(Const.LESS_THAN_0_TIPS));
+        }
+        if (0 >= wheelSize) {
+            throw new IllegalArgumentException("wheelSize".concat(Const.LESS_THAN_0_TIPS));
+        }
+        if (null == listener) {
+            throw new IllegalArgumentException("listener".concat(Const.NULL_POINTER_TIPS));
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        mTickMills = tickMills;
+        mMask = size - 1;
+        mListener = listener;
+        mExecutor = executor;
+        mClock = clock;
+        mStartTime = clock.elapsedRealtime();
+        mBuckets = new Timeout[size];
+    }
+
+    /**
+     * 调度条目
+     *
+     * @param item       条目
+     * @param delayMills 延迟时间, 单位为ms
+     * @return 用于取消及重新调度的句柄
+     */
+    public Timeout<T> schedule(T item, long delayMills) {
+        Timeout<T> timeout = new Timeout<>(item);
+        reschedule(timeout, delayMills);
+        return timeout;
+    }
+
+    /**
+     * 重新调度条目, 条目已到期或已取消时重新加入
+     *
+     * @param timeout    schedule()返回的句柄
+     * @param delayMills 从现在开始的延迟时间, 单位为ms
+     */
+    public synchronized void reschedule(Timeout<T> timeout, long delayMills) {
+        if (null == timeout) {
+            throw new IllegalArgumentException("timeout".concat(Const.NULL_POINTER_TIPS));
+        }
+        unlinkLocked(timeout);
+        long deadline = mClock.elapsedRealtime() + Math.max(0, delayMills);
+        // NOTE: 向上取整, 保证不会提前到期
+        long tick = Math.max((deadline - mStartTime + mTickMills - 1) / mTickMills, mCurrentTick + 1);
+        timeout.mTick = tick;
+        timeout.mBucket = (int) (tick & mMask);
+        timeout.mNext = mBuckets[timeout.mBucket];
+        if (null != timeout.mNext) {
+            timeout.mNext.mPrev = timeout;
+        }
+        mBuckets[timeout.mBucket] = timeout;
+        mSize++;
+        if (tick < mWakeUpTick) {
+            wakeUpLocked(tick);
+        }
+    }
+
+    /**
+     * 取消条目
+     *
+     * @param timeout schedule()返回的句柄
+     * @return 条目尚未到期时返回true
+     */
+    public synchronized boolean cancel(/* @Nullable */Timeout<T> timeout) {
+        if (null == timeout || -1 == timeout.mBucket) {
+            return false;
+        }
+        unlinkLocked(timeout);
+        // NOTE: 不取消已调度的唤醒, 唤醒时没有到期条目即可
+        return true;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    private void unlinkLocked(Timeout<T> timeout) {
+        if (-1 == timeout.mBucket) {
+            return;
+        }
+        if (null != timeout.mPrev) {
+            timeout.mPrev.mNext = timeout.mNext;
+        } else {
+            mBuckets[timeout.mBucket] = timeout.mNext;
+        }
+        if (null != timeout.mNext) {
+            timeout.mNext.mPrev = timeout.mPrev;
+        }
+        timeout.mPrev = null;
+        timeout.mNext = null;
+        timeout.mBucket = -1;
+        mSize--;
+    }
+
+    private void wakeUpLocked(long tick) {
+        if (Long.MAX_VALUE != mWakeUpTick) {
+            mExecutor.cancel(mTickTask);
+        }
+        mWakeUpTick = tick;
+        mExecutor.schedule(mTickTask, mStartTime + tick * mTickMills - mClock.elapsedRealtime());
+    }
+
+    private void onTick() {
+        List<T> items = new ArrayList<>();
+        synchronized (this) {
+            mWakeUpTick = Long.MAX_VALUE;
+            long nowTick = (mClock.elapsedRealtime() - mStartTime) / mTickMills;
+            if (nowTick > mCurrentTick) {
+                // NOTE: 唤醒延迟超过一圈时检查所有槽
+                long bucketCount = Math.min(nowTick - mCurrentTick, mBuckets.length);
+                for (long tick = nowTick - bucketCount + 1; tick <= nowTick; tick++) {
+                    expireLocked((int) (tick & mMask), nowTick, items);
+                }
+                mCurrentTick = nowTick;
+            }
+            long nextTick = nextTickLocked();
+            if (Long.MAX_VALUE != nextTick) {
+                wakeUpLocked(nextTick);
+            }
+        }
+        if (!items.isEmpty()) {
+            try {
+                mListener.onTimeout(items);
+            } catch (Exception e) {
+                DnsLog.w(e, "Handle timeout failed");
+            }
+        }
+    }
+
+    private void expireLocked(int bucket, long nowTick, List<T> items) {
+        Timeout<T> timeout = mBuckets[bucket];
+        while (null != timeout) {
+            Timeout<T> next = timeout.mNext;
+            if (timeout.mTick <= nowTick) {
+                unlinkLocked(timeout);
+                items.add(timeout.item);
+            }
+            timeout = next;
+        }
+    }
+
+    // return: 下一个有条目到期的tick, 一圈内没有时返回一圈后的tick, 没有条目时返回Long.MAX_VALUE
+    private long nextTickLocked() {
+        if (0 == mSize) {
+            return Long.MAX_VALUE;
+        }
+        for (long tick = mCurrentTick + 1; tick <= mCurrentTick + mBuckets.length; tick++) {
+            for (Timeout<T> timeout = mBuckets[(int) (tick & mMask)]; null != timeout; timeout = timeout.mNext) {
+                if (timeout.mTick <= tick) {
+                    return tick;
+                }
+            }
+        }
+        return mCurrentTick + mBuckets.length;
+    }
+}
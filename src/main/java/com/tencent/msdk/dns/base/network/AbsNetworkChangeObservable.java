@@ -3,6 +3,7 @@ package com.tencent.msdk.dns.base.network;
 import android.content.Context;
 
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.NetworkStack;
 import com.tencent.msdk.dns.base.utils.NetworkUtils;
 
 import java.util.ArrayList;
@@ -32,6 +33,9 @@ abstract class AbsNetworkChangeObservable implements INetworkChangeObservable {
         try {
             if (isNetworkChanged(context)) {
                 changeNetwork();
+            } else {
+                // 网络类型未变(如切换到另一个WIFI)时网络栈也可能变化
+                NetworkStack.refreshLater();
             }
         } catch (Exception e) {
             DnsLog.d(e, "mayChangeNetwork exception occur");
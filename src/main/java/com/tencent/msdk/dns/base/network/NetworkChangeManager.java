@@ -3,6 +3,7 @@ package com.tencent.msdk.dns.base.network;
 import android.content.Context;
 
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.NetworkSnapshot;
 
 public final class NetworkChangeManager {
 
@@ -16,8 +17,16 @@ public final class NetworkChangeManager {
         if (null == sNetworkChangeObservable) {
             synchronized (NetworkChangeManager.class) {
                 if (null == sNetworkChangeObservable) {
+                    final Context appContext = context.getApplicationContext();
+                    NetworkSnapshot.refresh(appContext);
                     sNetworkChangeObservable = new NetworkChangeObservableFactory().create(context);
-
+                    // NOTE: 最先注册, 保证其他监听者在网络变化后获取到的是新的网络快照
+                    sNetworkChangeObservable.addNetworkChangeListener(new IOnNetworkChangeListener() {
+                        @Override
+                        public void onNetworkChange() {
+                            NetworkSnapshot.refresh(appContext);
+                        }
+                    });
                 }
             }
         }
@@ -9,6 +9,7 @@ import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
 import android.os.Build;
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.NetworkStack;
 
 final class NetworkChangeObservableV21Impl extends AbsNetworkChangeObservable {
 
@@ -79,6 +80,9 @@ final class NetworkChangeObservableV21Impl extends AbsNetworkChangeObservable {
                                                             LinkProperties linkProperties) {
                             super.onLinkPropertiesChanged(network, linkProperties);
                             DnsLog.d("Network onLinkPropertiesChanged(%s)", network);
+
+                            // IPv6地址等变化可能导致网络栈变化
+                            NetworkStack.refreshLater();
                         }
                     });
         } catch (Exception e) {
@@ -0,0 +1,327 @@
+package com.tencent.msdk.dns.base.utils;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.network.IOnNetworkChangeListener;
+import com.tencent.msdk.dns.base.network.NetworkChangeManager;
+import com.tencent.msdk.dns.core.Const;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * SDK内部使用的阻塞HTTP(S)客户端, 供阻塞方式解析, 配置拉取及Atta上报共用
+ * 以(scheme, host, port)为key缓存空闲连接, HTTPS连接使用TlsContext共享的SSLContext, 新建连接时可恢复TLS session
+ * 响应由HttpResponseDecoder增量解析, 支持Content-Length, chunked编码及以连接关闭结束的响应
+ * NOTE: 只支持GET请求, 不使用系统代理
+ */
+public final class HttpClient {
+
+    private static final String HTTPS_SCHEME = "https";
+    private static final String CRLF = "\r\n";
+    private static final String HTTP_VERSION = "HTTP/1.1";
+
+    private static final long IDLE_TIMEOUT_MILLS = 30 * 1000;
+    private static final int MAX_IDLE_CONNECTIONS_PER_ROUTE = 4;
+
+    // NOTE: 由POOL_LOCK保护
+    private static final Map<String, Deque<Connection>> IDLE_CONNECTIONS_MAP = new HashMap<>();
+    private static final Object POOL_LOCK = new Object();
+
+    private static final AtomicLong REUSE_COUNT = new AtomicLong();
+    private static final AtomicLong CONNECT_COUNT = new AtomicLong();
+
+    static {
+        // NOTE: 网络变化后旧连接不可用, 直接清空
+        NetworkChangeManager.addNetworkChangeListener(new IOnNetworkChangeListener() {
+            @Override
+            public void onNetworkChange() {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * 发起GET请求
+     *
+     * @param urlStr       请求url
+     * @param timeoutMills 建连及每次读取的超时时间
+     * @return 响应, 包括非2xx的响应
+     * @throws IOException 请求失败, 超时时抛出SocketTimeoutException
+     */
+    public static Response get(String urlStr, int timeoutMills) throws IOException {
+        if (TextUtils.isEmpty(urlStr)) {
+            throw new IllegalArgumentException("urlStr".concat(Const.EMPTY_TIPS));
+        }
+        if (0 >= timeoutMills) {
+            throw new IllegalArgumentException("timeoutMills".concat(Const.LESS_THAN_0_TIPS));
+        }
+
+        URL url = new URL(urlStr);
+        boolean https = HTTPS_SCHEME.equalsIgnoreCase(url.getProtocol());
+        String host = url.getHost();
+        int port = -1 != url.getPort() ? url.getPort() : url.getDefaultPort();
+        String route = url.getProtocol().toLowerCase() + "://" + host + ':' + port;
+        String hostHeader = -1 != url.getPort() ? host + ':' + port : host;
+        String request = "GET " + url.getFile() + ' ' + HTTP_VERSION + CRLF
+                + "Host: " + hostHeader + CRLF
+                + "Connection: keep-alive" + CRLF
+                + "Accept-Encoding: identity" + CRLF
+                + CRLF;
+        //noinspection CharsetObjectCanBeUsed
+        byte[] requestBytes = request.getBytes("UTF-8");
+
+        Connection connection = acquire(route);
+        if (null != connection) {
+            try {
+                return execute(connection, requestBytes, timeoutMills);
+            } catch (IOException e) {
+                // 复用的连接可能已被服务端关闭, 尚未收到响应时使用新连接重试一次
+                if (connection.mResponseStarted) {
+                    throw e;
+                }
+                DnsLog.d("HttpClient reused connection to %s is broken, reconnect", route);
+            }
+        }
+        connection = connect(route, host, port, https, timeoutMills);
+        return execute(connection, requestBytes, timeoutMills);
+    }
+
+    /**
+     * 获取复用已有连接的次数
+     *
+     * @return 复用连接的次数
+     */
+    public static long reuseCount() {
+        return REUSE_COUNT.get();
+    }
+
+    /**
+     * 获取新建连接(TCP握手)的次数
+     *
+     * @return 新建连接的次数
+     */
+    public static long connectCount() {
+        return CONNECT_COUNT.get();
+    }
+
+    /**
+     * 清空所有空闲连接
+     */
+    public static void flush() {
+        List<Connection> connections = new ArrayList<>();
+        synchronized (POOL_LOCK) {
+            for (Deque<Connection> idleConnections : IDLE_CONNECTIONS_MAP.values()) {
+                connections.addAll(idleConnections);
+            }
+            IDLE_CONNECTIONS_MAP.clear();
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private static Connection connect(String route, String host, int port, boolean https, int timeoutMills)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMills);
+            socket.setSoTimeout(timeoutMills);
+            socket.setTcpNoDelay(true);
+            CONNECT_COUNT.incrementAndGet();
+            if (https) {
+                SSLContext sslContext = TlsContext.get();
+                if (null == sslContext) {
+                    throw new IOException("SSLContext is not available");
+                }
+                // NOTE: 指定host和port, SSLContext才会缓存及恢复session
+                SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, host, port, true);
+                socket = sslSocket;
+                long handshakeStartMills = System.currentTimeMillis();
+                sslSocket.startHandshake();
+                TlsContext.onHandshakeFinished(host, sslSocket.getSession(), handshakeStartMills);
+            }
+            return new Connection(route, socket);
+        } catch (IOException e) {
+            CommonUtils.closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static Response execute(Connection connection, byte[] requestBytes, int timeoutMills)
+            throws IOException {
+        boolean keepAlive = false;
+        try {
+            connection.mSocket.setSoTimeout(timeoutMills);
+            OutputStream out = connection.mSocket.getOutputStream();
+            out.write(requestBytes);
+            out.flush();
+
+            InputStream in = connection.mSocket.getInputStream();
+            byte[] buffer = connection.mReadBuffer;
+            HttpResponseDecoder decoder = connection.mResponseDecoder;
+            decoder.reset();
+            while (true) {
+                int len = in.read(buffer);
+                if (-1 == len) {
+                    // 没有长度信息的响应以连接关闭作为结束
+                    if (decoder.finishOnEof()) {
+                        break;
+                    }
+                    // NOTE: 复用的连接在发送请求后被关闭时, 会在收到任何数据前遇到EOF
+                    throw new EOFException(0 == decoder.decodedLength()
+                            ? "Connection closed before response" : "Unexpected end of stream");
+                }
+                connection.mResponseStarted = true;
+                ByteBuffer src = ByteBuffer.wrap(buffer, 0, len);
+                if (decoder.decode(src)) {
+                    // 响应之后还有多余数据时, 连接不可复用
+                    keepAlive = decoder.isKeepAlive() && !src.hasRemaining();
+                    break;
+                }
+            }
+            return new Response(decoder.statusCode(), decoder.body());
+        } finally {
+            if (keepAlive) {
+                release(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    /* @Nullable */
+    private static Connection acquire(String route) {
+        while (true) {
+            Connection connection;
+            synchronized (POOL_LOCK) {
+                Deque<Connection> idleConnections = IDLE_CONNECTIONS_MAP.get(route);
+                if (null == idleConnections) {
+                    return null;
+                }
+                // 优先使用最近归还的连接
+                connection = idleConnections.pollLast();
+                if (idleConnections.isEmpty()) {
+                    IDLE_CONNECTIONS_MAP.remove(route);
+                }
+            }
+            if (null == connection) {
+                return null;
+            }
+            if (connection.isReusable()) {
+                connection.mResponseStarted = false;
+                REUSE_COUNT.incrementAndGet();
+                return connection;
+            }
+            connection.close();
+        }
+    }
+
+    private static void release(Connection connection) {
+        connection.mIdleSinceMills = SystemClock.elapsedRealtime();
+        List<Connection> evictedConnections = new ArrayList<>();
+        synchronized (POOL_LOCK) {
+            // 顺带清理所有过期的空闲连接
+            Iterator<Deque<Connection>> iterator = IDLE_CONNECTIONS_MAP.values().iterator();
+            while (iterator.hasNext()) {
+                Deque<Connection> idleConnections = iterator.next();
+                while (!idleConnections.isEmpty() && !idleConnections.peekFirst().isFresh()) {
+                    evictedConnections.add(idleConnections.pollFirst());
+                }
+                if (idleConnections.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            Deque<Connection> idleConnections = IDLE_CONNECTIONS_MAP.get(connection.mRoute);
+            if (null == idleConnections) {
+                idleConnections = new ArrayDeque<>();
+                IDLE_CONNECTIONS_MAP.put(connection.mRoute, idleConnections);
+            }
+            if (MAX_IDLE_CONNECTIONS_PER_ROUTE <= idleConnections.size()) {
+                evictedConnections.add(idleConnections.pollFirst());
+            }
+            idleConnections.offerLast(connection);
+        }
+        for (Connection evictedConnection : evictedConnections) {
+            evictedConnection.close();
+        }
+    }
+
+    /**
+     * HTTP响应
+     */
+    public static final class Response {
+
+        public final int statusCode;
+        public final String body;
+
+        Response(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return "Response{"
+                    + "statusCode=" + statusCode
+                    + ", body='" + body + '\''
+                    + '}';
+        }
+    }
+
+    private static final class Connection {
+
+        final String mRoute;
+        final Socket mSocket;
+        final byte[] mReadBuffer = new byte[1024];
+        final HttpResponseDecoder mResponseDecoder = new HttpResponseDecoder();
+        long mIdleSinceMills;
+        // 是否已开始读取响应, 用于判断复用失败后能否重试
+        boolean mResponseStarted = false;
+
+        Connection(String route, Socket socket) {
+            mRoute = route;
+            mSocket = socket;
+        }
+
+        boolean isFresh() {
+            return SystemClock.elapsedRealtime() - mIdleSinceMills < IDLE_TIMEOUT_MILLS;
+        }
+
+        // NOTE: 无法发现服务端已关闭的连接, 由复用失败后重建连接兜底
+        boolean isReusable() {
+            if (!isFresh() || mSocket.isClosed() || mSocket.isInputShutdown() || mSocket.isOutputShutdown()) {
+                return false;
+            }
+            try {
+                // 有多余数据时不可复用
+                return 0 == mSocket.getInputStream().available();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            CommonUtils.closeQuietly(mSocket);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.tencent.msdk.dns.base.utils;
+
+import com.tencent.msdk.dns.core.Const;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 增量的HTTP/1.1响应解析器
+ * 逐字节解析状态行和header, 按Content-Length或chunked编码切分body, 收到响应的最后一个字节即完成, 不依赖连接关闭
+ * header只识别Content-Length, Transfer-Encoding和Connection, 不生成中间字符串
+ * body累积在可复用的buffer中, reset()后可继续解析同一连接上的下一个响应
+ * NOTE: 非线程安全
+ */
+public final class HttpResponseDecoder {
+
+    private static final int STATE_STATUS_LINE = 0;
+    private static final int STATE_HEADER = 1;
+    private static final int STATE_BODY = 2;
+    private static final int STATE_CHUNK_SIZE = 3;
+    private static final int STATE_CHUNK_DATA = 4;
+    private static final int STATE_CHUNK_DATA_END = 5;
+    private static final int STATE_TRAILER = 6;
+    private static final int STATE_BODY_UNTIL_EOF = 7;
+    private static final int STATE_COMPLETE = 8;
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_BODY_LENGTH = 1024 * 1024;
+
+    private static final byte[] HTTP_1_PREFIX = {'H', 'T', 'T', 'P', '/', '1', '.'};
+    private static final byte[] CONTENT_LENGTH = "content-length".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] CONNECTION = "connection".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] CHUNKED = "chunked".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] CLOSE = "close".getBytes(Charset.forName("US-ASCII"));
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private int mState = STATE_STATUS_LINE;
+
+    private byte[] mLine = new byte[128];
+    private int mLineLength = 0;
+
+    private byte[] mBody;
+    private int mBodyLength = 0;
+
+    private int mStatusCode = 0;
+    private boolean mHttp11 = false;
+    private boolean mConnectionClose = false;
+    private boolean mChunked = false;
+    private int mContentLength = -1;
+    // 当前body或chunk剩余的字节数
+    private int mRemaining = 0;
+    // 当前响应已解析的字节数
+    private int mDecodedLength = 0;
+
+    public HttpResponseDecoder() {
+        this(256);
+    }
+
+    public HttpResponseDecoder(int initialBodyCapacity) {
+        if (0 > initialBodyCapacity) {
+            throw new IllegalArgumentException("initialBodyCapacity".concat(Const.LESS_THAN_0_TIPS));
+        }
+        mBody = new byte[initialBodyCapacity];
+    }
+
+    /**
+     * 重置状态, 以解析下一个响应, 复用已分配的buffer
+     */
+    public void reset() {
+        mState = STATE_STATUS_LINE;
+        mLineLength = 0;
+        mBodyLength = 0;
+        mStatusCode = 0;
+        mHttp11 = false;
+        mConnectionClose = false;
+        mChunked = false;
+        mContentLength = -1;
+        mRemaining = 0;
+        mDecodedLength = 0;
+    }
+
+    /**
+     * 解析收到的数据
+     *
+     * @param src 读模式的buffer, 解析到响应结束为止, 之后的数据(如pipelining的下一个响应)保留在src中
+     * @return 响应是否已完整
+     * @throws ProtocolException 响应格式错误
+     */
+    public boolean decode(ByteBuffer src) throws ProtocolException {
+        if (null == src) {
+            throw new IllegalArgumentException("src".concat(Const.NULL_POINTER_TIPS));
+        }
+        while (src.hasRemaining() && STATE_COMPLETE != mState) {
+            switch (mState) {
+                case STATE_BODY:
+                case STATE_CHUNK_DATA:
+                    int len = Math.min(src.remaining(), mRemaining);
+                    appendBody(src, len);
+                    mRemaining -= len;
+                    if (0 == mRemaining) {
+                        mState = STATE_BODY == mState ? STATE_COMPLETE : STATE_CHUNK_DATA_END;
+                    }
+                    break;
+                case STATE_BODY_UNTIL_EOF:
+                    appendBody(src, src.remaining());
+                    break;
+                default:
+                    if (readLine(src)) {
+                        onLine();
+                        mLineLength = 0;
+                    }
+                    break;
+            }
+        }
+        return STATE_COMPLETE == mState;
+    }
+
+    /**
+     * 连接关闭时调用, 没有Content-Length且不是chunked编码的响应以连接关闭作为结束
+     *
+     * @return 响应是否已完整
+     */
+    public boolean finishOnEof() {
+        if (STATE_BODY_UNTIL_EOF == mState) {
+            mState = STATE_COMPLETE;
+        }
+        return STATE_COMPLETE == mState;
+    }
+
+    public boolean isComplete() {
+        return STATE_COMPLETE == mState;
+    }
+
+    // return: header是否已解析完成
+    public boolean isHeaderComplete() {
+        return STATE_STATUS_LINE != mState && STATE_HEADER != mState;
+    }
+
+    // return: 响应是否可以不依赖连接关闭确定结束位置, 仅在header解析完成后有意义
+    public boolean isFramed() {
+        return STATE_BODY_UNTIL_EOF != mState;
+    }
+
+    // return: 响应结束后连接是否可继续使用
+    public boolean isKeepAlive() {
+        return isComplete() && isFramed() && mHttp11 && !mConnectionClose;
+    }
+
+    // return: 状态码, 尚未解析出状态行时为0
+    public int statusCode() {
+        return mStatusCode;
+    }
+
+    // return: 当前响应已解析的字节数
+    public int decodedLength() {
+        return mDecodedLength;
+    }
+
+    public int bodyLength() {
+        return mBodyLength;
+    }
+
+    // return: 以UTF-8解码的body
+    public String body() {
+        return new String(mBody, 0, mBodyLength, UTF_8);
+    }
+
+    // 读取一行到mLine, 不包括行尾的CRLF
+    // return: 是否已读到行尾
+    private boolean readLine(ByteBuffer src) throws ProtocolException {
+        while (src.hasRemaining()) {
+            byte b = src.get();
+            mDecodedLength++;
+            if ('\n' == b) {
+                if (0 < mLineLength && '\r' == mLine[mLineLength - 1]) {
+                    mLineLength--;
+                }
+                return true;
+            }
+            if (mLine.length == mLineLength) {
+                if (MAX_LINE_LENGTH <= mLineLength) {
+                    throw new ProtocolException("Line too long");
+                }
+                byte[] line = new byte[Math.min(mLine.length * 2, MAX_LINE_LENGTH)];
+                System.arraycopy(mLine, 0, line, 0, mLineLength);
+                mLine = line;
+            }
+            mLine[mLineLength++] = b;
+        }
+        return false;
+    }
+
+    private void onLine() throws ProtocolException {
+        switch (mState) {
+            case STATE_STATUS_LINE:
+                parseStatusLine();
+                mState = STATE_HEADER;
+                break;
+            case STATE_HEADER:
+                if (0 == mLineLength) {
+                    onHeaderEnd();
+                } else {
+                    parseHeader();
+                }
+                break;
+            case STATE_CHUNK_SIZE:
+                mRemaining = parseChunkSize();
+                if (MAX_BODY_LENGTH - mBodyLength < mRemaining) {
+                    throw new ProtocolException("Body too large");
+                }
+                mState = 0 == mRemaining ? STATE_TRAILER : STATE_CHUNK_DATA;
+                break;
+            case STATE_CHUNK_DATA_END:
+                if (0 != mLineLength) {
+                    throw new ProtocolException("Missing CRLF after chunk data");
+                }
+                mState = STATE_CHUNK_SIZE;
+                break;
+            case STATE_TRAILER:
+                // 忽略trailer, 空行表示响应结束
+                if (0 == mLineLength) {
+                    mState = STATE_COMPLETE;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // eg: HTTP/1.1 200 OK
+    private void parseStatusLine() throws ProtocolException {
+        if (12 > mLineLength || !regionMatches(mLine, 0, mLineLength, HTTP_1_PREFIX, false) || ' ' != mLine[8]) {
+            throw new ProtocolException("Unexpected status line");
+        }
+        mHttp11 = '1' == mLine[7];
+        int statusCode = 0;
+        for (int i = 9; i < 12; i++) {
+            byte b = mLine[i];
+            if ('0' > b || '9' < b) {
+                throw new ProtocolException("Unexpected status code");
+            }
+            statusCode = statusCode * 10 + (b - '0');
+        }
+        mStatusCode = statusCode;
+    }
+
+    private void parseHeader() throws ProtocolException {
+        int colon = 0;
+        while (colon < mLineLength && ':' != mLine[colon]) {
+            colon++;
+        }
+        if (colon == mLineLength) {
+            // 忽略不合法的header
+            return;
+        }
+        int nameEnd = colon;
+        while (0 < nameEnd && isWhitespace(mLine[nameEnd - 1])) {
+            nameEnd--;
+        }
+        int valueStart = colon + 1;
+        while (valueStart < mLineLength && isWhitespace(mLine[valueStart])) {
+            valueStart++;
+        }
+        int valueEnd = mLineLength;
+        while (valueEnd > valueStart && isWhitespace(mLine[valueEnd - 1])) {
+            valueEnd--;
+        }
+
+        if (equalsIgnoreCase(mLine, 0, nameEnd, CONTENT_LENGTH)) {
+            int contentLength = parseNumber(valueStart, valueEnd, 10);
+            if (0 <= mContentLength && mContentLength != contentLength) {
+                throw new ProtocolException("Conflicting Content-Length");
+            }
+            mContentLength = contentLength;
+        } else if (equalsIgnoreCase(mLine, 0, nameEnd, TRANSFER_ENCODING)) {
+            mChunked = mChunked || contains(mLine, valueStart, valueEnd, CHUNKED);
+        } else if (equalsIgnoreCase(mLine, 0, nameEnd, CONNECTION)) {
+            mConnectionClose = mConnectionClose || contains(mLine, valueStart, valueEnd, CLOSE);
+        }
+    }
+
+    private void onHeaderEnd() throws ProtocolException {
+        if (100 <= mStatusCode && 200 > mStatusCode) {
+            // 忽略1xx响应, 继续解析最终响应
+            int decodedLength = mDecodedLength;
+            reset();
+            mDecodedLength = decodedLength;
+            return;
+        }
+        if (204 == mStatusCode || 304 == mStatusCode) {
+            mState = STATE_COMPLETE;
+        } else if (mChunked) {
+            // NOTE: 同时存在时以chunked为准
+            mState = STATE_CHUNK_SIZE;
+        } else if (0 <= mContentLength) {
+            if (MAX_BODY_LENGTH < mContentLength) {
+                throw new ProtocolException("Body too large");
+            }
+            ensureBodyCapacity(mContentLength);
+            mRemaining = mContentLength;
+            mState = 0 == mContentLength ? STATE_COMPLETE : STATE_BODY;
+        } else {
+            mState = STATE_BODY_UNTIL_EOF;
+        }
+    }
+
+    private int parseChunkSize() throws ProtocolException {
+        int end = 0;
+        // 忽略chunk extension
+        while (end < mLineLength && ';' != mLine[end]) {
+            end++;
+        }
+        int start = 0;
+        while (start < end && isWhitespace(mLine[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(mLine[end - 1])) {
+            end--;
+        }
+        return parseNumber(start, end, 16);
+    }
+
+    private int parseNumber(int start, int end, int radix) throws ProtocolException {
+        if (start >= end) {
+            throw new ProtocolException("Empty number");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(mLine[i], radix);
+            if (0 > digit) {
+                throw new ProtocolException("Invalid number");
+            }
+            value = value * radix + digit;
+            if (MAX_BODY_LENGTH < value) {
+                throw new ProtocolException("Body too large");
+            }
+        }
+        return (int) value;
+    }
+
+    private void appendBody(ByteBuffer src, int len) throws ProtocolException {
+        if (MAX_BODY_LENGTH - mBodyLength < len) {
+            throw new ProtocolException("Body too large");
+        }
+        ensureBodyCapacity(mBodyLength + len);
+        src.get(mBody, mBodyLength, len);
+        mBodyLength += len;
+        mDecodedLength += len;
+    }
+
+    private void ensureBodyCapacity(int capacity) {
+        if (mBody.length < capacity) {
+            byte[] body = new byte[Math.max(capacity, mBody.length * 2)];
+            System.arraycopy(mBody, 0, body, 0, mBodyLength);
+            mBody = body;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return ' ' == b || '\t' == b;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, int start, int end, byte[] lowerCaseTarget) {
+        return end - start == lowerCaseTarget.length && regionMatches(bytes, start, end, lowerCaseTarget, true);
+    }
+
+    private static boolean contains(byte[] bytes, int start, int end, byte[] lowerCaseTarget) {
+        for (int i = start; i <= end - lowerCaseTarget.length; i++) {
+            if (regionMatches(bytes, i, end, lowerCaseTarget, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // return: bytes[start, end)是否以target开头
+    private static boolean regionMatches(byte[] bytes, int start, int end, byte[] target, boolean ignoreCase) {
+        if (end - start < target.length) {
+            return false;
+        }
+        for (int i = 0; i < target.length; i++) {
+            byte b = bytes[start + i];
+            if (ignoreCase && 'A' <= b && 'Z' >= b) {
+                b = (byte) (b + ('a' - 'A'));
+            }
+            if (b != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,31 @@
+package com.tencent.msdk.dns.base.utils;
+
+import android.os.SystemClock;
+
+/**
+ * 时钟, 便于在单元测试中控制时间
+ */
+public interface IClock {
+
+    IClock SYSTEM = new IClock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return 开机以来的时间, 单位为ms, 同SystemClock.elapsedRealtime()
+     */
+    long elapsedRealtime();
+
+    /**
+     * @return 墙上时间, 单位为ms, 同System.currentTimeMillis()
+     */
+    long currentTimeMillis();
+}
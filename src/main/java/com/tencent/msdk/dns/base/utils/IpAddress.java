@@ -0,0 +1,385 @@
+package com.tencent.msdk.dns.base.utils;
+
+import com.tencent.msdk.dns.core.Const;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 紧凑存储的IP地址, IPv4使用一个int, IPv6使用两个long
+ * 字符串及InetAddress形式在首次使用时生成并缓存, 由字符串解析得到的实例直接复用原字符串
+ * NOTE: 不进行任何DNS查询
+ */
+public final class IpAddress {
+
+    private static final int V4_OCTET_COUNT = 4;
+    private static final int V6_GROUP_COUNT = 8;
+    private static final int V6_MAX_GROUP_DIGITS = 4;
+
+    private final boolean mV6;
+    // IPv4地址, 网络字节序
+    private final int mV4;
+    // IPv6地址的高64位及低64位
+    private final long mV6High;
+    private final long mV6Low;
+    // IPv6地址的scope, 如fe80::1%wlan0中的wlan0
+    /* @Nullable */ private final String mScope;
+
+    // NOTE: 允许并发时重复生成, 结果一致
+    private volatile String mText;
+    private volatile InetAddress mInetAddress;
+
+    private IpAddress(boolean v6, int v4, long v6High, long v6Low, String scope, String text) {
+        mV6 = v6;
+        mV4 = v4;
+        mV6High = v6High;
+        mV6Low = v6Low;
+        mScope = scope;
+        mText = text;
+    }
+
+    /**
+     * 解析IP字符串
+     *
+     * @param ip IPv4点分十进制或IPv6文本形式, IPv6允许内嵌IPv4及%scope后缀
+     * @return 解析结果, ip不合法时返回null
+     */
+    /* @Nullable */
+    public static IpAddress parse(/* @Nullable */String ip) {
+        if (null == ip) {
+            return null;
+        }
+        long v4 = parseV4(ip, 0, ip.length());
+        if (0 <= v4) {
+            return new IpAddress(false, (int) v4, 0, 0, null, ip);
+        }
+        long[] v6 = new long[2];
+        int scopeIndex = parseV6(ip, 0, ip.length(), v6);
+        if (0 > scopeIndex) {
+            return null;
+        }
+        String scope = scopeIndex < ip.length() ? ip.substring(scopeIndex + 1) : null;
+        return new IpAddress(true, 0, v6[0], v6[1], scope, ip);
+    }
+
+    public static IpAddress ofV4(int address) {
+        return new IpAddress(false, address, 0, 0, null, null);
+    }
+
+    public static IpAddress ofV6(long high, long low) {
+        return new IpAddress(true, 0, high, low, null, null);
+    }
+
+    /**
+     * 校验IPv4地址, 不创建任何对象
+     *
+     * @param ip   字符串
+     * @param from 起始位置
+     * @param to   结束位置(不包含)
+     * @return 合法时返回地址的无符号值, 否则返回-1
+     */
+    public static long parseV4(CharSequence ip, int from, int to) {
+        long address = 0;
+        int octetCount = 0;
+        int i = from;
+        while (true) {
+            int octetStart = i;
+            int octet = 0;
+            while (i < to && i - octetStart < 3) {
+                int digit = ip.charAt(i) - '0';
+                if (0 > digit || 9 < digit) {
+                    break;
+                }
+                octet = octet * 10 + digit;
+                i++;
+            }
+            int digits = i - octetStart;
+            // NOTE: 不允许前导0, 与inet_pton一致
+            if (0 == digits || 255 < octet || (1 < digits && '0' == ip.charAt(octetStart))) {
+                return -1;
+            }
+            address = (address << 8) | octet;
+            if (V4_OCTET_COUNT == ++octetCount) {
+                return i == to ? address : -1;
+            }
+            if (i >= to || '.' != ip.charAt(i)) {
+                return -1;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 校验IPv6地址
+     *
+     * @param ip   字符串
+     * @param from 起始位置
+     * @param to   结束位置(不包含)
+     * @param out  不为null时存放解析结果, out[0]为高64位, out[1]为低64位
+     * @return 合法时返回'%'的位置, 没有scope时返回to, 不合法时返回-1
+     */
+    public static int parseV6(CharSequence ip, int from, int to, /* @Nullable */long[] out) {
+        int scopeIndex = to;
+        for (int i = from; i < to; i++) {
+            if ('%' == ip.charAt(i)) {
+                scopeIndex = i;
+                break;
+            }
+        }
+        if (scopeIndex < to && !isValidScope(ip, scopeIndex + 1, to)) {
+            return -1;
+        }
+        int end = scopeIndex;
+        if (end - from < 2) {
+            return -1;
+        }
+
+        // groups[0, compressIndex)为"::"之前的组, 其余依次后移
+        int[] groups = new int[V6_GROUP_COUNT];
+        int groupCount = 0;
+        int compressIndex = -1;
+        int i = from;
+        if (':' == ip.charAt(i)) {
+            if (':' != ip.charAt(i + 1)) {
+                return -1;
+            }
+            compressIndex = 0;
+            i += 2;
+        }
+        while (i < end) {
+            if (V6_GROUP_COUNT == groupCount) {
+                return -1;
+            }
+            int groupStart = i;
+            int group = 0;
+            while (i < end && i - groupStart < V6_MAX_GROUP_DIGITS) {
+                int digit = hexDigit(ip.charAt(i));
+                if (0 > digit) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                i++;
+            }
+            if (i < end && '.' == ip.charAt(i)) {
+                // 内嵌IPv4, 只能位于最后且占两组
+                if (V6_GROUP_COUNT - 2 < groupCount) {
+                    return -1;
+                }
+                long v4 = parseV4(ip, groupStart, end);
+                if (0 > v4) {
+                    return -1;
+                }
+                groups[groupCount++] = (int) (v4 >>> 16);
+                groups[groupCount++] = (int) (v4 & 0xffff);
+                i = end;
+                break;
+            }
+            if (i == groupStart) {
+                return -1;
+            }
+            groups[groupCount++] = group;
+            if (i == end) {
+                break;
+            }
+            if (':' != ip.charAt(i)) {
+                return -1;
+            }
+            i++;
+            if (i < end && ':' == ip.charAt(i)) {
+                if (-1 != compressIndex) {
+                    return -1;
+                }
+                compressIndex = groupCount;
+                i++;
+            } else if (i == end) {
+                // 以单个':'结尾
+                return -1;
+            }
+        }
+        if (-1 == compressIndex ? V6_GROUP_COUNT != groupCount : V6_GROUP_COUNT <= groupCount) {
+            return -1;
+        }
+        if (null != out) {
+            int[] expanded = groups;
+            if (-1 != compressIndex) {
+                expanded = new int[V6_GROUP_COUNT];
+                System.arraycopy(groups, 0, expanded, 0, compressIndex);
+                int tailCount = groupCount - compressIndex;
+                System.arraycopy(groups, compressIndex, expanded, V6_GROUP_COUNT - tailCount, tailCount);
+            }
+            long high = 0;
+            long low = 0;
+            for (int j = 0; j < V6_GROUP_COUNT / 2; j++) {
+                high = (high << 16) | expanded[j];
+                low = (low << 16) | expanded[j + V6_GROUP_COUNT / 2];
+            }
+            out[0] = high;
+            out[1] = low;
+        }
+        return scopeIndex;
+    }
+
+    // NOTE: Character.digit()会接受非ASCII的数字
+    private static int hexDigit(char c) {
+        if ('0' <= c && c <= '9') {
+            return c - '0';
+        }
+        if ('a' <= c && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if ('A' <= c && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isValidScope(CharSequence ip, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = ip.charAt(i);
+            if (!('0' <= c && c <= '9' || 'a' <= c && c <= 'z' || 'A' <= c && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isV4() {
+        return !mV6;
+    }
+
+    public boolean isV6() {
+        return mV6;
+    }
+
+    public int v4() {
+        return mV4;
+    }
+
+    public long v6High() {
+        return mV6High;
+    }
+
+    public long v6Low() {
+        return mV6Low;
+    }
+
+    /**
+     * 获取对应的InetAddress, 首次调用时创建
+     *
+     * @return 对应的InetAddress
+     */
+    public InetAddress toInetAddress() {
+        InetAddress inetAddress = mInetAddress;
+        if (null != inetAddress) {
+            return inetAddress;
+        }
+        try {
+            // NOTE: 带scope时交由系统解析字面量, 其余直接由字节构造, 均不会进行DNS查询
+            inetAddress = null != mScope ? InetAddress.getByName(toString()) : InetAddress.getByAddress(toBytes());
+        } catch (UnknownHostException e) {
+            // 字节数组长度固定, 不会发生
+            throw new IllegalStateException("ip".concat(Const.INVALID_TIPS), e);
+        }
+        mInetAddress = inetAddress;
+        return inetAddress;
+    }
+
+    private byte[] toBytes() {
+        if (!mV6) {
+            return new byte[]{(byte) (mV4 >>> 24), (byte) (mV4 >>> 16), (byte) (mV4 >>> 8), (byte) mV4};
+        }
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (mV6High >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (mV6Low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * 字符串形式, 由字符串解析得到时返回原字符串, 否则首次调用时生成
+     * IPv6按RFC 5952生成: 小写, 省略前导0, 最长的连续全0组(至少两组)压缩为"::"
+     */
+    @Override
+    public String toString() {
+        String text = mText;
+        if (null != text) {
+            return text;
+        }
+        text = mV6 ? formatV6() : formatV4();
+        mText = text;
+        return text;
+    }
+
+    private String formatV4() {
+        return ((mV4 >>> 24) & 0xff) + "." + ((mV4 >>> 16) & 0xff) + "." + ((mV4 >>> 8) & 0xff) + "." + (mV4 & 0xff);
+    }
+
+    private String formatV6() {
+        int[] groups = new int[V6_GROUP_COUNT];
+        for (int i = 0; i < V6_GROUP_COUNT / 2; i++) {
+            groups[i] = (int) ((mV6High >>> (48 - 16 * i)) & 0xffff);
+            groups[i + V6_GROUP_COUNT / 2] = (int) ((mV6Low >>> (48 - 16 * i)) & 0xffff);
+        }
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < V6_GROUP_COUNT; ) {
+            if (0 != groups[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < V6_GROUP_COUNT && 0 == groups[i]) {
+                i++;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+        StringBuilder sb = new StringBuilder(39);
+        for (int i = 0; i < V6_GROUP_COUNT; i++) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (0 < sb.length() && ':' != sb.charAt(sb.length() - 1)) {
+                sb.append(':');
+            }
+            sb.append(Integer.toHexString(groups[i]));
+        }
+        if (null != mScope) {
+            sb.append('%').append(mScope);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+        IpAddress that = (IpAddress) o;
+        return mV6 == that.mV6
+                && mV4 == that.mV4
+                && mV6High == that.mV6High
+                && mV6Low == that.mV6Low
+                && CommonUtils.equals(mScope, that.mScope);
+    }
+
+    @Override
+    public int hashCode() {
+        if (!mV6) {
+            return mV4;
+        }
+        long hash = mV6High * 31 + mV6Low;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,95 @@
+package com.tencent.msdk.dns.base.utils;
+
+import android.content.Context;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+
+/**
+ * 当前网络的不可变快照, 包括网络类型, 网络栈和网络标识
+ * 仅在网络变化回调中更新, 解析及上报时直接读取, 避免每次都查询ConnectivityManager
+ */
+public final class NetworkSnapshot {
+
+    /**
+     * 网络类型, 即{@link NetworkUtils#getNetworkState(Context)}的返回值
+     */
+    public final int netState;
+
+    /**
+     * 网络类型名称, 如wifi, 4G
+     */
+    public final String netType;
+
+    /**
+     * 网络栈, 见{@link NetworkStack}
+     */
+    public final int netStack;
+
+    /**
+     * 网络标识, 每次网络变化后递增, 网络栈变化不改变网络标识
+     */
+    public final int networkId;
+
+    // NOTE: 尚未安装网络变化监听时, 网络类型未知
+    private static volatile NetworkSnapshot sCurrent = null;
+
+    private NetworkSnapshot(int netState, int netStack, int networkId) {
+        this.netState = netState;
+        this.netType = NetworkUtils.getNetworkName(netState);
+        this.netStack = netStack;
+        this.networkId = networkId;
+    }
+
+    /**
+     * 获取当前网络快照
+     *
+     * @return 当前网络快照
+     */
+    public static NetworkSnapshot current() {
+        NetworkSnapshot snapshot = sCurrent;
+        if (null != snapshot) {
+            return snapshot;
+        }
+        return new NetworkSnapshot(NetworkUtils.getNetworkState(null), NetworkStack.get(), 0);
+    }
+
+    /**
+     * 重新获取网络类型及网络栈, 并生成新的网络标识
+     * 应在网络变化回调等非解析线程调用
+     *
+     * @param context 上下文
+     * @return 新的网络快照
+     */
+    public static NetworkSnapshot refresh(/* @Nullable */Context context) {
+        int netState = NetworkUtils.getNetworkState(context);
+        int netStack = NetworkStack.refresh();
+        synchronized (NetworkSnapshot.class) {
+            NetworkSnapshot oldSnapshot = sCurrent;
+            NetworkSnapshot snapshot = new NetworkSnapshot(netState, netStack,
+                    null != oldSnapshot ? oldSnapshot.networkId + 1 : 1);
+            sCurrent = snapshot;
+            DnsLog.d("Network snapshot refreshed: %s", snapshot);
+            return snapshot;
+        }
+    }
+
+    // 网络栈重新探测后更新快照, 网络标识不变
+    static void onNetworkStackRefreshed(int netStack) {
+        synchronized (NetworkSnapshot.class) {
+            NetworkSnapshot oldSnapshot = sCurrent;
+            if (null == oldSnapshot || oldSnapshot.netStack == netStack) {
+                return;
+            }
+            sCurrent = new NetworkSnapshot(oldSnapshot.netState, netStack, oldSnapshot.networkId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkSnapshot{"
+                + "netType='" + netType + '\''
+                + ", netStack=" + netStack
+                + ", networkId=" + networkId
+                + '}';
+    }
+}
@@ -1,6 +1,10 @@
 package com.tencent.msdk.dns.base.utils;
 
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.jni.JniWrapper;
+import com.tencent.msdk.dns.base.log.DnsLog;
+
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class NetworkStack {
 
@@ -9,8 +13,71 @@ public final class NetworkStack {
     public static final int IPV6_ONLY = 2;
     public static final int DUAL_STACK = 3;
 
+    // 尚未探测
+    private static final int NOT_PROBED = -1;
+    private static final long REPROBE_DELAY_MILLS = 1000;
+
+    // NOTE: 探测需要创建并connect两个UDP socket, 仅在网络变化时重新探测, 解析时只读取缓存值
+    private static volatile int sNetworkStack = NOT_PROBED;
+    // 是否已有待执行或执行中的重新探测
+    private static final AtomicBoolean REPROBE_SCHEDULED = new AtomicBoolean(false);
+
+    private static final Runnable REPROBE_TASK = new Runnable() {
+        @Override
+        public void run() {
+            DnsExecutors.WORK.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh();
+                    } finally {
+                        REPROBE_SCHEDULED.set(false);
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * 获取当前网络栈, 仅首次调用时同步探测, 之后读取网络变化时更新的缓存值
+     *
+     * @return 当前网络栈
+     */
     public static int get() {
-        return JniWrapper.getNetworkStack();
+        int networkStack = sNetworkStack;
+        if (NOT_PROBED == networkStack) {
+            return refresh();
+        }
+        if (NONE == networkStack && !REPROBE_SCHEDULED.get() && REPROBE_SCHEDULED.compareAndSet(false, true)) {
+            // 探测失败(如当时无网络), 后台重新探测, 已有待执行的探测时不再推迟
+            DnsExecutors.MAIN.schedule(REPROBE_TASK, REPROBE_DELAY_MILLS);
+        }
+        return networkStack;
+    }
+
+    /**
+     * 同步探测网络栈并更新缓存值, 应在网络变化回调等非解析线程调用
+     *
+     * @return 当前网络栈
+     */
+    public static int refresh() {
+        int networkStack = JniWrapper.getNetworkStack();
+        if (sNetworkStack != networkStack) {
+            DnsLog.d("Network stack changed from %d to %d", sNetworkStack, networkStack);
+        }
+        sNetworkStack = networkStack;
+        NetworkSnapshot.onNetworkStackRefreshed(networkStack);
+        return networkStack;
+    }
+
+    /**
+     * 延迟在后台重新探测网络栈, 短时间内多次调用只探测一次
+     * 用于网络类型未变但网络栈可能变化(如IPv6地址变化)的情况, 仅由网络变化回调调用
+     */
+    public static void refreshLater() {
+        REPROBE_SCHEDULED.set(true);
+        DnsExecutors.MAIN.cancel(REPROBE_TASK);
+        DnsExecutors.MAIN.schedule(REPROBE_TASK, REPROBE_DELAY_MILLS);
     }
 
     public static boolean isInvalid(int networkStack) {
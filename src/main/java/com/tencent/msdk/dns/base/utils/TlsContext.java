@@ -0,0 +1,102 @@
+package com.tencent.msdk.dns.base.utils;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.core.Const;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * SDK内共享的SSLContext
+ * 同一SSLContext创建的连接共享客户端session缓存, 以(host, port)为key, 再次连接同一服务时可恢复session, 跳过完整握手
+ */
+public final class TlsContext {
+
+    private static final int SESSION_CACHE_SIZE = 32;
+    private static final int SESSION_TIMEOUT_SECONDS = 12 * 60 * 60;
+
+    private static SSLContext sSslContext = null;
+    private static boolean sInitialized = false;
+
+    private static final AtomicLong HANDSHAKE_COUNT = new AtomicLong();
+    private static final AtomicLong RESUMED_HANDSHAKE_COUNT = new AtomicLong();
+
+    /**
+     * 获取共享的SSLContext
+     *
+     * @return 共享的SSLContext, 当前平台不支持TLS时返回null
+     */
+    /* @Nullable */
+    public static synchronized SSLContext get() {
+        if (sInitialized) {
+            return sSslContext;
+        }
+        sInitialized = true;
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            // 使用系统默认的KeyManager, TrustManager及SecureRandom
+            sslContext.init(null, null, null);
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (null != sessionContext) {
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+            }
+            sSslContext = sslContext;
+        } catch (Exception e) {
+            DnsLog.w(e, "Init SSLContext failed");
+        }
+        return sSslContext;
+    }
+
+    /**
+     * 获取完成的TLS握手次数
+     *
+     * @return 完成的TLS握手次数, 包括恢复session的握手
+     */
+    public static long handshakeCount() {
+        return HANDSHAKE_COUNT.get();
+    }
+
+    /**
+     * 获取恢复session的TLS握手次数
+     *
+     * @return 恢复session的TLS握手次数
+     */
+    public static long resumedHandshakeCount() {
+        return RESUMED_HANDSHAKE_COUNT.get();
+    }
+
+    /**
+     * TLS握手完成后校验主机名并统计握手次数
+     *
+     * @param host               连接的主机名或IP
+     * @param session            握手完成后的session
+     * @param handshakeStartMills 握手开始时间, System.currentTimeMillis()
+     * @throws SSLPeerUnverifiedException 主机名校验失败
+     */
+    public static void onHandshakeFinished(String host, SSLSession session, long handshakeStartMills)
+            throws SSLPeerUnverifiedException {
+        if (null == host) {
+            throw new IllegalArgumentException("host".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == session) {
+            throw new IllegalArgumentException("session".concat(Const.NULL_POINTER_TIPS));
+        }
+        // NOTE: SSLEngine及SSLSocket均不校验主机名, 与HttpsURLConnection保持一致, 使用默认的HostnameVerifier校验
+        if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, session)) {
+            throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+        }
+        HANDSHAKE_COUNT.incrementAndGet();
+        // 恢复的session创建于本次握手之前
+        boolean resumed = session.getCreationTime() < handshakeStartMills;
+        if (resumed) {
+            RESUMED_HANDSHAKE_COUNT.incrementAndGet();
+        }
+        DnsLog.d("TLS handshake with %s finished, protocol:%s, resumed:%b", host, session.getProtocol(), resumed);
+    }
+}
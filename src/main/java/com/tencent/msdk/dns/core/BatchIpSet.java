@@ -0,0 +1,48 @@
+package com.tencent.msdk.dns.core;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量域名解析结果类, 按域名保存各自的{@link IpSet}
+ * 各域名的IpSet只包含IP, 不带"域名:"前缀
+ */
+public final class BatchIpSet implements Serializable {
+    private static final long serialVersionUID = 2870146532806815523L;
+
+    public static final BatchIpSet EMPTY = new BatchIpSet(Collections.<String, IpSet>emptyMap());
+
+    /**
+     * 域名到解析结果的映射, 按请求的域名顺序排列, 不可修改
+     * 没有解析结果的域名对应{@link IpSet#EMPTY}
+     */
+    public final Map<String, IpSet> ipSets;
+
+    public BatchIpSet(Map<String, IpSet> ipSets) {
+        if (null == ipSets) {
+            throw new IllegalArgumentException("ipSets".concat(Const.NULL_POINTER_TIPS));
+        }
+
+        this.ipSets = Collections.unmodifiableMap(new LinkedHashMap<>(ipSets));
+    }
+
+    /**
+     * 获取单个域名的解析结果
+     *
+     * @param hostname 域名
+     * @return 域名的解析结果, 没有该域名时返回{@link IpSet#EMPTY}
+     */
+    public IpSet get(/* @Nullable */String hostname) {
+        IpSet ipSet = ipSets.get(hostname);
+        return null != ipSet ? ipSet : IpSet.EMPTY;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchIpSet{"
+                + "ipSets=" + ipSets
+                + '}';
+    }
+}
@@ -7,17 +7,16 @@ import com.tencent.msdk.dns.BuildConfig;
 import com.tencent.msdk.dns.DnsService;
 import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.HttpClient;
 import com.tencent.msdk.dns.core.rest.aeshttp.AesCipherSuite;
 import com.tencent.msdk.dns.core.rest.deshttp.DesCipherSuite;
 import com.tencent.msdk.dns.core.rest.share.LookupExtra;
 
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
-import java.net.URL;
-
-import javax.net.ssl.HttpsURLConnection;
 
 public final class ConfigFromServer {
     private static final int TIMEOUT = 2000;    // 请求超时时间 2000s
@@ -190,34 +189,19 @@ public final class ConfigFromServer {
         if (urlString.isEmpty()) {
             return "";
         }
-        HttpURLConnection connection = null;
-        BufferedReader reader;
         StringBuilder rawRspContent = new StringBuilder();
         String lineTxt;
-        try {
-            //  发起请求
-            URL url = new URL(urlString);
-            if (url.getProtocol().equalsIgnoreCase("https")) {
-                connection = (HttpsURLConnection) url.openConnection();
-            } else {
-                connection = (HttpURLConnection) url.openConnection();
-            }
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(TIMEOUT);
-            connection.setReadTimeout(TIMEOUT);
-            connection.connect();
-            //  读取网络请求结果
-            reader = new BufferedReader(new InputStreamReader(
-                    connection.getInputStream(), "UTF-8"));
-            while ((lineTxt = reader.readLine()) != null) {
-                rawRspContent.append(lineTxt);
-            }
-            reader.close();
-            return rawRspContent.toString();
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+        //  发起请求, 与解析请求共用连接池及TLS session
+        HttpClient.Response response = HttpClient.get(urlString, TIMEOUT);
+        if (HttpURLConnection.HTTP_BAD_REQUEST <= response.statusCode) {
+            throw new IOException("Server returned HTTP response code: " + response.statusCode);
+        }
+        //  读取网络请求结果
+        BufferedReader reader = new BufferedReader(new StringReader(response.body));
+        while ((lineTxt = reader.readLine()) != null) {
+            rawRspContent.append(lineTxt);
         }
+        reader.close();
+        return rawRspContent.toString();
     }
 }
@@ -8,6 +8,10 @@ import com.tencent.msdk.dns.base.compat.CollectionCompat;
 import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.log.DnsLog;
 import com.tencent.msdk.dns.base.utils.NetworkStack;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.core.cache.Cache;
+import com.tencent.msdk.dns.core.cache.CooccurrenceModel;
+import com.tencent.msdk.dns.core.cache.PopularityTracker;
 import com.tencent.msdk.dns.core.local.LocalDns;
 import com.tencent.msdk.dns.core.rest.aeshttp.AesHttpDns;
 import com.tencent.msdk.dns.core.rest.deshttp.DesHttpDns;
@@ -16,35 +20,35 @@ import com.tencent.msdk.dns.core.retry.Retry;
 import com.tencent.msdk.dns.core.sorter.Sorter;
 import com.tencent.msdk.dns.core.stat.StatisticsMerge;
 import com.tencent.msdk.dns.core.stat.StatisticsMergeFactory;
-import com.tencent.msdk.dns.report.CacheStatisticsReport;
+import com.tencent.msdk.dns.report.LookupEventQueue;
 
-import java.io.IOException;
-import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class DnsManager {
 
-    private static final long SYSTEM_CALL_INTERVAL_MILLS = 10;
-    private static final float AWAIT_FOR_RUNNING_LOOKUP_FACTOR = 1.2f;
-
     private static final Map<String, DnsGroup> CHANNEL_DNS_GROUP_MAP = CollectionCompat.createMap();
 
-    private static final Map<LookupParameters, LookupLatchResultPair> RUNNING_LOOKUP_LATCH_MAP =
-            new ConcurrentHashMap<>();
+    // 伴随域名的缓存剩余时间不足该值时视为即将过期, 需要预取
+    private static final long COMPANION_MIN_FRESH_MILLS = 10 * 1000;
+
+    private static final ILookupListener IGNORED_LOOKUP_LISTENER = new ILookupListener() {
+        @Override
+        public void onLookedUp(LookupParameters lookupParameters, LookupResult<IStatisticsMerge> lookupResult) {
+        }
+    };
 
     private static ISorter.IFactory sSorterFactory = new Sorter.Factory();
     private static IRetry sRetry = new Retry();
     private static IStatisticsMerge.IFactory sStatMergeFactory = new StatisticsMergeFactory();
 
     private static volatile ILookupListener sLookupListener = null;
+    private static volatile LookupBatcher sLookupBatcher = null;
 
     static {
         registerDns(new LocalDns());
@@ -96,6 +100,11 @@ public final class DnsManager {
         sLookupListener = lookupListener;
     }
 
+    // lookupBatcher为null时不进行批量解析合并
+    public static void setLookupBatcher(/* @Nullable */LookupBatcher lookupBatcher) {
+        sLookupBatcher = lookupBatcher;
+    }
+
     public static <LookupExtraT extends IDns.ILookupExtra>
     LookupResult<IStatisticsMerge> getResultFromCache(LookupParameters<LookupExtraT> lookupParams) {
         DnsGroup restDnsGroup = CHANNEL_DNS_GROUP_MAP.get(lookupParams.channel);
@@ -112,7 +121,7 @@ public final class DnsManager {
         }
 
         int currentNetworkStack = lookupContext.currentNetworkStack();
-        ISorter sorter = sSorterFactory.create(currentNetworkStack);
+        ISorter sorter = sSorterFactory.create(currentNetworkStack, lookupParams.hostname);
         lookupContext.sorter(sorter);
         // snapshot
         @SuppressWarnings("unchecked") IStatisticsMerge<LookupExtraT> statMerge =
@@ -159,19 +168,139 @@ public final class DnsManager {
         DnsLog.v("DnsManager.lookup(%s) called", lookupParams);
 
         long startTimeMills = SystemClock.elapsedRealtime();
-        LookupLatchResultPair lookupLatchResultPair = RUNNING_LOOKUP_LATCH_MAP.get(lookupParams);
-        if (null != lookupLatchResultPair) {
-            return getResultFromLatch(lookupParams, lookupLatchResultPair, startTimeMills);
+        int curNetStack = getCurrentNetworkStack(lookupParams);
+        LookupFlight lookupFlight = newLookupFlight(lookupParams, curNetStack);
+        LookupFlight runningFlight = LookupFlight.launch(lookupFlight, lookupParams.netChangeLookup);
+        if (null != runningFlight) {
+            return getResultFromFlight(lookupParams, runningFlight, startTimeMills);
+        }
+
+        LookupResult<IStatisticsMerge> lookupResult = null;
+        LookupContext<LookupExtraT> lookupContext = createLookupContext(lookupParams, curNetStack);
+        try {
+            lookupResult = prepareLookup(lookupContext);
+            if (null != lookupResult) {
+                return lookupResult;
+            }
+
+            CountDownLatch countDownLatch = lookupContext.transaction().commit();
+            lookupContext.countDownLatch(countDownLatch);
+
+            lookupResult = getResultForSelector(countDownLatch, lookupContext, lookupParams,
+                    lookupContext.sessions(), startTimeMills);
+            return lookupResult;
+        } finally {
+            // NOTE: endLookup中结束超时的session并完成统计, 统计数据完整后再通知加入的解析请求
+            try {
+                endLookup(lookupContext);
+            } finally {
+                lookupFlight.land(lookupResult);
+            }
+        }
+    }
+
+    /**
+     * 异步解析, 不阻塞调用线程, 也不占用线程等待解析结果
+     * 命中缓存时在调用线程直接回调, 否则由事件循环(非阻塞解析)或WORK线程(阻塞解析)完成后在WORK线程回调
+     *
+     * @param lookupParams   解析参数
+     * @param lookupListener 解析完成的回调
+     */
+    public static <LookupExtraT extends IDns.ILookupExtra>
+    void lookupAsync(LookupParameters<LookupExtraT> lookupParams, final ILookupListener lookupListener) {
+        if (null == lookupParams) {
+            throw new IllegalArgumentException("lookupParams".concat(Const.NULL_POINTER_TIPS));
         }
-        // 初始化CountDownLatch同步计数器
-        CountDownLatch lookupLatch = new CountDownLatch(1);
-        LookupResultHolder lookupResultHolder = new LookupResultHolder();
-        RUNNING_LOOKUP_LATCH_MAP.put(lookupParams, new LookupLatchResultPair(lookupLatch, lookupResultHolder));
+        if (null == lookupListener) {
+            throw new IllegalArgumentException("lookupListener".concat(Const.NULL_POINTER_TIPS));
+        }
+
+        DnsLog.v("DnsManager.lookupAsync(%s) called", lookupParams);
+
+        long startTimeMills = SystemClock.elapsedRealtime();
+        int curNetStack = getCurrentNetworkStack(lookupParams);
+        final LookupFlight lookupFlight = newLookupFlight(lookupParams, curNetStack);
+        LookupFlight runningFlight = LookupFlight.launch(lookupFlight, lookupParams.netChangeLookup);
+        if (null != runningFlight) {
+            runningFlight.join(lookupParams, lookupListener, startTimeMills);
+            return;
+        }
+
+        LookupContext<LookupExtraT> lookupContext = createLookupContext(lookupParams, curNetStack);
+        LookupResult<IStatisticsMerge> lookupResultFromCache;
+        try {
+            lookupResultFromCache = prepareLookup(lookupContext);
+        } catch (RuntimeException e) {
+            try {
+                endLookup(lookupContext);
+            } finally {
+                lookupFlight.land(null);
+            }
+            throw e;
+        }
+        if (null != lookupResultFromCache) {
+            try {
+                endLookup(lookupContext);
+            } finally {
+                lookupFlight.land(lookupResultFromCache);
+            }
+            lookupListener.onLookedUp(lookupParams, lookupResultFromCache);
+            return;
+        }
+        new AsyncLookup<>(lookupContext, new ILookupListener() {
+            @Override
+            public void onLookedUp(LookupParameters lookupParameters, LookupResult<IStatisticsMerge> lookupResult) {
+                lookupFlight.land(lookupResult);
+                lookupListener.onLookedUp(lookupParameters, lookupResult);
+            }
+        }).start();
+    }
+
+    static int getCurrentNetworkStack(LookupParameters lookupParams) {
+        if (!NetworkStack.isInvalid(lookupParams.customNetStack) && lookupParams.customNetStack > 0) {
+            return lookupParams.customNetStack;
+        }
+        return NetworkStack.get();
+    }
 
+    // NOTE: 实际解析的地址族由当前网络栈决定(见prepareTasks), 而非lookupParams.family,
+    // 以此作为key使前台解析与后台刷新等同一域名的解析可以合并
+    static LookupFlight newLookupFlight(LookupParameters lookupParams, int curNetStack) {
+        return newLookupFlight(lookupParams, curNetStack, lookupParams.fallback2Local);
+    }
+
+    // fallback2Local: leader的解析是否包含LocalDNS
+    static LookupFlight newLookupFlight(LookupParameters lookupParams, int curNetStack, boolean fallback2Local) {
+        int family = lookupParams.ignoreCurNetStack ? NetworkStack.DUAL_STACK : curNetStack;
+        return new LookupFlight(lookupParams.hostname, family, lookupParams.channel, fallback2Local);
+    }
+
+    private static <LookupExtraT extends IDns.ILookupExtra>
+    LookupContext<LookupExtraT> createLookupContext(LookupParameters<LookupExtraT> lookupParams, int curNetStack) {
         final LookupExtraT lookupExtra = lookupParams.lookupExtra;
+        LookupContext<LookupExtraT> lookupContext = LookupContext.wrap(lookupParams);
+        lookupContext.currentNetworkStack(curNetStack);
+        ISorter sorter = sSorterFactory.create(lookupContext.currentNetworkStack(), lookupParams.hostname);
+        lookupContext.sorter(sorter);
+        // snapshot
+        @SuppressWarnings("unchecked") IStatisticsMerge<LookupExtraT> statMerge =
+                sStatMergeFactory.create((Class<LookupExtraT>) lookupExtra.getClass(), lookupParams.appContext);
+        lookupContext.statisticsMerge(statMerge);
+
+        lookupContext.transaction(CountDownManager.beginTransaction());
+        lookupContext.dnses(Collections.synchronizedSet(CollectionCompat.<IDns>createSet()));
+        // NOTE: sessions提交到事件循环后仅由事件循环线程访问, lookupFuture结束后才会被当前线程再次访问
+        lookupContext.sessions(new ArrayList<IDns.ISession>());
+        return lookupContext;
+    }
+
+    // return: 完全命中缓存时返回缓存结果, 否则准备好解析任务并返回null
+    /* @Nullable */
+    private static <LookupExtraT extends IDns.ILookupExtra>
+    LookupResult<IStatisticsMerge> prepareLookup(LookupContext<LookupExtraT> lookupContext) {
+        LookupParameters<LookupExtraT> lookupParams = lookupContext.asLookupParameters();
         String channel = lookupParams.channel;
         boolean fallback2Local = lookupParams.fallback2Local;
-        LookupContext<LookupExtraT> lookupContext = LookupContext.wrap(lookupParams);
 
         DnsGroup localDnsGroup = null;
         DnsGroup restDnsGroup = null;
@@ -183,102 +312,58 @@ public final class DnsManager {
         } else {
             restDnsGroup = CHANNEL_DNS_GROUP_MAP.get(channel);
         }
-        if (!NetworkStack.isInvalid(lookupParams.customNetStack) && lookupParams.customNetStack > 0) {
-            lookupContext.currentNetworkStack(lookupParams.customNetStack);
-        } else {
-            lookupContext.currentNetworkStack(NetworkStack.get());
-        }
-        ISorter sorter = sSorterFactory.create(lookupContext.currentNetworkStack());
-        lookupContext.sorter(sorter);
-        // snapshot
-        @SuppressWarnings("unchecked") IStatisticsMerge<LookupExtraT> statMerge =
-                sStatMergeFactory.create((Class<LookupExtraT>) lookupExtra.getClass(), lookupParams.appContext);
-        lookupContext.statisticsMerge(statMerge);
 
-        CountDownManager.Transaction transaction = CountDownManager.beginTransaction();
-        lookupContext.transaction(transaction);
-        Set<IDns> dnses = Collections.synchronizedSet(CollectionCompat.<IDns>createSet());
-        lookupContext.dnses(dnses);
-        // NOTE: sessions仅会被当前线程访问
-        List<IDns.ISession> sessions = new ArrayList<>();
-        lookupContext.sessions(sessions);
-        try {
-            // 暂时不忽略LocalDns解析结果(RestDns解析失败时，超时时间内会等待LocalDns解析结果)
-            if (null != restDnsGroup) {
-                // 先查缓存，有其一即可
-                final LookupResult<IStatisticsMerge> lookupResultFromCache = getResultFromCache(lookupParams);
-                DnsLog.d("getResultFromCache: " + lookupResultFromCache);
-                if (lookupResultFromCache.stat.lookupSuccess()) {
-                    if (lookupResultFromCache.stat.lookupPartCached()) {
-                        // 仅部分命中缓存
-                        lookupContext.sorter().putPartCache(lookupResultFromCache.ipSet);
-                        // 收集命中缓存的数据
-                        DnsExecutors.WORK.execute(new Runnable() {
-                            @Override
-                            public void run() {
-                                CacheStatisticsReport.add(lookupResultFromCache);
-                            }
-                        });
-
-                    } else {
-                        lookupResultHolder.mLookupResult = lookupResultFromCache;
-                        DnsLog.d("DnsManager lookup getResultFromCache success");
-                        return lookupResultFromCache;
-                    }
+        // 暂时不忽略LocalDns解析结果(RestDns解析失败时，超时时间内会等待LocalDns解析结果)
+        if (null != restDnsGroup) {
+            // 先查缓存，有其一即可
+            LookupResult<IStatisticsMerge> lookupResultFromCache = getResultFromCache(lookupParams);
+            DnsLog.d("getResultFromCache: " + lookupResultFromCache);
+            if (lookupResultFromCache.stat.lookupSuccess()) {
+                if (lookupResultFromCache.stat.lookupPartCached()) {
+                    // 仅部分命中缓存
+                    lookupContext.sorter().putPartCache(lookupResultFromCache.ipSet);
+                    // 收集命中缓存的数据
+                    LookupEventQueue.offerCacheHit(lookupResultFromCache);
+
+                } else {
+                    DnsLog.d("DnsManager lookup getResultFromCache success");
+                    return lookupResultFromCache;
                 }
-                // statContext操作在读完缓存之后，下发解析请求前。结果会更新在lookupResult上
-                statMerge.statContext(lookupContext);
+            }
+            // statContext操作在读完缓存之后，下发解析请求前。结果会更新在lookupResult上
+            lookupContext.statisticsMerge().statContext(lookupContext);
 
-                // 打开Selector
-                prepareTasks(restDnsGroup, lookupContext);
-                if (!lookupContext.allDnsLookedUp() && null != localDnsGroup) {
-                    prepareTasks(localDnsGroup, lookupContext);
-                }
-            } else if (null != localDnsGroup) {
+            // 注册到事件循环
+            prepareTasks(restDnsGroup, lookupContext);
+            if (!lookupContext.allDnsLookedUp() && null != localDnsGroup) {
                 prepareTasks(localDnsGroup, lookupContext);
             }
+        } else if (null != localDnsGroup) {
+            prepareTasks(localDnsGroup, lookupContext);
+        }
+        return null;
+    }
 
-            CountDownLatch countDownLatch = transaction.commit();
-            lookupContext.countDownLatch(countDownLatch);
-
-            return getResultForSelector(countDownLatch, lookupContext, lookupParams, lookupResultHolder, sessions,
-                    startTimeMills);
-        } finally {
-            // 结束超时的session, 统计收尾
-            endSessions(lookupContext);
-            lookupLatch.countDown();
-            RUNNING_LOOKUP_LATCH_MAP.remove(lookupParams);
-            DnsLog.d("FINALLY statMerge: %s", statMerge.toJsonResult());
-
-            // 解析完成, 清理lookupContext
-            clearEndedSession(lookupContext);
-            dnses.clear();
-            // API 19以上DatagramSocket才实现了Closeable接口
-            Selector selector = lookupContext.selector();
-            if (null != selector) {
-                try {
-                    selector.close();
-                    DnsLog.d("%s closed", selector);
-                } catch (IOException ignored) {
-                    DnsLog.e("exception: %s", ignored);
-                }
-            }
+    private static <LookupExtraT extends IDns.ILookupExtra>
+    void endLookup(LookupContext<LookupExtraT> lookupContext) {
+        // 先结束lookupFuture, 确保事件循环不再访问sessions
+        LookupReactor.LookupFuture lookupFuture = lookupContext.lookupFuture();
+        if (null != lookupFuture) {
+            lookupFuture.cancel();
         }
+        // 结束超时的session, 统计收尾
+        endSessions(lookupContext);
+        DnsLog.d("FINALLY statMerge: %s", lookupContext.statisticsMerge().toJsonResult());
+
+        // 解析完成, 清理lookupContext
+        LookupHelper.clearEndedSession(lookupContext);
+        lookupContext.dnses().clear();
     }
 
-    private static LookupResult<IStatisticsMerge>
-    getResultFromLatch(LookupParameters lookupParams, @NonNull LookupLatchResultPair lookupLatchResultPair,
-                       long startTimeMills) {
-        DnsLog.d("The same lookup task(for %s) is running, just wait for it", lookupParams);
-        CountDownLatch lookupLatch = lookupLatchResultPair.mLookupLatch;
+    static LookupResult<IStatisticsMerge>
+    getResultFromFlight(LookupParameters lookupParams, @NonNull LookupFlight runningFlight, long startTimeMills) {
         try {
-            if (lookupLatch.await((long) (AWAIT_FOR_RUNNING_LOOKUP_FACTOR * lookupParams.timeoutMills),
-                    TimeUnit.MILLISECONDS)) {
-                // NOTE: await之后mLookupResult不为null
-                return lookupLatchResultPair.mLookupResultHolder.mLookupResult;
-            }
-            DnsLog.d("Await for running lookup for %s timeout", lookupParams);
-            return new LookupResult<IStatisticsMerge>(IpSet.EMPTY, new StatisticsMerge(lookupParams.appContext));
+            return runningFlight.await(lookupParams, startTimeMills);
         } catch (Exception e) {
             DnsLog.w(e, "Await for running lookup for %s failed", lookupParams);
             int fixedTimeoutMills =
@@ -294,7 +379,6 @@ public final class DnsManager {
     LookupResult<IStatisticsMerge> getResultForNullSelector(CountDownLatch countDownLatch,
                                                             LookupContext lookupContext,
                                                             LookupParameters lookupParams,
-                                                            LookupResultHolder lookupResultHolder,
                                                             long startTimeMills) {
         IRetry retry = sRetry;
         int maxRetryTimes = retry.maxRetryTimes();
@@ -316,7 +400,7 @@ public final class DnsManager {
             }
             if (countDownLatch.getCount() > 0
                     // 需要重试
-                    && canRetry(startTimeMills, timeoutMills, maxRetryTimes, retriedTimes)) {
+                    && LookupHelper.canRetry(startTimeMills, timeoutMills, maxRetryTimes, retriedTimes)) {
                 retriedTimes++;
                 remainTimeMills = timeoutMills - (int) (SystemClock.elapsedRealtime() - startTimeMills);
                 LookupContext<LookupExtraT> newLookupContext =
@@ -332,65 +416,38 @@ public final class DnsManager {
         StatisticsMerge statMerge = (StatisticsMerge) lookupContext.statisticsMerge();
         IpSet ipSet = sorter.sort();
         statMerge.statResult(ipSet);
-        LookupResult<IStatisticsMerge> lookupResult = new LookupResult<IStatisticsMerge>(ipSet, statMerge);
-        lookupResultHolder.mLookupResult = lookupResult;
-        return lookupResult;
+        return new LookupResult<IStatisticsMerge>(ipSet, statMerge);
     }
 
-    private static <LookupExtraT extends IDns.ILookupExtra>
-    LookupResult<IStatisticsMerge> getResultForSelector(CountDownLatch countDownLatch,
-                                                        LookupContext lookupContext,
-                                                        LookupParameters lookupParams,
-                                                        LookupResultHolder lookupResultHolder,
-                                                        List<IDns.ISession> sessions,
-                                                        long startTimeMills) {
-        Selector selector = lookupContext.selector();
-        if (selector == null) {
-            return getResultForNullSelector(countDownLatch, lookupContext, lookupParams, lookupResultHolder,
-                    startTimeMills);
+    private static LookupResult<IStatisticsMerge> getResultForSelector(CountDownLatch countDownLatch,
+                                                                      LookupContext lookupContext,
+                                                                      LookupParameters lookupParams,
+                                                                      List<IDns.ISession> sessions,
+                                                                      long startTimeMills) {
+        LookupReactor.LookupFuture lookupFuture = lookupContext.lookupFuture();
+        if (lookupFuture == null) {
+            return getResultForNullSelector(countDownLatch, lookupContext, lookupParams, startTimeMills);
         }
-        IRetry retry = sRetry;
-        int maxRetryTimes = retry.maxRetryTimes();
         int timeoutMills = lookupParams.timeoutMills;
-        int remainTimeMills = timeoutMills - (int) (SystemClock.elapsedRealtime() - startTimeMills);
-        int waitTimeMills = 0 < maxRetryTimes ? remainTimeMills / (maxRetryTimes + 1) : remainTimeMills;
-        int retriedTimes = 0;
+        int remainTimeMills;
 
-        // 非阻塞解析
+        // 非阻塞解析, 由事件循环驱动sessions及重试, 当前线程仅等待lookupFuture结束
         // TODO: sessions加上对于解析结果可以忽略的支持(主要是支持LocalDns)
-        while (!sessions.isEmpty() && SystemClock.elapsedRealtime() - startTimeMills < timeoutMills) {
-            // sleep以降低系统调用频率
-            try {
-                Thread.sleep(SYSTEM_CALL_INTERVAL_MILLS);
-            } catch (Exception ignored) {
-                DnsLog.e("exception: %s", ignored);
-            }
-            try {
-                DnsLog.d("selector %s wait for sessions:%d, mills:%d", selector, sessions.size(), waitTimeMills);
-                selector.select(waitTimeMills);
-            } catch (Exception e) {
-                DnsLog.d(e, "sessions not empty, but exception");
-            }
-            // Socket进行请求
-            tryLookup(lookupContext);
-            if (!sessions.isEmpty()
-                    // 需要重试
-                    && canRetry(startTimeMills, timeoutMills, maxRetryTimes, retriedTimes)) {
-                DnsLog.d("sessions is not empty, sessions:%d, enter retry", sessions.size());
-                retriedTimes++;
-                LookupContext<LookupExtraT> newLookupContext = lookupContext.newLookupContext(
-                        new LookupParameters.Builder<>(lookupParams)
-                                .curRetryTime(retriedTimes)
-                                .build());
-                retry.retryNonBlock(newLookupContext);
+        if (!sessions.isEmpty()) {
+            remainTimeMills = timeoutMills - (int) (SystemClock.elapsedRealtime() - startTimeMills);
+            DnsLog.d("wait for lookup future, sessions:%d, mills:%d", sessions.size(), remainTimeMills);
+            lookupFuture.submit();
+            if (!lookupFuture.await(remainTimeMills)) {
+                DnsLog.d("wait for lookup future timeout");
             }
+            lookupFuture.cancel();
         }
         // 阻塞解析
         remainTimeMills = timeoutMills - (int) (SystemClock.elapsedRealtime() - startTimeMills);
         try {
             if (sessions.size() > 0) {
-                DnsLog.d("selector wait for last timeout if sessions is not empty, sessions:%d, mills:%d",
-                        sessions.size(), waitTimeMills);
+                DnsLog.d("wait for last timeout if sessions is not empty, sessions:%d, mills:%d",
+                        sessions.size(), remainTimeMills);
             }
             countDownLatch.await(remainTimeMills, TimeUnit.MILLISECONDS);
         } catch (Exception ignored) {
@@ -400,14 +457,15 @@ public final class DnsManager {
         StatisticsMerge statMerge = (StatisticsMerge) lookupContext.statisticsMerge();
         IpSet ipSet = sorter.sort();
         statMerge.statResult(ipSet);
-        LookupResult<IStatisticsMerge> lookupResult = new LookupResult<IStatisticsMerge>(ipSet, statMerge);
-        lookupResultHolder.mLookupResult = lookupResult;
-        return lookupResult;
+        return new LookupResult<IStatisticsMerge>(ipSet, statMerge);
     }
 
     public static <LookupExtraT extends IDns.ILookupExtra>
     LookupResult<IStatisticsMerge> lookupWrapper(LookupParameters<LookupExtraT> lookupParams) {
-        LookupResult<IStatisticsMerge> lookupResult = lookup(lookupParams);
+        recordAccess(lookupParams);
+        LookupBatcher lookupBatcher = sLookupBatcher;
+        LookupResult<IStatisticsMerge> lookupResult = null != lookupBatcher && LookupBatcher.canBatch(lookupParams)
+                ? lookupBatcher.lookup(lookupParams) : lookup(lookupParams);
         DnsLog.d("LookupResult %s", lookupResult.ipSet);
         if (null != sLookupListener) {
             sLookupListener.onLookedUp(lookupParams, lookupResult);
@@ -415,6 +473,93 @@ public final class DnsManager {
         return lookupResult;
     }
 
+    public static <LookupExtraT extends IDns.ILookupExtra>
+    void lookupWrapperAsync(LookupParameters<LookupExtraT> lookupParams, final ILookupListener lookupListener) {
+        if (null == lookupListener) {
+            throw new IllegalArgumentException("lookupListener".concat(Const.NULL_POINTER_TIPS));
+        }
+        recordAccess(lookupParams);
+
+        ILookupListener lookupListenerWrapper = new ILookupListener() {
+            @Override
+            public void onLookedUp(LookupParameters lookupParameters, LookupResult<IStatisticsMerge> lookupResult) {
+                DnsLog.d("LookupResult %s", lookupResult.ipSet);
+                if (null != sLookupListener) {
+                    sLookupListener.onLookedUp(lookupParameters, lookupResult);
+                }
+                lookupListener.onLookedUp(lookupParameters, lookupResult);
+            }
+        };
+        LookupBatcher lookupBatcher = sLookupBatcher;
+        if (null != lookupBatcher && LookupBatcher.canBatch(lookupParams)) {
+            lookupBatcher.lookupAsync(lookupParams, lookupListenerWrapper);
+        } else {
+            lookupAsync(lookupParams, lookupListenerWrapper);
+        }
+    }
+
+    // 仅统计业务侧发起的HTTPDNS解析, 在解析前统计使解析结果写入缓存时可以判断是否需要预取
+    private static <LookupExtraT extends IDns.ILookupExtra>
+    void recordAccess(LookupParameters<LookupExtraT> lookupParams) {
+        if (lookupParams.enableAsyncLookup || lookupParams.netChangeLookup
+                || Const.LOCAL_CHANNEL.equals(lookupParams.channel)) {
+            return;
+        }
+        PopularityTracker.getInstance().recordAccess(lookupParams.hostname, true);
+        // NOTE: 只写入队列, 伴随域名的学习, 预测及预取均在WORK线程进行
+        CooccurrenceModel.getInstance().onLookup(lookupParams.hostname);
+    }
+
+    /**
+     * 解析伴随域名中未缓存或即将过期的域名
+     * 开启批量解析合并时伴随域名加入当前收集的批量解析请求, 与lookupParams对应的解析一起发出,
+     * 否则在WORK线程中单独发起一次批量解析
+     * NOTE: 由CooccurrenceModel.PredictionListener在WORK线程调用, 只读取内存缓存, 不阻塞业务侧的解析
+     *
+     * @param lookupParams 触发预测的单域名解析参数
+     * @param companions   预测的伴随域名
+     */
+    public static <LookupExtraT extends IDns.ILookupExtra>
+    void prefetchCompanions(LookupParameters<LookupExtraT> lookupParams, List<String> companions) {
+        if (companions.isEmpty()) {
+            return;
+        }
+        int curNetStack = getCurrentNetworkStack(lookupParams);
+        Cache cache = Cache.getInstance();
+        List<String> hostnames = new ArrayList<>(companions.size());
+        for (String hostname : companions) {
+            if (!cache.isFresh(hostname, curNetStack, COMPANION_MIN_FRESH_MILLS)) {
+                hostnames.add(hostname);
+            }
+        }
+        if (hostnames.isEmpty()) {
+            return;
+        }
+        DnsLog.d("Prefetch companions %s of %s", hostnames, lookupParams.hostname);
+        CooccurrenceModel.getInstance().onPrefetched(hostnames);
+        LookupBatcher lookupBatcher = sLookupBatcher;
+        if (null != lookupBatcher && LookupBatcher.canBatch(lookupParams)) {
+            for (String hostname : hostnames) {
+                lookupBatcher.lookupAsync(new LookupParameters.Builder<>(lookupParams)
+                        .hostname(hostname)
+                        .fallback2Local(false)
+                        .build(), IGNORED_LOOKUP_LISTENER);
+            }
+            return;
+        }
+        final LookupParameters<LookupExtraT> companionLookupParams = new LookupParameters.Builder<>(lookupParams)
+                .hostname(CommonUtils.toStringList(hostnames.toArray(new String[hostnames.size()]), ","))
+                .enableAsyncLookup(true)
+                .fallback2Local(false)
+                .build();
+        DnsExecutors.WORK.execute(new Runnable() {
+            @Override
+            public void run() {
+                lookupWrapper(companionLookupParams);
+            }
+        });
+    }
+
     private static <LookupExtraT extends IDns.ILookupExtra>
     void prepareTasks(DnsGroup dnsGroup, LookupContext<LookupExtraT> lookupContext) {
         int curNetStack = lookupContext.currentNetworkStack();
@@ -452,92 +597,146 @@ public final class DnsManager {
             return;
         }
         IDns.ISession session;
-        // HTTPS情况下也采用HTTPCONNECTION做请求
-        if (!Const.HTTPS_CHANNEL.equals(lookupContext.channel()) && ((null != lookupContext.selector())
-                || tryOpenSelector(lookupContext)) && null != (session = dns.getSession(lookupContext))) {
+        // NOTE: HTTPS通过SSLEngine接入事件循环, 平台不支持TLS时getSession返回null, 退化为阻塞方式
+        if (((null != lookupContext.lookupFuture()) || tryCreateLookupFuture(lookupContext))
+                && null != (session = dns.getSession(lookupContext))) {
             LookupHelper.prepareNonBlockLookupTask(session, lookupContext);
         } else {
             LookupHelper.prepareBlockLookupTask(dns, lookupContext);
         }
     }
 
-    private static boolean tryOpenSelector(LookupContext lookupContext) {
-        try {
-            Selector selector = Selector.open();
-            lookupContext.selector(selector);
-            DnsLog.d("%s opened", selector);
-            return true;
-        } catch (Exception e) {
-            DnsLog.d(e, "Open selector failed");
+    private static boolean tryCreateLookupFuture(LookupContext lookupContext) {
+        LookupReactor reactor = LookupReactor.get();
+        if (null == reactor) {
             return false;
         }
+        //noinspection unchecked
+        lookupContext.lookupFuture(reactor.newLookupFuture(lookupContext, sRetry));
+        return true;
     }
 
-    private static <LookupExtraT extends IDns.ILookupExtra> void tryLookup(LookupContext<LookupExtraT> lookupContext) {
-        Iterator<IDns.ISession> sessionIterator = lookupContext.sessions().iterator();
-        while (sessionIterator.hasNext()) {
-            IDns.ISession session = sessionIterator.next();
-            if (session.isEnd()) {
-                continue;
+    private static <LookupExtraT extends IDns.ILookupExtra>
+    void endSessions(LookupContext<LookupExtraT> lookupContext) {
+        for (IDns.ISession session : lookupContext.sessions()) {
+            session.end();
+            lookupContext.statisticsMerge().merge(session.getDns(), session.getStatistics());
+        }
+    }
+
+    /**
+     * 异步解析任务, 不占用线程等待解析结果
+     * 非阻塞session由事件循环驱动, 阻塞解析任务在WORK线程执行, 超时及阻塞解析的重试由MAIN定时任务驱动,
+     * 任一来源的进展都会检查解析是否结束, 结束后在WORK线程收尾并回调
+     */
+    private static final class AsyncLookup<LookupExtraT extends IDns.ILookupExtra> implements Runnable {
+
+        private final LookupContext<LookupExtraT> mLookupContext;
+        private final ILookupListener mLookupListener;
+        private final long mStartTimeMills;
+        private final AtomicBoolean mFinished = new AtomicBoolean(false);
+        private int mRetriedTimes = 0;
+
+        private final Runnable mTryFinishTask = new Runnable() {
+            @Override
+            public void run() {
+                tryFinish();
             }
-            IDns.ISession.IToken token = session.getToken();
-            if (token.isReadable()) {
-                DnsLog.d("%s event readable", session.getDns().getDescription());
-                String[] ips = session.receiveResponse();
-                IDns.IStatistics statistics = session.getStatistics();
-                if (statistics.lookupSuccess() || statistics.lookupFailed()) {
-                    IDns dns = session.getDns();
-                    sessionIterator.remove();
-                    lookupContext.dnses().remove(dns);
-                    LookupHelper.lookupFinished(lookupContext, dns, statistics, ips);
-                    continue;
-                }
-            } else if (token.isWritable()) {
-                DnsLog.d("%s event writable", session.getDns().getDescription());
-                // 发起请求
-                session.request();
-            } else {
-                if (token.isConnectable()) {
-                    DnsLog.d("%s event connectable", session.getDns().getDescription());
-                    session.connect();
+        };
+
+        AsyncLookup(LookupContext<LookupExtraT> lookupContext, ILookupListener lookupListener) {
+            mLookupContext = lookupContext;
+            mLookupListener = lookupListener;
+            mStartTimeMills = SystemClock.elapsedRealtime();
+        }
+
+        void start() {
+            // 阻塞解析任务在commit后即开始执行, 需提前设置
+            mLookupContext.lookupFinishedListener(mTryFinishTask);
+            CountDownLatch countDownLatch = mLookupContext.transaction().commit();
+            mLookupContext.countDownLatch(countDownLatch);
+
+            LookupReactor.LookupFuture lookupFuture = mLookupContext.lookupFuture();
+            if (null != lookupFuture) {
+                if (mLookupContext.sessions().isEmpty()) {
+                    lookupFuture.cancel();
+                } else {
+                    lookupFuture.onDone(mTryFinishTask);
+                    lookupFuture.submit();
                 }
-                // 如果不是writable，则每次都需要finishConnect
-                boolean finishConnectRes = token.tryFinishConnect();
-                DnsLog.d("%s event finishConnect:%b", session.getDns().getDescription(), finishConnectRes);
             }
+            scheduleNext();
+            tryFinish();
+        }
 
-            // 每次检查下，及时清理
-            if (!token.isAvailable()) {
-                DnsLog.d("%s event not available, maybe closed", session.getDns().getDescription());
-                IDns dns = session.getDns();
-                sessionIterator.remove();
-                lookupContext.dnses().remove(dns);
+        // 超时或需要重试阻塞解析
+        @Override
+        public void run() {
+            if (mFinished.get()) {
+                return;
+            }
+            int timeoutMills = mLookupContext.timeoutMills();
+            if (SystemClock.elapsedRealtime() - mStartTimeMills >= timeoutMills) {
+                DnsLog.d("async lookup for %s timeout", mLookupContext.hostname());
+                finish();
+                return;
+            }
+            IRetry retry = sRetry;
+            if (null == mLookupContext.lookupFuture() && mLookupContext.countDownLatch().getCount() > 0
+                    && LookupHelper.canRetry(mStartTimeMills, timeoutMills, retry.maxRetryTimes(), mRetriedTimes)) {
+                mRetriedTimes++;
+                int remainTimeMills = timeoutMills - (int) (SystemClock.elapsedRealtime() - mStartTimeMills);
+                LookupContext<LookupExtraT> newLookupContext =
+                        mLookupContext.newLookupContext(
+                                new LookupParameters.Builder<>(mLookupContext.asLookupParameters())
+                                        .timeoutMills(remainTimeMills)
+                                        .curRetryTime(mRetriedTimes)
+                                        .build());
+                retry.retryBlock(newLookupContext);
             }
+            scheduleNext();
         }
-    }
 
-    private static boolean canRetry(long startTimeMills, int timeoutMills, int maxRetryTimes, int retriedTimes) {
-        return retriedTimes < maxRetryTimes
-                // NOTE: 本次查询已经超时
-                && (int) (SystemClock.elapsedRealtime() - startTimeMills)
-                > timeoutMills * (retriedTimes + 1) / (maxRetryTimes + 1);
-    }
+        private void scheduleNext() {
+            int timeoutMills = mLookupContext.timeoutMills();
+            int maxRetryTimes = sRetry.maxRetryTimes();
+            long nextTimeMills = mStartTimeMills + timeoutMills;
+            if (null == mLookupContext.lookupFuture() && mRetriedTimes < maxRetryTimes) {
+                // NOTE: 与LookupHelper.canRetry保持一致, 超过重试时间点后才重试
+                nextTimeMills = mStartTimeMills + (long) timeoutMills * (mRetriedTimes + 1) / (maxRetryTimes + 1) + 1;
+            }
+            DnsExecutors.MAIN.schedule(this, Math.max(nextTimeMills - SystemClock.elapsedRealtime(), 1));
+        }
 
-    private static <LookupExtraT extends IDns.ILookupExtra>
-    void endSessions(LookupContext<LookupExtraT> lookupContext) {
-        for (IDns.ISession session : lookupContext.sessions()) {
-            session.end();
-            lookupContext.statisticsMerge().merge(session.getDns(), session.getStatistics());
+        private void tryFinish() {
+            if (mFinished.get()) {
+                return;
+            }
+            LookupReactor.LookupFuture lookupFuture = mLookupContext.lookupFuture();
+            if ((null == lookupFuture || lookupFuture.isDone())
+                    && mLookupContext.countDownLatch().getCount() == 0) {
+                finish();
+            }
         }
-    }
 
-    private static void clearEndedSession(LookupContext lookupContext) {
-        @SuppressWarnings("unchecked") Iterator<IDns.ISession> sessionIterator = lookupContext.sessions().iterator();
-        while (sessionIterator.hasNext()) {
-            IDns.ISession session = sessionIterator.next();
-            if (session.isEnd()) {
-                sessionIterator.remove();
+        private void finish() {
+            if (!mFinished.compareAndSet(false, true)) {
+                return;
             }
+            DnsExecutors.MAIN.cancel(this);
+            // 可能在事件循环线程触发, 收尾及回调切换到WORK线程
+            DnsExecutors.WORK.execute(new Runnable() {
+                @Override
+                public void run() {
+                    endLookup(mLookupContext);
+                    ISorter sorter = mLookupContext.sorter();
+                    StatisticsMerge statMerge = (StatisticsMerge) mLookupContext.statisticsMerge();
+                    IpSet ipSet = sorter.sort();
+                    statMerge.statResult(ipSet);
+                    mLookupListener.onLookedUp(mLookupContext.asLookupParameters(),
+                            new LookupResult<IStatisticsMerge>(ipSet, statMerge));
+                }
+            });
         }
     }
 
@@ -547,27 +746,4 @@ public final class DnsManager {
         IDns mInetDns;
         IDns mInet6Dns;
     }
-
-    private static class LookupResultHolder {
-
-        LookupResult<IStatisticsMerge> mLookupResult = null;
-    }
-
-    private static class LookupLatchResultPair {
-
-        final CountDownLatch mLookupLatch;
-        final LookupResultHolder mLookupResultHolder;
-
-        public LookupLatchResultPair(CountDownLatch lookupLatch, LookupResultHolder lookupResultHolder) {
-            if (null == lookupLatch) {
-                throw new IllegalArgumentException("lookupLatch".concat(Const.NULL_POINTER_TIPS));
-            }
-            if (null == lookupResultHolder) {
-                throw new IllegalArgumentException("lookupResultHolder".concat(Const.NULL_POINTER_TIPS));
-            }
-
-            mLookupLatch = lookupLatch;
-            mLookupResultHolder = lookupResultHolder;
-        }
-    }
 }
@@ -6,9 +6,9 @@ package com.tencent.msdk.dns.core;
 public interface ICache {
 
     /* @Nullable */
-    LookupResult get(String hostname);
+    LookupResult get(String hostname, int family);
 
-    void add(String hostname, LookupResult lookupResult);
+    void add(String hostname, int family, LookupResult lookupResult);
 
     void delete(String hostname);
 
@@ -4,7 +4,8 @@ public interface ISorter {
 
     interface IFactory {
 
-        ISorter create(int curNetStack);
+        // NOTE: hostname为请求的域名, 批量解析时以","拼接, 用于按域名拆分"域名:IP"格式的结果
+        ISorter create(int curNetStack, String hostname);
     }
 
     // NOTE: ips可能为空数组
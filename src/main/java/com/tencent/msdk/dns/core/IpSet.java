@@ -27,7 +27,18 @@ public class IpSet implements Serializable {
     // NOTE: ips用于SDK支持类似Happy Eyeballs V2之类的IP排序功能使用
     /* @Nullable */ public final String[] ips;
 
+    /**
+     * 按域名拆分的解析结果, 可能为null
+     * 批量解析得到的结果不为null, 此时v4Ips及v6Ips为"域名:IP"格式, 可直接使用该字段获取各域名的结果
+     * 单域名解析的结果为null, 直接使用v4Ips及v6Ips
+     */
+    /* @Nullable */ public final BatchIpSet batchIpSet;
+
     public IpSet(String[] v4Ips, String[] v6Ips) {
+        this(v4Ips, v6Ips, null);
+    }
+
+    public IpSet(String[] v4Ips, String[] v6Ips, /* @Nullable */BatchIpSet batchIpSet) {
         if (null == v4Ips) {
             throw new IllegalArgumentException("v4Ips".concat(Const.NULL_POINTER_TIPS));
         }
@@ -38,6 +49,7 @@ public class IpSet implements Serializable {
         this.v4Ips = v4Ips;
         this.v6Ips = v6Ips;
         this.ips = null;
+        this.batchIpSet = batchIpSet;
     }
 
     public IpSet(String[] ips) {
@@ -48,6 +60,7 @@ public class IpSet implements Serializable {
         this.ips = ips;
         this.v4Ips = null;
         this.v6Ips = null;
+        this.batchIpSet = null;
     }
 
     @Override
@@ -0,0 +1,235 @@
+package com.tencent.msdk.dns.core;
+
+import android.os.SystemClock;
+
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.core.stat.StatisticsMerge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 批量解析合并
+ * 在时间窗口内收集未命中缓存的单域名解析请求, 合并为一次批量解析请求, 解析完成后按域名将结果分发给各个解析请求
+ * 每个域名同时作为{@link LookupFlight}的leader, 窗口内及批量解析进行中的相同域名解析请求直接加入
+ */
+public final class LookupBatcher {
+
+    private final int mWindowMills;
+    private final int mMaxBatchSize;
+
+    // NOTE: 由this保护
+    private Batch mCollectingBatch = null;
+
+    /**
+     * 构造函数
+     *
+     * @param windowMills  收集窗口时长, 单位为ms, 窗口内的解析请求合并为一次批量解析请求
+     * @param maxBatchSize 单次批量解析的最大域名数, 达到后立即发起批量解析请求
+     * @throws IllegalArgumentException windowMills或maxBatchSize不大于0时抛出
+     */
+    public LookupBatcher(int windowMills, int maxBatchSize) {
+        if (0 >= windowMills) {
+            throw new IllegalArgumentException("windowMills".concat(Const.LESS_THAN_0_TIPS));
+        }
+        if (0 >= maxBatchSize) {
+            throw new IllegalArgumentException("maxBatchSize".concat(Const.LESS_THAN_0_TIPS));
+        }
+
+        mWindowMills = windowMills;
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    // 仅合并前台发起的, 非LocalDns的单域名解析请求
+    static boolean canBatch(/* @Nullable */LookupParameters lookupParams) {
+        return null != lookupParams
+                && !Const.LOCAL_CHANNEL.equals(lookupParams.channel)
+                && -1 == lookupParams.hostname.indexOf(',')
+                && !lookupParams.enableAsyncLookup
+                && !lookupParams.ignoreCurNetStack
+                && !lookupParams.netChangeLookup
+                && 0 == lookupParams.curRetryTime;
+    }
+
+    <LookupExtraT extends IDns.ILookupExtra>
+    LookupResult<IStatisticsMerge> lookup(LookupParameters<LookupExtraT> lookupParams) {
+        DnsLog.v("LookupBatcher.lookup(%s) called", lookupParams);
+
+        long startTimeMills = SystemClock.elapsedRealtime();
+        LookupResult<IStatisticsMerge> lookupResultFromCache = DnsManager.getResultFromCache(lookupParams);
+        if (lookupResultFromCache.stat.lookupSuccess() && !lookupResultFromCache.stat.lookupPartCached()) {
+            return lookupResultFromCache;
+        }
+
+        // NOTE: 批量解析不包含LocalDNS, 结果为空时由LookupFlight按各个解析请求的参数fallback
+        LookupFlight lookupFlight =
+                DnsManager.newLookupFlight(lookupParams, DnsManager.getCurrentNetworkStack(lookupParams), false);
+        LookupFlight runningFlight = LookupFlight.launch(lookupFlight, false);
+        if (null != runningFlight) {
+            return DnsManager.getResultFromFlight(lookupParams, runningFlight, startTimeMills);
+        }
+        enqueue(lookupParams, lookupFlight);
+        try {
+            return lookupFlight.await(lookupParams, startTimeMills);
+        } catch (Exception e) {
+            DnsLog.w(e, "Await for batch lookup for %s failed", lookupParams.hostname);
+            return new LookupResult<IStatisticsMerge>(IpSet.EMPTY, new StatisticsMerge(lookupParams.appContext));
+        }
+    }
+
+    <LookupExtraT extends IDns.ILookupExtra>
+    void lookupAsync(final LookupParameters<LookupExtraT> lookupParams, final ILookupListener lookupListener) {
+        DnsLog.v("LookupBatcher.lookupAsync(%s) called", lookupParams);
+
+        long startTimeMills = SystemClock.elapsedRealtime();
+        LookupResult<IStatisticsMerge> lookupResultFromCache = DnsManager.getResultFromCache(lookupParams);
+        if (lookupResultFromCache.stat.lookupSuccess() && !lookupResultFromCache.stat.lookupPartCached()) {
+            lookupListener.onLookedUp(lookupParams, lookupResultFromCache);
+            return;
+        }
+
+        LookupFlight lookupFlight =
+                DnsManager.newLookupFlight(lookupParams, DnsManager.getCurrentNetworkStack(lookupParams), false);
+        LookupFlight runningFlight = LookupFlight.launch(lookupFlight, false);
+        if (null != runningFlight) {
+            runningFlight.join(lookupParams, lookupListener, startTimeMills);
+            return;
+        }
+        // 先加入再提交, 避免批量解析先于join完成
+        lookupFlight.join(lookupParams, lookupListener, startTimeMills);
+        enqueue(lookupParams, lookupFlight);
+    }
+
+    private void enqueue(LookupParameters lookupParams, LookupFlight lookupFlight) {
+        Batch incompatibleBatch = null;
+        Batch fullBatch = null;
+        synchronized (this) {
+            Batch batch = mCollectingBatch;
+            if (null != batch && !batch.isCompatible(lookupParams)) {
+                incompatibleBatch = batch;
+                batch = null;
+            }
+            if (null == batch) {
+                batch = new Batch(lookupParams);
+                mCollectingBatch = batch;
+                DnsExecutors.MAIN.schedule(batch, mWindowMills);
+            }
+            batch.add(lookupParams.hostname, lookupFlight);
+            if (mMaxBatchSize <= batch.size()) {
+                mCollectingBatch = null;
+                fullBatch = batch;
+            }
+        }
+        if (null != incompatibleBatch) {
+            incompatibleBatch.dispatch();
+        }
+        if (null != fullBatch) {
+            fullBatch.dispatch();
+        }
+    }
+
+    final class Batch implements Runnable {
+
+        private final LookupParameters mTemplateParams;
+        // NOTE: 收集阶段由LookupBatcher.this保护, dispatch之后不再修改
+        // 同一域名可能以不同的key(如地址族不同)加入, 每个LookupFlight都需要land
+        private final Map<String, List<LookupFlight>> mHostnameFlightsMap = new HashMap<>();
+        private final AtomicBoolean mDispatched = new AtomicBoolean(false);
+
+        Batch(LookupParameters templateParams) {
+            mTemplateParams = templateParams;
+        }
+
+        boolean isCompatible(LookupParameters lookupParams) {
+            return CommonUtils.equals(mTemplateParams.channel, lookupParams.channel)
+                    && CommonUtils.equals(mTemplateParams.lookupExtra, lookupParams.lookupExtra)
+                    && mTemplateParams.customNetStack == lookupParams.customNetStack
+                    && mTemplateParams.blockFirst == lookupParams.blockFirst;
+        }
+
+        void add(String hostname, LookupFlight lookupFlight) {
+            List<LookupFlight> lookupFlights = mHostnameFlightsMap.get(hostname);
+            if (null == lookupFlights) {
+                lookupFlights = new ArrayList<>(1);
+                mHostnameFlightsMap.put(hostname, lookupFlights);
+            }
+            lookupFlights.add(lookupFlight);
+        }
+
+        // 域名数
+        int size() {
+            return mHostnameFlightsMap.size();
+        }
+
+        // 收集窗口结束
+        @Override
+        public void run() {
+            synchronized (LookupBatcher.this) {
+                if (mCollectingBatch != this) {
+                    return;
+                }
+                mCollectingBatch = null;
+            }
+            dispatch();
+        }
+
+        void dispatch() {
+            if (!mDispatched.compareAndSet(false, true)) {
+                return;
+            }
+            DnsExecutors.MAIN.cancel(this);
+            DnsExecutors.WORK.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String hostnames = CommonUtils.toStringList(
+                            mHostnameFlightsMap.keySet().toArray(new String[mHostnameFlightsMap.size()]), ",");
+                    DnsLog.d("Batch lookup for %s", hostnames);
+                    //noinspection unchecked
+                    LookupParameters batchParams = new LookupParameters.Builder(mTemplateParams)
+                            .hostname(hostnames)
+                            .fallback2Local(false)
+                            .build();
+                    try {
+                        //noinspection unchecked
+                        DnsManager.lookupAsync(batchParams, new ILookupListener() {
+                            @Override
+                            public void onLookedUp(LookupParameters lookupParameters,
+                                                   LookupResult<IStatisticsMerge> lookupResult) {
+                                land(lookupResult);
+                            }
+                        });
+                    } catch (Exception e) {
+                        DnsLog.w(e, "Batch lookup for %s failed", hostnames);
+                        land(null);
+                    }
+                }
+            });
+        }
+
+        void land(/* @Nullable */LookupResult<IStatisticsMerge> lookupResult) {
+            if (null == lookupResult || 1 == mHostnameFlightsMap.size()) {
+                for (List<LookupFlight> lookupFlights : mHostnameFlightsMap.values()) {
+                    for (LookupFlight lookupFlight : lookupFlights) {
+                        lookupFlight.land(lookupResult);
+                    }
+                }
+                return;
+            }
+            BatchIpSet batchIpSet = null != lookupResult.ipSet.batchIpSet
+                    ? lookupResult.ipSet.batchIpSet : BatchIpSet.EMPTY;
+            for (Map.Entry<String, List<LookupFlight>> entry : mHostnameFlightsMap.entrySet()) {
+                // NOTE: 统计数据为整个批量解析的统计数据
+                LookupResult<IStatisticsMerge> hostLookupResult =
+                        new LookupResult<>(batchIpSet.get(entry.getKey()), lookupResult.stat);
+                for (LookupFlight lookupFlight : entry.getValue()) {
+                    lookupFlight.land(hostLookupResult);
+                }
+            }
+        }
+    }
+}
@@ -4,7 +4,6 @@ import android.content.Context;
 
 import com.tencent.msdk.dns.base.utils.NetworkStack;
 
-import java.nio.channels.Selector;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -21,10 +20,12 @@ public final class LookupContext<LookupExtra extends IDns.ILookupExtra> {
     private CountDownManager.Transaction mTransaction;
     private CountDownLatch mCountDownLatch;
 
-    private Selector mSelector;
+    private LookupReactor.LookupFuture mLookupFuture;
     private Set<IDns> mDnses;
     private List<IDns.ISession> mSessions;
 
+    private Runnable mLookupFinishedListener;
+
     private LookupContext(LookupParameters<LookupExtra> lookupParams) {
         if (null == lookupParams) {
             throw new IllegalArgumentException("lookupParams".concat(Const.NULL_POINTER_TIPS));
@@ -48,9 +49,10 @@ public final class LookupContext<LookupExtra extends IDns.ILookupExtra> {
                 .statisticsMerge(mStatMerge)
                 .transaction(mTransaction)
                 .countDownLatch(mCountDownLatch)
-                .selector(mSelector)
+                .lookupFuture(mLookupFuture)
                 .dnses(mDnses)
-                .sessions(mSessions);
+                .sessions(mSessions)
+                .lookupFinishedListener(mLookupFinishedListener);
     }
 
     public LookupParameters<LookupExtra> asLookupParameters() {
@@ -193,13 +195,14 @@ public final class LookupContext<LookupExtra extends IDns.ILookupExtra> {
     }
 
 
-    public LookupContext<LookupExtra> selector(Selector selector) {
-        mSelector = selector;
+    public LookupContext<LookupExtra> lookupFuture(LookupReactor.LookupFuture lookupFuture) {
+        mLookupFuture = lookupFuture;
         return this;
     }
 
-    public Selector selector() {
-        return mSelector;
+    /* @Nullable */
+    public LookupReactor.LookupFuture lookupFuture() {
+        return mLookupFuture;
     }
 
     public LookupContext<LookupExtra> dnses(Set<IDns> dnses) {
@@ -240,6 +243,16 @@ public final class LookupContext<LookupExtra extends IDns.ILookupExtra> {
         return mSessions;
     }
 
+    public LookupContext<LookupExtra> lookupFinishedListener(Runnable lookupFinishedListener) {
+        mLookupFinishedListener = lookupFinishedListener;
+        return this;
+    }
+
+    /* @Nullable */
+    public Runnable lookupFinishedListener() {
+        return mLookupFinishedListener;
+    }
+
     @Override
     public String toString() {
         return "LookupContext{"
@@ -249,7 +262,7 @@ public final class LookupContext<LookupExtra extends IDns.ILookupExtra> {
                 + ", mStatMerge=" + mStatMerge
                 + ", mTransaction=" + mTransaction
                 + ", mCountDownLatch=" + mCountDownLatch
-                + ", mSelector=" + mSelector
+                + ", mLookupFuture=" + mLookupFuture
                 + ", mDnses=" + mDnses
                 + ", mSessions=" + mSessions
                 + '}';
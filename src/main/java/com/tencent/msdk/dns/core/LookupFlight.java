@@ -0,0 +1,277 @@
+package com.tencent.msdk.dns.core;
+
+import android.os.SystemClock;
+
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.core.stat.StatisticsMerge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同一域名的解析合并(single-flight)
+ * 以(域名, 地址族, 解析通道)为key, 同一时刻只有一个解析任务(leader)访问网络,
+ * 其余解析请求加入正在进行的解析任务, 并按各自的超时时间等待结果
+ * leader的解析不包含LocalDNS时(如后台刷新, 伴随域名预取), 结果为空的解析请求按各自的参数fallback到LocalDNS
+ */
+public final class LookupFlight {
+
+    private static final ConcurrentMap<Key, LookupFlight> RUNNING_FLIGHTS = new ConcurrentHashMap<>();
+
+    private static final AtomicLong LEAD_COUNT = new AtomicLong();
+    private static final AtomicLong JOIN_COUNT = new AtomicLong();
+
+    private final Key mKey;
+    // leader的解析是否已fallback到LocalDNS
+    private final boolean mFallback2Local;
+    private final CountDownLatch mLandedLatch = new CountDownLatch(1);
+
+    // NOTE: mResult, mJoiners均由this保护
+    private LookupResult<IStatisticsMerge> mResult = null;
+    private List<Joiner> mJoiners = null;
+
+    LookupFlight(String hostname, int family, String channel, boolean fallback2Local) {
+        mKey = new Key(hostname, family, channel);
+        mFallback2Local = fallback2Local;
+    }
+
+    /**
+     * 获取实际发起的解析次数
+     *
+     * @return 作为leader执行的解析次数
+     */
+    public static long leadCount() {
+        return LEAD_COUNT.get();
+    }
+
+    /**
+     * 获取合并到正在进行的解析任务的次数, 即节省的网络请求次数
+     *
+     * @return 加入正在进行的解析任务的解析次数
+     */
+    public static long joinCount() {
+        return JOIN_COUNT.get();
+    }
+
+    // replace: 为true时总是成为leader, 并替换正在进行的解析任务(如网络切换后, 旧网络下的解析结果不再复用)
+    // return: 已有相同key的解析任务时返回该任务, 否则返回null, 当前任务成为leader
+    /* @Nullable */
+    static LookupFlight launch(LookupFlight flight, boolean replace) {
+        if (null == flight) {
+            throw new IllegalArgumentException("flight".concat(Const.NULL_POINTER_TIPS));
+        }
+
+        if (replace) {
+            RUNNING_FLIGHTS.put(flight.mKey, flight);
+        } else {
+            LookupFlight runningFlight = RUNNING_FLIGHTS.putIfAbsent(flight.mKey, flight);
+            if (null != runningFlight) {
+                JOIN_COUNT.incrementAndGet();
+                DnsLog.d("The same lookup task(for %s) is running, just join it", flight.mKey);
+                return runningFlight;
+            }
+        }
+        LEAD_COUNT.incrementAndGet();
+        return null;
+    }
+
+    // leader解析结束, 通知所有加入的解析请求
+    void land(/* @Nullable */LookupResult<IStatisticsMerge> lookupResult) {
+        // 先移除, 之后的解析请求不再加入当前任务
+        RUNNING_FLIGHTS.remove(mKey, this);
+        List<Joiner> joiners;
+        synchronized (this) {
+            mResult = lookupResult;
+            joiners = mJoiners;
+            mJoiners = null;
+            mLandedLatch.countDown();
+        }
+        if (null != joiners) {
+            for (Joiner joiner : joiners) {
+                joiner.notifyResult(lookupResult);
+            }
+        }
+    }
+
+    // 同步等待leader的解析结果, 最多等待到调用方自己的超时时间
+    LookupResult<IStatisticsMerge> await(LookupParameters lookupParams, long startTimeMills)
+            throws InterruptedException {
+        long remainTimeMills = lookupParams.timeoutMills - (SystemClock.elapsedRealtime() - startTimeMills);
+        LookupResult<IStatisticsMerge> lookupResult = null;
+        if (0 < remainTimeMills && mLandedLatch.await(remainTimeMills, TimeUnit.MILLISECONDS)) {
+            synchronized (this) {
+                lookupResult = mResult;
+            }
+        } else {
+            DnsLog.d("Await for running lookup for %s timeout", mKey);
+        }
+        if (needFallback2Local(lookupParams, lookupResult)) {
+            int fallbackTimeoutMills = remainTimeMills(lookupParams, startTimeMills);
+            if (0 < fallbackTimeoutMills) {
+                DnsLog.d("Running lookup for %s got nothing, fallback to LocalDns", mKey);
+                return DnsManager.lookup(buildLocalLookupParameters(lookupParams, fallbackTimeoutMills));
+            }
+        }
+        return null != lookupResult ? lookupResult : emptyResult(lookupParams);
+    }
+
+    // 异步等待leader的解析结果, 超过调用方自己的超时时间后回调空结果
+    // NOTE: leader已结束时在调用线程直接回调, 否则在WORK线程回调
+    void join(LookupParameters lookupParams, ILookupListener lookupListener, long startTimeMills) {
+        Joiner joiner = new Joiner(lookupParams, lookupListener, startTimeMills);
+        LookupResult<IStatisticsMerge> lookupResult;
+        synchronized (this) {
+            if (0 < mLandedLatch.getCount()) {
+                long remainTimeMills =
+                        lookupParams.timeoutMills - (SystemClock.elapsedRealtime() - startTimeMills);
+                if (0 < remainTimeMills) {
+                    if (null == mJoiners) {
+                        mJoiners = new ArrayList<>();
+                    }
+                    mJoiners.add(joiner);
+                    DnsExecutors.MAIN.schedule(joiner, remainTimeMills);
+                    return;
+                }
+                lookupResult = null;
+            } else {
+                lookupResult = mResult;
+            }
+        }
+        joiner.deliver(lookupResult);
+    }
+
+    // 当前解析任务的结果为空, 且leader未fallback而调用方需要fallback到LocalDNS
+    private boolean needFallback2Local(LookupParameters lookupParams,
+                                       /* @Nullable */LookupResult<IStatisticsMerge> lookupResult) {
+        return !mFallback2Local
+                && lookupParams.fallback2Local
+                && !Const.LOCAL_CHANNEL.equals(lookupParams.channel)
+                && (null == lookupResult
+                || (CommonUtils.isEmpty(lookupResult.ipSet.v4Ips) && CommonUtils.isEmpty(lookupResult.ipSet.v6Ips)));
+    }
+
+    private static int remainTimeMills(LookupParameters lookupParams, long startTimeMills) {
+        return lookupParams.timeoutMills - (int) (SystemClock.elapsedRealtime() - startTimeMills);
+    }
+
+    // NOTE: 沿用调用方的lookupExtra, 使fallback的结果与调用方的统计数据类型一致
+    private static LookupParameters<IDns.ILookupExtra> buildLocalLookupParameters(LookupParameters lookupParams,
+                                                                                 int timeoutMills) {
+        return new LookupParameters.Builder<>()
+                .context(lookupParams.appContext)
+                .hostname(lookupParams.hostname)
+                .timeoutMills(timeoutMills)
+                .dnsIp(lookupParams.dnsIp)
+                .lookupExtra(lookupParams.lookupExtra)
+                .channel(Const.LOCAL_CHANNEL)
+                .fallback2Local(false)
+                .blockFirst(lookupParams.blockFirst)
+                .build();
+    }
+
+    private static LookupResult<IStatisticsMerge> emptyResult(LookupParameters lookupParams) {
+        return new LookupResult<IStatisticsMerge>(IpSet.EMPTY, new StatisticsMerge(lookupParams.appContext));
+    }
+
+    private final class Joiner implements Runnable {
+
+        private final LookupParameters mLookupParams;
+        private final ILookupListener mLookupListener;
+        private final long mStartTimeMills;
+        private final AtomicBoolean mNotified = new AtomicBoolean(false);
+
+        Joiner(LookupParameters lookupParams, ILookupListener lookupListener, long startTimeMills) {
+            mLookupParams = lookupParams;
+            mLookupListener = lookupListener;
+            mStartTimeMills = startTimeMills;
+        }
+
+        // 等待超时
+        @Override
+        public void run() {
+            DnsLog.d("Await for running lookup for %s timeout", mLookupParams.hostname);
+            notifyResult(null);
+        }
+
+        void notifyResult(/* @Nullable */final LookupResult<IStatisticsMerge> lookupResult) {
+            if (!mNotified.compareAndSet(false, true)) {
+                return;
+            }
+            DnsExecutors.MAIN.cancel(this);
+            DnsExecutors.WORK.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(lookupResult);
+                }
+            });
+        }
+
+        void deliver(/* @Nullable */LookupResult<IStatisticsMerge> lookupResult) {
+            if (needFallback2Local(mLookupParams, lookupResult)) {
+                int fallbackTimeoutMills = remainTimeMills(mLookupParams, mStartTimeMills);
+                if (0 < fallbackTimeoutMills) {
+                    DnsLog.d("Running lookup for %s got nothing, fallback to LocalDns", mKey);
+                    DnsManager.lookupAsync(buildLocalLookupParameters(mLookupParams, fallbackTimeoutMills),
+                            new ILookupListener() {
+                                @Override
+                                public void onLookedUp(LookupParameters lookupParameters,
+                                                       LookupResult<IStatisticsMerge> localLookupResult) {
+                                    mLookupListener.onLookedUp(mLookupParams, localLookupResult);
+                                }
+                            });
+                    return;
+                }
+            }
+            mLookupListener.onLookedUp(mLookupParams, null != lookupResult ? lookupResult : emptyResult(mLookupParams));
+        }
+    }
+
+    private static final class Key {
+
+        final String mHostname;
+        final int mFamily;
+        final String mChannel;
+
+        Key(String hostname, int family, String channel) {
+            mHostname = hostname;
+            mFamily = family;
+            mChannel = channel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return mFamily == that.mFamily
+                    && CommonUtils.equals(mHostname, that.mHostname)
+                    && CommonUtils.equals(mChannel, that.mChannel);
+        }
+
+        @Override
+        public int hashCode() {
+            return CommonUtils.hash(mHostname, mFamily, mChannel);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{"
+                    + "hostname='" + mHostname + '\''
+                    + ", family=" + mFamily
+                    + ", channel='" + mChannel + '\''
+                    + '}';
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.tencent.msdk.dns.core;
 
 import static com.tencent.msdk.dns.base.utils.CommonUtils.isEmpty;
 
+import android.os.SystemClock;
+
 import com.tencent.msdk.dns.base.log.DnsLog;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -106,6 +109,27 @@ public final class LookupHelper {
         lookupContext.statisticsMerge()
                 .merge(dns, stat);
 
+        // 异步解析时检查是否已全部完成
+        Runnable lookupFinishedListener = lookupContext.lookupFinishedListener();
+        if (null != lookupFinishedListener) {
+            lookupFinishedListener.run();
+        }
+    }
 
+    public static boolean canRetry(long startTimeMills, int timeoutMills, int maxRetryTimes, int retriedTimes) {
+        return retriedTimes < maxRetryTimes
+                // NOTE: 本次查询已经超时
+                && (int) (SystemClock.elapsedRealtime() - startTimeMills)
+                > timeoutMills * (retriedTimes + 1) / (maxRetryTimes + 1);
+    }
+
+    public static void clearEndedSession(LookupContext lookupContext) {
+        @SuppressWarnings("unchecked") Iterator<IDns.ISession> sessionIterator = lookupContext.sessions().iterator();
+        while (sessionIterator.hasNext()) {
+            IDns.ISession session = sessionIterator.next();
+            if (session.isEnd()) {
+                sessionIterator.remove();
+            }
+        }
     }
 }
@@ -0,0 +1,499 @@
+package com.tencent.msdk.dns.core;
+
+import android.os.SystemClock;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非阻塞解析的事件循环
+ * 全局共享一个Selector和一个线程, 由selectedKeys将就绪事件分发给对应的解析任务,
+ * 解析任务结束(所有session结束或超时)时完成对应的LookupFuture, 调用方只需等待LookupFuture
+ */
+public final class LookupReactor {
+
+    private static final String REACTOR_THREAD_NAME = "dns-reactor";
+
+    private static final Object INSTANCE_LOCK = new Object();
+    private static volatile LookupReactor sInstance = null;
+
+    private final Selector mSelector;
+    private final Thread mReactorThread;
+    // NOTE: 部分系统版本上register会阻塞到select返回, 注册方持有该锁后wakeup, 事件循环在select前等待注册完成
+    private final Object mRegisterGuard = new Object();
+    private final Queue<LookupFuture> mSubmittedFutures = new ConcurrentLinkedQueue<>();
+    // NOTE: 仅事件循环线程访问
+    private final List<LookupFuture> mRunningFutures = new ArrayList<>();
+    // 由共享channel等非SelectionKey来源标记为就绪的解析任务, NOTE: 仅事件循环线程访问
+    private final Set<LookupFuture> mMarkedReadyFutures = newIdentitySet();
+
+    private LookupReactor(Selector selector) {
+        mSelector = selector;
+        mReactorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, REACTOR_THREAD_NAME);
+        mReactorThread.setDaemon(true);
+    }
+
+    /**
+     * 获取事件循环实例, Selector打开失败时返回null, 此时应退化为阻塞解析
+     */
+    /* @Nullable */
+    static LookupReactor get() {
+        if (null == sInstance) {
+            synchronized (INSTANCE_LOCK) {
+                if (null == sInstance) {
+                    try {
+                        LookupReactor reactor = new LookupReactor(Selector.open());
+                        reactor.mReactorThread.start();
+                        sInstance = reactor;
+                        DnsLog.d("%s started", reactor.mSelector);
+                    } catch (Exception e) {
+                        DnsLog.d(e, "Open selector failed");
+                    }
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    <LookupExtraT extends IDns.ILookupExtra>
+    LookupFuture newLookupFuture(LookupContext<LookupExtraT> lookupContext, IRetry retry) {
+        return new LookupFuture(this, lookupContext, retry);
+    }
+
+    /**
+     * 将channel注册到共享的Selector上
+     * 解析任务提交前注册的channel暂不监听任何事件, 提交时再统一设置interestOps, 避免未连接的channel在提交前持续就绪
+     *
+     * @param lookupContext 当前解析任务的lookupContext, lookupFuture不能为null
+     * @param channel       非阻塞模式的channel
+     * @param ops           需要监听的事件
+     * @return 注册得到的SelectionKey
+     * @throws IOException 注册失败
+     */
+    public static SelectionKey register(LookupContext lookupContext, SelectableChannel channel, int ops)
+            throws IOException {
+        if (null == lookupContext) {
+            throw new IllegalArgumentException("lookupContext".concat(Const.NULL_POINTER_TIPS));
+        }
+        LookupFuture lookupFuture = lookupContext.lookupFuture();
+        if (null == lookupFuture) {
+            throw new IllegalArgumentException("lookupFuture".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == channel) {
+            throw new IllegalArgumentException("channel".concat(Const.NULL_POINTER_TIPS));
+        }
+
+        LookupReactor reactor = lookupFuture.mReactor;
+        if (Thread.currentThread() == reactor.mReactorThread) {
+            // 重试时由事件循环线程发起, 此时解析任务已提交
+            return channel.register(reactor.mSelector, ops, lookupFuture);
+        }
+        SelectionKey selectionKey;
+        synchronized (reactor.mRegisterGuard) {
+            reactor.mSelector.wakeup();
+            selectionKey = channel.register(reactor.mSelector, 0, lookupFuture);
+        }
+        lookupFuture.addUnarmedKey(selectionKey, ops);
+        return selectionKey;
+    }
+
+    /**
+     * 将已注册到共享Selector上的SelectionKey(如连接池中的空闲连接)关联到新的解析任务
+     * 与register一致, 解析任务提交前暂不监听任何事件
+     *
+     * @param lookupContext 当前解析任务的lookupContext, lookupFuture不能为null
+     * @param selectionKey  已注册的SelectionKey
+     * @param ops           需要监听的事件
+     */
+    public static void reattach(LookupContext lookupContext, SelectionKey selectionKey, int ops) {
+        if (null == lookupContext) {
+            throw new IllegalArgumentException("lookupContext".concat(Const.NULL_POINTER_TIPS));
+        }
+        LookupFuture lookupFuture = lookupContext.lookupFuture();
+        if (null == lookupFuture) {
+            throw new IllegalArgumentException("lookupFuture".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == selectionKey) {
+            throw new IllegalArgumentException("selectionKey".concat(Const.NULL_POINTER_TIPS));
+        }
+
+        selectionKey.attach(lookupFuture);
+        if (Thread.currentThread() == lookupFuture.mReactor.mReactorThread) {
+            selectionKey.interestOps(ops);
+            return;
+        }
+        lookupFuture.addUnarmedKey(selectionKey, ops);
+    }
+
+    /**
+     * 在事件循环线程将多个解析任务共享的channel注册到共享的Selector上, 就绪事件由handler处理
+     *
+     * @param lookupContext 当前解析任务的lookupContext, lookupFuture不能为null
+     * @param channel       非阻塞模式的channel
+     * @param ops           需要监听的事件
+     * @param handler       就绪事件的处理者
+     * @return 注册得到的SelectionKey
+     * @throws IOException 注册失败
+     */
+    public static SelectionKey registerShared(LookupContext lookupContext, SelectableChannel channel, int ops,
+                                              IChannelHandler handler) throws IOException {
+        if (null == lookupContext) {
+            throw new IllegalArgumentException("lookupContext".concat(Const.NULL_POINTER_TIPS));
+        }
+        LookupFuture lookupFuture = lookupContext.lookupFuture();
+        if (null == lookupFuture) {
+            throw new IllegalArgumentException("lookupFuture".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == channel) {
+            throw new IllegalArgumentException("channel".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == handler) {
+            throw new IllegalArgumentException("handler".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (Thread.currentThread() != lookupFuture.mReactor.mReactorThread) {
+            throw new IllegalStateException("registerShared should be called in " + REACTOR_THREAD_NAME);
+        }
+        return channel.register(lookupFuture.mReactor.mSelector, ops, handler);
+    }
+
+    /**
+     * 判断当前是否在事件循环线程
+     *
+     * @param lookupContext 当前解析任务的lookupContext
+     * @return 是否在事件循环线程
+     */
+    public static boolean inReactorThread(LookupContext lookupContext) {
+        LookupFuture lookupFuture = null != lookupContext ? lookupContext.lookupFuture() : null;
+        return null != lookupFuture && Thread.currentThread() == lookupFuture.mReactor.mReactorThread;
+    }
+
+    /**
+     * 在事件循环线程将解析任务标记为就绪, 下一轮事件循环时推进
+     *
+     * @param lookupFuture 解析任务
+     */
+    public static void markReady(LookupFuture lookupFuture) {
+        if (null == lookupFuture) {
+            throw new IllegalArgumentException("lookupFuture".concat(Const.NULL_POINTER_TIPS));
+        }
+        LookupReactor reactor = lookupFuture.mReactor;
+        if (Thread.currentThread() != reactor.mReactorThread) {
+            throw new IllegalStateException("markReady should be called in " + REACTOR_THREAD_NAME);
+        }
+        reactor.mMarkedReadyFutures.add(lookupFuture);
+    }
+
+    // NOTE: 就绪的解析任务按引用去重, 每次唤醒时的查找为O(1)
+    private static Set<LookupFuture> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<LookupFuture, Boolean>());
+    }
+
+    private void loop() {
+        Set<LookupFuture> readyFutures = newIdentitySet();
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            try {
+                // 等待其他线程完成注册
+                //noinspection EmptySynchronizedStatement
+                synchronized (mRegisterGuard) {
+                }
+                readyFutures.clear();
+                LookupFuture submittedFuture;
+                while (null != (submittedFuture = mSubmittedFutures.poll())) {
+                    if (submittedFuture.arm()) {
+                        mRunningFutures.add(submittedFuture);
+                        // 提交前可能已命中就绪事件, 首轮直接处理
+                        readyFutures.add(submittedFuture);
+                    }
+                }
+                if (!mMarkedReadyFutures.isEmpty()) {
+                    readyFutures.addAll(mMarkedReadyFutures);
+                    mMarkedReadyFutures.clear();
+                }
+                if (readyFutures.isEmpty()) {
+                    long selectTimeoutMills = nextTimeoutMills();
+                    if (0 <= selectTimeoutMills) {
+                        // NOTE: select(0)表示一直阻塞, 至少等待1ms
+                        mSelector.select(Math.max(selectTimeoutMills, 1));
+                    } else {
+                        mSelector.select();
+                    }
+                } else {
+                    mSelector.selectNow();
+                }
+                Set<SelectionKey> selectedKeys = mSelector.selectedKeys();
+                Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey selectionKey = keyIterator.next();
+                    keyIterator.remove();
+                    Object attachment = selectionKey.attachment();
+                    if (attachment instanceof LookupFuture) {
+                        readyFutures.add((LookupFuture) attachment);
+                    } else if (attachment instanceof IChannelHandler) {
+                        try {
+                            ((IChannelHandler) attachment).onSelected(selectionKey, readyFutures);
+                        } catch (Exception e) {
+                            DnsLog.w(e, "%s handle selected key failed", attachment);
+                        }
+                    }
+                }
+                dispatch(readyFutures);
+            } catch (Throwable tr) {
+                // 事件循环不能退出
+                DnsLog.w(tr, "%s loop failed", REACTOR_THREAD_NAME);
+            }
+        }
+    }
+
+    private void dispatch(Set<LookupFuture> readyFutures) {
+        long nowMills = SystemClock.elapsedRealtime();
+        Iterator<LookupFuture> futureIterator = mRunningFutures.iterator();
+        while (futureIterator.hasNext()) {
+            LookupFuture lookupFuture = futureIterator.next();
+            if (!lookupFuture.process(readyFutures.contains(lookupFuture), nowMills)) {
+                futureIterator.remove();
+            }
+        }
+    }
+
+    // return: 距离最近一个超时/重试时间点的毫秒数, 没有运行中的解析任务时返回-1
+    private long nextTimeoutMills() {
+        long nowMills = SystemClock.elapsedRealtime();
+        long timeoutMills = -1;
+        for (LookupFuture lookupFuture : mRunningFutures) {
+            long futureTimeoutMills = Math.max(lookupFuture.nextWakeUpMills() - nowMills, 0);
+            if (0 > timeoutMills || futureTimeoutMills < timeoutMills) {
+                timeoutMills = futureTimeoutMills;
+            }
+        }
+        return timeoutMills;
+    }
+
+    private static <LookupExtraT extends IDns.ILookupExtra> void tryLookup(LookupContext<LookupExtraT> lookupContext) {
+        Iterator<IDns.ISession> sessionIterator = lookupContext.sessions().iterator();
+        while (sessionIterator.hasNext()) {
+            IDns.ISession session = sessionIterator.next();
+            if (session.isEnd()) {
+                continue;
+            }
+            IDns.ISession.IToken token = session.getToken();
+            if (token.isReadable()) {
+                DnsLog.d("%s event readable", session.getDns().getDescription());
+                String[] ips = session.receiveResponse();
+                IDns.IStatistics statistics = session.getStatistics();
+                if (statistics.lookupSuccess() || statistics.lookupFailed()) {
+                    IDns dns = session.getDns();
+                    sessionIterator.remove();
+                    lookupContext.dnses().remove(dns);
+                    LookupHelper.lookupFinished(lookupContext, dns, statistics, ips);
+                    continue;
+                }
+            } else if (token.isWritable()) {
+                DnsLog.d("%s event writable", session.getDns().getDescription());
+                // 发起请求
+                session.request();
+            } else {
+                if (token.isConnectable()) {
+                    DnsLog.d("%s event connectable", session.getDns().getDescription());
+                    session.connect();
+                }
+                // 如果不是writable，则每次都需要finishConnect
+                boolean finishConnectRes = token.tryFinishConnect();
+                DnsLog.d("%s event finishConnect:%b", session.getDns().getDescription(), finishConnectRes);
+            }
+
+            // 每次检查下，及时清理
+            if (!token.isAvailable()) {
+                DnsLog.d("%s event not available, maybe closed", session.getDns().getDescription());
+                IDns dns = session.getDns();
+                sessionIterator.remove();
+                lookupContext.dnses().remove(dns);
+            }
+        }
+    }
+
+    /**
+     * 多个解析任务共享的channel(如HTTP pipelining)的就绪事件处理者
+     */
+    public interface IChannelHandler {
+
+        /**
+         * 在事件循环线程处理就绪事件
+         *
+         * @param selectionKey 就绪的SelectionKey
+         * @param readyFutures 因此可继续推进的解析任务, 由处理者添加, 按引用去重
+         */
+        void onSelected(SelectionKey selectionKey, Set<LookupFuture> readyFutures);
+    }
+
+    /**
+     * 单次非阻塞解析的Future
+     * 解析任务提交后由事件循环线程驱动其sessions, 调用方通过await等待解析结束
+     * NOTE: 提交后sessions仅由事件循环线程在持有当前对象锁时访问, 调用方需在cancel之后再访问sessions
+     */
+    public static final class LookupFuture {
+
+        private final LookupReactor mReactor;
+        private final LookupContext mLookupContext;
+        private final IRetry mRetry;
+        private final long mStartTimeMills;
+        private final int mTimeoutMills;
+        private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+
+        /* @Nullable */ private Runnable mDoneListener = null;
+        private List<SelectionKey> mUnarmedKeys = new ArrayList<>();
+        private List<Integer> mUnarmedOps = new ArrayList<>();
+        private int mRetriedTimes = 0;
+        private boolean mDone = false;
+
+        private LookupFuture(LookupReactor reactor, LookupContext lookupContext, IRetry retry) {
+            if (null == lookupContext) {
+                throw new IllegalArgumentException("lookupContext".concat(Const.NULL_POINTER_TIPS));
+            }
+            if (null == retry) {
+                throw new IllegalArgumentException("retry".concat(Const.NULL_POINTER_TIPS));
+            }
+
+            mReactor = reactor;
+            mLookupContext = lookupContext;
+            mRetry = retry;
+            mStartTimeMills = SystemClock.elapsedRealtime();
+            mTimeoutMills = lookupContext.timeoutMills();
+        }
+
+        /**
+         * 提交到事件循环, 提交后调用方不能再访问sessions
+         */
+        void submit() {
+            mReactor.mSubmittedFutures.offer(this);
+            mReactor.mSelector.wakeup();
+        }
+
+        /**
+         * 等待解析结束
+         *
+         * @param timeoutMills 等待时间, 单位ms
+         * @return 是否在等待时间内结束
+         */
+        boolean await(long timeoutMills) {
+            try {
+                return mDoneLatch.await(Math.max(timeoutMills, 0), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                DnsLog.d(e, "await lookup future interrupted");
+                return false;
+            }
+        }
+
+        /**
+         * 设置解析结束的监听, 可能在事件循环线程回调, 不能执行耗时操作
+         */
+        synchronized void onDone(Runnable doneListener) {
+            mDoneListener = doneListener;
+        }
+
+        synchronized boolean isDone() {
+            return mDone;
+        }
+
+        /**
+         * 结束解析任务, 返回后事件循环不会再访问sessions
+         */
+        synchronized void cancel() {
+            complete();
+        }
+
+        private synchronized void addUnarmedKey(SelectionKey selectionKey, int ops) {
+            if (null != mUnarmedKeys) {
+                mUnarmedKeys.add(selectionKey);
+                mUnarmedOps.add(ops);
+            } else if (selectionKey.isValid()) {
+                selectionKey.interestOps(ops);
+            }
+        }
+
+        // return: 是否需要事件循环继续驱动
+        private synchronized boolean arm() {
+            for (int i = 0; i < mUnarmedKeys.size(); i++) {
+                SelectionKey selectionKey = mUnarmedKeys.get(i);
+                if (selectionKey.isValid()) {
+                    selectionKey.interestOps(mUnarmedOps.get(i));
+                }
+            }
+            mUnarmedKeys = null;
+            mUnarmedOps = null;
+            return !mDone;
+        }
+
+        // return: 是否需要事件循环继续驱动
+        private synchronized boolean process(boolean ready, long nowMills) {
+            if (mDone) {
+                return false;
+            }
+            if (ready) {
+                tryLookup(mLookupContext);
+                // 重试session完成时会结束其parent, 及时清理
+                LookupHelper.clearEndedSession(mLookupContext);
+            }
+            List sessions = mLookupContext.sessions();
+            if (sessions.isEmpty()) {
+                complete();
+                return false;
+            }
+            if (nowMills - mStartTimeMills >= mTimeoutMills) {
+                DnsLog.d("lookup future for %s timeout, sessions:%d", mLookupContext.hostname(), sessions.size());
+                complete();
+                return false;
+            }
+            if (LookupHelper.canRetry(mStartTimeMills, mTimeoutMills, mRetry.maxRetryTimes(), mRetriedTimes)) {
+                DnsLog.d("sessions is not empty, sessions:%d, enter retry", sessions.size());
+                mRetriedTimes++;
+                //noinspection unchecked
+                LookupContext newLookupContext = mLookupContext.newLookupContext(
+                        new LookupParameters.Builder<>(mLookupContext.asLookupParameters())
+                                .curRetryTime(mRetriedTimes)
+                                .build());
+                mRetry.retryNonBlock(newLookupContext);
+            }
+            return true;
+        }
+
+        private long nextWakeUpMills() {
+            int maxRetryTimes = mRetry.maxRetryTimes();
+            if (mRetriedTimes < maxRetryTimes) {
+                // NOTE: 与LookupHelper.canRetry保持一致, 超过重试时间点后才重试
+                return mStartTimeMills + (long) mTimeoutMills * (mRetriedTimes + 1) / (maxRetryTimes + 1) + 1;
+            }
+            return mStartTimeMills + mTimeoutMills;
+        }
+
+        private void complete() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            mDoneLatch.countDown();
+            if (null != mDoneListener) {
+                mDoneListener.run();
+            }
+        }
+    }
+}
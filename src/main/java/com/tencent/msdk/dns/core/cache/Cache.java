@@ -1,25 +1,91 @@
 package com.tencent.msdk.dns.core.cache;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 
+import com.tencent.msdk.dns.DnsConfig;
 import com.tencent.msdk.dns.DnsService;
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.IpAddress;
+import com.tencent.msdk.dns.base.utils.IpValidator;
+import com.tencent.msdk.dns.base.utils.NetworkStack;
 import com.tencent.msdk.dns.core.Const;
+import com.tencent.msdk.dns.core.DnsDescription;
 import com.tencent.msdk.dns.core.ICache;
+import com.tencent.msdk.dns.core.IDns;
+import com.tencent.msdk.dns.core.IpSet;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.cache.database.CacheDbHelper;
 import com.tencent.msdk.dns.core.cache.database.LookupCache;
+import com.tencent.msdk.dns.core.cache.database.LookupCacheWriter;
+import com.tencent.msdk.dns.core.cache.database.LookupSnapshot;
+import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 内存缓存, 按条目数及估算的内存占用限制容量
+ * 超出容量时按CLOCK(二次机会LRU)淘汰, 过期条目按过期时间顺序由后台任务清理
+ * <p>
+ * 每个域名的IPv4及IPv6结果分别保存, 各自过期, 双栈结果由两者合并得到
+ */
 public final class Cache implements ICache {
 
-    private final Map<String, LookupResult> mHostnameIpsMap = new ConcurrentHashMap<>();
+    // 过期清理的最小间隔, 过期时间相近的条目合并为一次清理
+    private static final long MIN_SWEEP_INTERVAL_MILLS = 1000;
+    // 估算内存占用时每个条目及每个IP的固定开销, 仅用于容量控制
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final int IP_OVERHEAD_BYTES = 48;
+    private static final IpAddress[] EMPTY_ADDRESSES = new IpAddress[0];
 
+    private static final Comparator<FamilyEntry> EXPIRED_TIME_COMPARATOR = new Comparator<FamilyEntry>() {
+        @Override
+        public int compare(FamilyEntry o1, FamilyEntry o2) {
+            return o1.mExpiredTime < o2.mExpiredTime ? -1 : (o1.mExpiredTime == o2.mExpiredTime ? 0 : 1);
+        }
+    };
+
+    // NOTE: 读操作不加锁, 写操作需同时持有mLock, HostEntry不可变, 更新时整体替换
+    private final Map<String, HostEntry> mHostnameEntryMap = new ConcurrentHashMap<>();
+
+    private final Object mLock = new Object();
+    // 以下字段由mLock保护
+    // 按写入顺序排列, 淘汰时从头部开始检查
+    private final LinkedHashMap<String, HostEntry> mClockQueue = new LinkedHashMap<>();
+    // 按过期时间排列, 已被删除或替换的条目在出队时跳过
+    private final PriorityQueue<FamilyEntry> mExpiryQueue = new PriorityQueue<>(11, EXPIRED_TIME_COMPARATOR);
+    private long mBytes = 0;
+    private long mNextSweepTime = Long.MAX_VALUE;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+    private final AtomicLong mExpirationCount = new AtomicLong();
+
+    private final Runnable mSweepTask = new Runnable() {
+        @Override
+        public void run() {
+            sweepExpired();
+        }
+    };
+
+    // NOTE: 仅用于迁移旧版本保存在数据库中的缓存
     private final CacheDbHelper cacheDbHelper = new CacheDbHelper(DnsService.getContext());
+    private final LookupSnapshot mSnapshot = new LookupSnapshot(DnsService.getContext());
+    // NOTE: 解析线程只写入内存队列, 由WORK线程合并后批量写入快照
+    private final LookupCacheWriter cacheDbWriter = new LookupCacheWriter(mSnapshot);
 
     private boolean getCachedIpEnable() {
         return DnsService.getDnsConfig().cachedIpEnable;
@@ -36,20 +102,96 @@ public final class Cache implements ICache {
         return CacheHolder.instance;
     }
 
+    /**
+     * 打开本地缓存快照并将其中的结果加载到内存, 快照不存在时从旧版本的数据库中迁移
+     * NOTE: 在WORK线程中调用, 加载完成前未命中的域名按未命中处理, 解析路径不读取磁盘
+     */
     public void readFromDb() {
-        if (getCachedIpEnable()) {
-            List<LookupCache> allCache = cacheDbHelper.getAll();
-            ArrayList<String> expiredList = new ArrayList<>();
+        if (!getCachedIpEnable()) {
+            return;
+        }
+        DnsConfig dnsConfig = DnsService.getDnsConfig();
+        if (mSnapshot.open(!dnsConfig.useExpiredIpEnable, dnsConfig.maxNumOfCacheEntries)) {
+            migrateFromDb();
+        } else {
+            loadFromSnapshot();
+        }
+        // 伴随域名预取的模型与缓存一起保存
+        CooccurrenceModel.getInstance().open(DnsService.getContext());
+    }
+
+    private void migrateFromDb() {
+        List<LookupCache> allCache = cacheDbHelper.getAll();
+        if (allCache.isEmpty()) {
+            return;
+        }
+        List<LookupCache> migratedList = new ArrayList<>();
+        List<String> evictedList;
+        synchronized (mLock) {
             for (LookupCache lookupCache : allCache) {
-                mHostnameIpsMap.put(lookupCache.hostname, lookupCache.lookupResult);
+                if (null == lookupCache.lookupResult || isExpiredBeforeReboot(lookupCache)) {
+                    continue;
+                }
+                // 旧版本按域名保存的结果, 拆分为IPv4及IPv6两条, 过期时间保持不变
+                List<LookupCache> familyCaches = DnsDescription.Family.UN_SPECIFIC == lookupCache.family
+                        ? splitByFamily(lookupCache) : Collections.singletonList(lookupCache);
+                for (LookupCache familyCache : familyCaches) {
+                    putLocked(familyCache.hostname, familyCache.family, familyCache.lookupResult);
+                    if (!familyCache.isExpired()) {
+                        migratedList.add(familyCache);
+                    }
+                }
+            }
+            evictedList = evictLocked();
+        }
+        Set<String> evictedSet = new HashSet<>(evictedList);
+        for (LookupCache lookupCache : migratedList) {
+            if (!evictedSet.contains(lookupCache.hostname)) {
+                cacheDbWriter.insert(lookupCache);
+            }
+        }
+        // 迁移后清空数据库, 之后只使用快照
+        cacheDbHelper.clear();
+        DnsLog.d("Cache migrate %d entries from db", migratedList.size());
+    }
+
+    // NOTE: 数据库中的过期时间基于elapsedRealtime, 重启后重新计时, 剩余时间超过ttl说明已经重启过, 视为过期
+    private static boolean isExpiredBeforeReboot(LookupCache lookupCache) {
+        if (!(lookupCache.lookupResult.stat instanceof AbsRestDns.Statistics)) {
+            return false;
+        }
+        AbsRestDns.Statistics stat = (AbsRestDns.Statistics) lookupCache.lookupResult.stat;
+        Integer ttl = null != stat.ttl ? stat.ttl.get(lookupCache.hostname) : null;
+        return null != ttl && stat.expiredTime - SystemClock.elapsedRealtime() > ttl * 1000L;
+    }
 
-                if (lookupCache.isExpired()) {
-                    expiredList.add(lookupCache.hostname);
+    // 加载快照中的所有结果, 内存中已有的地址族以内存为准(加载期间解析得到的结果更新)
+    private void loadFromSnapshot() {
+        long startTime = SystemClock.elapsedRealtime();
+        List<LookupCache> lookupCaches = mSnapshot.loadAll();
+        boolean useExpiredIpEnable = DnsService.getDnsConfig().useExpiredIpEnable;
+        List<String> staleKeys = new ArrayList<>();
+        List<String> evictedList;
+        synchronized (mLock) {
+            for (LookupCache lookupCache : lookupCaches) {
+                if (!useExpiredIpEnable && lookupCache.isExpired()) {
+                    staleKeys.add(lookupCache.key());
+                    continue;
                 }
+                HostEntry hostEntry = mHostnameEntryMap.get(lookupCache.hostname);
+                if (null != hostEntry && null != (DnsDescription.Family.INET == lookupCache.family
+                        ? hostEntry.mInet : hostEntry.mInet6)) {
+                    continue;
+                }
+                putLocked(lookupCache.hostname, lookupCache.family, lookupCache.lookupResult);
             }
-            String [] expiredHosts = expiredList.toArray(new String[expiredList.size()]);
-            // 内存读取后，清空本地已过期的缓存
-            cacheDbHelper.delete(expiredHosts);
+            evictedList = evictLocked();
+        }
+        DnsLog.d("Cache load %d entries from snapshot, cost: %dms", lookupCaches.size() - staleKeys.size(),
+                SystemClock.elapsedRealtime() - startTime);
+        Collections.addAll(staleKeys, toDbKeys(evictedList));
+        if (!staleKeys.isEmpty()) {
+            cacheDbWriter.delete(staleKeys.toArray(new String[staleKeys.size()]));
         }
     }
 
@@ -68,28 +210,85 @@ public final class Cache implements ICache {
         }
     }
 
+    /**
+     * 获取缓存的解析结果, 可能已过期
+     *
+     * @param hostname 单个域名
+     * @param family   地址族, UN_SPECIFIC时返回IPv4及IPv6合并的结果, 任一地址族没有缓存时返回null
+     * @return 没有缓存时返回null
+     */
     @Override
-    public LookupResult get(String hostname) {
+    public LookupResult get(String hostname, int family) {
         if (TextUtils.isEmpty(hostname)) {
             throw new IllegalArgumentException("hostname".concat(Const.EMPTY_TIPS));
         }
+        if (DnsDescription.isFamilyInvalid(family)) {
+            throw new IllegalArgumentException("family".concat(Const.INVALID_TIPS));
+        }
 
-        return mHostnameIpsMap.get(hostname);
+        HostEntry hostEntry = mHostnameEntryMap.get(hostname);
+        LookupResult lookupResult = null;
+        long expiredTime = 0;
+        if (null != hostEntry) {
+            hostEntry.markReferenced();
+            switch (family) {
+                case DnsDescription.Family.INET:
+                    if (null != hostEntry.mInet) {
+                        lookupResult = hostEntry.mInet.mLookupResult;
+                        expiredTime = hostEntry.mInet.mExpiredTime;
+                    }
+                    break;
+                case DnsDescription.Family.INET6:
+                    if (null != hostEntry.mInet6) {
+                        lookupResult = hostEntry.mInet6.mLookupResult;
+                        expiredTime = hostEntry.mInet6.mExpiredTime;
+                    }
+                    break;
+                default:
+                    lookupResult = hostEntry.mDualStackLookupResult;
+                    expiredTime = hostEntry.dualStackExpiredTime();
+                    break;
+            }
+        }
+        if (null == lookupResult || (expiredTime <= SystemClock.elapsedRealtime()
+                && !DnsService.getDnsConfig().useExpiredIpEnable)) {
+            mMissCount.incrementAndGet();
+        } else {
+            mHitCount.incrementAndGet();
+        }
+        return lookupResult;
     }
 
+    /**
+     * 缓存解析结果, 替换同一域名同一地址族之前的结果, 不影响另一地址族
+     *
+     * @param hostname     单个域名
+     * @param family       地址族, 仅支持INET及INET6
+     * @param lookupResult 解析结果
+     */
     @Override
-    public void add(String hostname, LookupResult lookupResult) {
+    public void add(String hostname, int family, LookupResult lookupResult) {
         if (TextUtils.isEmpty(hostname)) {
             throw new IllegalArgumentException("hostname".concat(Const.EMPTY_TIPS));
         }
+        if (DnsDescription.Family.INET != family && DnsDescription.Family.INET6 != family) {
+            throw new IllegalArgumentException("family".concat(Const.INVALID_TIPS));
+        }
         if (null == lookupResult) {
             throw new IllegalArgumentException("lookupResult".concat(Const.NULL_POINTER_TIPS));
         }
 
-        DnsLog.d("Cache %s for %s", lookupResult, hostname);
-        mHostnameIpsMap.put(hostname, lookupResult);
+        DnsLog.d("Cache %s for %s(%d)", lookupResult, hostname, family);
+        List<String> evictedList;
+        synchronized (mLock) {
+            putLocked(hostname, family, lookupResult);
+            evictedList = evictLocked();
+        }
         if (getCachedIpEnable()) {
-            cacheDbHelper.insert(new LookupCache(hostname, lookupResult));
+            cacheDbWriter.insert(new LookupCache(hostname, family, lookupResult));
+            if (!evictedList.isEmpty()) {
+                cacheDbWriter.delete(toDbKeys(evictedList));
+            }
         }
     }
 
@@ -99,20 +298,412 @@ public final class Cache implements ICache {
             throw new IllegalArgumentException("hostname".concat(Const.EMPTY_TIPS));
         }
 
-        mHostnameIpsMap.remove(hostname);
+        mSnapshot.discard(hostname);
+        synchronized (mLock) {
+            removeLocked(hostname);
+        }
 
         if (getCachedIpEnable()) {
-            cacheDbHelper.delete(hostname);
+            cacheDbWriter.delete(toDbKeys(Collections.singletonList(hostname)));
         }
 
     }
 
     @Override
     public void clear() {
-        mHostnameIpsMap.clear();
+        mSnapshot.discardAll();
+        synchronized (mLock) {
+            mHostnameEntryMap.clear();
+            mClockQueue.clear();
+            mExpiryQueue.clear();
+            mBytes = 0;
+            if (Long.MAX_VALUE != mNextSweepTime) {
+                DnsExecutors.MAIN.cancel(mSweepTask);
+                mNextSweepTime = Long.MAX_VALUE;
+            }
+        }
+
+        if (getCachedIpEnable()) {
+            cacheDbWriter.clear();
+        }
+    }
+
+    /**
+     * 获取未过期缓存对应当前网络栈的解析结果
+     * 结果在写入缓存时预先计算, 获取时不创建任何对象, 供命中缓存的快速路径使用
+     *
+     * @param hostname    单个域名
+     * @param curNetStack 当前网络栈, 双栈时要求IPv4及IPv6结果均未过期
+     * @return 未命中缓存, 缓存已过期或当前网络栈下没有可用IP时返回null
+     */
+    /* @Nullable */
+    public IpSet getFreshIpSet(String hostname, int curNetStack) {
+        HostEntry hostEntry = mHostnameEntryMap.get(hostname);
+        if (null == hostEntry) {
+            // NOTE: 未命中时会继续走完整的解析流程, 由get()计数
+            return null;
+        }
+        long now = SystemClock.elapsedRealtime();
+        IpSet ipSet;
+        switch (curNetStack) {
+            case NetworkStack.IPV4_ONLY:
+                ipSet = null != hostEntry.mInet && hostEntry.mInet.mExpiredTime > now
+                        ? hostEntry.mInet.mHitIpSet : null;
+                break;
+            case NetworkStack.IPV6_ONLY:
+                ipSet = null != hostEntry.mInet6 && hostEntry.mInet6.mExpiredTime > now
+                        ? hostEntry.mInet6.mHitIpSet : null;
+                break;
+            case NetworkStack.DUAL_STACK:
+                ipSet = hostEntry.dualStackExpiredTime() > now ? hostEntry.mDualStackHitIpSet : null;
+                break;
+            default:
+                ipSet = null;
+                break;
+        }
+        if (null != ipSet) {
+            hostEntry.markReferenced();
+            mHitCount.incrementAndGet();
+        }
+        return ipSet;
+    }
+
+    /**
+     * 判断域名对应当前网络栈的缓存在一段时间后是否仍未过期, 不计入命中统计
+     *
+     * @param hostname      单个域名
+     * @param curNetStack   当前网络栈, 双栈时要求IPv4及IPv6结果均未过期
+     * @param minFreshMills 要求缓存至少还有多长时间过期, 单位为ms
+     * @return 缓存在minFreshMills后仍未过期时返回true
+     */
+    public boolean isFresh(String hostname, int curNetStack, long minFreshMills) {
+        HostEntry hostEntry = mHostnameEntryMap.get(hostname);
+        if (null == hostEntry) {
+            return false;
+        }
+        long expiredTime;
+        switch (curNetStack) {
+            case NetworkStack.IPV4_ONLY:
+                expiredTime = null != hostEntry.mInet ? hostEntry.mInet.mExpiredTime : 0;
+                break;
+            case NetworkStack.IPV6_ONLY:
+                expiredTime = null != hostEntry.mInet6 ? hostEntry.mInet6.mExpiredTime : 0;
+                break;
+            case NetworkStack.DUAL_STACK:
+                expiredTime = hostEntry.dualStackExpiredTime();
+                break;
+            default:
+                expiredTime = 0;
+                break;
+        }
+        return expiredTime > SystemClock.elapsedRealtime() + minFreshMills;
+    }
+
+    /**
+     * 获取缓存统计数据
+     *
+     * @return 当前统计数据的快照
+     */
+    public CacheStats getStats() {
+        int size;
+        long bytes;
+        synchronized (mLock) {
+            size = mClockQueue.size();
+            bytes = mBytes;
+        }
+        return new CacheStats(mHitCount.get(), mMissCount.get(), mEvictionCount.get(), mExpirationCount.get(),
+                size, bytes);
+    }
+
+    private void putLocked(String hostname, int family, LookupResult lookupResult) {
+        FamilyEntry familyEntry = new FamilyEntry(hostname, family, lookupResult);
+        HostEntry oldHostEntry = removeLocked(hostname);
+        FamilyEntry inet = null != oldHostEntry ? oldHostEntry.mInet : null;
+        FamilyEntry inet6 = null != oldHostEntry ? oldHostEntry.mInet6 : null;
+        if (DnsDescription.Family.INET == family) {
+            inet = familyEntry;
+        } else {
+            inet6 = familyEntry;
+        }
+        putLocked(new HostEntry(hostname, inet, inet6));
+        if (Long.MAX_VALUE != familyEntry.mExpiredTime) {
+            mExpiryQueue.add(familyEntry);
+            scheduleSweepLocked(familyEntry.mExpiredTime);
+        }
+    }
+
+    private void putLocked(HostEntry hostEntry) {
+        mHostnameEntryMap.put(hostEntry.mHostname, hostEntry);
+        mClockQueue.put(hostEntry.mHostname, hostEntry);
+        mBytes += hostEntry.mBytes;
+    }
+
+    /* @Nullable */
+    private HostEntry removeLocked(String hostname) {
+        HostEntry hostEntry = mHostnameEntryMap.remove(hostname);
+        if (null != hostEntry) {
+            mClockQueue.remove(hostname);
+            mBytes -= hostEntry.mBytes;
+        }
+        return hostEntry;
+    }
+
+    // return: 被淘汰的域名
+    private List<String> evictLocked() {
+        DnsConfig dnsConfig = DnsService.getDnsConfig();
+        int maxEntries = dnsConfig.maxNumOfCacheEntries;
+        long maxBytes = dnsConfig.maxCacheBytes;
+        List<String> evictedList = new ArrayList<>();
+        while ((0 < maxEntries && maxEntries < mClockQueue.size()) || (0 < maxBytes && maxBytes < mBytes)) {
+            HostEntry eldest = mClockQueue.values().iterator().next();
+            if (eldest.mReferenced) {
+                // 上次检查后被访问过, 清除标记并移到队尾
+                eldest.mReferenced = false;
+                mClockQueue.remove(eldest.mHostname);
+                mClockQueue.put(eldest.mHostname, eldest);
+                continue;
+            }
+            removeLocked(eldest.mHostname);
+            evictedList.add(eldest.mHostname);
+        }
+        if (!evictedList.isEmpty()) {
+            mEvictionCount.addAndGet(evictedList.size());
+            DnsLog.d("Cache evict %s", evictedList);
+        }
+        return evictedList;
+    }
+
+    private void scheduleSweepLocked(long expiredTime) {
+        // NOTE: 允许使用过期缓存时, 过期条目仍需保留, 仅受容量限制
+        if (Long.MAX_VALUE == expiredTime || DnsService.getDnsConfig().useExpiredIpEnable) {
+            return;
+        }
+        long sweepTime = Math.max(expiredTime, SystemClock.elapsedRealtime() + MIN_SWEEP_INTERVAL_MILLS);
+        if (sweepTime >= mNextSweepTime) {
+            return;
+        }
+        if (Long.MAX_VALUE != mNextSweepTime) {
+            DnsExecutors.MAIN.cancel(mSweepTask);
+        }
+        mNextSweepTime = sweepTime;
+        DnsExecutors.MAIN.schedule(mSweepTask, sweepTime - SystemClock.elapsedRealtime());
+    }
 
+    private void sweepExpired() {
+        List<String> expiredList = new ArrayList<>();
+        synchronized (mLock) {
+            mNextSweepTime = Long.MAX_VALUE;
+            long now = SystemClock.elapsedRealtime();
+            FamilyEntry head;
+            while (null != (head = mExpiryQueue.peek()) && head.mExpiredTime <= now) {
+                mExpiryQueue.poll();
+                HostEntry hostEntry = mHostnameEntryMap.get(head.mHostname);
+                if (null == hostEntry || (head != hostEntry.mInet && head != hostEntry.mInet6)) {
+                    continue;
+                }
+                // 仅移除过期的地址族, 另一地址族的结果保留
+                removeLocked(head.mHostname);
+                FamilyEntry inet = head == hostEntry.mInet ? null : hostEntry.mInet;
+                FamilyEntry inet6 = head == hostEntry.mInet6 ? null : hostEntry.mInet6;
+                if (null != inet || null != inet6) {
+                    putLocked(new HostEntry(head.mHostname, inet, inet6));
+                }
+                expiredList.add(LookupCache.key(head.mHostname, head.mFamily));
+            }
+            if (null != head) {
+                scheduleSweepLocked(head.mExpiredTime);
+            }
+        }
+        if (expiredList.isEmpty()) {
+            return;
+        }
+        mExpirationCount.addAndGet(expiredList.size());
+        DnsLog.d("Cache sweep expired %s", expiredList);
         if (getCachedIpEnable()) {
-            cacheDbHelper.clear();
+            cacheDbWriter.delete(expiredList.toArray(new String[expiredList.size()]));
+        }
+    }
+
+    // 域名对应的持久化主键
+    private static String[] toDbKeys(List<String> hostnames) {
+        String[] keys = new String[hostnames.size() * 2];
+        int i = 0;
+        for (String hostname : hostnames) {
+            keys[i++] = LookupCache.key(hostname, DnsDescription.Family.INET);
+            keys[i++] = LookupCache.key(hostname, DnsDescription.Family.INET6);
+        }
+        return keys;
+    }
+
+    private static List<LookupCache> splitByFamily(LookupCache lookupCache) {
+        List<String> v4IpList = new ArrayList<>();
+        List<String> v6IpList = new ArrayList<>();
+        classifyIps(lookupCache.lookupResult.ipSet.ips, v4IpList, v6IpList);
+        IDns.IStatistics stat = lookupCache.lookupResult.stat;
+        List<LookupCache> familyCaches = new ArrayList<>(2);
+        if (!v4IpList.isEmpty()) {
+            familyCaches.add(new LookupCache(lookupCache.hostname, DnsDescription.Family.INET,
+                    new LookupResult<>(v4IpList.toArray(Const.EMPTY_IPS), stat)));
+        }
+        if (!v6IpList.isEmpty()) {
+            familyCaches.add(new LookupCache(lookupCache.hostname, DnsDescription.Family.INET6,
+                    new LookupResult<>(v6IpList.toArray(Const.EMPTY_IPS), stat)));
+        }
+        return familyCaches;
+    }
+
+    private static void classifyIps(/* @Nullable */String[] ips, List<String> v4IpList, List<String> v6IpList) {
+        if (null == ips) {
+            return;
+        }
+        for (String ip : ips) {
+            if (IpValidator.isV4Ip(ip)) {
+                v4IpList.add(ip);
+            } else if (IpValidator.isV6Ip(ip)) {
+                v6IpList.add(ip);
+            }
+        }
+    }
+
+    // 解析并按地址族筛选IP, 每个IP只在写入缓存时解析一次
+    private static IpAddress[] parseIps(/* @Nullable */String[] ips, int family) {
+        if (null == ips || 0 == ips.length) {
+            return EMPTY_ADDRESSES;
+        }
+        List<IpAddress> addressList = new ArrayList<>(ips.length);
+        for (String ip : ips) {
+            IpAddress address = IpAddress.parse(ip);
+            if (null != address && (DnsDescription.Family.INET6 == family) == address.isV6()) {
+                addressList.add(address);
+            }
+        }
+        return addressList.toArray(EMPTY_ADDRESSES);
+    }
+
+    // NOTE: IpSet等对外接口仍使用字符串, 由字符串解析得到的IpAddress直接返回原字符串, 不会重新生成
+    private static String[] toIps(IpAddress[] addresses) {
+        String[] ips = new String[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            ips[i] = addresses[i].toString();
+        }
+        return ips;
+    }
+
+    // 估算IP的内存占用, 按字符串内容及固定开销计算
+    private static int estimateBytes(IpAddress[] addresses) {
+        int bytes = 0;
+        for (IpAddress address : addresses) {
+            bytes += IP_OVERHEAD_BYTES + 2 * address.toString().length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 单个地址族的解析结果
+     */
+    private static final class FamilyEntry {
+
+        final String mHostname;
+        final int mFamily;
+        final LookupResult mLookupResult;
+        // 按地址族筛选后的IP
+        final IpAddress[] mAddresses;
+        // 快速路径使用的结果, 非HTTPDNS解析结果或没有可用IP时为null
+        /* @Nullable */ final IpSet mHitIpSet;
+        // 非HTTPDNS解析结果不会过期
+        final long mExpiredTime;
+
+        FamilyEntry(String hostname, int family, LookupResult lookupResult) {
+            mHostname = hostname;
+            mFamily = family;
+            mLookupResult = lookupResult;
+            mAddresses = parseIps(lookupResult.ipSet.ips, family);
+            // NOTE: 仅HTTPDNS解析结果可以走快速路径
+            boolean restResult = lookupResult.stat instanceof AbsRestDns.Statistics;
+            if (!restResult || 0 == mAddresses.length) {
+                mHitIpSet = null;
+            } else {
+                String[] ips = toIps(mAddresses);
+                mHitIpSet = DnsDescription.Family.INET == family
+                        ? new IpSet(ips, Const.EMPTY_IPS) : new IpSet(Const.EMPTY_IPS, ips);
+            }
+            mExpiredTime = restResult ? ((AbsRestDns.Statistics) lookupResult.stat).expiredTime : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 单个域名的缓存条目, 不可变
+     */
+    private static final class HostEntry {
+
+        final String mHostname;
+        /* @Nullable */ final FamilyEntry mInet;
+        /* @Nullable */ final FamilyEntry mInet6;
+        // IPv4及IPv6结果均存在时合并得到的双栈结果, 否则为null
+        /* @Nullable */ final LookupResult mDualStackLookupResult;
+        /* @Nullable */ final IpSet mDualStackHitIpSet;
+        final int mBytes;
+        // NOTE: 命中时置位, 淘汰时给予一次保留机会, 命中路径无需加锁
+        volatile boolean mReferenced = false;
+
+        HostEntry(String hostname, /* @Nullable */FamilyEntry inet, /* @Nullable */FamilyEntry inet6) {
+            mHostname = hostname;
+            mInet = inet;
+            mInet6 = inet6;
+            if (null != inet && null != inet6) {
+                mDualStackLookupResult = mergeLookupResult(inet, inet6);
+                mDualStackHitIpSet = null == inet.mHitIpSet && null == inet6.mHitIpSet
+                        ? null : new IpSet(toIps(inet.mAddresses), toIps(inet6.mAddresses));
+            } else {
+                mDualStackLookupResult = null;
+                mDualStackHitIpSet = null;
+            }
+            mBytes = ENTRY_OVERHEAD_BYTES + 2 * hostname.length()
+                    + (null != inet ? estimateBytes(inet.mAddresses) : 0)
+                    + (null != inet6 ? estimateBytes(inet6.mAddresses) : 0);
+        }
+
+        long dualStackExpiredTime() {
+            return null != mInet && null != mInet6 ? Math.min(mInet.mExpiredTime, mInet6.mExpiredTime) : 0;
+        }
+
+        void markReferenced() {
+            // 已置位时不再写入, 减少多线程命中同一条目时的缓存行竞争
+            if (!mReferenced) {
+                mReferenced = true;
+            }
+        }
+
+        // 合并两个地址族的结果, 过期时间取较早者
+        private static LookupResult mergeLookupResult(FamilyEntry inet, FamilyEntry inet6) {
+            String[] ips = new String[inet.mAddresses.length + inet6.mAddresses.length];
+            int i = 0;
+            for (IpAddress address : inet.mAddresses) {
+                ips[i++] = address.toString();
+            }
+            for (IpAddress address : inet6.mAddresses) {
+                ips[i++] = address.toString();
+            }
+            if (!(inet.mLookupResult.stat instanceof AbsRestDns.Statistics)
+                    || !(inet6.mLookupResult.stat instanceof AbsRestDns.Statistics)) {
+                return new LookupResult<>(ips, inet.mLookupResult.stat);
+            }
+            AbsRestDns.Statistics inetStat = (AbsRestDns.Statistics) inet.mLookupResult.stat;
+            AbsRestDns.Statistics inet6Stat = (AbsRestDns.Statistics) inet6.mLookupResult.stat;
+            AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+            stat.ips = ips;
+            stat.errorCode = inetStat.errorCode;
+            stat.clientIp = inetStat.clientIp;
+            // NOTE: 数据库中保存了ttl, 仅改为二进制编码前保存的结果没有ttl, 解码后为空
+            stat.ttl = null != inetStat.ttl ? new HashMap<>(inetStat.ttl) : new HashMap<String, Integer>();
+            if (null != inet6Stat.ttl) {
+                for (Map.Entry<String, Integer> entry : inet6Stat.ttl.entrySet()) {
+                    Integer ttl = stat.ttl.get(entry.getKey());
+                    stat.ttl.put(entry.getKey(), null == ttl ? entry.getValue() : Math.min(ttl, entry.getValue()));
+                }
+            }
+            stat.expiredTime = Math.min(inetStat.expiredTime, inet6Stat.expiredTime);
+            return new LookupResult<>(ips, stat);
         }
     }
 }
@@ -0,0 +1,53 @@
+package com.tencent.msdk.dns.core.cache;
+
+/**
+ * 内存缓存统计数据快照
+ */
+public final class CacheStats {
+
+    /**
+     * 命中次数, 包含命中已过期但允许使用过期缓存的情况
+     */
+    public final long hitCount;
+    /**
+     * 未命中次数, 包含缓存已过期的情况
+     */
+    public final long missCount;
+    /**
+     * 因超出容量限制被淘汰的条目数
+     */
+    public final long evictionCount;
+    /**
+     * 过期后被后台清理的条目数
+     */
+    public final long expirationCount;
+    /**
+     * 当前条目数
+     */
+    public final int size;
+    /**
+     * 当前估算的内存占用, 单位为字节
+     */
+    public final long bytes;
+
+    CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount, int size, long bytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{"
+                + "hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount
+                + ", expirationCount=" + expirationCount
+                + ", size=" + size
+                + ", bytes=" + bytes
+                + '}';
+    }
+}
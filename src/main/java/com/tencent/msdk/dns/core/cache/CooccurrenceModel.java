@@ -0,0 +1,535 @@
+package com.tencent.msdk.dns.core.cache;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.tencent.msdk.dns.DnsConfig;
+import com.tencent.msdk.dns.DnsService;
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.lifecycle.ActivityLifecycleCallbacksWrapper;
+import com.tencent.msdk.dns.base.lifecycle.ActivityLifecycleDetector;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 域名共现模型, 学习哪些域名总是先后被解析
+ * <p>
+ * 域名B在域名A之后WINDOW_MILLS内被解析时, 记一次A到B的共现
+ * 解析A时, 共现次数及置信度(共现次数 / A的解析次数)足够高的B即为预测的伴随域名, 可与A一起解析
+ * 模型大小有限: 最多记录MAX_LEADERS个域名, 每个域名最多记录MAX_FOLLOWERS个伴随域名, 计数过大时减半以适应变化
+ * 解析线程只将域名写入无锁的环形队列, 由WORK线程批量学习及预测
+ * <p>
+ * format: magic(4B) | version(4B) | 域名数(4B) | {域名 | 解析次数(4B) | 伴随域名数(4B) | {伴随域名 | 共现次数(4B)}...}...
+ */
+public final class CooccurrenceModel {
+
+    /**
+     * 业务侧的单域名解析预测到伴随域名时的回调
+     */
+    public interface PredictionListener {
+
+        /**
+         * 在WORK线程回调
+         *
+         * @param hostname   解析的域名
+         * @param companions 预测的伴随域名, 不为空
+         */
+        void onPredicted(String hostname, List<String> companions);
+    }
+
+    public static final String FILE_NAME = "Cooccurrence.model";
+
+    private static final int MAGIC = 0x48434F4D;
+    private static final int VERSION = 1;
+
+    // 先后解析的时间间隔不超过该值时视为共现
+    private static final long WINDOW_MILLS = 3 * 1000;
+    // 窗口内最多记录的最近解析的域名数
+    private static final int MAX_RECENT = 16;
+    private static final int MAX_LEADERS = 256;
+    private static final int MAX_FOLLOWERS = 8;
+    private static final int MAX_COUNT = 1024;
+    // 预测伴随域名的最小共现次数及置信度, 及每次最多预测的伴随域名数
+    private static final int MIN_SUPPORT = 2;
+    private static final float MIN_CONFIDENCE = 0.5f;
+    private static final int MAX_COMPANIONS = 4;
+    // 预取后在该时间内被解析视为避免了一次未命中
+    private static final long PREDICTION_VALID_MILLS = 30 * 1000;
+    private static final int MAX_PREDICTIONS = 256;
+    // NOTE: 容量必须为2的幂, 写入超过一圈时覆盖最早的域名
+    private static final int ACCESS_QUEUE_CAPACITY = 256;
+    private static final int ACCESS_QUEUE_MASK = ACCESS_QUEUE_CAPACITY - 1;
+    private static final long DRAIN_DELAY_MILLS = 100;
+
+    private static final Comparator<Map.Entry<String, int[]>> COUNT_COMPARATOR =
+            new Comparator<Map.Entry<String, int[]>>() {
+                @Override
+                public int compare(Map.Entry<String, int[]> o1, Map.Entry<String, int[]> o2) {
+                    return o2.getValue()[0] - o1.getValue()[0];
+                }
+            };
+
+    private final Object mLock = new Object();
+    // 以下字段由mLock保护
+    // 按访问顺序排列, 超出容量时淘汰最久未解析的域名
+    private final LinkedHashMap<String, Leader> mLeaderMap = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<Access> mRecentAccesses = new ArrayDeque<>();
+    // 已预取且尚未被解析的伴随域名及预测的有效期截止时间
+    private final Map<String, Long> mPredictionDeadlineMap = new HashMap<>();
+    private boolean mDirty = false;
+    private long mPrefetchCount = 0;
+    private long mMissesPrevented = 0;
+
+    private File mFile = null;
+
+    // 业务侧解析的域名, 批量解析时为","分隔的多个域名, 仅用于学习
+    // 解析线程按mAccessTail的序号写入, 由mAccessQueue保证同一时刻只有一个消费者
+    private final AtomicReferenceArray<String> mAccessQueue = new AtomicReferenceArray<>(ACCESS_QUEUE_CAPACITY);
+    private final AtomicLong mAccessTail = new AtomicLong();
+    private long mAccessHead = 0;
+    // 是否已延迟调度学习任务
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+    // 是否已有提交到WORK线程尚未开始执行的学习任务
+    private final AtomicBoolean mDrainQueued = new AtomicBoolean(false);
+    private volatile PredictionListener mPredictionListener = null;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainAccesses();
+        }
+    };
+
+    private final Runnable mDrainTrigger = new Runnable() {
+        @Override
+        public void run() {
+            DnsExecutors.WORK.execute(mDrainTask);
+        }
+    };
+
+    private final Runnable mSaveTask = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    private CooccurrenceModel() {
+    }
+
+    private static final class Holder {
+        static final CooccurrenceModel INSTANCE = new CooccurrenceModel();
+    }
+
+    public static CooccurrenceModel getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return 是否开启了伴随域名预取
+     */
+    public boolean isEnabled() {
+        DnsConfig dnsConfig = DnsService.getDnsConfig();
+        return null != dnsConfig && dnsConfig.enableCooccurrencePrefetch;
+    }
+
+    /**
+     * 读取本地保存的模型, 之后应用切换到后台时保存模型, 重复调用时直接返回
+     *
+     * @param context 用于获取文件目录
+     */
+    public void open(/* @Nullable */Context context) {
+        if (null == context || !isEnabled()) {
+            return;
+        }
+        synchronized (mLock) {
+            if (null != mFile) {
+                return;
+            }
+            mFile = new File(context.getFilesDir(), FILE_NAME);
+        }
+        load();
+        ActivityLifecycleDetector.registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacksWrapper() {
+            @Override
+            public void onActivityStopped(Activity activity) {
+                synchronized (mLock) {
+                    if (!mDirty) {
+                        return;
+                    }
+                }
+                DnsExecutors.WORK.execute(mSaveTask);
+            }
+        });
+    }
+
+    /**
+     * 设置业务侧的单域名解析预测到伴随域名时的回调
+     *
+     * @param listener 回调, 为null时只学习不预测
+     */
+    public void setPredictionListener(/* @Nullable */PredictionListener listener) {
+        mPredictionListener = listener;
+    }
+
+    /**
+     * 记录业务侧一次命中缓存的单域名解析, 只写入队列, 不加锁
+     * 学习及预测延迟在WORK线程批量进行, 预测到伴随域名时回调PredictionListener
+     *
+     * @param hostname 单个域名
+     */
+    public void onCacheHit(/* @Nullable */String hostname) {
+        if (!offer(hostname)) {
+            return;
+        }
+        if (!mDrainScheduled.get() && mDrainScheduled.compareAndSet(false, true)) {
+            DnsExecutors.MAIN.schedule(mDrainTrigger, DRAIN_DELAY_MILLS);
+        }
+    }
+
+    /**
+     * 记录业务侧即将发起的一次解析, 只写入队列, 不加锁
+     * 学习及预测尽快在WORK线程进行, 使伴随域名可以加入当前收集的批量解析请求, 预测到伴随域名时回调PredictionListener
+     *
+     * @param hostnames 域名, 批量解析时多个域名用","分隔, 由业务侧指定域名, 仅用于学习
+     */
+    public void onLookup(/* @Nullable */String hostnames) {
+        if (!offer(hostnames)) {
+            return;
+        }
+        if (!mDrainQueued.get() && mDrainQueued.compareAndSet(false, true)) {
+            DnsExecutors.WORK.execute(mDrainTask);
+        }
+    }
+
+    private boolean offer(/* @Nullable */String hostnames) {
+        if (TextUtils.isEmpty(hostnames) || !isEnabled()) {
+            return false;
+        }
+        long tail = mAccessTail.getAndIncrement();
+        mAccessQueue.set((int) (tail & ACCESS_QUEUE_MASK), hostnames);
+        return true;
+    }
+
+    /**
+     * 记录为预测的伴随域名发起的预取
+     *
+     * @param hostnames 预取的伴随域名
+     */
+    public void onPrefetched(List<String> hostnames) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            if (MAX_PREDICTIONS < mPredictionDeadlineMap.size() + hostnames.size()) {
+                Iterator<Long> iterator = mPredictionDeadlineMap.values().iterator();
+                while (iterator.hasNext()) {
+                    if (now > iterator.next()) {
+                        iterator.remove();
+                    }
+                }
+            }
+            for (String hostname : hostnames) {
+                if (MAX_PREDICTIONS <= mPredictionDeadlineMap.size()) {
+                    break;
+                }
+                mPredictionDeadlineMap.put(hostname, now + PREDICTION_VALID_MILLS);
+            }
+            mPrefetchCount += hostnames.size();
+        }
+    }
+
+    /**
+     * @return {预取的伴随域名数, 预取后在有效期内被解析的次数}
+     */
+    long[] getCounts() {
+        synchronized (mLock) {
+            return new long[]{mPrefetchCount, mMissesPrevented};
+        }
+    }
+
+    private void drainAccesses() {
+        synchronized (mAccessQueue) {
+            // 先清除标记, 之后写入的域名会重新调度, 不会遗漏
+            mDrainQueued.set(false);
+            mDrainScheduled.set(false);
+            PredictionListener listener = mPredictionListener;
+            long tail = mAccessTail.get();
+            // NOTE: 被覆盖的域名直接丢弃
+            for (long head = Math.max(mAccessHead, tail - ACCESS_QUEUE_CAPACITY); head < tail; head++) {
+                // NOTE: 序号已分配但尚未写入的槽位读取为null, 跳过该次解析, 近似学习可以接受
+                String hostnames = mAccessQueue.getAndSet((int) (head & ACCESS_QUEUE_MASK), null);
+                if (null == hostnames) {
+                    continue;
+                }
+                if (-1 != hostnames.indexOf(',')) {
+                    for (String hostname : hostnames.split(",")) {
+                        if (!TextUtils.isEmpty(hostname)) {
+                            access(hostname);
+                        }
+                    }
+                    continue;
+                }
+                List<String> companions = access(hostnames);
+                if (!companions.isEmpty() && null != listener) {
+                    try {
+                        listener.onPredicted(hostnames, companions);
+                    } catch (Exception e) {
+                        DnsLog.w(e, "Handle companions of %s failed", hostnames);
+                    }
+                }
+            }
+            mAccessHead = tail;
+        }
+    }
+
+    // 学习一次单域名解析, 并预测其伴随域名
+    // return: 预测的伴随域名, 按共现次数从高到低排列
+    private List<String> access(String hostname) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            Long deadline = mPredictionDeadlineMap.remove(hostname);
+            if (null != deadline && now <= deadline) {
+                mMissesPrevented++;
+            }
+            learnLocked(hostname, now);
+            return predictLocked(hostname);
+        }
+    }
+
+    private void learnLocked(String hostname, long now) {
+        while (!mRecentAccesses.isEmpty() && now - mRecentAccesses.peekFirst().mTime > WINDOW_MILLS) {
+            mRecentAccesses.pollFirst();
+        }
+        for (Access access : mRecentAccesses) {
+            // NOTE: 窗口内重复解析同一域名只记录一次
+            if (access.mHostname.equals(hostname)) {
+                return;
+            }
+        }
+        for (Access access : mRecentAccesses) {
+            Leader leader = mLeaderMap.get(access.mHostname);
+            if (null != leader) {
+                leader.follow(hostname);
+            }
+        }
+        Leader leader = mLeaderMap.get(hostname);
+        if (null == leader) {
+            if (MAX_LEADERS <= mLeaderMap.size()) {
+                Iterator<String> iterator = mLeaderMap.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+            leader = new Leader();
+            mLeaderMap.put(hostname, leader);
+        }
+        leader.access();
+        if (MAX_RECENT <= mRecentAccesses.size()) {
+            mRecentAccesses.pollFirst();
+        }
+        mRecentAccesses.addLast(new Access(hostname, now));
+        mDirty = true;
+    }
+
+    private List<String> predictLocked(String hostname) {
+        Leader leader = mLeaderMap.get(hostname);
+        if (null == leader || leader.mFollowerMap.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<String, int[]>> candidates = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : leader.mFollowerMap.entrySet()) {
+            int count = entry.getValue()[0];
+            if (MIN_SUPPORT <= count && MIN_CONFIDENCE * leader.mCount <= count) {
+                candidates.add(entry);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(candidates, COUNT_COMPARATOR);
+        List<String> companions = new ArrayList<>(Math.min(MAX_COMPANIONS, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < MAX_COMPANIONS; i++) {
+            companions.add(candidates.get(i).getKey());
+        }
+        return companions;
+    }
+
+    private void load() {
+        DataInputStream in = null;
+        try {
+            if (!mFile.exists()) {
+                return;
+            }
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (MAGIC != in.readInt() || VERSION != in.readInt()) {
+                DnsLog.w("Cooccurrence model version mismatch, ignore it");
+                return;
+            }
+            Map<String, Leader> leaderMap = new LinkedHashMap<>();
+            int leaderCount = Math.min(in.readInt(), MAX_LEADERS);
+            for (int i = 0; i < leaderCount; i++) {
+                String hostname = in.readUTF();
+                Leader leader = new Leader();
+                leader.mCount = in.readInt();
+                int followerCount = in.readInt();
+                for (int j = 0; j < followerCount; j++) {
+                    String follower = in.readUTF();
+                    int count = in.readInt();
+                    if (j < MAX_FOLLOWERS) {
+                        leader.mFollowerMap.put(follower, new int[]{count});
+                    }
+                }
+                leaderMap.put(hostname, leader);
+            }
+            synchronized (mLock) {
+                // NOTE: 保留读取期间已学习到的数据
+                for (Map.Entry<String, Leader> entry : leaderMap.entrySet()) {
+                    if (!mLeaderMap.containsKey(entry.getKey()) && MAX_LEADERS > mLeaderMap.size()) {
+                        mLeaderMap.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            DnsLog.d("Cooccurrence model loaded, leaders: %d", leaderMap.size());
+        } catch (IOException e) {
+            DnsLog.w(e, "Load cooccurrence model failed");
+        } finally {
+            CommonUtils.closeQuietly(in);
+        }
+    }
+
+    private void save() {
+        File file;
+        byte[] bytes;
+        synchronized (mLock) {
+            if (null == mFile || !mDirty) {
+                return;
+            }
+            file = mFile;
+            bytes = encodeLocked();
+            mDirty = false;
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            out.write(bytes);
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Rename " + tmpFile + " failed");
+            }
+            DnsLog.d("Cooccurrence model saved, bytes: %d", bytes.length);
+        } catch (IOException e) {
+            DnsLog.w(e, "Save cooccurrence model failed");
+            synchronized (mLock) {
+                mDirty = true;
+            }
+        } finally {
+            CommonUtils.closeQuietly(out);
+        }
+    }
+
+    private byte[] encodeLocked() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(mLeaderMap.size());
+            for (Map.Entry<String, Leader> entry : mLeaderMap.entrySet()) {
+                Leader leader = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(leader.mCount);
+                out.writeInt(leader.mFollowerMap.size());
+                for (Map.Entry<String, int[]> follower : leader.mFollowerMap.entrySet()) {
+                    out.writeUTF(follower.getKey());
+                    out.writeInt(follower.getValue()[0]);
+                }
+            }
+            out.flush();
+        } catch (IOException ignored) {
+            // NOTE: 写入内存不会失败
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Access {
+
+        final String mHostname;
+        final long mTime;
+
+        Access(String hostname, long time) {
+            mHostname = hostname;
+            mTime = time;
+        }
+    }
+
+    private static final class Leader {
+
+        int mCount = 0;
+        // 伴随域名及共现次数, 用数组保存以便原地自增
+        final Map<String, int[]> mFollowerMap = new HashMap<>();
+
+        void access() {
+            if (MAX_COUNT <= ++mCount) {
+                halve();
+            }
+        }
+
+        void follow(String hostname) {
+            int[] count = mFollowerMap.get(hostname);
+            if (null == count) {
+                if (MAX_FOLLOWERS <= mFollowerMap.size()) {
+                    // NOTE: 替换共现次数最少的伴随域名, 使新出现的组合有机会被学习
+                    String weakest = null;
+                    int weakestCount = Integer.MAX_VALUE;
+                    for (Map.Entry<String, int[]> entry : mFollowerMap.entrySet()) {
+                        if (entry.getValue()[0] < weakestCount) {
+                            weakest = entry.getKey();
+                            weakestCount = entry.getValue()[0];
+                        }
+                    }
+                    mFollowerMap.remove(weakest);
+                }
+                count = new int[]{0};
+                mFollowerMap.put(hostname, count);
+            }
+            // NOTE: 共现次数不超过解析次数, 保证置信度不大于1
+            count[0] = Math.min(count[0] + 1, mCount);
+        }
+
+        private void halve() {
+            mCount >>= 1;
+            Iterator<int[]> iterator = mFollowerMap.values().iterator();
+            while (iterator.hasNext()) {
+                int[] count = iterator.next();
+                count[0] >>= 1;
+                if (0 == count[0]) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
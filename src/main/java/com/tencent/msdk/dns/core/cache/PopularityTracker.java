@@ -0,0 +1,360 @@
+package com.tencent.msdk.dns.core.cache;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.tencent.msdk.dns.DnsConfig;
+import com.tencent.msdk.dns.DnsService;
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 域名热度统计, 用于预测性地提前刷新热点域名
+ * <p>
+ * 每个域名的热度为按半衰期衰减的访问计数, 同时反映访问频率及最近访问时间
+ * 统计表容量有限, 满时淘汰热度最低的域名
+ * 预取请求数由令牌桶限制, 预取后在结果有效期内被访问记为命中, 否则记为浪费
+ * <p>
+ * 访问时只累加域名的待处理计数, 由WORK线程批量合并到统计表, 同时计算衰减, 淘汰及预取范围内的域名
+ */
+public final class PopularityTracker {
+
+    // 热度半衰期
+    private static final long HALF_LIFE_MILLS = 10 * 60 * 1000;
+    private static final double DECAY_PER_MILL = Math.log(2) / HALF_LIFE_MILLS;
+    // 热度不低于该值的域名才会被预取, 即至少被访问过两次
+    private static final double MIN_HOT_SCORE = 1.5;
+    // 统计表的容量为预取域名数的倍数, 使刚开始变热的域名有机会进入预取范围
+    private static final int CAPACITY_FACTOR = 4;
+    private static final int MIN_CAPACITY = 64;
+    // 待处理计数的域名数上限, 超出时丢弃新域名的访问
+    private static final int MAX_PENDING_HOSTS = 1024;
+    private static final long DRAIN_DELAY_MILLS = 1000;
+
+    private static final Comparator<Counter> HOTTEST_FIRST = new Comparator<Counter>() {
+        @Override
+        public int compare(Counter o1, Counter o2) {
+            return Double.compare(o2.mRankScore, o1.mRankScore);
+        }
+    };
+
+    // 尚未合并到统计表的访问计数, key为recordAccess()的参数
+    private final ConcurrentHashMap<String, AtomicInteger> mPendingCountMap = new ConcurrentHashMap<>();
+    // 是否已延迟调度合并任务
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+    // 是否已有提交到WORK线程尚未开始执行的合并任务, 解析请求密集时合并为一次
+    private final AtomicBoolean mDrainQueued = new AtomicBoolean(false);
+    // 预取范围内的域名, 每次合并访问计数或获取热度时更新
+    private volatile Set<String> mHotHosts = Collections.emptySet();
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            mDrainQueued.set(false);
+            mDrainScheduled.set(false);
+            long now = SystemClock.elapsedRealtime();
+            synchronized (mLock) {
+                if (drainLocked(now)) {
+                    refreshLocked(now);
+                }
+            }
+        }
+    };
+
+    private final Runnable mDrainTrigger = new Runnable() {
+        @Override
+        public void run() {
+            DnsExecutors.WORK.execute(mDrainTask);
+        }
+    };
+
+    private final Object mLock = new Object();
+    // 以下字段由mLock保护
+    private final Map<String, Counter> mCounterMap = new HashMap<>();
+    // 已预取且尚未结算的域名及其结果的有效期截止时间
+    private final Map<String, Long> mPrefetchDeadlineMap = new HashMap<>();
+    private double mTokens = -1;
+    private long mLastRefillTime = 0;
+    private long mPrefetchCount = 0;
+    private long mRequestCount = 0;
+    private long mThrottledCount = 0;
+    private long mHitCount = 0;
+    private long mWasteCount = 0;
+
+    private PopularityTracker() {
+    }
+
+    private static final class Holder {
+        static final PopularityTracker INSTANCE = new PopularityTracker();
+    }
+
+    public static PopularityTracker getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return 是否开启了热点域名预取
+     */
+    public boolean isEnabled() {
+        DnsConfig dnsConfig = DnsService.getDnsConfig();
+        return null != dnsConfig && 0 < dnsConfig.prefetchMaxHosts;
+    }
+
+    /**
+     * 记录业务侧的一次解析, 只累加待处理计数, 不加锁
+     *
+     * @param hostnames 域名, 批量解析时多个域名用","分隔
+     * @param lookup    是否即将发起解析, 为true时尽快在WORK线程合并计数, 使解析结果写入缓存时可以判断是否需要预取
+     */
+    public void recordAccess(/* @Nullable */String hostnames, boolean lookup) {
+        if (TextUtils.isEmpty(hostnames) || !isEnabled()) {
+            return;
+        }
+        AtomicInteger pendingCount = mPendingCountMap.get(hostnames);
+        if (null == pendingCount) {
+            if (MAX_PENDING_HOSTS <= mPendingCountMap.size()) {
+                return;
+            }
+            pendingCount = new AtomicInteger();
+            AtomicInteger existPendingCount = mPendingCountMap.putIfAbsent(hostnames, pendingCount);
+            if (null != existPendingCount) {
+                pendingCount = existPendingCount;
+            }
+        }
+        pendingCount.incrementAndGet();
+        if (lookup) {
+            if (!mDrainQueued.get() && mDrainQueued.compareAndSet(false, true)) {
+                DnsExecutors.WORK.execute(mDrainTask);
+            }
+        } else if (!mDrainScheduled.get() && mDrainScheduled.compareAndSet(false, true)) {
+            DnsExecutors.MAIN.schedule(mDrainTrigger, DRAIN_DELAY_MILLS);
+        }
+    }
+
+    /**
+     * 判断域名当前是否在预取范围内, 不加锁
+     *
+     * @param hostname 域名
+     * @return 最近一次更新时热度排名在预取域名数以内且热度足够时返回true
+     */
+    public boolean isHot(String hostname) {
+        return mHotHosts.contains(hostname);
+    }
+
+    /**
+     * 获取给定域名中在预取范围内的域名及其热度
+     *
+     * @param hostnames 域名
+     * @return 在预取范围内的域名及其热度, 未开启预取时为空
+     */
+    public Map<String, Double> getHotScores(Collection<String> hostnames) {
+        Map<String, Double> hotScores = new HashMap<>();
+        if (!isEnabled()) {
+            return hotScores;
+        }
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            // NOTE: 每批预取更新一次, 使距上次访问较久的域名按衰减后的热度判断
+            drainLocked(now);
+            refreshLocked(now);
+            Set<String> hotHosts = mHotHosts;
+            for (String hostname : hostnames) {
+                Counter counter = mCounterMap.get(hostname);
+                if (null != counter && hotHosts.contains(hostname)) {
+                    hotScores.put(hostname, counter.mRankScore);
+                }
+            }
+        }
+        return hotScores;
+    }
+
+    /**
+     * 申请发起一次预取请求
+     *
+     * @return 未超出每分钟预取请求数时返回true
+     */
+    public boolean tryAcquireRequest() {
+        DnsConfig dnsConfig = DnsService.getDnsConfig();
+        if (null == dnsConfig || 0 >= dnsConfig.prefetchMaxRequestsPerMinute) {
+            return false;
+        }
+        int maxRequestsPerMinute = dnsConfig.prefetchMaxRequestsPerMinute;
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            // NOTE: 令牌桶的容量为每分钟请求数, 初始为满
+            if (0 > mTokens) {
+                mTokens = maxRequestsPerMinute;
+            } else {
+                mTokens = Math.min(maxRequestsPerMinute,
+                        mTokens + (now - mLastRefillTime) * maxRequestsPerMinute / 60000.0);
+            }
+            mLastRefillTime = now;
+            if (1 > mTokens) {
+                return false;
+            }
+            mTokens -= 1;
+            mRequestCount++;
+            return true;
+        }
+    }
+
+    /**
+     * 记录一次预取请求
+     *
+     * @param hostnames   预取的域名
+     * @param windowMills 预取结果的有效期, 单位为ms, 期间被访问记为命中
+     */
+    public void onPrefetched(Collection<String> hostnames, long windowMills) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            settleExpiredLocked(now);
+            for (String hostname : hostnames) {
+                // NOTE: 上一次预取的结果未被使用即再次预取, 上一次记为浪费
+                if (null != mPrefetchDeadlineMap.put(hostname, now + windowMills)) {
+                    mWasteCount++;
+                }
+                mPrefetchCount++;
+            }
+        }
+    }
+
+    /**
+     * 记录因超出预取请求数限制而未预取的域名
+     *
+     * @param count 域名数
+     */
+    public void onThrottled(int count) {
+        synchronized (mLock) {
+            mThrottledCount += count;
+        }
+    }
+
+    /**
+     * 获取预取统计数据, 包含伴随域名预取的统计数据
+     *
+     * @return 当前统计数据的快照
+     */
+    public PrefetchStats getStats() {
+        long[] companionCounts = CooccurrenceModel.getInstance().getCounts();
+        long now = SystemClock.elapsedRealtime();
+        synchronized (mLock) {
+            if (drainLocked(now)) {
+                refreshLocked(now);
+            }
+            settleExpiredLocked(now);
+            return new PrefetchStats(mPrefetchCount, mRequestCount, mThrottledCount, mHitCount, mWasteCount,
+                    mPrefetchDeadlineMap.size(), mCounterMap.size(), companionCounts[0], companionCounts[1]);
+        }
+    }
+
+    private int capacity() {
+        return Math.max(MIN_CAPACITY, CAPACITY_FACTOR * DnsService.getDnsConfig().prefetchMaxHosts);
+    }
+
+    // return: 是否合并了访问计数
+    private boolean drainLocked(long now) {
+        if (mPendingCountMap.isEmpty()) {
+            return false;
+        }
+        // NOTE: 与recordAccess()并发时可能丢失少量计数, 热度仅用于预测, 可以接受
+        Iterator<Map.Entry<String, AtomicInteger>> iterator = mPendingCountMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AtomicInteger> entry = iterator.next();
+            iterator.remove();
+            int count = entry.getValue().getAndSet(0);
+            String hostnames = entry.getKey();
+            if (-1 == hostnames.indexOf(',')) {
+                accessLocked(hostnames, count, now);
+                continue;
+            }
+            for (String hostname : hostnames.split(",")) {
+                if (!TextUtils.isEmpty(hostname)) {
+                    accessLocked(hostname, count, now);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void accessLocked(String hostname, int count, long now) {
+        Counter counter = mCounterMap.get(hostname);
+        if (null == counter) {
+            counter = new Counter(hostname);
+            mCounterMap.put(hostname, counter);
+        }
+        counter.mScore = counter.decayedScore(now) + count;
+        counter.mLastAccessTime = now;
+
+        Long deadline = mPrefetchDeadlineMap.remove(hostname);
+        if (null != deadline) {
+            if (now <= deadline) {
+                mHitCount++;
+            } else {
+                mWasteCount++;
+            }
+        }
+    }
+
+    // 按衰减后的热度排序, 淘汰超出容量的域名, 并更新预取范围内的域名
+    private void refreshLocked(long now) {
+        List<Counter> counters = new ArrayList<>(mCounterMap.size());
+        for (Counter counter : mCounterMap.values()) {
+            counter.mRankScore = counter.decayedScore(now);
+            counters.add(counter);
+        }
+        Collections.sort(counters, HOTTEST_FIRST);
+        for (int i = counters.size() - 1; i >= capacity(); i--) {
+            mCounterMap.remove(counters.get(i).mHostname);
+        }
+        int maxHosts = DnsService.getDnsConfig().prefetchMaxHosts;
+        Set<String> hotHosts = new HashSet<>();
+        for (int i = 0; i < maxHosts && i < counters.size(); i++) {
+            Counter counter = counters.get(i);
+            if (MIN_HOT_SCORE > counter.mRankScore) {
+                break;
+            }
+            hotHosts.add(counter.mHostname);
+        }
+        mHotHosts = hotHosts;
+    }
+
+    private void settleExpiredLocked(long now) {
+        Iterator<Long> iterator = mPrefetchDeadlineMap.values().iterator();
+        while (iterator.hasNext()) {
+            if (now > iterator.next()) {
+                iterator.remove();
+                mWasteCount++;
+            }
+        }
+    }
+
+    private static final class Counter {
+
+        final String mHostname;
+        double mScore = 0;
+        long mLastAccessTime = 0;
+        // 最近一次refreshLocked()时衰减后的热度
+        double mRankScore = 0;
+
+        Counter(String hostname) {
+            mHostname = hostname;
+        }
+
+        double decayedScore(long now) {
+            return mScore * Math.exp(-(now - mLastAccessTime) * DECAY_PER_MILL);
+        }
+    }
+}
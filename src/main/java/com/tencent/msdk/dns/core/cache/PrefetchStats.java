@@ -0,0 +1,88 @@
+package com.tencent.msdk.dns.core.cache;
+
+/**
+ * 热点域名预取及伴随域名预取统计数据快照
+ */
+public final class PrefetchStats {
+
+    /**
+     * 预取的域名数, 同一域名每次预取均计入
+     */
+    public final long prefetchCount;
+    /**
+     * 发起的预取请求数, 一次批量解析计为一次
+     */
+    public final long requestCount;
+    /**
+     * 因超出每分钟预取请求数限制而未预取的域名数
+     */
+    public final long throttledCount;
+    /**
+     * 预取结果在有效期内被访问的次数
+     */
+    public final long hitCount;
+    /**
+     * 预取结果在有效期内未被访问的次数
+     */
+    public final long wasteCount;
+    /**
+     * 尚在有效期内且未被访问的预取数
+     */
+    public final int pendingCount;
+    /**
+     * 当前统计热度的域名数
+     */
+    public final int trackedHosts;
+    /**
+     * 伴随域名预取的域名数
+     */
+    public final long companionPrefetchCount;
+    /**
+     * 伴随域名预取后被解析的次数, 即避免的未命中次数
+     */
+    public final long missesPrevented;
+
+    PrefetchStats(long prefetchCount, long requestCount, long throttledCount, long hitCount, long wasteCount,
+                  int pendingCount, int trackedHosts, long companionPrefetchCount, long missesPrevented) {
+        this.prefetchCount = prefetchCount;
+        this.requestCount = requestCount;
+        this.throttledCount = throttledCount;
+        this.hitCount = hitCount;
+        this.wasteCount = wasteCount;
+        this.pendingCount = pendingCount;
+        this.trackedHosts = trackedHosts;
+        this.companionPrefetchCount = companionPrefetchCount;
+        this.missesPrevented = missesPrevented;
+    }
+
+    /**
+     * @return 已结算的预取中被访问的比例, 没有已结算的预取时为0
+     */
+    public float hitRatio() {
+        long settledCount = hitCount + wasteCount;
+        return 0 == settledCount ? 0 : (float) hitCount / settledCount;
+    }
+
+    /**
+     * @return 已结算的预取中未被访问的比例, 没有已结算的预取时为0
+     */
+    public float wasteRatio() {
+        long settledCount = hitCount + wasteCount;
+        return 0 == settledCount ? 0 : (float) wasteCount / settledCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchStats{"
+                + "prefetchCount=" + prefetchCount
+                + ", requestCount=" + requestCount
+                + ", throttledCount=" + throttledCount
+                + ", hitCount=" + hitCount
+                + ", wasteCount=" + wasteCount
+                + ", pendingCount=" + pendingCount
+                + ", trackedHosts=" + trackedHosts
+                + ", companionPrefetchCount=" + companionPrefetchCount
+                + ", missesPrevented=" + missesPrevented
+                + '}';
+    }
+}
@@ -1,6 +1,5 @@
 package com.tencent.msdk.dns.core.cache.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -13,6 +12,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * 旧版本保存解析结果的数据库, 仅用于迁移到{@link LookupSnapshot}, 不再写入
+ */
 public class CacheDbHelper extends SQLiteOpenHelper {
     public static final int DATABASE_VERSION = 1;
 
@@ -63,10 +65,11 @@ public class CacheDbHelper extends SQLiteOpenHelper {
                 if (cursor != null && cursor.getCount() > 0) {
                     cursor.moveToFirst();
                     do {
-                        lists.add(new LookupCache(
-                                cursor.getString(cursor.getColumnIndex(DB.HOST)),
-                                LookupResultConverter.toLookupResult(cursor.getBlob(cursor.getColumnIndex(DB.RESULT)))
-                        ));
+                        LookupCache lookupCache = LookupCache.fromKey(
+                                cursor.getString(cursor.getColumnIndex(DB.HOST)), null);
+                        byte[] result = cursor.getBlob(cursor.getColumnIndex(DB.RESULT));
+                        lookupCache.lookupResult = LookupResultConverter.toLookupResult(lookupCache.hostname, result);
+                        lists.add(lookupCache);
                     } while (cursor.moveToNext());
                 }
             } catch (Exception e) {
@@ -84,31 +87,6 @@ public class CacheDbHelper extends SQLiteOpenHelper {
         }
     }
 
-    public void insert(LookupCache lookupCache) {
-        synchronized (mLock) {
-            SQLiteDatabase db = null;
-            try {
-                db = getDb();
-                db.beginTransaction();
-                ContentValues cv = new ContentValues();
-                cv.put(DB.HOST, lookupCache.hostname);
-                cv.put(DB.RESULT, LookupResultConverter.fromLookupResult(lookupCache.lookupResult));
-                db.insertWithOnConflict(DB.TABLE_NAME, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
-                db.setTransactionSuccessful();
-            } catch (Exception e) {
-                DnsLog.e("insert lookupCache fail " + e);
-            } finally {
-                if (db != null) {
-                    try {
-                        db.endTransaction();
-                    } catch (Exception e) {
-                        DnsLog.e("db end transaction error  " + e);
-                    }
-                }
-            }
-        }
-    }
-
     public void delete(String hostname) {
         delete(new String[]{hostname});
     }
@@ -0,0 +1,17 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import java.util.Map;
+
+/**
+ * 解析结果的持久化存储, 由LookupCacheWriter批量写入
+ */
+public interface ILookupCacheStore {
+
+    /**
+     * 批量写入, 同一批次内的写入应作为一个整体生效
+     *
+     * @param clearAll 是否先清空所有数据
+     * @param batch    主键及对应的数据, 主键由LookupCache.key()得到, 值为null时删除该主键
+     */
+    void write(boolean clearAll, Map<String, LookupCache> batch);
+}
@@ -4,20 +4,52 @@ import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
+import com.tencent.msdk.dns.core.DnsDescription;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
 
 public class LookupCache {
+    // NOTE: 数据库中以"域名#地址族"作为主键, 旧版本以域名作为主键, 对应的地址族视为UN_SPECIFIC
+    private static final char KEY_SEPARATOR = '#';
+
     public String hostname;
 
+    public int family;
+
     public LookupResult lookupResult;
 
-    public LookupCache(@NonNull String mHostname, LookupResult mLookupResult) {
+    public LookupCache(@NonNull String mHostname, int mFamily, LookupResult mLookupResult) {
         this.hostname = mHostname;
+        this.family = mFamily;
         this.lookupResult = mLookupResult;
     }
 
+    public static String key(String hostname, int family) {
+        return hostname + KEY_SEPARATOR + family;
+    }
+
+    static LookupCache fromKey(@NonNull String key, LookupResult lookupResult) {
+        int separatorIndex = key.lastIndexOf(KEY_SEPARATOR);
+        if (-1 != separatorIndex) {
+            try {
+                int family = Integer.parseInt(key.substring(separatorIndex + 1));
+                if (!DnsDescription.isFamilyInvalid(family)) {
+                    return new LookupCache(key.substring(0, separatorIndex), family, lookupResult);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return new LookupCache(key, DnsDescription.Family.UN_SPECIFIC, lookupResult);
+    }
+
+    public String key() {
+        return DnsDescription.Family.UN_SPECIFIC == family ? hostname : key(hostname, family);
+    }
+
     public boolean isExpired() {
+        if (null == lookupResult) {
+            return true;
+        }
         AbsRestDns.Statistics stat = (AbsRestDns.Statistics) lookupResult.stat;
         if (stat != null) {
             return SystemClock.elapsedRealtime() > stat.expiredTime;
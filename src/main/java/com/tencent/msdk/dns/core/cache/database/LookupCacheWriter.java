@@ -0,0 +1,167 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import android.app.Activity;
+
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.lifecycle.ActivityLifecycleCallbacksWrapper;
+import com.tencent.msdk.dns.base.lifecycle.ActivityLifecycleDetector;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.core.Const;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存持久化的延迟写入队列
+ * <p>
+ * 写入先在内存中按主键合并, 同一主键只保留最后一次写入, 之后在WORK线程中批量写入存储
+ * 满足以下任一条件时写入: 距首次写入达到FLUSH_INTERVAL_MILLS, 待写入数量达到FLUSH_BATCH_SIZE, 应用切换到后台
+ * 调用方不会等待磁盘IO
+ */
+public final class LookupCacheWriter {
+
+    private static final int FLUSH_INTERVAL_MILLS = 1000;
+    private static final int FLUSH_BATCH_SIZE = 32;
+
+    private final ILookupCacheStore mStore;
+
+    private final Object mLock = new Object();
+    // 值为null时表示删除该主键
+    private LinkedHashMap<String, LookupCache> mPending = new LinkedHashMap<>();
+    private boolean mPendingClear = false;
+    private boolean mFlushScheduled = false;
+    // 已提交到WORK线程但尚未执行的写入任务, 避免重复提交
+    private boolean mFlushPosted = false;
+
+    // NOTE: 保证批量写入按取出的顺序执行, 避免较早的批次覆盖较新的数据
+    private final Object mFlushLock = new Object();
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable mScheduledFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mLock) {
+                mFlushScheduled = false;
+                if (!mFlushPosted) {
+                    mFlushPosted = true;
+                    DnsExecutors.WORK.execute(mFlushTask);
+                }
+            }
+        }
+    };
+
+    public LookupCacheWriter(ILookupCacheStore store) {
+        if (null == store) {
+            throw new IllegalArgumentException("store".concat(Const.NULL_POINTER_TIPS));
+        }
+        mStore = store;
+        ActivityLifecycleDetector.registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacksWrapper() {
+            @Override
+            public void onActivityStopped(Activity activity) {
+                flushAsync();
+            }
+        });
+    }
+
+    public void insert(LookupCache lookupCache) {
+        if (null == lookupCache) {
+            throw new IllegalArgumentException("lookupCache".concat(Const.NULL_POINTER_TIPS));
+        }
+        enqueue(lookupCache.key(), lookupCache);
+    }
+
+    public void delete(String[] keys) {
+        if (null == keys) {
+            throw new IllegalArgumentException("keys".concat(Const.NULL_POINTER_TIPS));
+        }
+        synchronized (mLock) {
+            for (String key : keys) {
+                mPending.put(key, null);
+            }
+            onEnqueuedLocked();
+        }
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            // NOTE: 清空之前的写入均无需执行
+            mPending.clear();
+            mPendingClear = true;
+            onEnqueuedLocked();
+        }
+    }
+
+    private void enqueue(String key, LookupCache lookupCache) {
+        synchronized (mLock) {
+            // NOTE: 先移除再写入, 使合并后的主键按最后一次写入排序
+            mPending.remove(key);
+            mPending.put(key, lookupCache);
+            onEnqueuedLocked();
+        }
+    }
+
+    private void onEnqueuedLocked() {
+        if (mFlushPosted) {
+            return;
+        }
+        if (FLUSH_BATCH_SIZE <= mPending.size()) {
+            postFlushLocked();
+        } else if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            DnsExecutors.MAIN.schedule(mScheduledFlushTask, FLUSH_INTERVAL_MILLS);
+        }
+    }
+
+    /**
+     * 在WORK线程中写入所有待写入的数据
+     */
+    public void flushAsync() {
+        synchronized (mLock) {
+            if (mFlushPosted || (!mPendingClear && mPending.isEmpty())) {
+                return;
+            }
+            postFlushLocked();
+        }
+    }
+
+    private void postFlushLocked() {
+        if (mFlushScheduled) {
+            DnsExecutors.MAIN.cancel(mScheduledFlushTask);
+            mFlushScheduled = false;
+        }
+        mFlushPosted = true;
+        DnsExecutors.WORK.execute(mFlushTask);
+    }
+
+    /**
+     * 在当前线程写入所有待写入的数据
+     */
+    public void flush() {
+        synchronized (mFlushLock) {
+            boolean clearAll;
+            Map<String, LookupCache> batch;
+            synchronized (mLock) {
+                if (mFlushScheduled) {
+                    DnsExecutors.MAIN.cancel(mScheduledFlushTask);
+                    mFlushScheduled = false;
+                }
+                mFlushPosted = false;
+                if (!mPendingClear && mPending.isEmpty()) {
+                    return;
+                }
+                clearAll = mPendingClear;
+                batch = mPending;
+                mPendingClear = false;
+                mPending = new LinkedHashMap<>();
+            }
+            DnsLog.d("Flush lookup cache, clearAll: %b, size: %d", clearAll, batch.size());
+            mStore.write(clearAll, batch);
+        }
+    }
+}
@@ -1,65 +1,338 @@
 package com.tencent.msdk.dns.core.cache.database;
 
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.IpAddress;
+import com.tencent.msdk.dns.core.Const;
+import com.tencent.msdk.dns.core.IpSet;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
+import com.tencent.msdk.dns.core.rest.share.ErrorCode;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * 缓存解析结果的二进制编解码, 仅保存缓存所需的字段
+ * <p>
+ * format(VERSION_1):
+ * version(1B) | expiredTime(varint) | ttl(zigzag varint) | clientIp(varint长度 + UTF-8) | ip数量(varint) | ip...
+ * <p>
+ * ip: tag(1B) + 内容, IPv4为4字节, IPv6为16字节, 其余(如非RFC 5952格式的IPv6)为varint长度 + UTF-8
+ * <p>
+ * 旧版本使用Java序列化保存整个LookupResult, 以Java序列化的魔数开头, 解码时兼容
+ */
 public class LookupResultConverter {
-    public static byte[] fromLookupResult(LookupResult lookupResult) {
-        ByteArrayOutputStream baos = null;
-        ObjectOutputStream oos = null;
+
+    private static final byte VERSION_1 = 1;
+
+    private static final byte IP_TAG_TEXT = 0;
+    private static final byte IP_TAG_V4 = 4;
+    private static final byte IP_TAG_V6 = 6;
+
+    // Java序列化流的魔数0xACED的首字节
+    private static final byte LEGACY_MAGIC = (byte) 0xAC;
+
+    private static final int NO_TTL = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static byte[] fromLookupResult(String hostname, LookupResult lookupResult) {
+        String[] ips = ipsOf(lookupResult.ipSet);
+        long expiredTime = 0;
+        int ttl = NO_TTL;
+        String clientIp = Const.INVALID_IP;
+        if (lookupResult.stat instanceof AbsRestDns.Statistics) {
+            AbsRestDns.Statistics stat = (AbsRestDns.Statistics) lookupResult.stat;
+            expiredTime = stat.expiredTime;
+            ttl = ttlOf(hostname, stat.ttl);
+            clientIp = null != stat.clientIp ? stat.clientIp : Const.INVALID_IP;
+        }
+
+        ByteWriter writer = new ByteWriter(16 + clientIp.length() + 17 * ips.length);
+        writer.writeByte(VERSION_1);
+        writer.writeVarLong(expiredTime);
+        writer.writeVarLong(zigZag(ttl));
+        writer.writeString(clientIp);
+        writer.writeVarLong(ips.length);
+        for (String ip : ips) {
+            IpAddress ipAddress = IpAddress.parse(ip);
+            if (null != ipAddress && ipAddress.isV4()) {
+                writer.writeByte(IP_TAG_V4);
+                writer.writeInt(ipAddress.v4());
+            } else if (null != ipAddress && isCanonicalV6(ipAddress, ip)) {
+                writer.writeByte(IP_TAG_V6);
+                writer.writeLong(ipAddress.v6High());
+                writer.writeLong(ipAddress.v6Low());
+            } else {
+                writer.writeByte(IP_TAG_TEXT);
+                writer.writeString(ip);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * 解码缓存的解析结果
+     *
+     * @param hostname 结果所属的域名, 用于恢复ttl
+     * @param bytes    编码后的数据, 兼容旧版本的Java序列化数据
+     * @return 解码失败时返回null
+     */
+    /* @Nullable */
+    public static LookupResult toLookupResult(String hostname, /* @Nullable */byte[] bytes) {
+        if (null == bytes || 0 == bytes.length) {
+            return null;
+        }
         try {
-            baos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(baos);
-            oos.writeObject(lookupResult);
-            oos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (baos != null) {
-                    baos.close();
-                }
-                if (oos != null) {
-                    oos.close();
+            if (isLegacy(bytes)) {
+                return fromLegacy(bytes);
+            }
+            ByteReader reader = new ByteReader(bytes);
+            byte version = reader.readByte();
+            if (VERSION_1 != version) {
+                DnsLog.w("Unknown lookup result version %d", version);
+                return null;
+            }
+            long expiredTime = reader.readVarLong();
+            int ttl = (int) unZigZag(reader.readVarLong());
+            String clientIp = reader.readString();
+            int ipCount = (int) reader.readVarLong();
+            if (0 > ipCount || bytes.length < ipCount) {
+                throw new IOException("Invalid ip count " + ipCount);
+            }
+            String[] ips = new String[ipCount];
+            for (int i = 0; i < ipCount; i++) {
+                byte tag = reader.readByte();
+                switch (tag) {
+                    case IP_TAG_V4:
+                        ips[i] = IpAddress.ofV4(reader.readInt()).toString();
+                        break;
+                    case IP_TAG_V6:
+                        ips[i] = IpAddress.ofV6(reader.readLong(), reader.readLong()).toString();
+                        break;
+                    case IP_TAG_TEXT:
+                        ips[i] = reader.readString();
+                        break;
+                    default:
+                        throw new IOException("Unknown ip tag " + tag);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+
+            AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+            stat.errorCode = ErrorCode.SUCCESS;
+            stat.ips = ips;
+            stat.clientIp = clientIp;
+            stat.expiredTime = expiredTime;
+            if (NO_TTL != ttl) {
+                stat.ttl.put(hostname, ttl);
+            }
+            return new LookupResult<>(ips, stat);
+        } catch (IOException e) {
+            DnsLog.w(e, "Decode lookup result of %s failed", hostname);
+            return null;
         }
+    }
 
-        return baos.toByteArray();
+    /**
+     * 是否为旧版本使用Java序列化保存的数据
+     *
+     * @param bytes 编码后的数据
+     * @return 是否为旧版本数据
+     */
+    public static boolean isLegacy(/* @Nullable */byte[] bytes) {
+        return null != bytes && 0 < bytes.length && LEGACY_MAGIC == bytes[0];
     }
 
-    public static LookupResult toLookupResult(byte[] lookupResultByteArr) {
-        ByteArrayInputStream bais = null;
+    private static LookupResult fromLegacy(byte[] bytes) throws IOException {
         ObjectInputStream ois = null;
         try {
-            bais = new ByteArrayInputStream(lookupResultByteArr);
-            ois = new ObjectInputStream(bais);
-            LookupResult lookupResult = (LookupResult<AbsRestDns.Statistics>) ois.readObject();
+            ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            LookupResult lookupResult = (LookupResult) ois.readObject();
+            if (lookupResult.stat instanceof AbsRestDns.Statistics
+                    && null == ((AbsRestDns.Statistics) lookupResult.stat).ttl) {
+                // NOTE: ttl为transient, 反序列化后为null
+                ((AbsRestDns.Statistics) lookupResult.stat).ttl = new HashMap<>();
+            }
             return lookupResult;
-        } catch (IOException e) {
-            e.printStackTrace();
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            throw new IOException(e);
+        } catch (ClassCastException e) {
+            throw new IOException(e);
         } finally {
-            try {
-                if (bais != null) {
-                    bais.close();
-                }
-                if (ois != null) {
+            if (null != ois) {
+                try {
                     ois.close();
+                } catch (IOException ignored) {
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
-        return null;
+    }
+
+    // NOTE: 仅RFC 5952格式的IPv6按字节保存, 保证解码后与原字符串一致
+    private static boolean isCanonicalV6(IpAddress ipAddress, String ip) {
+        return ip.equals(IpAddress.ofV6(ipAddress.v6High(), ipAddress.v6Low()).toString());
+    }
+
+    private static String[] ipsOf(IpSet ipSet) {
+        if (null != ipSet.ips) {
+            return ipSet.ips;
+        }
+        String[] v4Ips = null != ipSet.v4Ips ? ipSet.v4Ips : Const.EMPTY_IPS;
+        String[] v6Ips = null != ipSet.v6Ips ? ipSet.v6Ips : Const.EMPTY_IPS;
+        String[] ips = new String[v4Ips.length + v6Ips.length];
+        System.arraycopy(v4Ips, 0, ips, 0, v4Ips.length);
+        System.arraycopy(v6Ips, 0, ips, v4Ips.length, v6Ips.length);
+        return ips;
+    }
+
+    // 缓存条目只对应一个域名, 取该域名的ttl, 没有时取最小值
+    private static int ttlOf(String hostname, /* @Nullable */Map<String, Integer> ttlMap) {
+        if (null == ttlMap || ttlMap.isEmpty()) {
+            return NO_TTL;
+        }
+        Integer ttl = ttlMap.get(hostname);
+        if (null != ttl) {
+            return ttl;
+        }
+        int min = Integer.MAX_VALUE;
+        for (Integer value : ttlMap.values()) {
+            if (null != value) {
+                min = Math.min(min, value);
+            }
+        }
+        return Integer.MAX_VALUE == min ? NO_TTL : min;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class ByteWriter {
+
+        private byte[] mBuf;
+        private int mPos = 0;
+
+        ByteWriter(int initialCapacity) {
+            mBuf = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int count) {
+            if (mPos + count > mBuf.length) {
+                byte[] buf = new byte[Math.max(mBuf.length * 2, mPos + count)];
+                System.arraycopy(mBuf, 0, buf, 0, mPos);
+                mBuf = buf;
+            }
+        }
+
+        void writeByte(byte value) {
+            ensureCapacity(1);
+            mBuf[mPos++] = value;
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                mBuf[mPos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mBuf[mPos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while (0 != (value & ~0x7FL)) {
+                mBuf[mPos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mBuf[mPos++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mBuf, mPos, bytes.length);
+            mPos += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[mPos];
+            System.arraycopy(mBuf, 0, bytes, 0, mPos);
+            return bytes;
+        }
+    }
+
+    private static final class ByteReader {
+
+        private final byte[] mBuf;
+        private int mPos = 0;
+
+        ByteReader(byte[] buf) {
+            mBuf = buf;
+        }
+
+        private void require(int count) throws IOException {
+            if (mPos + count > mBuf.length) {
+                throw new IOException("Unexpected end of data at " + mPos);
+            }
+        }
+
+        byte readByte() throws IOException {
+            require(1);
+            return mBuf[mPos++];
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (mBuf[mPos++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (mBuf[mPos++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (0 == (b & 0x80)) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint at " + mPos);
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (0 > length || length > mBuf.length - mPos) {
+                throw new IOException("Invalid string length " + length);
+            }
+            String value = new String(mBuf, mPos, (int) length, UTF_8);
+            mPos += (int) length;
+            return value;
+        }
     }
 }
@@ -0,0 +1,536 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import android.content.Context;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.IClock;
+import com.tencent.msdk.dns.core.DnsDescription;
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的解析结果快照, 用于冷启动时快速恢复缓存
+ * <p>
+ * 文件只追加写入, 同一主键以最后一条记录为准, 删除时追加一条不含解析结果的记录, 无效记录过多时重写整个文件
+ * 打开时只扫描记录头建立索引, 解析结果在加载时才校验并解码
+ * <p>
+ * format: magic(4B) | version(4B) | record...
+ * <p>
+ * record: body长度(4B) | body的CRC32(4B) | body
+ * <p>
+ * body: 地址族(1B) | 域名长度(2B) | 域名(UTF-8) | 过期时间(8B) | 解析结果(由LookupResultConverter编码, 删除时为空)
+ * <p>
+ * NOTE: 过期时间保存为墙上时间, elapsedRealtime在重启后重新计时, 不能跨进程使用
+ */
+public final class LookupSnapshot implements ILookupCacheStore {
+
+    public static final String FILE_NAME = "LookupResult.snapshot";
+
+    private static final int MAGIC = 0x48444E53;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    // 地址族 + 域名长度 + 过期时间
+    private static final int BODY_FIXED_BYTES = 1 + 2 + 8;
+    private static final int MAX_HOSTNAME_BYTES = 0xFFFF;
+    // 无效记录超过该大小且超过有效记录时重写文件
+    private static final long COMPACT_MIN_GARBAGE_BYTES = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Context mContext;
+    private final IClock mClock;
+
+    private final Object mLock = new Object();
+    // 以下字段由mLock保护
+    private File mFile;
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+    private MappedByteBuffer mBuffer;
+    private long mMappedSize = 0;
+    private long mSize = 0;
+    // 主键对应的有效记录, {位置, 记录总长度}
+    private HashMap<String, long[]> mRecords = new HashMap<>();
+    private long mLiveBytes = 0;
+    private boolean mCreated = false;
+
+    private volatile boolean mOpened = false;
+    // 尚未加载到内存缓存的域名, 读取时不加锁
+    private final Set<String> mUnloadedHosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public LookupSnapshot(Context context) {
+        mContext = context;
+        mClock = IClock.SYSTEM;
+    }
+
+    /**
+     * 使用指定的文件及时钟, 不依赖Context, 用于单元测试
+     *
+     * @param file  快照文件
+     * @param clock 时钟
+     */
+    LookupSnapshot(File file, IClock clock) {
+        mContext = null;
+        mFile = file;
+        mClock = clock;
+    }
+
+    /**
+     * 打开快照文件并建立索引, 重复调用时直接返回
+     *
+     * @param dropExpired 是否丢弃已过期的记录
+     * @param maxHosts    最多保留的域名数, 超出时丢弃最早写入的域名, 不大于0时不限制
+     * @return 快照文件是否为本次新建
+     */
+    public boolean open(boolean dropExpired, int maxHosts) {
+        if (mOpened) {
+            return mCreated;
+        }
+        synchronized (mLock) {
+            if (!mOpened) {
+                openLocked(dropExpired, maxHosts);
+                mOpened = true;
+            }
+            return mCreated;
+        }
+    }
+
+    private void openLocked(boolean dropExpired, int maxHosts) {
+        if (null == mFile) {
+            if (null == mContext) {
+                DnsLog.w("Open lookup snapshot failed, context is null");
+                return;
+            }
+            mFile = new File(mContext.getFilesDir(), FILE_NAME);
+        }
+        long startTime = mClock.elapsedRealtime();
+        try {
+            mCreated = !mFile.exists();
+            mRaf = new RandomAccessFile(mFile, "rw");
+            mChannel = mRaf.getChannel();
+            mSize = mChannel.size();
+            if (isHeaderValid()) {
+                remapLocked();
+            } else {
+                resetLocked();
+            }
+            scanLocked(dropExpired, maxHosts);
+        } catch (IOException e) {
+            DnsLog.w(e, "Open lookup snapshot failed");
+            closeLocked();
+            return;
+        }
+        DnsLog.d("Open lookup snapshot, hosts: %d, records: %d, size: %d, cost: %dms", mUnloadedHosts.size(),
+                mRecords.size(), mSize, mClock.elapsedRealtime() - startTime);
+    }
+
+    private boolean isHeaderValid() throws IOException {
+        if (HEADER_BYTES > mSize) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(mChannel, header, 0);
+        return MAGIC == header.getInt(0) && VERSION == header.getInt(4);
+    }
+
+    private void resetLocked() throws IOException {
+        mChannel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        writeFully(mChannel, header, 0);
+        mSize = HEADER_BYTES;
+        mRecords.clear();
+        mLiveBytes = 0;
+        // NOTE: 访问映射中超出文件大小的部分会导致SIGBUS, 截断后需重新映射
+        remapLocked();
+    }
+
+    private void remapLocked() throws IOException {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mSize);
+        mMappedSize = mSize;
+    }
+
+    private void scanLocked(boolean dropExpired, int maxHosts) throws IOException {
+        long now = mClock.currentTimeMillis();
+        // 按最后一次写入的顺序排列的域名
+        LinkedHashMap<String, Boolean> hosts = new LinkedHashMap<>();
+        long offset = HEADER_BYTES;
+        while (RECORD_HEADER_BYTES <= mSize - offset) {
+            int position = (int) offset;
+            int bodyLength = mBuffer.getInt(position);
+            if (BODY_FIXED_BYTES > bodyLength || bodyLength > mSize - offset - RECORD_HEADER_BYTES) {
+                break;
+            }
+            int family = mBuffer.get(position + RECORD_HEADER_BYTES);
+            int hostnameLength = mBuffer.getShort(position + RECORD_HEADER_BYTES + 1) & 0xFFFF;
+            if (BODY_FIXED_BYTES + hostnameLength > bodyLength) {
+                break;
+            }
+            byte[] hostnameBytes = new byte[hostnameLength];
+            mBuffer.position(position + RECORD_HEADER_BYTES + 3);
+            mBuffer.get(hostnameBytes);
+            String hostname = new String(hostnameBytes, UTF_8);
+            long expiredTime = mBuffer.getLong(position + RECORD_HEADER_BYTES + 3 + hostnameLength);
+            int recordLength = RECORD_HEADER_BYTES + bodyLength;
+            String key = LookupCache.key(hostname, family);
+            removeRecordLocked(key);
+            boolean deleted = BODY_FIXED_BYTES + hostnameLength == bodyLength;
+            if (!deleted && !(dropExpired && expiredTime <= now)) {
+                putRecordLocked(key, offset, recordLength);
+                hosts.remove(hostname);
+                hosts.put(hostname, Boolean.TRUE);
+            }
+            offset += recordLength;
+        }
+        if (offset < mSize) {
+            // NOTE: 写入过程中进程退出导致的不完整记录
+            DnsLog.w("Lookup snapshot truncated at %d, size: %d", offset, mSize);
+            mChannel.truncate(offset);
+            mSize = offset;
+            remapLocked();
+        }
+
+        List<String> hostnames = new ArrayList<>(hosts.size());
+        for (String hostname : hosts.keySet()) {
+            // NOTE: 两个地址族的记录均已删除或过期时不再保留
+            if (mRecords.containsKey(LookupCache.key(hostname, DnsDescription.Family.INET))
+                    || mRecords.containsKey(LookupCache.key(hostname, DnsDescription.Family.INET6))) {
+                hostnames.add(hostname);
+            }
+        }
+        int dropCount = 0 < maxHosts ? hostnames.size() - maxHosts : 0;
+        for (int i = 0; i < hostnames.size(); i++) {
+            String hostname = hostnames.get(i);
+            if (i < dropCount) {
+                removeRecordLocked(LookupCache.key(hostname, DnsDescription.Family.INET));
+                removeRecordLocked(LookupCache.key(hostname, DnsDescription.Family.INET6));
+            } else {
+                mUnloadedHosts.add(hostname);
+            }
+        }
+    }
+
+    /**
+     * 域名是否有尚未加载的记录, 未打开时返回false
+     *
+     * @param hostname 域名
+     * @return 是否需要调用load()
+     */
+    public boolean isUnloaded(String hostname) {
+        return mUnloadedHosts.contains(hostname);
+    }
+
+    /**
+     * 读取域名对应的记录, 每个域名只会返回一次, 校验失败的记录被忽略
+     *
+     * @param hostname 域名
+     * @return 域名对应的记录, 过期时间已转换为elapsedRealtime
+     */
+    public List<LookupCache> load(String hostname) {
+        synchronized (mLock) {
+            if (!mUnloadedHosts.remove(hostname) || null == mChannel) {
+                return Collections.emptyList();
+            }
+            List<LookupCache> lookupCaches = new ArrayList<>(2);
+            loadLocked(hostname, DnsDescription.Family.INET, lookupCaches);
+            loadLocked(hostname, DnsDescription.Family.INET6, lookupCaches);
+            return lookupCaches;
+        }
+    }
+
+    /**
+     * 读取所有尚未加载的域名对应的记录, 校验失败的记录被忽略
+     *
+     * @return 所有尚未加载的记录, 过期时间已转换为elapsedRealtime
+     */
+    public List<LookupCache> loadAll() {
+        synchronized (mLock) {
+            if (null == mChannel) {
+                mUnloadedHosts.clear();
+                return Collections.emptyList();
+            }
+            List<LookupCache> lookupCaches = new ArrayList<>(2 * mUnloadedHosts.size());
+            for (String hostname : new ArrayList<>(mUnloadedHosts)) {
+                mUnloadedHosts.remove(hostname);
+                loadLocked(hostname, DnsDescription.Family.INET, lookupCaches);
+                loadLocked(hostname, DnsDescription.Family.INET6, lookupCaches);
+            }
+            return lookupCaches;
+        }
+    }
+
+    private void loadLocked(String hostname, int family, List<LookupCache> lookupCaches) {
+        String key = LookupCache.key(hostname, family);
+        long[] record = mRecords.get(key);
+        if (null == record) {
+            return;
+        }
+        try {
+            ByteBuffer recordBuffer = readRecordLocked(record[0], (int) record[1]);
+            int bodyLength = recordBuffer.getInt(0);
+            CRC32 crc = new CRC32();
+            crc.update(recordBuffer.array(), RECORD_HEADER_BYTES, bodyLength);
+            if ((int) crc.getValue() != recordBuffer.getInt(4)) {
+                throw new IOException("Checksum mismatch");
+            }
+            int hostnameLength = recordBuffer.getShort(RECORD_HEADER_BYTES + 1) & 0xFFFF;
+            int expiredTimeOffset = RECORD_HEADER_BYTES + 3 + hostnameLength;
+            long expiredTime = recordBuffer.getLong(expiredTimeOffset);
+            int resultOffset = expiredTimeOffset + 8;
+            byte[] result = new byte[recordBuffer.capacity() - resultOffset];
+            System.arraycopy(recordBuffer.array(), resultOffset, result, 0, result.length);
+            LookupResult lookupResult = LookupResultConverter.toLookupResult(hostname, result);
+            if (null == lookupResult) {
+                throw new IOException("Decode failed");
+            }
+            if (lookupResult.stat instanceof AbsRestDns.Statistics) {
+                ((AbsRestDns.Statistics) lookupResult.stat).expiredTime = toElapsedRealtime(expiredTime);
+            }
+            lookupCaches.add(new LookupCache(hostname, family, lookupResult));
+        } catch (IOException e) {
+            DnsLog.w(e, "Load %s from lookup snapshot failed", key);
+            removeRecordLocked(key);
+        }
+    }
+
+    private ByteBuffer readRecordLocked(long offset, int length) throws IOException {
+        ByteBuffer recordBuffer = ByteBuffer.allocate(length);
+        if (offset + length <= mMappedSize) {
+            ByteBuffer mapped = mBuffer.duplicate();
+            mapped.position((int) offset);
+            mapped.limit((int) offset + length);
+            recordBuffer.put(mapped);
+        } else {
+            readFully(mChannel, recordBuffer, offset);
+        }
+        return recordBuffer;
+    }
+
+    /**
+     * 丢弃域名尚未加载的记录, 用于删除缓存时避免再次加载
+     *
+     * @param hostname 域名
+     */
+    public void discard(String hostname) {
+        mUnloadedHosts.remove(hostname);
+    }
+
+    /**
+     * 丢弃所有尚未加载的记录
+     */
+    public void discardAll() {
+        mUnloadedHosts.clear();
+    }
+
+    @Override
+    public void write(boolean clearAll, Map<String, LookupCache> batch) {
+        synchronized (mLock) {
+            if (!mOpened) {
+                openLocked(false, 0);
+                mOpened = true;
+            }
+            if (null == mChannel) {
+                return;
+            }
+            try {
+                if (clearAll) {
+                    resetLocked();
+                }
+                List<String> keys = new ArrayList<>(batch.size());
+                List<ByteBuffer> records = new ArrayList<>(batch.size());
+                for (Map.Entry<String, LookupCache> entry : batch.entrySet()) {
+                    ByteBuffer record = encodeRecord(entry.getKey(), entry.getValue());
+                    if (null != record) {
+                        keys.add(entry.getKey());
+                        records.add(record);
+                    }
+                }
+                if (records.isEmpty()) {
+                    return;
+                }
+                mChannel.position(mSize);
+                ByteBuffer[] buffers = records.toArray(new ByteBuffer[records.size()]);
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                while (0 < remaining) {
+                    remaining -= mChannel.write(buffers);
+                }
+                for (int i = 0; i < keys.size(); i++) {
+                    String key = keys.get(i);
+                    int recordLength = records.get(i).capacity();
+                    removeRecordLocked(key);
+                    if (null != batch.get(key)) {
+                        putRecordLocked(key, mSize, recordLength);
+                    }
+                    mSize += recordLength;
+                }
+                long garbageBytes = mSize - HEADER_BYTES - mLiveBytes;
+                if (COMPACT_MIN_GARBAGE_BYTES < garbageBytes && mLiveBytes < garbageBytes) {
+                    compactLocked();
+                }
+            } catch (IOException e) {
+                DnsLog.w(e, "Write lookup snapshot failed");
+            }
+        }
+    }
+
+    /* @Nullable */
+    private ByteBuffer encodeRecord(String key, /* @Nullable */LookupCache lookupCache) {
+        if (null == lookupCache) {
+            // 没有对应记录时无需追加删除记录
+            if (!mRecords.containsKey(key)) {
+                return null;
+            }
+            lookupCache = LookupCache.fromKey(key, null);
+        }
+        if (DnsDescription.Family.UN_SPECIFIC == lookupCache.family) {
+            return null;
+        }
+        byte[] hostnameBytes = lookupCache.hostname.getBytes(UTF_8);
+        if (MAX_HOSTNAME_BYTES < hostnameBytes.length) {
+            return null;
+        }
+        byte[] result = new byte[0];
+        long expiredTime = 0;
+        if (null != lookupCache.lookupResult) {
+            result = LookupResultConverter.fromLookupResult(lookupCache.hostname, lookupCache.lookupResult);
+            if (lookupCache.lookupResult.stat instanceof AbsRestDns.Statistics) {
+                expiredTime = toWallTime(((AbsRestDns.Statistics) lookupCache.lookupResult.stat).expiredTime);
+            }
+        }
+        int bodyLength = BODY_FIXED_BYTES + hostnameBytes.length + result.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + bodyLength);
+        record.putInt(bodyLength);
+        record.putInt(0);
+        record.put((byte) lookupCache.family);
+        record.putShort((short) hostnameBytes.length);
+        record.put(hostnameBytes);
+        record.putLong(expiredTime);
+        record.put(result);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    // 只保留有效记录重写到新文件, 再替换原文件
+    private void compactLocked() throws IOException {
+        long startTime = mClock.elapsedRealtime();
+        File compactFile = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile compactRaf = new RandomAccessFile(compactFile, "rw");
+        HashMap<String, long[]> compactRecords = new HashMap<>();
+        long compactSize = HEADER_BYTES;
+        boolean renamed = false;
+        try {
+            FileChannel compactChannel = compactRaf.getChannel();
+            compactChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            writeFully(compactChannel, header, 0);
+            for (Map.Entry<String, long[]> entry : mRecords.entrySet()) {
+                long[] record = entry.getValue();
+                ByteBuffer recordBuffer = readRecordLocked(record[0], (int) record[1]);
+                recordBuffer.flip();
+                writeFully(compactChannel, recordBuffer, compactSize);
+                compactRecords.put(entry.getKey(), new long[]{compactSize, record[1]});
+                compactSize += record[1];
+            }
+            compactChannel.force(false);
+            renamed = compactFile.renameTo(mFile);
+        } finally {
+            try {
+                compactRaf.close();
+            } catch (IOException ignored) {
+            }
+            if (!renamed) {
+                // noinspection ResultOfMethodCallIgnored
+                compactFile.delete();
+            }
+        }
+        if (!renamed) {
+            DnsLog.w("Compact lookup snapshot failed, rename failed");
+            return;
+        }
+        long oldSize = mSize;
+        closeLocked();
+        mRaf = new RandomAccessFile(mFile, "rw");
+        mChannel = mRaf.getChannel();
+        mSize = compactSize;
+        mRecords = compactRecords;
+        remapLocked();
+        DnsLog.d("Compact lookup snapshot, size: %d -> %d, cost: %dms", oldSize, mSize,
+                mClock.elapsedRealtime() - startTime);
+    }
+
+    // elapsedRealtime转换为墙上时间, 用于写入文件
+    private long toWallTime(long elapsedRealtime) {
+        return mClock.currentTimeMillis() + (elapsedRealtime - mClock.elapsedRealtime());
+    }
+
+    // 墙上时间转换为elapsedRealtime, 用于读取文件
+    private long toElapsedRealtime(long wallTime) {
+        return mClock.elapsedRealtime() + (wallTime - mClock.currentTimeMillis());
+    }
+
+    private void putRecordLocked(String key, long offset, int length) {
+        mRecords.put(key, new long[]{offset, length});
+        mLiveBytes += length;
+    }
+
+    private void removeRecordLocked(String key) {
+        long[] record = mRecords.remove(key);
+        if (null != record) {
+            mLiveBytes -= record[1];
+        }
+    }
+
+    private void closeLocked() {
+        if (null != mRaf) {
+            try {
+                mRaf.close();
+            } catch (IOException ignored) {
+            }
+        }
+        mRaf = null;
+        mChannel = null;
+        mBuffer = null;
+        mMappedSize = 0;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + buffer.position());
+            if (0 > count) {
+                throw new IOException("Unexpected end of lookup snapshot at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.tencent.msdk.dns.core.rank;
 
 import com.tencent.msdk.dns.DnsService;
 import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.utils.IpAddress;
 import com.tencent.msdk.dns.base.utils.IpValidator;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
@@ -28,10 +29,12 @@ public class IpRankHelper {
         if (ipRankItems == null || ipRankItems.isEmpty() || ips.length < 2) {
             return;
         }
-        List<String> ipv4Lists = new ArrayList<>();
+        // NOTE: 每个IP只解析一次, 测速时直接使用解析得到的地址
+        List<IpAddress> ipv4Lists = new ArrayList<>();
         for (String ip : ips) {
-            if (IpValidator.isV4Ip(ip)) {
-                ipv4Lists.add(ip);
+            IpAddress ipAddress = IpAddress.parse(ip);
+            if (null != ipAddress && ipAddress.isV4()) {
+                ipv4Lists.add(ipAddress);
             }
         }
         // v4长度小于2，不进行优选服务
@@ -46,7 +49,7 @@ public class IpRankHelper {
 
         if (ipRankItem != null) {
             // 发起IP测速线程任务
-            DnsExecutors.WORK.execute(new IpRankTask(hostname, ipv4Lists.toArray(new String[ipv4Lists.size()]),
+            DnsExecutors.WORK.execute(new IpRankTask(hostname, ipv4Lists.toArray(new IpAddress[ipv4Lists.size()]),
                     ipRankItem, new IpRankCallback() {
                 @Override
                 public void onResult(String hostname, String[] sortedIps) {
@@ -3,6 +3,7 @@ package com.tencent.msdk.dns.core.rank;
 import android.os.SystemClock;
 import android.util.Pair;
 
+import com.tencent.msdk.dns.base.utils.IpAddress;
 import com.tencent.msdk.dns.core.Const;
 
 import java.io.IOException;
@@ -17,11 +18,11 @@ public class IpRankTask implements Runnable {
 
     private int timeouts = Const.MAX_CONNECT_TIME;
     private String hostname;
-    private String[] ips;
+    private IpAddress[] ips;
     private IpRankItem ipRankItem;
     private IpRankCallback ipRankCallback;
 
-    public IpRankTask(String hostname, String[] ips, IpRankItem ipRankItem, IpRankCallback ipRankCallback) {
+    public IpRankTask(String hostname, IpAddress[] ips, IpRankItem ipRankItem, IpRankCallback ipRankCallback) {
         this.hostname = hostname;
         this.ips = ips;
         this.ipRankItem = ipRankItem;
@@ -47,10 +48,10 @@ public class IpRankTask implements Runnable {
      * @param speeds
      * @return
      */
-    private String[] ipsSortedBySpeeds(String[] ips, int[] speeds) {
+    private String[] ipsSortedBySpeeds(IpAddress[] ips, int[] speeds) {
         ArrayList<Pair<String, Integer>> ipsSpeedsList = new ArrayList<>();
         for (int i = 0; i < ips.length; i++) {
-            ipsSpeedsList.add(new Pair<>(ips[i], speeds[i]));
+            ipsSpeedsList.add(new Pair<>(ips[i].toString(), speeds[i]));
         }
         Collections.sort(ipsSpeedsList, new Comparator<Pair<String, Integer>>() {
             @Override
@@ -72,11 +73,12 @@ public class IpRankTask implements Runnable {
      * @param port
      * @return
      */
-    private int ipSpeedTask(String ip, int port) {
+    private int ipSpeedTask(IpAddress ip, int port) {
         Socket socket = new Socket();
         long start = SystemClock.elapsedRealtime();
         long end = start + timeouts;
-        SocketAddress remoteAddress = new InetSocketAddress(ip, port);
+        // NOTE: 直接由地址字节构造, 避免InetSocketAddress(String, int)再解析一次字符串
+        SocketAddress remoteAddress = new InetSocketAddress(ip.toInetAddress(), port);
         try {
             socket.connect(remoteAddress, timeouts);
             end = SystemClock.elapsedRealtime();
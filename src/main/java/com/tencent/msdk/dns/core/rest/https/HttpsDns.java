@@ -47,6 +47,11 @@ public final class HttpsDns extends AbsHttpDns {
         return mHttpDnsConfig.getTargetUrl(dnsIp, reqContent);
     }
 
+    @Override
+    protected boolean useTls() {
+        return true;
+    }
+
     @Override
     public String encrypt(String content, String key) {
         return content;
@@ -4,26 +4,28 @@ import android.text.TextUtils;
 
 import com.tencent.msdk.dns.base.log.DnsLog;
 import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.base.utils.HttpClient;
 import com.tencent.msdk.dns.base.utils.HttpHelper;
+import com.tencent.msdk.dns.base.utils.HttpResponseDecoder;
 import com.tencent.msdk.dns.core.Const;
 import com.tencent.msdk.dns.core.DnsDescription;
 import com.tencent.msdk.dns.core.IDns;
 import com.tencent.msdk.dns.core.LookupContext;
 import com.tencent.msdk.dns.core.LookupParameters;
+import com.tencent.msdk.dns.core.LookupReactor;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.rest.share.rsp.Response;
 import com.tencent.msdk.dns.core.rest.share.rsp.ResponseParser;
 
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.Charset;
 
 public abstract class AbsHttpDns extends AbsRestDns {
     protected final int mFamily;
@@ -48,6 +50,14 @@ public abstract class AbsHttpDns extends AbsRestDns {
 
     public abstract SocketAddress getTargetSocketAddress(/* @Nullable */String dnsIp, int family);
 
+    /**
+     * 非阻塞解析是否需要在连接上进行TLS握手
+     *
+     * @return 是否使用TLS, 默认不使用
+     */
+    protected boolean useTls() {
+        return false;
+    }
 
     @Override
     public DnsDescription getDescription() {
@@ -91,13 +101,14 @@ public abstract class AbsHttpDns extends AbsRestDns {
             String rawRspContent = "";
             String lineTxt;
             try {
-                //  发起请求
-                HttpURLConnection connection = (HttpURLConnection) new URL(urlStr).openConnection();
-                connection.setConnectTimeout(timeoutMills);
-                connection.setReadTimeout(timeoutMills);
-                //  noinspection CharsetObjectCanBeUsed
+                //  发起请求, 复用连接池中的连接及TLS session
+                HttpClient.Response response = HttpClient.get(urlStr, timeoutMills);
+                if (HttpURLConnection.HTTP_BAD_REQUEST <= response.statusCode) {
+                    // 与HttpURLConnection.getInputStream()的行为保持一致
+                    throw new IOException("Server returned HTTP response code: " + response.statusCode);
+                }
                 //  读取网络请求结果
-                reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+                reader = new BufferedReader(new StringReader(response.body));
                 //  结果赋值
                 //  rawRspContent = reader.readLine();
                 while ((lineTxt = reader.readLine()) != null) {
@@ -108,7 +119,7 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 rawRspContent = rawRspContent.length() > 0 ? rawRspContent.substring(0, rawRspContent.length() - 2) :
                         "";
                 reader.close();
-                stat.statusCode = connection.getResponseCode();
+                stat.statusCode = response.statusCode;
             } catch (Exception e) {
                 if (!(e instanceof java.net.SocketTimeoutException)) {
                     stat.errorCode = ErrorCode.RESPONSE_FAILED_FOR_EXCEPTION_ERROR_CODE;
@@ -168,6 +179,10 @@ public abstract class AbsHttpDns extends AbsRestDns {
 
     @Override
     public ISession getSession(LookupContext<LookupExtra> lookupContext) {
+        if (useTls() && !TlsChannel.isSupported()) {
+            // 退化为阻塞方式解析
+            return null;
+        }
         // 参数检查由构造方法完成
         return new Session(lookupContext, this, null);
     }
@@ -178,9 +193,19 @@ public abstract class AbsHttpDns extends AbsRestDns {
 
         private SocketAddress mTargetSockAddr = null;
 
+        // 是否复用了连接池中的连接
+        private boolean mReused = false;
+        // 响应已完整读取且服务端允许保持连接时, 结束后归还到连接池
+        private boolean mKeepAlive = false;
+        // 是否使用HTTP pipelining发送请求, 此时session不持有channel
+        private boolean mPipelined = false;
+        /* @Nullable */ private HttpPipeline.PipelinedRequest mPipelinedRequest = null;
+        // HTTPS连接的TLS层, 连接成功后首次发送请求时创建
+        /* @Nullable */ private TlsChannel mTlsChannel = null;
+
         private ByteBuffer mReadBuffer = null;
-        // 收包同时启用了StringBuilder，因为ReadBuffer可能会被清空，以便再次接收
-        private StringBuilder mReadStringBuilder = null;
+        // 增量解析响应, ReadBuffer每次接收后可直接清空
+        private HttpResponseDecoder mResponseDecoder = null;
 
         private ByteBuffer mWriteBuffer = null;
 
@@ -214,6 +239,9 @@ public abstract class AbsHttpDns extends AbsRestDns {
 
             @Override
             public boolean isReadable() {
+                if (null != mPipelinedRequest) {
+                    return State.READABLE == mState && mPipelinedRequest.isCompleted();
+                }
                 if (null != mChannel) {
                     return mChannel.isConnected() && super.isReadable();
                 }
@@ -222,6 +250,15 @@ public abstract class AbsHttpDns extends AbsRestDns {
 
             @Override
             public boolean isWritable() {
+                if (null != mChannel && null != mTlsChannel && !mTlsChannel.isHandshakeFinished()) {
+                    // TLS握手期间可读或可写都需要继续握手
+                    if (!mSelectionKey.isValid()) {
+                        end();
+                        return false;
+                    }
+                    return State.WRITABLE == mState && mChannel.isConnected()
+                            && (mSelectionKey.isReadable() || mSelectionKey.isWritable());
+                }
                 if (null != mChannel) {
                     DnsLog.d(getTag()
                             + ", channel isConnected:" + mChannel.isConnected()
@@ -231,6 +268,14 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 return super.isWritable();
             }
 
+            @Override
+            public boolean isAvailable() {
+                if (mPipelined) {
+                    return State.ENDED != mState;
+                }
+                return super.isAvailable();
+            }
+
         };
 
         @Override
@@ -245,11 +290,53 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 return;
             }
 
-            Selector selector = mLookupContext.selector();
-            if (null == selector) {
-                throw new IllegalArgumentException("selector".concat(Const.NULL_POINTER_TIPS));
+            if (null == mLookupContext.lookupFuture()) {
+                throw new IllegalArgumentException("lookupFuture".concat(Const.NULL_POINTER_TIPS));
+            }
+
+            mTargetSockAddr = getTargetSocketAddress(mLookupContext.dnsIp(), mFamily);
+            if (null == mTargetSockAddr) {
+                DnsLog.d(getTag() + "get target socket address failed");
+                mStat.errorCode = ErrorCode.GET_TARGET_SOCKET_ADDRESS_FAILED_ERROR_CODE;
+                end();
+                return;
+            }
+
+            // NOTE: 重试session由事件循环线程创建, 没有就绪事件驱动首次发送, 不使用pipelining
+            // HTTPS连接由各session单独进行TLS握手, 不使用pipelining
+            if (HttpPipeline.isEnabled() && !useTls() && !LookupReactor.inReactorThread(mLookupContext)) {
+                // 发送时再加入pipeline
+                mPipelined = true;
+                mState = State.WRITABLE;
+                return;
             }
+            openOrReuseChannel();
+        }
 
+        // return: 是否成功获取channel, 失败时session已结束
+        private boolean openOrReuseChannel() {
+            // 优先复用连接池中的空闲连接, 跳过建连
+            ChannelPool.PooledChannel pooledChannel = ChannelPool.acquire(mTargetSockAddr, useTls());
+            if (null != pooledChannel) {
+                try {
+                    LookupReactor.reattach(mLookupContext, pooledChannel.mSelectionKey,
+                            SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+                    mChannel = pooledChannel.mChannel;
+                    mSelectionKey = pooledChannel.mSelectionKey;
+                    mTlsChannel = pooledChannel.mTlsChannel;
+                    mReused = true;
+                    mState = State.WRITABLE;
+                    return true;
+                } catch (Exception e) {
+                    DnsLog.d(e, getTag() + "reuse pooled channel failed");
+                    pooledChannel.close();
+                }
+            }
+            return openChannel();
+        }
+
+        // return: 是否成功创建并注册channel, 失败时session已结束
+        private boolean openChannel() {
             try {
                 try {
                     mChannel = SocketChannel.open();
@@ -268,10 +355,9 @@ public abstract class AbsHttpDns extends AbsRestDns {
                     throw e;
                 }
                 try {
-//                    Selector注册监听
-                    mSelectionKey = mChannel.register(selector,
+//                    注册到共享的Selector监听
+                    mSelectionKey = LookupReactor.register(mLookupContext, mChannel,
                             SelectionKey.OP_CONNECT | SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-                    mSelectionKey.attach(mChannel);
                 } catch (Exception e) {
                     mStat.errorCode = ErrorCode.REGISTER_CHANNEL_FAILED_ERROR_CODE;
                     mStat.errorMsg = e.getMessage();
@@ -281,15 +367,24 @@ public abstract class AbsHttpDns extends AbsRestDns {
             } catch (Exception e) {
                 DnsLog.d(e, getTag() + "create socket channel failed");
                 end();
-                return;
+                return false;
             }
+            ChannelPool.onConnect();
+            return true;
+        }
 
-            mTargetSockAddr = getTargetSocketAddress(mLookupContext.dnsIp(), mFamily);
-            if (null == mTargetSockAddr) {
-                DnsLog.d(getTag() + "get target socket address failed");
-                mStat.errorCode = ErrorCode.GET_TARGET_SOCKET_ADDRESS_FAILED_ERROR_CODE;
-                end();
-            }
+        // 复用的连接已失效(如服务端关闭或半开连接), 且尚未收到任何响应数据时, 重新建连并重发请求
+        // return: 是否重新建连成功, 失败时session已结束
+        private boolean reconnect() {
+            DnsLog.d(getTag() + "reused %s is broken, reconnect", mChannel);
+            CommonUtils.closeQuietly(mChannel);
+            mChannel = null;
+            mTlsChannel = null;
+            mReused = false;
+            mWriteBuffer = null;
+            mReadBuffer = null;
+            mResponseDecoder = null;
+            return openChannel();
         }
 
         @Override
@@ -326,7 +421,22 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 end();
                 return NonBlockResult.NON_BLOCK_RESULT_FAILED;
             }
+            if (mPipelined) {
+                mPipelinedRequest = HttpPipeline.submit(mTargetSockAddr, mLookupContext, getReq);
+                if (null != mPipelinedRequest) {
+                    DnsLog.d(getTag() + "lookup send byUrl: %s, pipelined", urlStr);
+                    return NonBlockResult.NON_BLOCK_RESULT_SUCCESS;
+                }
+                // 无法使用pipelining时, 退化为单独连接
+                mPipelined = false;
+                return openOrReuseChannel()
+                        ? NonBlockResult.NON_BLOCK_RESULT_NEED_CONTINUE : NonBlockResult.NON_BLOCK_RESULT_FAILED;
+            }
             try {
+                if (!tryHandshake()) {
+                    DnsLog.d(getTag() + "tls handshake not finished, try again");
+                    return NonBlockResult.NON_BLOCK_RESULT_NEED_CONTINUE;
+                }
                 DnsLog.v(getTag() + "send httpReq:{\n%s}", getReq);
                 DnsLog.d(getTag() + "lookup send byUrl: %s", urlStr);
                 if (mWriteBuffer == null) {
@@ -336,15 +446,17 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 ByteBuffer buf = mWriteBuffer;
                 int i = 0;
                 while (buf.hasRemaining()) {
-                    int written = mChannel.write(buf);
+                    int written = null != mTlsChannel ? mTlsChannel.write(buf) : mChannel.write(buf);
                     DnsLog.d(getTag() + "send request count:" + (++i) + ", res:" + written);
                     if (written <= 0) {
                         break;
                     }
                 }
-                if (buf.hasRemaining()) {
+                // NOTE: HTTPS请求加密后的数据可能尚未完全写出
+                if (buf.hasRemaining() || (null != mTlsChannel && !mTlsChannel.flush())) {
                     // 发包允许重试，记录buffer
                     DnsLog.d(getTag() + "send request has remaining, try again");
+                    mSelectionKey.interestOps(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
                     // need continue
                     return NonBlockResult.NON_BLOCK_RESULT_NEED_CONTINUE;
                 } else {
@@ -354,6 +466,10 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 mSelectionKey.interestOps(SelectionKey.OP_READ);
                 DnsLog.d(getTag() + "send request finish");
             } catch (Exception e) {
+                if (mReused) {
+                    return reconnect()
+                            ? NonBlockResult.NON_BLOCK_RESULT_NEED_CONTINUE : NonBlockResult.NON_BLOCK_RESULT_FAILED;
+                }
                 DnsLog.d(e, getTag() + "send request failed, for exception");
                 end();
                 mStat.errorCode = ErrorCode.REQUEST_FAILED_ERROR_CODE;
@@ -363,45 +479,71 @@ public abstract class AbsHttpDns extends AbsRestDns {
             return NonBlockResult.NON_BLOCK_RESULT_SUCCESS;
         }
 
+        // return: TLS握手是否已完成, 不使用TLS时直接返回true
+        private boolean tryHandshake() throws IOException {
+            if (!useTls()) {
+                return true;
+            }
+            if (null == mTlsChannel) {
+                mTlsChannel = new TlsChannel(mChannel, mLookupContext.dnsIp(),
+                        ((InetSocketAddress) mTargetSockAddr).getPort());
+            }
+            if (mTlsChannel.handshake()) {
+                return true;
+            }
+            // 握手期间只监听TlsChannel需要的事件, 避免channel持续可写导致空转
+            mSelectionKey.interestOps(mTlsChannel.interestOps());
+            return false;
+        }
+
         @Override
         protected Response responseInternal() {
             DnsLog.d(getTag() + "receive responseInternal call");
-            final LookupExtra lookupExtra = mLookupContext.lookupExtra();
+            if (null != mPipelinedRequest) {
+                return pipelinedResponse();
+            }
             if (mReadBuffer == null) {
                 mReadBuffer = ByteBuffer.allocate(TCP_CONTINUOUS_RCV_BUF_SIZE);
             }
-            if (mReadStringBuilder == null) {
-                mReadStringBuilder = new StringBuilder();
+            if (mResponseDecoder == null) {
+                mResponseDecoder = new HttpResponseDecoder();
             }
             ByteBuffer rspBuf = mReadBuffer;
+            HttpResponseDecoder decoder = mResponseDecoder;
             int rspLen;
             int totalLen = 0;
-            StringBuilder sb = mReadStringBuilder;
+            boolean finished = false;
             do {
                 try {
-                    rspLen = mChannel.read(rspBuf);
+                    rspLen = null != mTlsChannel ? mTlsChannel.read(rspBuf) : mChannel.read(rspBuf);
                     DnsLog.d(getTag() + "receive response get len:%d, lastLen:%d", rspLen, totalLen);
                     if (rspLen > 0) {
                         totalLen += rspLen;
-                        // 此时就处理数据
+                        // 此时就处理数据, 响应可能分多次到达, 由decoder累积
                         rspBuf.flip();
-                        rspLen = rspBuf.limit();
-                        byte[] rawRsp = new byte[rspLen];
-                        rspBuf.get(rawRsp, 0, rspLen);
-                        String rspHttpRsp = new String(rawRsp, Charset.forName("UTF-8"));
-                        sb.append(rspHttpRsp);
-                        if (HttpHelper.checkHttpRspFinished(rspHttpRsp)) {
+                        finished = decoder.decode(rspBuf);
+                        if (finished) {
                             DnsLog.d(getTag() + "receive response check http rsp finished:%d, so break", rspLen);
-                            break;
+                            // 响应之后还有多余数据时, 连接不可复用
+                            mKeepAlive = decoder.isKeepAlive() && !rspBuf.hasRemaining();
                         }
                         // 重新清空rspBuf，并再次接收
                         rspBuf.clear();
+                        if (finished) {
+                            break;
+                        }
                     } else if (rspLen == 0) {
                         // break, 等待下次select
                         DnsLog.d(getTag() + "receive response get len:0, and break");
                         break;
+                    } else {
+                        // 没有Content-Length的响应以连接关闭作为结束
+                        finished = decoder.finishOnEof();
                     }
                 } catch (Exception e) {
+                    if (mReused && 0 == decoder.decodedLength()) {
+                        return reconnectForResponse();
+                    }
                     DnsLog.d(e, getTag() + "receive response failed, for exception");
                     mStat.isGetEmptyResponse = true;
                     mStat.errorCode = ErrorCode.RESPONSE_FAILED_FOR_EXCEPTION_ERROR_CODE;
@@ -409,10 +551,9 @@ public abstract class AbsHttpDns extends AbsRestDns {
                     return Response.EMPTY;
                 }
             } while (rspLen >= 0);
-            DnsLog.d(getTag() + "receive response get total len:%d", totalLen);
-            String rspHttpRsp = sb.toString();
-            mStat.statusCode = HttpHelper.responseStatus(rspHttpRsp);
-            DnsLog.v(getTag() + "receive rspHttpRsp:{\n%s}", rspHttpRsp);
+            DnsLog.d(getTag() + "receive response get total len:%d, decoded len:%d",
+                    totalLen, decoder.decodedLength());
+            mStat.statusCode = decoder.statusCode();
 
             if (rspLen == 0) {
                 DnsLog.d(getTag() + "receive response failed, need continue, for total len:%d", totalLen);
@@ -420,14 +561,45 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 return Response.NEED_CONTINUE;
             }
 
-            if (totalLen <= 0) {
-                DnsLog.d(getTag() + "receive response failed, for total len:%d", totalLen);
+            if (!finished && mReused && 0 == decoder.decodedLength()) {
+                // 复用的连接已被服务端关闭
+                return reconnectForResponse();
+            }
+
+            if (!finished) {
+                DnsLog.d(getTag() + "receive response failed, connection closed, decoded len:%d",
+                        decoder.decodedLength());
                 mStat.isGetEmptyResponse = true;
                 mStat.errorCode = ErrorCode.RESPONSE_FAILED_FOR_EXCEPTION_ERROR_CODE;
                 return Response.EMPTY;
             }
 
-            String rspBody = HttpHelper.responseBody(rspHttpRsp);
+            return parseRspContent(decoder.statusCode(), decoder.body(), decoder.decodedLength());
+        }
+
+        // 使用pipelining时, 由pipeline切分出完整的响应
+        private Response pipelinedResponse() {
+            HttpPipeline.PipelinedRequest pipelinedRequest = mPipelinedRequest;
+            mPipelinedRequest = null;
+            mPipelined = false;
+            String rspBody = pipelinedRequest.body();
+            if (null == rspBody) {
+                // pipeline失败, 退化为单独连接重新发送请求
+                DnsLog.d(getTag() + "pipelined request failed, resend by single connection");
+                if (openOrReuseChannel()) {
+                    mStat.errorCode = ErrorCode.RESPONSE_FAILED_NEED_CONTINUE_ERROR_CODE;
+                    return Response.NEED_CONTINUE;
+                }
+                return Response.EMPTY;
+            }
+            mStat.statusCode = pipelinedRequest.statusCode();
+            return parseRspContent(pipelinedRequest.statusCode(), rspBody, rspBody.length());
+        }
+
+        private Response parseRspContent(int statusCode, String body, int totalLen) {
+            final LookupExtra lookupExtra = mLookupContext.lookupExtra();
+            // 非200的响应body不作为解析结果
+            String rspBody = HttpURLConnection.HTTP_OK == statusCode ? body : "";
             String rspContent = decrypt(rspBody, lookupExtra.bizKey);
             DnsLog.d(getTag() + "receive rawLen:%d, raw:[%s], rsp body content:[%s]", totalLen, rspBody, rspContent);
             if (TextUtils.isEmpty(rspContent)) {
@@ -445,16 +617,34 @@ public abstract class AbsHttpDns extends AbsRestDns {
                 mStat.errorCode = ErrorCode.SUCCESS;
             }
             return resParser;
+        }
 
+        private Response reconnectForResponse() {
+            if (reconnect()) {
+                mStat.errorCode = ErrorCode.RESPONSE_FAILED_NEED_CONTINUE_ERROR_CODE;
+                return Response.NEED_CONTINUE;
+            }
+            return Response.EMPTY;
         }
 
         @Override
         protected void endInternal() {
-            // NOTE: 如果短时间内不会存在串行请求, 池化连接意义不大
-            CommonUtils.closeQuietly(mChannel);
+            if (null != mPipelinedRequest) {
+                // 响应到达后由pipeline丢弃
+                mPipelinedRequest.abandon();
+                mPipelinedRequest = null;
+            }
+            if (mKeepAlive) {
+                // NOTE: 仅在事件循环线程完整读取响应后为true, 可安全归还
+                ChannelPool.release(mTargetSockAddr, mChannel, mSelectionKey, mTlsChannel);
+            } else {
+                CommonUtils.closeQuietly(mChannel);
+            }
+            mKeepAlive = false;
+            mTlsChannel = null;
             mWriteBuffer = null;
             mReadBuffer = null;
-            mReadStringBuilder = null;
+            mResponseDecoder = null;
         }
 
         @Override
@@ -3,35 +3,23 @@ package com.tencent.msdk.dns.core.rest.share;
 import android.os.SystemClock;
 import android.text.TextUtils;
 
-import com.tencent.msdk.dns.BackupResolver;
-import com.tencent.msdk.dns.BuildConfig;
 import com.tencent.msdk.dns.DnsService;
-import com.tencent.msdk.dns.base.compat.CollectionCompat;
-import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.log.DnsLog;
-import com.tencent.msdk.dns.base.network.IOnNetworkChangeListener;
-import com.tencent.msdk.dns.base.network.NetworkChangeManager;
 import com.tencent.msdk.dns.core.Const;
-import com.tencent.msdk.dns.core.DnsManager;
+import com.tencent.msdk.dns.core.DnsDescription;
 import com.tencent.msdk.dns.core.IDns;
 import com.tencent.msdk.dns.core.LookupParameters;
 import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.cache.Cache;
+import com.tencent.msdk.dns.core.cache.PopularityTracker;
 import com.tencent.msdk.dns.core.rank.IpRankCallback;
 import com.tencent.msdk.dns.core.rank.IpRankHelper;
+import com.tencent.msdk.dns.core.rest.share.rsp.HostRecord;
 import com.tencent.msdk.dns.core.rest.share.rsp.Response;
-import com.tencent.msdk.dns.report.ReportHelper;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
-import java.util.concurrent.ConcurrentHashMap;
 
 public final class CacheHelper {
 
@@ -40,17 +28,17 @@ public final class CacheHelper {
     // 缓存自动刷新最小时间设置
     private static final int MIN_LOOKUP_TIME = 60;
 
-    private final List<Runnable> mPendingTasks = new Vector<>();
+    // 热点域名在缓存过期前预取, TTL过短的域名预取收益低, 不预取
+    private static final float PREFETCH_FACTOR = 0.9f;
+    private static final int MIN_PREFETCH_TTL = 30;
+
     // NOTE: 先后发起两个域名解析请求, 如果后一个无法命中前一个的缓存, 则两个请求的结果都会写入缓存
-    // 后一次写入应该负责清理前一次缓存写入对应的pending任务
-    private final Map<String, PendingTasks> mHostnamePendingTasksMap = new ConcurrentHashMap<>();
-    // pending的异步解析任务对应的参数
-    private final Set<LookupParameters<LookupExtra>> mAsyncLookupParamsSet =
-            Collections.synchronizedSet(
-                    CollectionCompat.<LookupParameters<LookupExtra>>createSet());
+    // 后一次写入会替换前一次写入对应的刷新调度
+    private final RefreshScheduler mRefreshScheduler = RefreshScheduler.getInstance();
 
     private final IDns<LookupExtra> mDns;
     private final Cache mCache = Cache.getInstance();
+    private final PopularityTracker mPopularityTracker = PopularityTracker.getInstance();
     private final IpRankHelper mIpRankHelper = new IpRankHelper();
 
     CacheHelper(IDns<LookupExtra> dns) {
@@ -59,7 +47,7 @@ public final class CacheHelper {
         }
 
         mDns = dns;
-        listenNetworkChange();
+        NetworkChangeCoordinator.getInstance().listen();
     }
 
     public LookupResult get(String hostname) {
@@ -67,7 +55,12 @@ public final class CacheHelper {
             throw new IllegalArgumentException("hostname".concat(Const.EMPTY_TIPS));
         }
 
-        LookupResult lookupResult = mCache.get(hostname);
+        return get(hostname, mDns.getDescription().family);
+    }
+
+    // family为UN_SPECIFIC时获取IPv4及IPv6合并的结果
+    private LookupResult get(String hostname, int family) {
+        LookupResult lookupResult = mCache.get(hostname, family);
         if (lookupResult != null) {
             AbsRestDns.Statistics cachedStat = (AbsRestDns.Statistics) lookupResult.stat;
             final boolean useExpiredIpEnable = DnsService.getDnsConfig().useExpiredIpEnable;
@@ -75,18 +68,18 @@ public final class CacheHelper {
             if (useExpiredIpEnable || cachedStat.expiredTime > SystemClock.elapsedRealtime()) {
                 return lookupResult;
             }
-            DnsLog.d("Cache of %s(%d) expired", hostname, mDns.getDescription().family);
-            mCache.delete(hostname);
+            // NOTE: 过期条目由Cache在后台清理, 不在调用线程同步删除
+            DnsLog.d("Cache of %s(%d) expired", hostname, family);
         }
         return null;
     }
 
-    public void update(String hostname, LookupResult lookupResult) {
+    public void update(String hostname, int family, LookupResult lookupResult) {
         if (TextUtils.isEmpty(hostname)) {
             throw new IllegalArgumentException("hostname".concat(Const.EMPTY_TIPS));
         }
-        mCache.delete(hostname);
-        mCache.add(hostname, lookupResult);
+        // NOTE: 仅替换对应地址族的结果
+        mCache.add(hostname, family, lookupResult);
     }
 
     /**
@@ -109,43 +102,38 @@ public final class CacheHelper {
         }
 
         final String[] hostnameArr = lookupParams.requestHostname.split(",");
-        Map<String, List<String>> ipsWithHostname = new HashMap<>();
-        if (hostnameArr.length > 1) {
-            // 对批量域名返回值做处理
-            for (String ips : rsp.ips) {
-                final String[] arr = ips.split(":", 2);
-                if (!ipsWithHostname.containsKey(arr[0])) {
-                    ipsWithHostname.put(arr[0], new ArrayList<String>());
-                }
-                ipsWithHostname.get(arr[0]).add(arr[1]);
+        final boolean batch = hostnameArr.length > 1;
+        Map<String, HostRecord> hostRecordMap = new HashMap<>();
+        for (HostRecord record : rsp.records) {
+            // 对批量域名返回值做处理, 非批量解析时record.host为null
+            if (batch && 0 == record.inet4Ips.length && 0 == record.inet6Ips.length) {
+                continue;
             }
-        } else {
-            ipsWithHostname.put(hostnameArr[0], Arrays.asList(rsp.ips));
+            hostRecordMap.put(batch ? record.host : hostnameArr[0], record);
         }
 
-
+        final int family = mDns.getDescription().family;
         for (final String hostname : hostnameArr) {
-            List<String> ipsList = ipsWithHostname.get(hostname);
-            if (ipsList != null) {
-                String[] ips = ipsList.toArray(new String[0]);
-                final int ttlOfHostname = hostnameArr.length > 1 ? rsp.ttl.get(hostname) : rsp.ttl.get("onehost");
-                Map<String, Integer> ttl = new HashMap<String, Integer>() {{
-                    put(hostname, ttlOfHostname);
-                }};
-                AbsRestDns.Statistics stat = new AbsRestDns.Statistics(ips, rsp.clientIp, ttl);
-                stat.errorCode = ErrorCode.SUCCESS;
-                mCache.add(hostname, new LookupResult<>(ips, stat));
-                cacheUpdateTask(lookupParams, ttlOfHostname, hostname);
+            HostRecord record = hostRecordMap.get(hostname);
+            if (record != null) {
+                // NOTE: IPv4及IPv6结果分别缓存, 各自使用对应的ttl, 互不覆盖
+                if (DnsDescription.Family.INET6 != family) {
+                    putFamily(hostname, DnsDescription.Family.INET, record.inet4Ips, record.inet4Ttl, rsp.clientIp);
+                }
+                if (DnsDescription.Family.INET != family) {
+                    putFamily(hostname, DnsDescription.Family.INET6, record.inet6Ips, record.inet6Ttl, rsp.clientIp);
+                }
+                cacheUpdateTask(lookupParams, record.ttl(), hostname);
 
                 // 发起IP优选服务
-                mIpRankHelper.ipv4Rank(hostname, ips, new IpRankCallback() {
+                mIpRankHelper.ipv4Rank(hostname, record.inet4Ips, new IpRankCallback() {
                     @Override
                     public void onResult(String hostname, String[] sortedIps) {
-                        LookupResult cacheResult = get(hostname);
+                        LookupResult cacheResult = get(hostname, DnsDescription.Family.INET);
                         // 根据排序的ip结果来对缓存结果排序
                         if (cacheResult != null) {
                             LookupResult sortedResult = mIpRankHelper.sortResultByIps(sortedIps, cacheResult);
-                            update(hostname, sortedResult);
+                            update(hostname, DnsDescription.Family.INET, sortedResult);
                         }
                     }
                 });
@@ -157,58 +145,38 @@ public final class CacheHelper {
 
     }
 
-    private void cacheUpdateTask(LookupParameters<LookupExtra> lookupParams, int ttl, final String hostname) {
-        PendingTasks pendingTasks = mHostnamePendingTasksMap.get(hostname);
-        if (null != pendingTasks) {
-            if (null != pendingTasks.asyncLookupTask) {
-                mPendingTasks.remove(pendingTasks.asyncLookupTask);
-                DnsExecutors.MAIN.cancel(pendingTasks.asyncLookupTask);
-                pendingTasks.asyncLookupTask = null;
-            }
-        } else {
-            pendingTasks = new PendingTasks();
-        }
+    private void putFamily(String hostname, int family, String[] ips, int ttlOfFamily, String clientIp) {
+        Map<String, Integer> ttl = new HashMap<>();
+        ttl.put(hostname, ttlOfFamily);
+        AbsRestDns.Statistics stat = new AbsRestDns.Statistics(ips, clientIp, ttl);
+        stat.errorCode = ErrorCode.SUCCESS;
+        mCache.add(hostname, family, new LookupResult<>(ips, stat));
+    }
 
+    private void cacheUpdateTask(LookupParameters<LookupExtra> lookupParams, int ttl, final String hostname) {
+        final int lookupFamily = mDns.getDescription().family;
         final Set<String> persistentCacheDomains = DnsService.getDnsConfig().persistentCacheDomains;
         final boolean enablePersistentCache = DnsService.getDnsConfig().enablePersistentCache;
-        // 创建缓存更新任务
+        // 调度缓存更新
         if (enablePersistentCache && persistentCacheDomains != null && persistentCacheDomains.contains(hostname)) {
-            final int lookupFamily = mDns.getDescription().family;
-            final LookupParameters<LookupExtra> newLookupParams;
-            newLookupParams =
-                    new LookupParameters.Builder<>(lookupParams)
-                            .hostname(hostname)
-                            .enableAsyncLookup(true)
-                            .fallback2Local(false)
-                            .family(lookupFamily)
-                            .networkChangeLookup(false)
-                            .build();
-            mAsyncLookupParamsSet.add(newLookupParams);
-            final Runnable asyncLookupTask = new Runnable() {
-                @Override
-                public void run() {
-                    DnsLog.d("%.2f of TTL goes by, lookup for %s(%d) async",
-                            ASYNC_LOOKUP_FACTOR, hostname, lookupFamily);
-                    DnsExecutors.WORK.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            LookupResult lookupResult = DnsManager.lookupWrapper(newLookupParams);
-                            // atta上报
-                            ReportHelper.attaReportAsyncLookupEvent(lookupResult);
-                        }
-                    });
-                    mPendingTasks.remove(this);
-                }
-            };
-            pendingTasks.asyncLookupTask = asyncLookupTask;
-            mPendingTasks.add(asyncLookupTask);
-            DnsExecutors.MAIN.schedule(
-                    asyncLookupTask, getRefreshTime(ttl));
+            mRefreshScheduler.schedule(buildRefreshLookupParams(lookupParams, hostname), getRefreshTime(ttl));
+        } else if (MIN_PREFETCH_TTL <= ttl && mPopularityTracker.isHot(hostname)) {
+            mRefreshScheduler.schedulePrefetch(buildRefreshLookupParams(lookupParams, hostname),
+                    (long) (PREFETCH_FACTOR * ttl * 1000), ttl * 1000L);
+        } else {
+            mRefreshScheduler.cancel(hostname, lookupFamily);
         }
+    }
 
-        if (!mHostnamePendingTasksMap.containsKey(hostname)) {
-            mHostnamePendingTasksMap.put(hostname, pendingTasks);
-        }
+    private LookupParameters<LookupExtra> buildRefreshLookupParams(LookupParameters<LookupExtra> lookupParams,
+                                                                   String hostname) {
+        return new LookupParameters.Builder<>(lookupParams)
+                .hostname(hostname)
+                .enableAsyncLookup(true)
+                .fallback2Local(false)
+                .family(mDns.getDescription().family)
+                .networkChangeLookup(false)
+                .build();
     }
 
     private long getRefreshTime(int ttl) {
@@ -222,65 +190,4 @@ public final class CacheHelper {
             mCache.clearCache(hostname);
         }
     }
-
-    private void listenNetworkChange() {
-        NetworkChangeManager.addNetworkChangeListener(
-                new IOnNetworkChangeListener() {
-                    @Override
-                    public void onNetworkChange() {
-                        final boolean useExpiredIpEnable = DnsService.getDnsConfig().useExpiredIpEnable;
-                        // 允许使用过期缓存，不清除缓存
-                        if (!useExpiredIpEnable) {
-                            DnsLog.d("Network changed, clear caches");
-                            mCache.clear();
-                        }
-                        synchronized (mPendingTasks) {
-                            for (Runnable task : mPendingTasks) {
-                                DnsExecutors.MAIN.cancel(task);
-                            }
-                        }
-
-                        // 国内站网络变更需刷新服务ip
-                        if (BuildConfig.FLAVOR.equals("normal")) {
-                            DnsLog.d("Network changed, refetch server Ips");
-                            BackupResolver.getInstance().getServerIps();
-                        }
-
-                        // 开启自动刷新缓存后，切换网络，刷新配置域名的缓存
-                        final boolean enablePersistentCache = DnsService.getDnsConfig().enablePersistentCache;
-                        if (enablePersistentCache) {
-                            synchronized (mAsyncLookupParamsSet) {
-                                DnsLog.d("Network changed, enable persistent async lookup");
-                                Iterator<LookupParameters<LookupExtra>> asyncLookupParamsIterator =
-                                        mAsyncLookupParamsSet.iterator();
-                                while (asyncLookupParamsIterator.hasNext()) {
-                                    LookupParameters<LookupExtra> asyncLookupParams =
-                                            asyncLookupParamsIterator.next();
-                                    DnsLog.d("Async lookup for %s start",
-                                            asyncLookupParams.hostname);
-                                    final LookupParameters<LookupExtra> newLookupParams =
-                                            new LookupParameters.Builder<>(asyncLookupParams)
-                                                    .networkChangeLookup(true)
-                                                    .build();
-                                    DnsExecutors.WORK.execute(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            LookupResult lookupResult = DnsManager.lookupWrapper(newLookupParams);
-                                            // atta上报
-                                            ReportHelper.attaReportAsyncLookupEvent(lookupResult);
-                                        }
-                                    });
-                                    asyncLookupParamsIterator.remove();
-                                }
-                            }
-                        }
-                    }
-                });
-    }
-
-    private static class PendingTasks {
-
-        public Runnable removeExpiredCacheTask;
-        public Runnable asyncLookupTask;
-    }
 }
@@ -0,0 +1,265 @@
+package com.tencent.msdk.dns.core.rest.share;
+
+import android.os.SystemClock;
+
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.network.IOnNetworkChangeListener;
+import com.tencent.msdk.dns.base.network.NetworkChangeManager;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.core.Const;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTPDNS服务的长连接池
+ * 以服务地址(dnsIp, port)为key缓存空闲的已连接channel, 供后续非阻塞解析复用, 避免每次解析都进行TCP握手
+ * 空闲连接的SelectionKey保留在共享的Selector上, 不监听任何事件, 复用时重新关联到新的解析任务
+ * HTTPS连接与其TlsChannel一起缓存, 复用时无需再次TLS握手
+ */
+public final class ChannelPool {
+
+    private static final long IDLE_TIMEOUT_MILLS = 30 * 1000;
+    private static final int MAX_IDLE_CHANNELS_PER_ADDRESS = 4;
+
+    // NOTE: 由POOL_LOCK保护
+    private static final Map<SocketAddress, Deque<PooledChannel>> IDLE_CHANNELS_MAP = new HashMap<>();
+    private static boolean sEvictScheduled = false;
+    private static final Object POOL_LOCK = new Object();
+
+    private static final AtomicLong REUSE_COUNT = new AtomicLong();
+    private static final AtomicLong CONNECT_COUNT = new AtomicLong();
+
+    private static final Runnable EVICT_TASK = new Runnable() {
+        @Override
+        public void run() {
+            evictIdleChannels();
+        }
+    };
+
+    static {
+        // NOTE: 网络变化后旧连接不可用, 直接清空
+        NetworkChangeManager.addNetworkChangeListener(new IOnNetworkChangeListener() {
+            @Override
+            public void onNetworkChange() {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * 获取复用已有连接的次数
+     *
+     * @return 复用连接的次数
+     */
+    public static long reuseCount() {
+        return REUSE_COUNT.get();
+    }
+
+    /**
+     * 获取新建连接的次数
+     *
+     * @return 新建连接的次数
+     */
+    public static long connectCount() {
+        return CONNECT_COUNT.get();
+    }
+
+    /**
+     * 获取连接复用率
+     *
+     * @return 复用连接的次数占所有连接的比例, 尚无连接时返回0
+     */
+    public static float reuseRatio() {
+        long reuseCount = REUSE_COUNT.get();
+        long totalCount = reuseCount + CONNECT_COUNT.get();
+        return 0 == totalCount ? 0 : (float) reuseCount / totalCount;
+    }
+
+    /**
+     * 清空所有空闲连接
+     */
+    public static void flush() {
+        List<PooledChannel> channels = new ArrayList<>();
+        synchronized (POOL_LOCK) {
+            for (Deque<PooledChannel> idleChannels : IDLE_CHANNELS_MAP.values()) {
+                channels.addAll(idleChannels);
+            }
+            IDLE_CHANNELS_MAP.clear();
+        }
+        for (PooledChannel channel : channels) {
+            channel.close();
+        }
+        if (!channels.isEmpty()) {
+            DnsLog.d("ChannelPool flushed, %d idle channels closed", channels.size());
+        }
+    }
+
+    // 新建连接时调用, 用于统计复用率
+    static void onConnect() {
+        CONNECT_COUNT.incrementAndGet();
+    }
+
+    // return: 可用的空闲连接, 没有时返回null
+    /* @Nullable */
+    static PooledChannel acquire(SocketAddress address) {
+        return acquire(address, false);
+    }
+
+    // tls: 是否获取HTTPS连接
+    // return: 可用的空闲连接, 没有时返回null
+    /* @Nullable */
+    static PooledChannel acquire(SocketAddress address, boolean tls) {
+        if (null == address) {
+            throw new IllegalArgumentException("address".concat(Const.NULL_POINTER_TIPS));
+        }
+        while (true) {
+            PooledChannel channel;
+            synchronized (POOL_LOCK) {
+                Deque<PooledChannel> idleChannels = IDLE_CHANNELS_MAP.get(address);
+                if (null == idleChannels) {
+                    return null;
+                }
+                // 优先使用最近归还的连接
+                channel = idleChannels.pollLast();
+                if (idleChannels.isEmpty()) {
+                    IDLE_CHANNELS_MAP.remove(address);
+                }
+            }
+            if (null == channel) {
+                return null;
+            }
+            if ((null != channel.mTlsChannel) == tls && channel.isAlive()) {
+                REUSE_COUNT.incrementAndGet();
+                DnsLog.d("ChannelPool reuse %s", channel.mChannel);
+                return channel;
+            }
+            channel.close();
+        }
+    }
+
+    // NOTE: 仅在事件循环线程, 完整读取响应后调用, 此时连接上没有未读取的数据
+    static void release(SocketAddress address, SocketChannel channel, SelectionKey selectionKey) {
+        release(address, channel, selectionKey, null);
+    }
+
+    // NOTE: 仅在事件循环线程, 完整读取响应后调用, 此时连接上没有未读取的数据
+    static void release(SocketAddress address, SocketChannel channel, SelectionKey selectionKey,
+                        /* @Nullable */TlsChannel tlsChannel) {
+        if (null == address || null == channel || null == selectionKey) {
+            CommonUtils.closeQuietly(channel);
+            return;
+        }
+        if (!channel.isOpen() || !channel.isConnected() || !selectionKey.isValid()) {
+            CommonUtils.closeQuietly(channel);
+            return;
+        }
+        try {
+            selectionKey.interestOps(0);
+        } catch (Exception e) {
+            CommonUtils.closeQuietly(channel);
+            return;
+        }
+        selectionKey.attach(null);
+
+        PooledChannel pooledChannel = new PooledChannel(channel, selectionKey, tlsChannel);
+        PooledChannel evictedChannel = null;
+        synchronized (POOL_LOCK) {
+            Deque<PooledChannel> idleChannels = IDLE_CHANNELS_MAP.get(address);
+            if (null == idleChannels) {
+                idleChannels = new ArrayDeque<>();
+                IDLE_CHANNELS_MAP.put(address, idleChannels);
+            }
+            if (MAX_IDLE_CHANNELS_PER_ADDRESS <= idleChannels.size()) {
+                evictedChannel = idleChannels.pollFirst();
+            }
+            idleChannels.offerLast(pooledChannel);
+            if (!sEvictScheduled) {
+                sEvictScheduled = true;
+                DnsExecutors.MAIN.schedule(EVICT_TASK, IDLE_TIMEOUT_MILLS);
+            }
+        }
+        if (null != evictedChannel) {
+            evictedChannel.close();
+        }
+        DnsLog.d("ChannelPool release %s, reuse ratio:%.2f", channel, reuseRatio());
+    }
+
+    private static void evictIdleChannels() {
+        List<PooledChannel> evictedChannels = new ArrayList<>();
+        long nowMills = SystemClock.elapsedRealtime();
+        synchronized (POOL_LOCK) {
+            Iterator<Deque<PooledChannel>> iterator = IDLE_CHANNELS_MAP.values().iterator();
+            while (iterator.hasNext()) {
+                Deque<PooledChannel> idleChannels = iterator.next();
+                // 按归还时间排序, 队首最早归还
+                while (!idleChannels.isEmpty()
+                        && nowMills - idleChannels.peekFirst().mIdleSinceMills >= IDLE_TIMEOUT_MILLS) {
+                    evictedChannels.add(idleChannels.pollFirst());
+                }
+                if (idleChannels.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            sEvictScheduled = !IDLE_CHANNELS_MAP.isEmpty();
+            if (sEvictScheduled) {
+                DnsExecutors.MAIN.schedule(EVICT_TASK, IDLE_TIMEOUT_MILLS);
+            }
+        }
+        for (PooledChannel channel : evictedChannels) {
+            channel.close();
+        }
+        DnsLog.d("ChannelPool evict %d idle channels, reuse:%d, connect:%d",
+                evictedChannels.size(), REUSE_COUNT.get(), CONNECT_COUNT.get());
+    }
+
+    static final class PooledChannel {
+
+        final SocketChannel mChannel;
+        final SelectionKey mSelectionKey;
+        /* @Nullable */ final TlsChannel mTlsChannel;
+        final long mIdleSinceMills;
+
+        PooledChannel(SocketChannel channel, SelectionKey selectionKey, TlsChannel tlsChannel) {
+            mChannel = channel;
+            mSelectionKey = selectionKey;
+            mTlsChannel = tlsChannel;
+            mIdleSinceMills = SystemClock.elapsedRealtime();
+        }
+
+        // 检查连接是否仍可用: 服务端已关闭(read返回-1)或有多余数据时都不可复用
+        // NOTE: 无法发现没有收到FIN的半开连接, 由空闲超时及复用失败后重建连接兜底
+        boolean isAlive() {
+            if (!mChannel.isOpen() || !mChannel.isConnected() || !mSelectionKey.isValid()) {
+                return false;
+            }
+            if (SystemClock.elapsedRealtime() - mIdleSinceMills >= IDLE_TIMEOUT_MILLS) {
+                return false;
+            }
+            try {
+                // NOTE: HTTPS连接需经TlsChannel读取, 服务端在响应后发送的session ticket等消息不视为多余数据
+                if (null != mTlsChannel) {
+                    return 0 == mTlsChannel.read(ByteBuffer.allocate(1));
+                }
+                return 0 == mChannel.read(ByteBuffer.allocate(1));
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        void close() {
+            CommonUtils.closeQuietly(mChannel);
+        }
+    }
+}
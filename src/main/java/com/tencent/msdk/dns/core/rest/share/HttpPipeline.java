@@ -0,0 +1,362 @@
+package com.tencent.msdk.dns.core.rest.share;
+
+import android.os.SystemClock;
+
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.base.utils.HttpResponseDecoder;
+import com.tencent.msdk.dns.core.Const;
+import com.tencent.msdk.dns.core.LookupContext;
+import com.tencent.msdk.dns.core.LookupReactor;
+
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HTTP/1.1 pipelining
+ * 同一时刻发往同一服务地址的多个解析请求在同一连接上连续发送, 响应按Content-Length或chunked编码依次切分后交给对应的解析请求
+ * 服务端不支持(如响应无法切分, 中途关闭连接)时, 未完成的解析请求退化为每个请求单独使用一个连接
+ * NOTE: 除isEnabled外, 所有方法仅在事件循环线程调用
+ */
+public final class HttpPipeline implements LookupReactor.IChannelHandler {
+
+    private static final int MAX_PIPELINE_DEPTH = 8;
+    // 服务端不支持pipelining时, 一段时间内不再对其使用pipelining
+    private static final long DISABLE_PIPELINING_MILLS = 10 * 60 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile boolean sEnabled = false;
+
+    // NOTE: 仅事件循环线程访问
+    private static final Map<SocketAddress, HttpPipeline> PIPELINES = new HashMap<>();
+    private static final Map<SocketAddress, Long> DISABLED_UNTIL_MAP = new HashMap<>();
+
+    private final SocketAddress mAddress;
+    private SocketChannel mChannel = null;
+    private SelectionKey mSelectionKey = null;
+    private boolean mConnected = false;
+
+    // 已发送(包括正在发送)但未收到响应的请求, 按发送顺序排列
+    private final Deque<PipelinedRequest> mInFlightRequests = new ArrayDeque<>();
+    // 尚未发送完成的请求
+    private final Deque<PipelinedRequest> mPendingWrites = new ArrayDeque<>();
+    private int mReceivedCount = 0;
+    // 最近一次连接/收发进展的时间, 用于发现停滞的连接
+    private long mLastActiveMills = SystemClock.elapsedRealtime();
+
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocate(AbsRestDns.TCP_CONTINUOUS_RCV_BUF_SIZE);
+    // 增量解析当前最早的未完成请求的响应
+    private final HttpResponseDecoder mResponseDecoder = new HttpResponseDecoder();
+
+    private HttpPipeline(SocketAddress address) {
+        mAddress = address;
+    }
+
+    /**
+     * 设置是否启用HTTP pipelining
+     *
+     * @param enabled 是否启用
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    // return: 加入pipeline的请求, 无法使用pipelining时返回null
+    /* @Nullable */
+    static PipelinedRequest submit(SocketAddress address, LookupContext lookupContext, String request) {
+        if (null == address) {
+            throw new IllegalArgumentException("address".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == lookupContext) {
+            throw new IllegalArgumentException("lookupContext".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (!sEnabled) {
+            return null;
+        }
+        Long disabledUntilMills = DISABLED_UNTIL_MAP.get(address);
+        if (null != disabledUntilMills) {
+            if (SystemClock.elapsedRealtime() < disabledUntilMills) {
+                return null;
+            }
+            DISABLED_UNTIL_MAP.remove(address);
+        }
+
+        HttpPipeline pipeline = PIPELINES.get(address);
+        if (null != pipeline && !pipeline.mInFlightRequests.isEmpty()
+                && SystemClock.elapsedRealtime() - pipeline.mLastActiveMills >= lookupContext.timeoutMills()) {
+            // 连接已停滞(如半开连接), 其上未完成的请求退化为单独连接
+            DnsLog.d("HttpPipeline(%s) stalled", address);
+            pipeline.fail(null, false);
+            pipeline = null;
+        }
+        if (null == pipeline) {
+            pipeline = new HttpPipeline(address);
+            if (!pipeline.open(lookupContext)) {
+                return null;
+            }
+            PIPELINES.put(address, pipeline);
+        }
+        if (MAX_PIPELINE_DEPTH <= pipeline.mInFlightRequests.size()) {
+            return null;
+        }
+
+        PipelinedRequest pipelinedRequest =
+                new PipelinedRequest(lookupContext.lookupFuture(), ByteBuffer.wrap(request.getBytes(UTF_8)));
+        pipeline.mInFlightRequests.offerLast(pipelinedRequest);
+        pipeline.mPendingWrites.offerLast(pipelinedRequest);
+        DnsLog.d("HttpPipeline(%s) submit, in flight:%d", address, pipeline.mInFlightRequests.size());
+        if (pipeline.mConnected && !pipeline.flushWrites()) {
+            // 发送失败时请求已被标记为失败, 由解析请求自行退化
+            pipeline.fail(null, false);
+        }
+        return pipelinedRequest;
+    }
+
+    private boolean open(LookupContext lookupContext) {
+        ChannelPool.PooledChannel pooledChannel = ChannelPool.acquire(mAddress);
+        if (null != pooledChannel) {
+            try {
+                pooledChannel.mSelectionKey.attach(this);
+                pooledChannel.mSelectionKey.interestOps(SelectionKey.OP_READ);
+                mChannel = pooledChannel.mChannel;
+                mSelectionKey = pooledChannel.mSelectionKey;
+                mConnected = true;
+                return true;
+            } catch (Exception e) {
+                DnsLog.d(e, "HttpPipeline(%s) reuse pooled channel failed", mAddress);
+                pooledChannel.close();
+            }
+        }
+        try {
+            mChannel = SocketChannel.open();
+            mChannel.configureBlocking(false);
+            mConnected = mChannel.connect(mAddress);
+            mSelectionKey = LookupReactor.registerShared(lookupContext, mChannel,
+                    mConnected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            ChannelPool.onConnect();
+            return true;
+        } catch (Exception e) {
+            DnsLog.d(e, "HttpPipeline(%s) open channel failed", mAddress);
+            CommonUtils.closeQuietly(mChannel);
+            return false;
+        }
+    }
+
+    @Override
+    public void onSelected(SelectionKey selectionKey, Set<LookupReactor.LookupFuture> readyFutures) {
+        if (!selectionKey.isValid()) {
+            fail(readyFutures, false);
+            return;
+        }
+        try {
+            if (!mConnected && selectionKey.isConnectable()) {
+                if (!mChannel.finishConnect()) {
+                    return;
+                }
+                mConnected = true;
+                mLastActiveMills = SystemClock.elapsedRealtime();
+                DnsLog.d("HttpPipeline(%s) connected", mAddress);
+            }
+            if (mConnected && !flushWrites()) {
+                fail(readyFutures, false);
+                return;
+            }
+            if (selectionKey.isReadable()) {
+                read(readyFutures);
+            }
+        } catch (Exception e) {
+            DnsLog.d(e, "HttpPipeline(%s) failed", mAddress);
+            fail(readyFutures, false);
+        }
+    }
+
+    // return: 是否发送成功(包括未发送完, 等待下次可写)
+    private boolean flushWrites() {
+        try {
+            while (!mPendingWrites.isEmpty()) {
+                ByteBuffer request = mPendingWrites.peekFirst().mRequest;
+                mChannel.write(request);
+                if (request.hasRemaining()) {
+                    break;
+                }
+                mPendingWrites.pollFirst();
+            }
+            mSelectionKey.interestOps(
+                    mPendingWrites.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return true;
+        } catch (Exception e) {
+            DnsLog.d(e, "HttpPipeline(%s) send request failed", mAddress);
+            return false;
+        }
+    }
+
+    private void read(Set<LookupReactor.LookupFuture> readyFutures) throws Exception {
+        int readLen;
+        while (0 < (readLen = mChannel.read(mReadBuffer))) {
+            mReadBuffer.flip();
+            mLastActiveMills = SystemClock.elapsedRealtime();
+            boolean available = frameResponses(readyFutures);
+            mReadBuffer.clear();
+            if (!available) {
+                return;
+            }
+        }
+        if (0 > readLen) {
+            // 服务端已关闭连接, 已收到过响应说明服务端在pipeline中途关闭连接
+            DnsLog.d("HttpPipeline(%s) closed by server, in flight:%d", mAddress, mInFlightRequests.size());
+            fail(readyFutures, !mInFlightRequests.isEmpty() && 0 < mReceivedCount);
+        }
+    }
+
+    // 切分mReadBuffer中已收到的响应
+    // return: pipeline是否仍可用
+    private boolean frameResponses(Set<LookupReactor.LookupFuture> readyFutures) {
+        while (mReadBuffer.hasRemaining()) {
+            if (mInFlightRequests.isEmpty()) {
+                // 多余的响应
+                DnsLog.d("HttpPipeline(%s) received unexpected data", mAddress);
+                fail(readyFutures, true);
+                return false;
+            }
+            boolean completed;
+            try {
+                completed = mResponseDecoder.decode(mReadBuffer);
+            } catch (ProtocolException e) {
+                DnsLog.d(e, "HttpPipeline(%s) decode response failed", mAddress);
+                fail(readyFutures, true);
+                return false;
+            }
+            if (mResponseDecoder.isHeaderComplete() && !mResponseDecoder.isFramed()) {
+                // 以连接关闭作为结束的响应无法切分
+                DnsLog.d("HttpPipeline(%s) can not frame response", mAddress);
+                fail(readyFutures, true);
+                return false;
+            }
+            if (!completed) {
+                return true;
+            }
+            mReceivedCount++;
+            boolean keepAlive = mResponseDecoder.isKeepAlive();
+            mInFlightRequests.pollFirst()
+                    .complete(mResponseDecoder.statusCode(), mResponseDecoder.body(), readyFutures);
+            mResponseDecoder.reset();
+
+            if (!keepAlive) {
+                // 服务端要求关闭连接, 仍有未完成的请求时说明服务端不支持pipelining
+                fail(readyFutures, !mInFlightRequests.isEmpty());
+                return false;
+            }
+            if (mInFlightRequests.isEmpty()) {
+                // 空闲后归还到连接池, 供后续解析复用
+                PIPELINES.remove(mAddress);
+                if (!mReadBuffer.hasRemaining()) {
+                    ChannelPool.release(mAddress, mChannel, mSelectionKey);
+                } else {
+                    CommonUtils.closeQuietly(mChannel);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 关闭连接, 未完成的请求标记为失败, 由对应的解析请求退化为单独连接
+    private void fail(/* @Nullable */Set<LookupReactor.LookupFuture> readyFutures, boolean disablePipelining) {
+        if (this == PIPELINES.get(mAddress)) {
+            PIPELINES.remove(mAddress);
+        }
+        if (disablePipelining) {
+            DnsLog.d("HttpPipeline(%s) disabled for %dms", mAddress, DISABLE_PIPELINING_MILLS);
+            DISABLED_UNTIL_MAP.put(mAddress, SystemClock.elapsedRealtime() + DISABLE_PIPELINING_MILLS);
+        }
+        CommonUtils.closeQuietly(mChannel);
+        PipelinedRequest pipelinedRequest;
+        while (null != (pipelinedRequest = mInFlightRequests.pollFirst())) {
+            pipelinedRequest.fail(readyFutures);
+        }
+        mPendingWrites.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpPipeline{"
+                + "address=" + mAddress
+                + ", inFlight=" + mInFlightRequests.size()
+                + '}';
+    }
+
+    /**
+     * pipeline中的单个请求
+     * NOTE: 由事件循环线程完成, 解析请求在其LookupFuture就绪后读取结果
+     */
+    static final class PipelinedRequest {
+
+        private final LookupReactor.LookupFuture mLookupFuture;
+        final ByteBuffer mRequest;
+
+        private volatile int mStatusCode = 0;
+        private volatile String mBody = null;
+        private volatile boolean mFailed = false;
+        // 解析请求已结束(如超时), 响应到达后直接丢弃
+        private volatile boolean mAbandoned = false;
+
+        PipelinedRequest(LookupReactor.LookupFuture lookupFuture, ByteBuffer request) {
+            mLookupFuture = lookupFuture;
+            mRequest = request;
+        }
+
+        boolean isCompleted() {
+            return null != mBody || mFailed;
+        }
+
+        int statusCode() {
+            return mStatusCode;
+        }
+
+        // return: 响应的body, 失败时返回null
+        /* @Nullable */
+        String body() {
+            return mBody;
+        }
+
+        void abandon() {
+            mAbandoned = true;
+        }
+
+        private void complete(int statusCode, String body, Set<LookupReactor.LookupFuture> readyFutures) {
+            mStatusCode = statusCode;
+            mBody = body;
+            notifyReady(readyFutures);
+        }
+
+        private void fail(/* @Nullable */Set<LookupReactor.LookupFuture> readyFutures) {
+            mFailed = true;
+            notifyReady(readyFutures);
+        }
+
+        private void notifyReady(/* @Nullable */Set<LookupReactor.LookupFuture> readyFutures) {
+            if (mAbandoned || null == mLookupFuture) {
+                return;
+            }
+            if (null == readyFutures) {
+                LookupReactor.markReady(mLookupFuture);
+            } else {
+                readyFutures.add(mLookupFuture);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.tencent.msdk.dns.core.rest.share;
+
+import android.os.SystemClock;
+
+import com.tencent.msdk.dns.BackupResolver;
+import com.tencent.msdk.dns.BuildConfig;
+import com.tencent.msdk.dns.DnsService;
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.network.IOnNetworkChangeListener;
+import com.tencent.msdk.dns.base.network.NetworkChangeManager;
+import com.tencent.msdk.dns.core.DnsDescription;
+import com.tencent.msdk.dns.core.LookupParameters;
+import com.tencent.msdk.dns.core.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 网络切换后的缓存重建, 所有CacheHelper共用一个网络切换监听
+ * <p>
+ * 网络切换时立即清除缓存并取消所有刷新调度, 网络在DEBOUNCE_MILLS内没有再次切换后只重建一次:
+ * 刷新服务IP, 并将取消的刷新按域名去重后合并为批量解析重新发起
+ */
+public final class NetworkChangeCoordinator {
+
+    private static final long DEBOUNCE_MILLS = 1000;
+
+    private final RefreshScheduler mRefreshScheduler = RefreshScheduler.getInstance();
+
+    private final AtomicBoolean mListening = new AtomicBoolean(false);
+
+    // 以下字段由this保护
+    // 待重建的刷新, 同一域名只保留一个, 持久化域名的刷新优先于热点域名的预取
+    private final Map<String, RefreshScheduler.RefreshEntry> mPendingEntryMap = new LinkedHashMap<>();
+    // 本次重建前合并的网络切换次数及第一次切换的时间
+    private int mChangeCount = 0;
+    private long mFirstChangeTime = 0;
+    // 统计数据
+    private long mTotalChangeCount = 0;
+    private long mRebuildCount = 0;
+    private int mLastRebuildDomains = 0;
+    private long mLastRebuildCostMills = -1;
+
+    private final Runnable mRebuildTask = new Runnable() {
+        @Override
+        public void run() {
+            rebuild();
+        }
+    };
+
+    private NetworkChangeCoordinator() {
+    }
+
+    private static final class Holder {
+        static final NetworkChangeCoordinator INSTANCE = new NetworkChangeCoordinator();
+    }
+
+    public static NetworkChangeCoordinator getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * 开始监听网络切换, 重复调用时直接返回
+     */
+    void listen() {
+        if (!mListening.compareAndSet(false, true)) {
+            return;
+        }
+        NetworkChangeManager.addNetworkChangeListener(new IOnNetworkChangeListener() {
+            @Override
+            public void onNetworkChange() {
+                onNetworkChanged();
+            }
+        });
+    }
+
+    private void onNetworkChanged() {
+        // 允许使用过期缓存，不清除缓存
+        if (!DnsService.getDnsConfig().useExpiredIpEnable) {
+            DnsLog.d("Network changed, clear caches");
+            Cache.getInstance().clear();
+        }
+        List<RefreshScheduler.RefreshEntry> canceledList = mRefreshScheduler.cancelAll();
+        synchronized (this) {
+            mTotalChangeCount++;
+            if (0 == mChangeCount++) {
+                mFirstChangeTime = SystemClock.elapsedRealtime();
+            }
+            for (RefreshScheduler.RefreshEntry entry : canceledList) {
+                String hostname = entry.lookupParams.hostname;
+                RefreshScheduler.RefreshEntry pendingEntry = mPendingEntryMap.get(hostname);
+                if (null == pendingEntry || (pendingEntry.isPrefetch() && !entry.isPrefetch())) {
+                    mPendingEntryMap.put(hostname, entry);
+                }
+            }
+            // NOTE: 网络频繁切换时推迟重建, 直到网络稳定
+            DnsExecutors.MAIN.cancel(mRebuildTask);
+            DnsExecutors.MAIN.schedule(mRebuildTask, DEBOUNCE_MILLS);
+        }
+    }
+
+    private void rebuild() {
+        List<RefreshScheduler.RefreshEntry> pendingList;
+        int changeCount;
+        long firstChangeTime;
+        synchronized (this) {
+            pendingList = new ArrayList<>(mPendingEntryMap.values());
+            mPendingEntryMap.clear();
+            changeCount = mChangeCount;
+            firstChangeTime = mFirstChangeTime;
+            mChangeCount = 0;
+        }
+
+        // 国内站网络变更需刷新服务ip
+        if (BuildConfig.FLAVOR.equals("normal")) {
+            DnsLog.d("Network changed, refetch server Ips");
+            BackupResolver.getInstance().getServerIps();
+        }
+
+        // 开启自动刷新缓存后，切换网络，刷新配置域名的缓存, 热点域名的缓存按预取配额刷新
+        final boolean enablePersistentCache = DnsService.getDnsConfig().enablePersistentCache;
+        List<RefreshScheduler.RefreshEntry> rebuildList = new ArrayList<>(pendingList.size());
+        for (RefreshScheduler.RefreshEntry entry : pendingList) {
+            // NOTE: 切换后已重新解析过的域名已有新的刷新调度, 无需重建
+            if ((!enablePersistentCache && !entry.isPrefetch())
+                    || mRefreshScheduler.isScheduled(entry.lookupParams.hostname)) {
+                continue;
+            }
+            // NOTE: 实际解析的地址族由切换后的网络栈决定, 统一地址族使各地址族的刷新合并为同一批量解析
+            rebuildList.add(new RefreshScheduler.RefreshEntry(
+                    new LookupParameters.Builder<>(entry.lookupParams)
+                            .family(DnsDescription.Family.UN_SPECIFIC)
+                            .build(),
+                    entry.prefetchWindowMills));
+        }
+        final long startTime = SystemClock.elapsedRealtime();
+        final int rebuildCount = rebuildList.size();
+        DnsLog.d("Network changed %d times in %dms, rebuild %d domains", changeCount, startTime - firstChangeTime,
+                rebuildCount);
+        if (0 == rebuildCount) {
+            return;
+        }
+        mRefreshScheduler.refresh(rebuildList, true, new Runnable() {
+            @Override
+            public void run() {
+                long costMills = SystemClock.elapsedRealtime() - startTime;
+                synchronized (NetworkChangeCoordinator.this) {
+                    mRebuildCount++;
+                    mLastRebuildDomains = rebuildCount;
+                    mLastRebuildCostMills = costMills;
+                }
+                DnsLog.i("Network change rebuild %d domains finished, cost: %dms", rebuildCount, costMills);
+            }
+        });
+    }
+
+    /**
+     * 获取网络切换后缓存重建的统计数据
+     *
+     * @return 当前统计数据的快照
+     */
+    public synchronized NetworkChangeStats getStats() {
+        return new NetworkChangeStats(mTotalChangeCount, mRebuildCount, mLastRebuildDomains, mLastRebuildCostMills);
+    }
+}
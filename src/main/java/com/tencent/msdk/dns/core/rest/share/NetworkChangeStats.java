@@ -0,0 +1,42 @@
+package com.tencent.msdk.dns.core.rest.share;
+
+/**
+ * 网络切换后缓存重建的统计数据快照
+ */
+public final class NetworkChangeStats {
+
+    /**
+     * 网络切换次数
+     */
+    public final long networkChangeCount;
+    /**
+     * 已完成的重建次数, 网络频繁切换时多次切换合并为一次重建, 没有需要重建的域名时不计入
+     */
+    public final long rebuildCount;
+    /**
+     * 最近一次重建的域名数, 没有已完成的重建时为0
+     */
+    public final int lastRebuildDomains;
+    /**
+     * 最近一次重建从发起解析到全部完成的耗时, 单位为ms, 没有已完成的重建时为-1
+     */
+    public final long lastRebuildCostMills;
+
+    NetworkChangeStats(long networkChangeCount, long rebuildCount, int lastRebuildDomains,
+                       long lastRebuildCostMills) {
+        this.networkChangeCount = networkChangeCount;
+        this.rebuildCount = rebuildCount;
+        this.lastRebuildDomains = lastRebuildDomains;
+        this.lastRebuildCostMills = lastRebuildCostMills;
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkChangeStats{"
+                + "networkChangeCount=" + networkChangeCount
+                + ", rebuildCount=" + rebuildCount
+                + ", lastRebuildDomains=" + lastRebuildDomains
+                + ", lastRebuildCostMills=" + lastRebuildCostMills
+                + '}';
+    }
+}
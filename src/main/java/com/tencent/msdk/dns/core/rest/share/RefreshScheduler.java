@@ -0,0 +1,324 @@
+package com.tencent.msdk.dns.core.rest.share;
+
+import com.tencent.msdk.dns.DnsService;
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.executor.TimingWheel;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.CommonUtils;
+import com.tencent.msdk.dns.core.Const;
+import com.tencent.msdk.dns.core.DnsDescription;
+import com.tencent.msdk.dns.core.DnsManager;
+import com.tencent.msdk.dns.core.LookupParameters;
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.cache.PopularityTracker;
+import com.tencent.msdk.dns.report.ReportHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存自动刷新的统一调度
+ * <p>
+ * 所有域名的刷新时间由一个时间轮管理, 同一tick到期且解析参数相同的域名合并为批量解析请求
+ * 刷新时间随机提前一小段时间, 避免大量TTL相同的域名在同一时刻刷新
+ * <p>
+ * 热点域名的预取与persistentCacheDomains的刷新共用时间轮, 到期时仍在预取范围内的域名按热度排序后批量预取,
+ * 每个批量请求需先从PopularityTracker申请配额
+ */
+final class RefreshScheduler {
+
+    private static final long TICK_MILLS = 1000;
+    private static final int WHEEL_SIZE = 512;
+
+    // 随机提前刷新的比例及上限
+    private static final float JITTER_FACTOR = 0.05f;
+    private static final long MAX_JITTER_MILLS = 10 * 1000;
+
+    // 批量解析参数中用于合并的占位域名
+    private static final String BATCH_KEY_HOSTNAME = "*";
+
+    private final Random mRandom = new Random();
+
+    // NOTE: 由this保护, 持有this时可以调用时间轮, 时间轮在释放自身的锁后才回调
+    private final Map<String, TimingWheel.Timeout<RefreshEntry>> mTimeoutMap = new HashMap<>();
+
+    private final TimingWheel<RefreshEntry> mTimingWheel =
+            new TimingWheel<>(TICK_MILLS, WHEEL_SIZE,
+                    new TimingWheel.TimeoutListener<RefreshEntry>() {
+                        @Override
+                        public void onTimeout(List<RefreshEntry> entries) {
+                            List<RefreshEntry> dueList = new ArrayList<>(entries.size());
+                            synchronized (RefreshScheduler.this) {
+                                for (RefreshEntry entry : entries) {
+                                    // NOTE: 到期后再被重新调度的条目以新的调度为准
+                                    TimingWheel.Timeout<RefreshEntry> timeout = mTimeoutMap.get(entry.key());
+                                    if (null != timeout && timeout.item == entry) {
+                                        mTimeoutMap.remove(entry.key());
+                                        dueList.add(entry);
+                                    }
+                                }
+                            }
+                            DnsLog.d("Refresh %d domains on schedule", dueList.size());
+                            refresh(dueList, false, null);
+                        }
+                    });
+
+    private RefreshScheduler() {
+    }
+
+    private static final class Holder {
+        static final RefreshScheduler INSTANCE = new RefreshScheduler();
+    }
+
+    static RefreshScheduler getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * 调度单个域名的刷新, 替换该域名同一地址族之前的调度
+     *
+     * @param lookupParams 单域名的刷新解析参数
+     * @param delayMills   刷新延迟, 单位为ms, 实际刷新时间会随机提前
+     */
+    void schedule(LookupParameters<LookupExtra> lookupParams, long delayMills) {
+        schedule(new RefreshEntry(lookupParams, 0), delayMills);
+    }
+
+    /**
+     * 调度单个热点域名的预取, 替换该域名同一地址族之前的调度
+     * 到期时域名已不在预取范围内或超出预取请求数限制时不预取
+     *
+     * @param lookupParams 单域名的刷新解析参数
+     * @param delayMills   预取延迟, 单位为ms, 实际预取时间会随机提前
+     * @param windowMills  预取结果的有效期, 单位为ms, 用于统计预取命中率
+     */
+    void schedulePrefetch(LookupParameters<LookupExtra> lookupParams, long delayMills, long windowMills) {
+        schedule(new RefreshEntry(lookupParams, Math.max(1, windowMills)), delayMills);
+    }
+
+    private synchronized void schedule(RefreshEntry entry, long delayMills) {
+        long jitterMills = Math.min((long) (delayMills * JITTER_FACTOR), MAX_JITTER_MILLS);
+        if (0 < jitterMills) {
+            delayMills -= (long) (mRandom.nextDouble() * jitterMills);
+        }
+        String key = entry.key();
+        TimingWheel.Timeout<RefreshEntry> timeout = mTimeoutMap.get(key);
+        if (null != timeout && timeout.item.equals(entry)) {
+            mTimingWheel.reschedule(timeout, delayMills);
+            return;
+        }
+        mTimingWheel.cancel(timeout);
+        mTimeoutMap.put(key, mTimingWheel.schedule(entry, delayMills));
+    }
+
+    /**
+     * 取消单个域名的刷新
+     *
+     * @param hostname 域名
+     * @param family   地址族
+     */
+    synchronized void cancel(String hostname, int family) {
+        mTimingWheel.cancel(mTimeoutMap.remove(keyOf(hostname, family)));
+    }
+
+    /**
+     * 判断域名是否有任一地址族的刷新调度
+     *
+     * @param hostname 域名
+     * @return 有刷新调度时返回true
+     */
+    synchronized boolean isScheduled(String hostname) {
+        return mTimeoutMap.containsKey(keyOf(hostname, DnsDescription.Family.INET))
+                || mTimeoutMap.containsKey(keyOf(hostname, DnsDescription.Family.INET6))
+                || mTimeoutMap.containsKey(keyOf(hostname, DnsDescription.Family.UN_SPECIFIC));
+    }
+
+    /**
+     * 取消所有刷新
+     *
+     * @return 被取消的刷新, 可通过refresh()立即刷新
+     */
+    synchronized List<RefreshEntry> cancelAll() {
+        List<RefreshEntry> canceledList = new ArrayList<>(mTimeoutMap.size());
+        for (TimingWheel.Timeout<RefreshEntry> timeout : mTimeoutMap.values()) {
+            mTimingWheel.cancel(timeout);
+            canceledList.add(timeout.item);
+        }
+        mTimeoutMap.clear();
+        return canceledList;
+    }
+
+    /**
+     * 立即刷新, 持久化域名全部刷新, 热点域名仅预取仍在预取范围内的部分
+     *
+     * @param entries         待刷新的条目
+     * @param netChangeLookup 是否为网络切换触发的解析
+     * @param onComplete      所有批量解析完成后在WORK线程中回调, 没有需要解析的域名时在当前线程回调
+     */
+    void refresh(List<RefreshEntry> entries, boolean netChangeLookup, /* @Nullable */Runnable onComplete) {
+        List<RefreshEntry> persistentList = new ArrayList<>();
+        List<RefreshEntry> prefetchList = new ArrayList<>();
+        for (RefreshEntry entry : entries) {
+            (entry.isPrefetch() ? prefetchList : persistentList).add(entry);
+        }
+        List<LookupParameters<LookupExtra>> batchLookupParamsList = new ArrayList<>();
+        if (!persistentList.isEmpty()) {
+            splitInBatch(persistentList, netChangeLookup, false, batchLookupParamsList);
+        }
+        if (!prefetchList.isEmpty()) {
+            prefetchInBatch(prefetchList, netChangeLookup, batchLookupParamsList);
+        }
+        lookupAsync(batchLookupParamsList, onComplete);
+    }
+
+    private void prefetchInBatch(List<RefreshEntry> entries, boolean netChangeLookup,
+                                 List<LookupParameters<LookupExtra>> batchLookupParamsList) {
+        List<String> hostnames = new ArrayList<>(entries.size());
+        for (RefreshEntry entry : entries) {
+            hostnames.add(entry.lookupParams.hostname);
+        }
+        final Map<String, Double> hotScores = PopularityTracker.getInstance().getHotScores(hostnames);
+        List<RefreshEntry> hotList = new ArrayList<>(hotScores.size());
+        for (RefreshEntry entry : entries) {
+            if (hotScores.containsKey(entry.lookupParams.hostname)) {
+                hotList.add(entry);
+            }
+        }
+        DnsLog.d("Prefetch %d of %d domains", hotList.size(), entries.size());
+        // NOTE: 按热度从高到低排序, 超出预取请求数限制时优先预取最热的域名
+        Collections.sort(hotList, new Comparator<RefreshEntry>() {
+            @Override
+            public int compare(RefreshEntry o1, RefreshEntry o2) {
+                return Double.compare(hotScores.get(o2.lookupParams.hostname),
+                        hotScores.get(o1.lookupParams.hostname));
+            }
+        });
+        splitInBatch(hotList, netChangeLookup, true, batchLookupParamsList);
+    }
+
+    // 按解析参数分组, 每组按批量解析的域名数上限拆分为批量解析参数
+    private void splitInBatch(List<RefreshEntry> entries, boolean netChangeLookup, boolean prefetch,
+                              List<LookupParameters<LookupExtra>> batchLookupParamsList) {
+        Map<LookupParameters<LookupExtra>, List<RefreshEntry>> batchMap = new LinkedHashMap<>();
+        for (RefreshEntry entry : entries) {
+            LookupParameters<LookupExtra> batchKey = new LookupParameters.Builder<>(entry.lookupParams)
+                    .hostname(BATCH_KEY_HOSTNAME)
+                    .networkChangeLookup(netChangeLookup)
+                    .build();
+            List<RefreshEntry> batchEntries = batchMap.get(batchKey);
+            if (null == batchEntries) {
+                batchEntries = new ArrayList<>();
+                batchMap.put(batchKey, batchEntries);
+            }
+            batchEntries.add(entry);
+        }
+        PopularityTracker popularityTracker = PopularityTracker.getInstance();
+        int maxBatchSize = Math.max(1, DnsService.getDnsConfig().maxNumOfBatchLookupDomains);
+        for (Map.Entry<LookupParameters<LookupExtra>, List<RefreshEntry>> entry : batchMap.entrySet()) {
+            List<RefreshEntry> batchEntries = entry.getValue();
+            for (int from = 0; from < batchEntries.size(); from += maxBatchSize) {
+                int to = Math.min(from + maxBatchSize, batchEntries.size());
+                List<String> batch = new ArrayList<>(to - from);
+                long windowMills = Long.MAX_VALUE;
+                for (RefreshEntry batchEntry : batchEntries.subList(from, to)) {
+                    batch.add(batchEntry.lookupParams.hostname);
+                    windowMills = Math.min(windowMills, batchEntry.prefetchWindowMills);
+                }
+                if (prefetch) {
+                    if (!popularityTracker.tryAcquireRequest()) {
+                        DnsLog.d("Prefetch throttled, skip %d domains", batch.size());
+                        popularityTracker.onThrottled(batch.size());
+                        continue;
+                    }
+                    popularityTracker.onPrefetched(batch, windowMills);
+                }
+                batchLookupParamsList.add(new LookupParameters.Builder<>(entry.getKey())
+                        .hostname(CommonUtils.toStringList(batch.toArray(new String[batch.size()]), ","))
+                        .build());
+            }
+        }
+    }
+
+    // 在WORK线程中发起批量解析
+    private void lookupAsync(List<LookupParameters<LookupExtra>> batchLookupParamsList,
+                             /* @Nullable */final Runnable onComplete) {
+        if (batchLookupParamsList.isEmpty()) {
+            if (null != onComplete) {
+                onComplete.run();
+            }
+            return;
+        }
+        final AtomicInteger remainCount = new AtomicInteger(batchLookupParamsList.size());
+        for (final LookupParameters<LookupExtra> batchLookupParams : batchLookupParamsList) {
+            DnsLog.d("Refresh lookup for %s(%d) async", batchLookupParams.hostname, batchLookupParams.family);
+            DnsExecutors.WORK.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        LookupResult lookupResult = DnsManager.lookupWrapper(batchLookupParams);
+                        // atta上报
+                        ReportHelper.attaReportAsyncLookupEvent(lookupResult);
+                    } finally {
+                        if (0 == remainCount.decrementAndGet() && null != onComplete) {
+                            onComplete.run();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static String keyOf(String hostname, int family) {
+        return hostname + '#' + family;
+    }
+
+    /**
+     * 单个域名的刷新调度
+     */
+    static final class RefreshEntry {
+
+        final LookupParameters<LookupExtra> lookupParams;
+        // 预取结果的有效期, 为0时表示persistentCacheDomains的刷新
+        final long prefetchWindowMills;
+
+        RefreshEntry(LookupParameters<LookupExtra> lookupParams, long prefetchWindowMills) {
+            if (null == lookupParams) {
+                throw new IllegalArgumentException("lookupParams".concat(Const.NULL_POINTER_TIPS));
+            }
+            this.lookupParams = lookupParams;
+            this.prefetchWindowMills = prefetchWindowMills;
+        }
+
+        boolean isPrefetch() {
+            return 0 < prefetchWindowMills;
+        }
+
+        String key() {
+            return keyOf(lookupParams.hostname, lookupParams.family);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            RefreshEntry that = (RefreshEntry) o;
+            return prefetchWindowMills == that.prefetchWindowMills && lookupParams.equals(that.lookupParams);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * lookupParams.hashCode() + (int) (prefetchWindowMills ^ (prefetchWindowMills >>> 32));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.tencent.msdk.dns.core.rest.share;
+
+import com.tencent.msdk.dns.base.utils.TlsContext;
+import com.tencent.msdk.dns.core.Const;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * 基于SSLEngine的非阻塞TLS连接, 包装已连接的SocketChannel, 供事件循环线程使用
+ * SSLEngine由共享的SSLContext以(host, port)创建, 再次连接同一服务时可恢复session
+ * NOTE: 非线程安全, 仅在事件循环线程访问
+ */
+final class TlsChannel {
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    private final SocketChannel mChannel;
+    private final String mHost;
+    private final SSLEngine mEngine;
+
+    // 已从网络读取, 尚未解密的数据, 保持写模式
+    private ByteBuffer mNetInBuffer;
+    // 已加密, 尚未写入网络的数据, 保持写模式
+    private ByteBuffer mNetOutBuffer;
+    // 已解密, 尚未被读取的数据, 保持写模式
+    private ByteBuffer mAppInBuffer;
+
+    private boolean mHandshakeStarted = false;
+    private boolean mHandshakeFinished = false;
+    private long mHandshakeStartMills = 0;
+
+    // return: 当前平台是否支持TLS
+    static boolean isSupported() {
+        return null != TlsContext.get();
+    }
+
+    TlsChannel(SocketChannel channel, String host, int port) throws SSLException {
+        if (null == channel) {
+            throw new IllegalArgumentException("channel".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == host) {
+            throw new IllegalArgumentException("host".concat(Const.NULL_POINTER_TIPS));
+        }
+        SSLContext sslContext = TlsContext.get();
+        if (null == sslContext) {
+            throw new SSLException("SSLContext is not available");
+        }
+        mChannel = channel;
+        mHost = host;
+        // NOTE: 指定peer的host和port, SSLContext才会缓存及恢复session
+        mEngine = sslContext.createSSLEngine(host, port);
+        mEngine.setUseClientMode(true);
+        SSLSession session = mEngine.getSession();
+        mNetInBuffer = ByteBuffer.allocate(session.getPacketBufferSize());
+        mNetOutBuffer = ByteBuffer.allocate(session.getPacketBufferSize());
+        mAppInBuffer = ByteBuffer.allocate(session.getApplicationBufferSize());
+    }
+
+    boolean isHandshakeFinished() {
+        return mHandshakeFinished;
+    }
+
+    /**
+     * 推进TLS握手, 在channel可读或可写时调用
+     *
+     * @return 握手是否已完成, 未完成时需等待interestOps()对应的事件后再次调用
+     * @throws IOException 握手失败或证书校验失败
+     */
+    boolean handshake() throws IOException {
+        if (mHandshakeFinished) {
+            return flush();
+        }
+        if (!mHandshakeStarted) {
+            mHandshakeStarted = true;
+            mHandshakeStartMills = System.currentTimeMillis();
+            mEngine.beginHandshake();
+        }
+        while (true) {
+            if (!flush()) {
+                return false;
+            }
+            switch (mEngine.getHandshakeStatus()) {
+                case NEED_WRAP:
+                    wrap(EMPTY_BUFFER);
+                    break;
+                case NEED_UNWRAP:
+                    int unwrapRes = unwrap();
+                    if (0 == unwrapRes) {
+                        return false;
+                    }
+                    if (0 > unwrapRes) {
+                        throw new EOFException("Connection closed during handshake");
+                    }
+                    break;
+                case NEED_TASK:
+                    // NOTE: 证书校验等任务直接在当前线程执行, 耗时较短
+                    runDelegatedTasks();
+                    break;
+                default:
+                    // FINISHED or NOT_HANDSHAKING
+                    TlsContext.onHandshakeFinished(mHost, mEngine.getSession(), mHandshakeStartMills);
+                    mHandshakeFinished = true;
+                    return flush();
+            }
+        }
+    }
+
+    /**
+     * 当前需要监听的事件
+     *
+     * @return 有未写出的数据时为OP_WRITE, 否则为OP_READ
+     */
+    int interestOps() {
+        return 0 < mNetOutBuffer.position() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+    }
+
+    /**
+     * 加密并写出数据
+     *
+     * @param src 待写出的明文
+     * @return 被消费的明文字节数, 加密后的数据可能尚未完全写出, 需调用flush()确认
+     * @throws IOException 写出失败
+     */
+    int write(ByteBuffer src) throws IOException {
+        if (!flush()) {
+            return 0;
+        }
+        int position = src.position();
+        wrap(src);
+        flush();
+        return src.position() - position;
+    }
+
+    /**
+     * 写出已加密的数据
+     *
+     * @return 是否已全部写出
+     * @throws IOException 写出失败
+     */
+    boolean flush() throws IOException {
+        if (0 == mNetOutBuffer.position()) {
+            return true;
+        }
+        mNetOutBuffer.flip();
+        try {
+            mChannel.write(mNetOutBuffer);
+            return !mNetOutBuffer.hasRemaining();
+        } finally {
+            mNetOutBuffer.compact();
+        }
+    }
+
+    /**
+     * 读取并解密数据
+     *
+     * @param dst 存放明文的buffer
+     * @return 读取的明文字节数, 需等待更多网络数据时返回0, 连接已关闭时返回-1
+     * @throws IOException 读取失败
+     */
+    int read(ByteBuffer dst) throws IOException {
+        while (0 == mAppInBuffer.position()) {
+            // NOTE: TLS1.3的NewSessionTicket等消息解密后没有应用数据, 需继续读取
+            int unwrapRes = unwrap();
+            if (0 >= unwrapRes) {
+                return unwrapRes;
+            }
+            SSLEngineResult.HandshakeStatus handshakeStatus = mEngine.getHandshakeStatus();
+            if (SSLEngineResult.HandshakeStatus.NEED_TASK == handshakeStatus) {
+                runDelegatedTasks();
+            } else if (SSLEngineResult.HandshakeStatus.NEED_WRAP == handshakeStatus) {
+                // 如KeyUpdate的响应
+                wrap(EMPTY_BUFFER);
+                flush();
+            }
+        }
+        mAppInBuffer.flip();
+        int len = Math.min(mAppInBuffer.remaining(), dst.remaining());
+        int limit = mAppInBuffer.limit();
+        mAppInBuffer.limit(mAppInBuffer.position() + len);
+        dst.put(mAppInBuffer);
+        mAppInBuffer.limit(limit);
+        mAppInBuffer.compact();
+        return len;
+    }
+
+    private void wrap(ByteBuffer src) throws IOException {
+        while (true) {
+            SSLEngineResult result = mEngine.wrap(src, mNetOutBuffer);
+            switch (result.getStatus()) {
+                case OK:
+                    return;
+                case BUFFER_OVERFLOW:
+                    mNetOutBuffer = enlarge(mNetOutBuffer, mEngine.getSession().getPacketBufferSize());
+                    break;
+                default:
+                    // CLOSED, wrap不会返回BUFFER_UNDERFLOW
+                    throw new EOFException("SSLEngine closed");
+            }
+        }
+    }
+
+    // return: 1表示解密有进展, 0表示需等待更多网络数据, -1表示连接已关闭
+    private int unwrap() throws IOException {
+        while (true) {
+            mNetInBuffer.flip();
+            SSLEngineResult result;
+            try {
+                result = mEngine.unwrap(mNetInBuffer, mAppInBuffer);
+            } finally {
+                mNetInBuffer.compact();
+            }
+            switch (result.getStatus()) {
+                case OK:
+                    return 1;
+                case BUFFER_UNDERFLOW:
+                    if (!mNetInBuffer.hasRemaining()) {
+                        mNetInBuffer = enlarge(mNetInBuffer, mEngine.getSession().getPacketBufferSize());
+                    }
+                    int len = mChannel.read(mNetInBuffer);
+                    if (0 > len) {
+                        return -1;
+                    }
+                    if (0 == len) {
+                        return 0;
+                    }
+                    break;
+                case BUFFER_OVERFLOW:
+                    mAppInBuffer = enlarge(mAppInBuffer, mEngine.getSession().getApplicationBufferSize());
+                    break;
+                default:
+                    // CLOSED, 收到close_notify
+                    return -1;
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while (null != (task = mEngine.getDelegatedTask())) {
+            task.run();
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + minCapacity));
+        buffer.flip();
+        newBuffer.put(buffer);
+        return newBuffer;
+    }
+}
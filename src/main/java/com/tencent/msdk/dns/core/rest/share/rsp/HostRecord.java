@@ -0,0 +1,75 @@
+package com.tencent.msdk.dns.core.rest.share.rsp;
+
+import com.tencent.msdk.dns.core.Const;
+
+import java.util.Arrays;
+
+/**
+ * 单个域名的解析结果, 对应HTTPDNS响应中的一行
+ */
+public final class HostRecord {
+
+    /**
+     * 对应family无解析结果时的ttl
+     */
+    public static final int NO_TTL = -1;
+
+    /**
+     * 域名, 不带结尾的".", 非批量解析时为null
+     */
+    /* @Nullable */
+    public final String host;
+    /**
+     * 已校验的IPv4地址, 不带域名前缀
+     */
+    public final String[] inet4Ips;
+    /**
+     * 已校验的IPv6地址, 不带域名前缀
+     */
+    public final String[] inet6Ips;
+    public final int inet4Ttl;
+    public final int inet6Ttl;
+    public final String clientIp;
+
+    HostRecord(String host, String[] inet4Ips, int inet4Ttl, String[] inet6Ips, int inet6Ttl, String clientIp) {
+        if (null == inet4Ips) {
+            throw new IllegalArgumentException("inet4Ips".concat(Const.NULL_POINTER_TIPS));
+        }
+        if (null == inet6Ips) {
+            throw new IllegalArgumentException("inet6Ips".concat(Const.NULL_POINTER_TIPS));
+        }
+        this.host = host;
+        this.inet4Ips = inet4Ips;
+        this.inet4Ttl = inet4Ttl;
+        this.inet6Ips = inet6Ips;
+        this.inet6Ttl = inet6Ttl;
+        this.clientIp = clientIp;
+    }
+
+    /**
+     * 获取用于缓存的ttl
+     *
+     * @return 同时有IPv4和IPv6的ttl时取两者的最小值
+     */
+    public int ttl() {
+        if (NO_TTL == inet4Ttl) {
+            return inet6Ttl;
+        }
+        if (NO_TTL == inet6Ttl) {
+            return inet4Ttl;
+        }
+        return Math.min(inet4Ttl, inet6Ttl);
+    }
+
+    @Override
+    public String toString() {
+        return "HostRecord{"
+                + "host='" + host + '\''
+                + ", inet4Ips=" + Arrays.toString(inet4Ips)
+                + ", inet4Ttl=" + inet4Ttl
+                + ", inet6Ips=" + Arrays.toString(inet6Ips)
+                + ", inet6Ttl=" + inet6Ttl
+                + ", clientIp='" + clientIp + '\''
+                + '}';
+    }
+}
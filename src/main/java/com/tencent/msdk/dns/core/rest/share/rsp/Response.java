@@ -2,12 +2,8 @@ package com.tencent.msdk.dns.core.rest.share.rsp;
 
 import android.text.TextUtils;
 
-import com.tencent.msdk.dns.base.utils.CommonUtils;
-import com.tencent.msdk.dns.base.utils.IpValidator;
 import com.tencent.msdk.dns.core.Const;
-import com.tencent.msdk.dns.core.DnsDescription;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,6 +11,11 @@ public final class Response {
 
     static HashMap<String, Integer> DEFAULT_TTL = new HashMap<>();
 
+    /**
+     * 非批量解析时ttl的key
+     */
+    public static final String ONE_HOST = "onehost";
+
     public static final Response EMPTY =
             new Response(Const.INVALID_IP, Const.EMPTY_IPS, DEFAULT_TTL);
 
@@ -24,56 +25,43 @@ public final class Response {
     public final String clientIp;
     public final String[] ips;
     public final Map<String, Integer> ttl;
+    /**
+     * 按响应行拆分的结构化解析结果, ips及ttl由其生成
+     */
+    public final HostRecord[] records;
 
-    Response(int family, String clientIp, String[] ips, Map<String, Integer> ttl) {
-        // NOTE: 区分inet和inet6, 不允许unspecific
-        family = DnsDescription.Family.INET6 == family ? family : DnsDescription.Family.INET;
+    Response(String clientIp, HostRecord[] records) {
         if (TextUtils.isEmpty(clientIp)) {
             throw new IllegalArgumentException("clientIp".concat(Const.EMPTY_TIPS));
         }
-        // NOTE: ips为空即为无效响应
-        if (CommonUtils.isEmpty(ips)) {
-            throw new IllegalArgumentException("ips".concat(Const.EMPTY_TIPS));
-        }
-        // NOTE: 前面先进行一次参数校验, 再尝试处理后台返回(格式正确但)内容不符预期情况
-        ips = fixIps(family, ips);
-//        if (CommonUtils.isEmpty(ips)) {
-//            throw new IllegalArgumentException("ips".concat(Const.EMPTY_TIPS));
-//        }
-        if (ttl.isEmpty()) {
-            throw new IllegalArgumentException("ttl".concat(Const.INVALID_TIPS));
+        // NOTE: 没有可解析的行即为无效响应, 有解析行但IP均不合法时为有效的空结果
+        if (null == records || 0 == records.length) {
+            throw new IllegalArgumentException("records".concat(Const.EMPTY_TIPS));
         }
 
-        this.clientIp = clientIp;
-        this.ips = ips;
-        this.ttl = ttl;
-    }
-
-    Response(String clientIp, String[] inet4Ips, String[] inet6Ips, Map<String, Integer> ttl) {
-        // NOTE: 允许unspecific
-        if (TextUtils.isEmpty(clientIp)) {
-            throw new IllegalArgumentException("clientIp".concat(Const.EMPTY_TIPS));
+        int ipCount = 0;
+        for (HostRecord record : records) {
+            ipCount += record.inet4Ips.length + record.inet6Ips.length;
         }
-        // NOTE: ips为空即为无效响应
-        if (CommonUtils.isEmpty(inet4Ips) && CommonUtils.isEmpty(inet6Ips)) {
-            throw new IllegalArgumentException("ips".concat(Const.EMPTY_TIPS));
+        // NOTE: 与原有格式保持一致, 先放所有IPv4再放所有IPv6, 批量解析时带"域名:"前缀
+        String[] ips = 0 == ipCount ? Const.EMPTY_IPS : new String[ipCount];
+        int index = 0;
+        for (HostRecord record : records) {
+            index = appendIps(ips, index, record.host, record.inet4Ips);
         }
-        // NOTE: 前面先进行一次参数校验, 再尝试处理后台返回(格式正确但)内容不符预期情况
-        inet4Ips = fixIps(DnsDescription.Family.INET, inet4Ips);
-        inet6Ips = fixIps(DnsDescription.Family.INET6, inet6Ips);
-
-        if (ttl.isEmpty()) {
-            throw new IllegalArgumentException("ttl".concat(Const.INVALID_TIPS));
+        for (HostRecord record : records) {
+            index = appendIps(ips, index, record.host, record.inet6Ips);
+        }
+        Map<String, Integer> ttl = new HashMap<>();
+        for (HostRecord record : records) {
+            // 单个域名未传递，暂用onehost代替
+            ttl.put(null != record.host ? record.host : ONE_HOST, record.ttl());
         }
-        int inet4IpsLength = inet4Ips.length;
-        int inet6IpsLength = inet6Ips.length;
-
-        inet4Ips = Arrays.copyOf(inet4Ips, inet4IpsLength + inet6IpsLength);
-        System.arraycopy(inet6Ips, 0, inet4Ips, inet4IpsLength, inet6IpsLength);
 
         this.clientIp = clientIp;
-        this.ips = inet4Ips;
+        this.ips = ips;
         this.ttl = ttl;
+        this.records = records;
     }
 
     // NOTE: 仅用于创建空实现, 空实现实际上为无效值, 无法通过常规构造器创建
@@ -81,44 +69,17 @@ public final class Response {
         this.clientIp = clientIp;
         this.ips = ips;
         this.ttl = ttl;
+        this.records = new HostRecord[0];
     }
 
     public static boolean isTtlInvalid(int ttl) {
         return 0 > ttl;
     }
 
-    // NOTE: family区分inet和inet6, 上层保证不为unspecific; ips上层保证不为空
-    private static String[] fixIps(int family, String[] ips) {
-        int maxIpCount = ips.length;
-        int ipCount = maxIpCount;
-        for (int i = 0; i < maxIpCount; i++) {
-            String ip = ips[i];
-            if (DnsDescription.Family.INET6 == family) {
-                if (!IpValidator.isV6Ip(ip)) {
-                    ips[i] = Const.INVALID_IP;
-                    ipCount--;
-                }
-            } else {
-                if (!IpValidator.isV4Ip(ip)) {
-                    ips[i] = Const.INVALID_IP;
-                    ipCount--;
-                }
-            }
-        }
-        if (ipCount == maxIpCount) {
-            return ips;
-        }
-        if (0 >= ipCount) {
-            return Const.EMPTY_IPS;
-        }
-        String[] realIps = new String[ipCount];
-        for (int i = maxIpCount - 1, j = ipCount - 1; i >= 0 && j >= 0; i--) {
-            String ip = ips[i];
-            if (!Const.INVALID_IP.equals(ip)) {
-                // 将有效IP添加到realIps中
-                realIps[j--] = ip;
-            }
+    private static int appendIps(String[] dst, int index, String host, String[] ips) {
+        for (String ip : ips) {
+            dst[index++] = null != host ? host + ':' + ip : ip;
         }
-        return realIps;
+        return index;
     }
 }
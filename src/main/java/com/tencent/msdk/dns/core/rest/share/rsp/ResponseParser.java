@@ -2,162 +2,198 @@ package com.tencent.msdk.dns.core.rest.share.rsp;
 
 import android.text.TextUtils;
 
-import androidx.annotation.NonNull;
-
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.IpValidator;
+import com.tencent.msdk.dns.core.Const;
 import com.tencent.msdk.dns.core.DnsDescription;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.List;
+
+/**
+ * HTTPDNS响应解析, 逐字符扫描, 每行生成一个HostRecord
+ * <p>
+ * format: ip;ip;ip;...,ttl|client ip
+ * like: 123.59.226.2;123.59.226.3,303|59.37.125.43
+ * <p>
+ * unspecific format: ip;ip;...;ip,ttl-ip;ip;...;ip,ttl|client ip
+ * like: 120.14.67.201,120-2402:4e00:1011:1414:0:9226:71a3:83d2;2412:4e30:1020:1474:0:9257:71ab:2b74,120|127.0.0.1
+ * <p>
+ * 批量解析时每行一个域名, 行首带"域名.:"
+ * like: www.qq.com.:120.14.67.201,120|127.0.0.1
+ */
 public final class ResponseParser {
 
-    private static final int RSP_GROUP_COUNT = 3;
-    private static final int RSP_GROUP_COUNT_BATCH = 4;
-    private static final int RSP_GROUP_UNSPECIFIC_COUNT = 5;
-    private static final int RSP_GROUP_UNSPECIFIC_COUNT_BATCH = 6;
-    private static final Pattern RSP_PATTERN = Pattern.compile("(.*),(.*)\\|(.*)");
-    private static final Pattern RSP_PATTERN_BATCH = Pattern.compile("(.*)\\.:(.*),(.*)\\|(.*)");
-    private static final Pattern RSP_UNSPECIFIC = Pattern.compile("(.*),(.*)-(.*),(.*)\\|(.*)");
-    private static final Pattern RSP_UNSPECIFIC_BATCH = Pattern.compile("(.*)\\.:(.*),(.*)-(.*),(.*)\\|(.*)");
-
-    private static final String IP_SPLITTER = ";";
+    private static final char LINE_SEPARATOR = '\n';
+    private static final char IP_SEPARATOR = ';';
+    private static final char TTL_SEPARATOR = ',';
+    private static final char FAMILY_SEPARATOR = '-';
+    private static final char CLIENT_IP_SEPARATOR = '|';
+    private static final String HOST_SEPARATOR = ".:";
 
     public static Response parseResponse(int family, String rawRsp) {
         if (TextUtils.isEmpty(rawRsp)) {
             return Response.EMPTY;
         }
         // 判断是否为批量查询，通过\n来判断
-        String[] rspList = rawRsp.split("\n");
-
-        if (family == DnsDescription.Family.UN_SPECIFIC) {
-            return parseDoubResponse(rspList);
-        }
-
-        // format: ip;ip;ip;...,ttl|client ip
-        // like: 123.59.226.2;123.59.226.3,303|59.37.125.43
-        //  批量查询情况
-        Map<String, Integer> ttl = new HashMap<>();
-        if (rspList.length > 1) {
-            ArrayList<String> ipsList = new ArrayList();
-            String clientIp = "";
-            // 遍历
-            for (String rsp : rspList) {
-                //  批量情况会携带域名信息
-                Matcher rspMatcher = RSP_PATTERN_BATCH.matcher(rsp);
-                if (!rspMatcher.matches() || RSP_GROUP_COUNT_BATCH != rspMatcher.groupCount()) {
-//                    return Response.EMPTY;
-                    continue;
+        boolean batch = isBatch(rawRsp);
+        List<HostRecord> records = new ArrayList<>();
+        String clientIp = "";
+        int length = rawRsp.length();
+        int lineStart = 0;
+        try {
+            while (lineStart < length) {
+                int lineEnd = rawRsp.indexOf(LINE_SEPARATOR, lineStart);
+                if (-1 == lineEnd) {
+                    lineEnd = length;
                 }
-                try {
-                    //  批量情况会携带域名信息
-                    String host = rspMatcher.group(1);
-                    clientIp = rspMatcher.group(4) + ",";
-                    String[] tmpIps = rspMatcher.group(2).split(IP_SPLITTER);
-                    //  将域名和ip组装为 host:ip的形式存入clientIp
-                    for (String tmpIp : tmpIps) {
-                        ipsList.add(host + ":" + tmpIp);
-                    }
-                    ttl.put(host, Integer.parseInt(rspMatcher.group(3)));
-                } catch (Exception e) {
-                    DnsLog.w(e, "Parse external response failed");
-                    return Response.EMPTY;
+                // NOTE: 批量查询时跳过格式不符的行, 非批量查询只解析第一行
+                HostRecord record = parseLine(family, rawRsp, lineStart, lineEnd, batch);
+                if (null != record) {
+                    records.add(record);
+                    clientIp = record.clientIp;
                 }
+                if (!batch) {
+                    break;
+                }
+                lineStart = lineEnd + 1;
             }
-            if (ipsList.size() == 0) {
-                return Response.EMPTY;
-            }
-            String[] ips = ipsList.toArray(new String[ipsList.size()]);
-            return new Response(family, clientIp, ips, ttl);
-        } else {
-            //  普通查询
-            Matcher rspMatcher = RSP_PATTERN.matcher(rawRsp);
-            if (!rspMatcher.matches() || RSP_GROUP_COUNT != rspMatcher.groupCount()) {
-                return Response.EMPTY;
-            }
-            try {
-                String clientIp = rspMatcher.group(3);
-                String[] ips = rspMatcher.group(1).split(IP_SPLITTER);
-                // 单个域名未传递，暂用onehost代替
-                ttl.put("onehost", Integer.parseInt(rspMatcher.group(2)));
-                return new Response(family, clientIp, ips, ttl);
-            } catch (Exception e) {
-                DnsLog.w(e, "Parse external response failed");
-                return Response.EMPTY;
-            }
+        } catch (NumberFormatException e) {
+            DnsLog.w(e, "Parse external response failed");
+            return Response.EMPTY;
+        }
+        if (records.isEmpty()) {
+            return Response.EMPTY;
+        }
+        try {
+            // NOTE: 与之前的格式保持一致, 批量查询的clientIp以","结尾
+            return new Response(batch ? clientIp + TTL_SEPARATOR : clientIp,
+                    records.toArray(new HostRecord[records.size()]));
+        } catch (IllegalArgumentException e) {
+            DnsLog.w(e, "Parse external response failed");
+            return Response.EMPTY;
         }
     }
 
-    public static Response parseDoubResponse(@NonNull String[] rspList) {
-        // format: ip;ip;ip;...,ttl|client ip
-        // like: www.qq.com.:120.14.67.201,120-2402:4e00:1011:1414:0:9226:71a3:83d2;
-        // 2412:4e30:1020:1474:0:9257:71ab:2b74,120|127.0.0.1
-        //  批量查询情况
-        Map<String, Integer> ttl = new HashMap<>();
-        if (rspList.length > 1) {
-            ArrayList<String> inet4IpsList = new ArrayList();
-            ArrayList<String> inet6IpsList = new ArrayList();
-            String clientIp = "";
-            // 遍历
-            for (String rsp : rspList) {
-                //  批量情况会携带域名信息
-                Matcher rspMatcher = RSP_UNSPECIFIC_BATCH.matcher(rsp);
-                if (!rspMatcher.matches() || RSP_GROUP_UNSPECIFIC_COUNT_BATCH != rspMatcher.groupCount()) {
-                    continue;
-                }
-                try {
-                    //  批量情况会携带域名信息
-                    String host = rspMatcher.group(1);
-                    clientIp = rspMatcher.group(6) + ",";
+    // NOTE: 与String.split("\n")的结果保持一致, 结尾的空行不计入
+    private static boolean isBatch(String rawRsp) {
+        int lineEnd = rawRsp.indexOf(LINE_SEPARATOR);
+        if (-1 == lineEnd) {
+            return false;
+        }
+        for (int i = lineEnd + 1; i < rawRsp.length(); i++) {
+            if (LINE_SEPARATOR != rawRsp.charAt(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-                    String[] inet4Ips = rspMatcher.group(2).split(IP_SPLITTER);
-                    String[] inet6Ips = rspMatcher.group(4).split(IP_SPLITTER);
-                    // ttl先按ipv4, ipv6的最小值的获取
-                    ttl.put(host, Math.min(Integer.parseInt(rspMatcher.group(3)),
-                            Integer.parseInt(rspMatcher.group(5))));
+    // return: 格式不符时返回null
+    /* @Nullable */
+    private static HostRecord parseLine(int family, String rsp, int start, int end, boolean batch) {
+        int clientIpIndex = lastIndexOf(rsp, CLIENT_IP_SEPARATOR, start, end);
+        if (-1 == clientIpIndex) {
+            return null;
+        }
+        String host = null;
+        int ipsStart = start;
+        if (batch) {
+            int hostEnd = rsp.indexOf(HOST_SEPARATOR, start);
+            if (-1 == hostEnd || clientIpIndex <= hostEnd) {
+                return null;
+            }
+            host = rsp.substring(start, hostEnd);
+            ipsStart = hostEnd + HOST_SEPARATOR.length();
+        }
+        int ttlIndex = lastIndexOf(rsp, TTL_SEPARATOR, ipsStart, clientIpIndex);
+        if (-1 == ttlIndex) {
+            return null;
+        }
 
-                    //  将域名和ip组装为 host:ip的形式存入clientIp
-                    for (String inet4Ip : inet4Ips) {
-                        inet4IpsList.add(host + ":" + inet4Ip);
-                    }
+        if (DnsDescription.Family.UN_SPECIFIC == family) {
+            // ttlIndex为IPv6部分的ttl分隔符
+            int familyIndex = lastIndexOf(rsp, FAMILY_SEPARATOR, ipsStart, ttlIndex);
+            if (-1 == familyIndex) {
+                return null;
+            }
+            int inet4TtlIndex = lastIndexOf(rsp, TTL_SEPARATOR, ipsStart, familyIndex);
+            if (-1 == inet4TtlIndex) {
+                return null;
+            }
+            return new HostRecord(host,
+                    scanIps(rsp, ipsStart, inet4TtlIndex, false),
+                    parseTtl(rsp, inet4TtlIndex + 1, familyIndex),
+                    scanIps(rsp, familyIndex + 1, ttlIndex, true),
+                    parseTtl(rsp, ttlIndex + 1, clientIpIndex),
+                    rsp.substring(clientIpIndex + 1, end));
+        }
+        boolean inet6 = DnsDescription.Family.INET6 == family;
+        String[] ips = scanIps(rsp, ipsStart, ttlIndex, inet6);
+        int ttl = parseTtl(rsp, ttlIndex + 1, clientIpIndex);
+        String clientIp = rsp.substring(clientIpIndex + 1, end);
+        return inet6
+                ? new HostRecord(host, Const.EMPTY_IPS, HostRecord.NO_TTL, ips, ttl, clientIp)
+                : new HostRecord(host, ips, ttl, Const.EMPTY_IPS, HostRecord.NO_TTL, clientIp);
+    }
 
-                    for (String inet6Ip : inet6Ips) {
-                        inet6IpsList.add(host + ":" + inet6Ip);
+    // NOTE: 后台返回(格式正确但)内容不符预期的IP直接丢弃
+    private static String[] scanIps(String rsp, int start, int end, boolean inet6) {
+        List<String> ips = null;
+        int ipStart = start;
+        while (ipStart < end) {
+            int ipEnd = rsp.indexOf(IP_SEPARATOR, ipStart);
+            if (-1 == ipEnd || end < ipEnd) {
+                ipEnd = end;
+            }
+            if (ipStart < ipEnd) {
+                String ip = rsp.substring(ipStart, ipEnd);
+                if (inet6 ? IpValidator.isV6Ip(ip) : IpValidator.isV4Ip(ip)) {
+                    if (null == ips) {
+                        ips = new ArrayList<>();
                     }
-                } catch (Exception e) {
-                    DnsLog.w(e, "Parse external response failed");
-                    return Response.EMPTY;
+                    ips.add(ip);
                 }
             }
-            if (inet4IpsList.size() == 0 && inet6IpsList.size() == 0) {
-                return Response.EMPTY;
-            }
-            String[] inet4IpsTemp = inet4IpsList.toArray(new String[inet4IpsList.size()]);
-            String[] inet6IpsTemp = inet6IpsList.toArray(new String[inet6IpsList.size()]);
-            return new Response(clientIp, inet4IpsTemp, inet6IpsTemp, ttl);
-        } else {
-            try {
-                // format: ip;ip;...;ip,ttl-ip;ip;...;ip,ttl|client ip
-                Matcher rspMatcher = RSP_UNSPECIFIC.matcher(rspList[0]);
-                if (!rspMatcher.matches() || RSP_GROUP_UNSPECIFIC_COUNT != rspMatcher.groupCount()) {
-                    return Response.EMPTY;
-                }
-
-                String clientIp = rspMatcher.group(5);
-                String[] inet4Ips = rspMatcher.group(1).split(IP_SPLITTER);
-                String[] inet6Ips = rspMatcher.group(3).split(IP_SPLITTER);
-                // ttl先按ipv4, ipv6的最小值的获取
-                int value = Math.min(Integer.parseInt(rspMatcher.group(2)), Integer.parseInt(rspMatcher.group(4)));
-                ttl.put("onehost", value);
+            ipStart = ipEnd + 1;
+        }
+        return null == ips ? Const.EMPTY_IPS : ips.toArray(new String[ips.size()]);
+    }
 
-                return new Response(clientIp, inet4Ips, inet6Ips, ttl);
-            } catch (Exception e) {
-                return Response.EMPTY;
+    private static int parseTtl(String rsp, int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty ttl");
+        }
+        int i = start;
+        boolean negative = false;
+        char first = rsp.charAt(i);
+        if ('-' == first || '+' == first) {
+            negative = '-' == first;
+            if (++i == end) {
+                throw new NumberFormatException("Invalid ttl: " + rsp.substring(start, end));
+            }
+        }
+        long ttl = 0;
+        for (; i < end; i++) {
+            int digit = rsp.charAt(i) - '0';
+            if (0 > digit || 9 < digit) {
+                throw new NumberFormatException("Invalid ttl: " + rsp.substring(start, end));
+            }
+            ttl = ttl * 10 + digit;
+            if (Integer.MAX_VALUE < ttl) {
+                throw new NumberFormatException("Ttl out of range: " + rsp.substring(start, end));
             }
+        }
+        return (int) (negative ? -ttl : ttl);
+    }
 
+    // return: [start, end)内最后一个c的位置, 不存在时返回-1
+    private static int lastIndexOf(String rsp, char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (c == rsp.charAt(i)) {
+                return i;
+            }
         }
+        return -1;
     }
 }
@@ -7,6 +7,7 @@ import com.tencent.msdk.dns.core.IRetry;
 import com.tencent.msdk.dns.core.LookupContext;
 import com.tencent.msdk.dns.core.LookupHelper;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -26,9 +27,10 @@ public final class Retry implements IRetry {
         @SuppressWarnings("unchecked") List<IDns.ISession> sessions = lookupContext.sessions();
         DnsLog.d("Retry lookup for %s(%d) nonBlock session:%d  start",
                 lookupContext.hostname(), lookupContext.family(), sessions.size());
-        for (IDns.ISession session : sessions) {
+        // NOTE: 重试session与原session一同由事件循环驱动, 先复制一份避免遍历时修改sessions
+        for (IDns.ISession session : new ArrayList<>(sessions)) {
             IDns.ISession retrySession = session.copy();
-            LookupHelper.prepareNonBlockLookupTask(retrySession, lookupContext, true);
+            LookupHelper.prepareNonBlockLookupTask(retrySession, lookupContext);
         }
         DnsLog.d("Retry lookup for %s(%d) nonBlock session:%d finish.",
                 lookupContext.hostname(), lookupContext.family(), sessions.size());
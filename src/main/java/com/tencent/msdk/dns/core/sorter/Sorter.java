@@ -4,6 +4,7 @@ import com.tencent.msdk.dns.base.log.DnsLog;
 import com.tencent.msdk.dns.base.utils.CommonUtils;
 import com.tencent.msdk.dns.base.utils.IpValidator;
 import com.tencent.msdk.dns.base.utils.NetworkStack;
+import com.tencent.msdk.dns.core.BatchIpSet;
 import com.tencent.msdk.dns.core.Const;
 import com.tencent.msdk.dns.core.IDns;
 import com.tencent.msdk.dns.core.ISorter;
@@ -12,21 +13,28 @@ import com.tencent.msdk.dns.core.IpSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 
 public final class Sorter implements ISorter {
 
     private final int mCurNetStack;
-    private List<String> mV4IpFromLocal = Collections.emptyList();
-    private List<String> mV6IpFromLocal = Collections.emptyList();
-    private List<String> mV4IpsFromRest = Collections.emptyList();
-    private List<String> mV6IpsFromRest = Collections.emptyList();
-    private List<String> mV4IpsFromCache = Collections.emptyList();
-    private List<String> mV6IpsFromCache = Collections.emptyList();
-
-    private Sorter(int curNetStack) {
+    // 请求的域名, 多于一个时为批量解析, 解析结果为"域名:IP"格式
+    private final String[] mHostnames;
+    private final boolean mBatch;
+    private final IpList mV4IpFromLocal = new IpList();
+    private final IpList mV6IpFromLocal = new IpList();
+    private final IpList mV4IpsFromRest = new IpList();
+    private final IpList mV6IpsFromRest = new IpList();
+    private final IpList mV4IpsFromCache = new IpList();
+    private final IpList mV6IpsFromCache = new IpList();
+
+    private Sorter(int curNetStack, String hostname) {
         mCurNetStack = curNetStack;
+        mHostnames = hostname.split(",");
+        mBatch = 1 < mHostnames.length;
     }
 
     @Override
@@ -41,104 +49,194 @@ public final class Sorter implements ISorter {
         if (CommonUtils.isEmpty(ips)) {
             return;
         }
+        IpList v4Ips;
+        IpList v6Ips;
         if (Const.LOCAL_CHANNEL.equals(dns.getDescription().channel)) {
             DnsLog.d("sorter put lookup from local: %s", Arrays.toString(ips));
-            for (String ip : ips) {
-                if (IpValidator.isV4Ip(ip)) {
-                    mV4IpFromLocal = addIp(mV4IpFromLocal, ip);
-                } else if (IpValidator.isV6Ip(ip)) {
-                    mV6IpFromLocal = addIp(mV6IpFromLocal, ip);
-                }
-            }
+            v4Ips = mV4IpFromLocal;
+            v6Ips = mV6IpFromLocal;
         } else {
             DnsLog.d("sorter put lookup from rest(%d): %s", dns.getDescription().family, Arrays.toString(ips));
-            for (String ip : ips) {
-                if (IpValidator.isV4Ip(ip)) {
-                    mV4IpsFromRest = addIp(mV4IpsFromRest, ip);
-                } else if (IpValidator.isV6Ip(ip)) {
-                    mV6IpsFromRest = addIp(mV6IpsFromRest, ip);
-                }
+            v4Ips = mV4IpsFromRest;
+            v6Ips = mV6IpsFromRest;
+        }
+        for (String rawIp : ips) {
+            String hostname = hostnameOf(rawIp);
+            if (null == hostname) {
+                continue;
+            }
+            String ip = mBatch ? rawIp.substring(rawIp.indexOf(':') + 1) : rawIp;
+            if (IpValidator.isV4Ip(ip)) {
+                v4Ips.add(hostname, rawIp, ip);
+            } else if (IpValidator.isV6Ip(ip)) {
+                v6Ips.add(hostname, rawIp, ip);
             }
         }
     }
 
     @Override
     public synchronized void putPartCache(IpSet ipSet) {
-        String[] v4Ips = ipSet.v4Ips;
-        String[] v6Ips = ipSet.v6Ips;
-        if (v4Ips != null && v4Ips.length > 0) {
-            mV4IpsFromCache = Arrays.asList(v4Ips);
+        BatchIpSet batchIpSet = ipSet.batchIpSet;
+        if (null == batchIpSet) {
+            putPartCache(mV4IpsFromCache, ipSet.v4Ips);
+            putPartCache(mV6IpsFromCache, ipSet.v6Ips);
+            return;
         }
-        if (v6Ips != null && v6Ips.length > 0) {
-            mV6IpsFromCache = Arrays.asList(v6Ips);
+        for (Map.Entry<String, IpSet> entry : batchIpSet.ipSets.entrySet()) {
+            String hostname = entry.getKey();
+            IpSet hostnameIpSet = entry.getValue();
+            putPartCache(mV4IpsFromCache, hostname, hostnameIpSet.v4Ips);
+            putPartCache(mV6IpsFromCache, hostname, hostnameIpSet.v6Ips);
         }
     }
 
     @Override
-    public IpSet sort() {
-        String[] v4Ips = Const.EMPTY_IPS;
-        if (0 != (mCurNetStack & NetworkStack.IPV4_ONLY)) {
-            v4Ips = combineIps("ipv4");
+    public synchronized IpSet sort() {
+        boolean sortV4 = 0 != (mCurNetStack & NetworkStack.IPV4_ONLY);
+        boolean sortV6 = 0 != (mCurNetStack & NetworkStack.IPV6_ONLY);
+        String[] v4Ips = sortV4 ? combineIps("ipv4", mV4IpsFromCache, mV4IpsFromRest, mV4IpFromLocal)
+                : Const.EMPTY_IPS;
+        String[] v6Ips = sortV6 ? combineIps("ipv6", mV6IpsFromCache, mV6IpsFromRest, mV6IpFromLocal)
+                : Const.EMPTY_IPS;
+        // NOTE: 单域名解析的结果即为该域名的结果, 不创建BatchIpSet
+        if (!mBatch) {
+            return new IpSet(v4Ips, v6Ips);
         }
-        String[] v6Ips = Const.EMPTY_IPS;
-        if (0 != (mCurNetStack & NetworkStack.IPV6_ONLY)) {
-            v6Ips = combineIps("ipv6");
+
+        Map<String, IpSet> ipSets = new LinkedHashMap<>();
+        for (String hostname : mHostnames) {
+            String[] hostnameV4Ips = sortV4
+                    ? combineHostnameIps(hostname, mV4IpsFromCache, mV4IpsFromRest, mV4IpFromLocal)
+                    : Const.EMPTY_IPS;
+            String[] hostnameV6Ips = sortV6
+                    ? combineHostnameIps(hostname, mV6IpsFromCache, mV6IpsFromRest, mV6IpFromLocal)
+                    : Const.EMPTY_IPS;
+            ipSets.put(hostname, 0 == hostnameV4Ips.length && 0 == hostnameV6Ips.length
+                    ? IpSet.EMPTY : new IpSet(hostnameV4Ips, hostnameV6Ips));
         }
-        return new IpSet(v4Ips, v6Ips);
+        return new IpSet(v4Ips, v6Ips, new BatchIpSet(ipSets));
     }
 
-    private String[] combineIps(String type) {
-        List<String> ipsFromCache = Objects.equals(type, "ipv6") ? mV6IpsFromCache : mV4IpsFromCache;
-        List<String> ipsFromLocal = Objects.equals(type, "ipv6") ? mV6IpFromLocal : mV4IpFromLocal;
-        List<String> ipsFromRest = Objects.equals(type, "ipv6") ? mV6IpsFromRest : mV4IpsFromRest;
-        List<String> ipSet = new ArrayList<>();
-        if (!ipsFromCache.isEmpty()) {
-            ipSet.addAll(ipsFromCache);
+    // return: 结果所属的域名, 批量解析时结果不带"域名:"前缀则返回null
+    /* @Nullable */
+    private String hostnameOf(String rawIp) {
+        if (!mBatch) {
+            return mHostnames[0];
+        }
+        int splitIndex = rawIp.indexOf(':');
+        if (0 >= splitIndex) {
+            DnsLog.d("sorter ignore %s without hostname", rawIp);
+            return null;
+        }
+        // NOTE: 服务端返回的域名可能带有末尾的'.'
+        return '.' == rawIp.charAt(splitIndex - 1)
+                ? rawIp.substring(0, splitIndex - 1) : rawIp.substring(0, splitIndex);
+    }
+
+    private void putPartCache(IpList ipList, /* @Nullable */String[] rawIps) {
+        if (null == rawIps) {
+            return;
+        }
+        for (String rawIp : rawIps) {
+            String hostname = hostnameOf(rawIp);
+            if (null != hostname) {
+                ipList.add(hostname, rawIp, mBatch ? rawIp.substring(rawIp.indexOf(':') + 1) : rawIp);
+            }
+        }
+    }
+
+    private void putPartCache(IpList ipList, String hostname, /* @Nullable */String[] ips) {
+        if (null == ips) {
+            return;
+        }
+        for (String ip : ips) {
+            ipList.add(hostname, mBatch ? hostname + ':' + ip : ip, ip);
         }
+    }
 
+    // 合并得到所有域名的结果, 批量解析时为"域名:IP"格式
+    private static String[] combineIps(String type, IpList ipsFromCache, IpList ipsFromRest, IpList ipsFromLocal) {
+        List<String> ipSet = new ArrayList<>();
+        ipSet.addAll(ipsFromCache.rawIps());
         if (!ipsFromRest.isEmpty()) {
-            ipSet.addAll(ipsFromRest);
-            if (!ipsFromLocal.isEmpty()) {
-                // 对比httpdns和local，对httpdns返回部分域名为空的情况使用localdns兜底
-                List<String> restHosts = new ArrayList<>();
-                for (String restItem : ipsFromRest) {
-                    if (restItem.contains(":")) {
-                        String hostname = restItem.split(":")[0];
-                        if (!restHosts.contains(hostname)) {
-                            restHosts.add(hostname);
-                        }
-                    }
-                }
-                for (String item : ipsFromLocal) {
-                    if (item.contains(":")) {
-                        String hostname = item.split(":")[0];
-                        if (!restHosts.contains(hostname)) {
-                            DnsLog.d("%s's %s result is from localDns", hostname, type);
-                            ipSet.add(item);
-                        }
-                    }
+            ipSet.addAll(ipsFromRest.rawIps());
+            // 对比httpdns和local，对httpdns返回部分域名为空的情况使用localdns兜底
+            List<String> rawIpsFromLocal = ipsFromLocal.rawIps();
+            List<String> hostnamesFromLocal = ipsFromLocal.hostnames();
+            for (int i = 0; i < rawIpsFromLocal.size(); i++) {
+                String hostname = hostnamesFromLocal.get(i);
+                if (ipsFromRest.get(hostname).isEmpty()) {
+                    DnsLog.d("%s's %s result is from localDns", hostname, type);
+                    ipSet.add(rawIpsFromLocal.get(i));
                 }
             }
         } else if (!ipsFromLocal.isEmpty()) {
             DnsLog.d("%s result all from localDns", type);
-            ipSet.addAll(ipsFromLocal);
+            ipSet.addAll(ipsFromLocal.rawIps());
         }
         return ipSet.toArray(Const.EMPTY_IPS);
     }
 
-    private List<String> addIp(List<String> ipList, String ip) {
-        if (Collections.<String>emptyList() == ipList) {
-            ipList = new ArrayList<>();
+    // 合并得到单个域名的结果, 不带域名前缀
+    private static String[] combineHostnameIps(String hostname, IpList ipsFromCache, IpList ipsFromRest,
+                                               IpList ipsFromLocal) {
+        List<String> ipsFromRestOfHostname = ipsFromRest.get(hostname);
+        List<String> ipSet = new ArrayList<>(ipsFromCache.get(hostname));
+        ipSet.addAll(ipsFromRestOfHostname.isEmpty() ? ipsFromLocal.get(hostname) : ipsFromRestOfHostname);
+        return ipSet.toArray(Const.EMPTY_IPS);
+    }
+
+    /**
+     * 同一来源, 同一地址族的解析结果, 保持加入顺序的同时按域名分组
+     */
+    private static final class IpList {
+
+        // NOTE: 延迟创建, 大部分解析只会用到其中的一两个来源
+        private List<String> mRawIps = null;
+        private List<String> mHostnames = null;
+        private Map<String, List<String>> mHostnameIpsMap = null;
+
+        void add(String hostname, String rawIp, String ip) {
+            if (null == mRawIps) {
+                mRawIps = new ArrayList<>();
+                mHostnames = new ArrayList<>();
+                mHostnameIpsMap = new HashMap<>();
+            }
+            mRawIps.add(rawIp);
+            mHostnames.add(hostname);
+            List<String> ips = mHostnameIpsMap.get(hostname);
+            if (null == ips) {
+                ips = new ArrayList<>();
+                mHostnameIpsMap.put(hostname, ips);
+            }
+            ips.add(ip);
+        }
+
+        boolean isEmpty() {
+            return null == mRawIps;
+        }
+
+        // 原始结果, 批量解析时为"域名:IP"格式
+        List<String> rawIps() {
+            return null != mRawIps ? mRawIps : Collections.<String>emptyList();
+        }
+
+        // 与rawIps()一一对应的域名
+        List<String> hostnames() {
+            return null != mHostnames ? mHostnames : Collections.<String>emptyList();
+        }
+
+        List<String> get(String hostname) {
+            List<String> ips = null != mHostnameIpsMap ? mHostnameIpsMap.get(hostname) : null;
+            return null != ips ? ips : Collections.<String>emptyList();
         }
-        ipList.add(ip);
-        return ipList;
     }
 
     public static class Factory implements IFactory {
 
         @Override
-        public ISorter create(int curNetStack) {
-            return new Sorter(curNetStack);
+        public ISorter create(int curNetStack, String hostname) {
+            return new Sorter(curNetStack, hostname);
         }
     }
 }
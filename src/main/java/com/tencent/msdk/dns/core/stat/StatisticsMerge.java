@@ -2,21 +2,19 @@ package com.tencent.msdk.dns.core.stat;
 
 import android.content.Context;
 
-import com.tencent.msdk.dns.base.executor.DnsExecutors;
 import com.tencent.msdk.dns.base.log.DnsLog;
 import com.tencent.msdk.dns.base.utils.CommonUtils;
-import com.tencent.msdk.dns.base.utils.NetworkUtils;
+import com.tencent.msdk.dns.base.utils.NetworkSnapshot;
 import com.tencent.msdk.dns.core.Const;
 import com.tencent.msdk.dns.core.DnsDescription;
 import com.tencent.msdk.dns.core.IDns;
 import com.tencent.msdk.dns.core.IStatisticsMerge;
 import com.tencent.msdk.dns.core.IpSet;
 import com.tencent.msdk.dns.core.LookupContext;
-import com.tencent.msdk.dns.core.LookupResult;
 import com.tencent.msdk.dns.core.local.LocalDns;
 import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
 import com.tencent.msdk.dns.core.rest.share.LookupExtra;
-import com.tencent.msdk.dns.report.ReportHelper;
+import com.tencent.msdk.dns.report.LookupEventQueue;
 
 import org.json.JSONObject;
 
@@ -87,7 +85,8 @@ public final class StatisticsMerge implements IStatisticsMerge<LookupExtra> {
             throw new IllegalArgumentException("context".concat(Const.NULL_POINTER_TIPS));
         }
 
-        netType = NetworkUtils.getNetworkName(context);
+        // NOTE: 读取网络变化时更新的快照, 不再每次查询ConnectivityManager
+        netType = NetworkSnapshot.current().netType;
     }
 
     @Override
@@ -115,14 +114,8 @@ public final class StatisticsMerge implements IStatisticsMerge<LookupExtra> {
             restDnsStat = (AbsRestDns.Statistics) stat;
         }
 
-        // 上报数据处理，上报仅使用statisticsMerge类。IpSet使用IpSet.EMPTY传参。
-        final LookupResult<IStatisticsMerge> lookupResult = new LookupResult<IStatisticsMerge>(IpSet.EMPTY, this);
-        DnsExecutors.WORK.execute(new Runnable() {
-            @Override
-            public void run() {
-                ReportHelper.reportLookupMethodCalledEvent(lookupResult);
-            }
-        });
+        // 上报数据处理, 写入事件队列后批量上报
+        LookupEventQueue.offerLookupMethodCalled(this);
 
     }
 
@@ -6,10 +6,10 @@ import android.telephony.TelephonyManager;
 import com.tencent.msdk.dns.BuildConfig;
 import com.tencent.msdk.dns.DnsService;
 import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.base.utils.HttpClient;
+import com.tencent.msdk.dns.base.utils.NetworkSnapshot;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Map;
 
 
@@ -26,6 +26,10 @@ public class AttaHelper {
     private static final String SYSTEMVERSION = getSystemVersion();
     private static final String SESSIONID = Session.getSessionId();
 
+    // NOTE: 运营商仅在网络变化(网络标识变化)后重新获取, 由AttaHelper.class保护
+    private static String sCarrier = null;
+    private static int sCarrierNetworkId = -1;
+
     public static Runnable report(final String networkType,
                                   final String dnsId,
                                   final String appId,
@@ -48,10 +52,9 @@ public class AttaHelper {
         return new Runnable() {
             @Override
             public void run() {
-                HttpURLConnection connection = null;
                 try {
                     //  获取手机卡运营商code
-                    String carrier = getSimOperator(DnsService.getAppContext());
+                    String carrier = getCarrier();
                     String path = ATTA_URL
                             + "?attaid=" + ATTA_ID
                             + "&token=" + ATTA_TOKEN
@@ -84,31 +87,26 @@ public class AttaHelper {
                             + "&hdns=" + hdns
                             + "&_dc=" + Math.random();
                     path = path.replace(" ", "_");
-                    URL url = new URL(path);
-                    DnsLog.d("开始Atta上报：" + url);
-                    connection = (HttpURLConnection) url.openConnection();
-                    //设置请求方法
-                    connection.setRequestMethod("GET");
-                    //设置连接超时时间（毫秒）
-                    connection.setConnectTimeout(2000);
-                    //设置读取超时时间（毫秒）
-                    connection.setReadTimeout(2000);
-                    connection.connect();
-                    int respCode = connection.getResponseCode();
-                    DnsLog.d("Atta respCode：" + respCode);
+                    DnsLog.d("开始Atta上报：" + path);
+                    // 与解析请求共用连接池及TLS session, 连接及读取超时时间均为2000毫秒
+                    HttpClient.Response response = HttpClient.get(path, 2000);
+                    DnsLog.d("Atta respCode：" + response.statusCode);
                 } catch (IOException e) {
                     e.printStackTrace();
-                } finally {
-                    if (connection != null) {
-                        //关闭连接
-                        connection.disconnect();
-                        DnsLog.d("Atta上报关闭");
-                    }
                 }
             }
         };
     }
 
+    private static synchronized String getCarrier() {
+        int networkId = NetworkSnapshot.current().networkId;
+        if (null == sCarrier || sCarrierNetworkId != networkId) {
+            sCarrier = getSimOperator(DnsService.getAppContext());
+            sCarrierNetworkId = networkId;
+        }
+        return sCarrier;
+    }
+
     // China Mobile: 46000 46002 46007
     // China Unicom: 46001 46006
     // China Telecom: 46003 46005 46011
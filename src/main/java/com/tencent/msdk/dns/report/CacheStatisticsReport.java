@@ -8,11 +8,34 @@ import com.tencent.msdk.dns.core.stat.StatisticsMerge;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CacheStatisticsReport {
     private static final Map<String, Object[]> statisticsMap = new HashMap<>();
+    // 快速路径命中缓存的次数, 仅计数, 上报时再合并到statisticsMap
+    private static final ConcurrentMap<String, AtomicInteger> FAST_HIT_COUNT_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 快速路径命中缓存计数, 不创建统计对象及上报任务
+     *
+     * @param hostname 命中缓存的域名
+     */
+    public static void addFastHit(String hostname) {
+        AtomicInteger hitCount = FAST_HIT_COUNT_MAP.get(hostname);
+        if (null == hitCount) {
+            hitCount = new AtomicInteger();
+            AtomicInteger existHitCount = FAST_HIT_COUNT_MAP.putIfAbsent(hostname, hitCount);
+            if (null != existHitCount) {
+                hitCount = existHitCount;
+            }
+        }
+        hitCount.incrementAndGet();
+    }
 
     public static void add(LookupResult lookupResult) {
         if (null == lookupResult) {
@@ -33,25 +56,28 @@ public class CacheStatisticsReport {
         }
 
         // 命中缓存的数据，统计上报
-        for (String hostname : hostnameArr) {
-            if (!statisticsMap.containsKey(hostname)) {
-                if (statMerge.lookupSuccess()) {
-                    // Object[costTimeMillsTotal, emptyCount, resultCount]
-                    statisticsMap.put(hostname, new Object[]{statMerge.restDnsStat.costTimeMills, 0, 1});
-                } else {
-                    statisticsMap.put(hostname, new Object[]{statMerge.restDnsStat.costTimeMills, 1, 0});
-                }
+        // NOTE: 与offerAll并发, 由statisticsMap保护
+        synchronized (statisticsMap) {
+            for (String hostname : hostnameArr) {
+                if (!statisticsMap.containsKey(hostname)) {
+                    if (statMerge.lookupSuccess()) {
+                        // Object[costTimeMillsTotal, emptyCount, resultCount]
+                        statisticsMap.put(hostname, new Object[]{statMerge.restDnsStat.costTimeMills, 0, 1});
+                    } else {
+                        statisticsMap.put(hostname, new Object[]{statMerge.restDnsStat.costTimeMills, 1, 0});
+                    }
 
-            } else {
-                Object[] temp = statisticsMap.get(hostname);
-                assert temp != null;
-                temp[0] = (Integer) temp[0] + statMerge.restDnsStat.costTimeMills;
-                if (statMerge.lookupSuccess()) {
-                    temp[2] = (Integer) temp[2] + 1;
                 } else {
-                    temp[1] = (Integer) temp[1] + 1;
+                    Object[] temp = statisticsMap.get(hostname);
+                    assert temp != null;
+                    temp[0] = (Integer) temp[0] + statMerge.restDnsStat.costTimeMills;
+                    if (statMerge.lookupSuccess()) {
+                        temp[2] = (Integer) temp[2] + 1;
+                    } else {
+                        temp[1] = (Integer) temp[1] + 1;
+                    }
+                    statisticsMap.put(hostname, temp);
                 }
-                statisticsMap.put(hostname, temp);
             }
         }
     }
@@ -70,6 +96,23 @@ public class CacheStatisticsReport {
     public static Map<String, Object[]> offerAll() {
         Map<String, Object[]> statistics;
         synchronized (statisticsMap) {
+            Iterator<Map.Entry<String, AtomicInteger>> iterator = FAST_HIT_COUNT_MAP.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, AtomicInteger> entry = iterator.next();
+                int hitCount = entry.getValue().getAndSet(0);
+                if (0 == hitCount) {
+                    // NOTE: 上报周期内没有命中的域名不再保留, 与addFastHit并发时可能丢失一次计数, 可以接受
+                    iterator.remove();
+                } else {
+                    // 快速路径命中缓存耗时记为0
+                    Object[] temp = statisticsMap.get(entry.getKey());
+                    if (null == temp) {
+                        statisticsMap.put(entry.getKey(), new Object[]{0, 0, hitCount});
+                    } else {
+                        temp[2] = (Integer) temp[2] + hitCount;
+                    }
+                }
+            }
             if (statisticsMap.isEmpty()) {
                 statistics = new HashMap<>();
             } else {
@@ -0,0 +1,181 @@
+package com.tencent.msdk.dns.report;
+
+import com.tencent.msdk.dns.base.executor.DnsExecutors;
+import com.tencent.msdk.dns.base.log.DnsLog;
+import com.tencent.msdk.dns.core.Const;
+import com.tencent.msdk.dns.core.IStatisticsMerge;
+import com.tencent.msdk.dns.core.IpSet;
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.stat.StatisticsMerge;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 解析事件队列, 有界无锁的多生产者单消费者环形队列
+ * 解析线程只写入预分配的槽位, 由WORK线程上的单个消费者批量取出后交给ReportHelper/CacheStatisticsReport处理
+ * 队列满时丢弃事件并计数
+ */
+public final class LookupEventQueue {
+
+    // 解析方法调用事件, 对应ReportHelper.reportLookupMethodCalledEvent
+    private static final int EVENT_LOOKUP_METHOD_CALLED = 1;
+    // 命中缓存事件, 对应CacheStatisticsReport.add
+    private static final int EVENT_CACHE_HIT = 2;
+
+    // NOTE: 容量必须为2的幂
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    private static final long DRAIN_DELAY_MILLS = 100;
+
+    // 槽位序号, 等于写入位置时可写, 等于写入位置+1时可读
+    private static final AtomicLongArray SEQUENCES = new AtomicLongArray(CAPACITY);
+    private static final AtomicReferenceArray<Object> EVENTS = new AtomicReferenceArray<>(CAPACITY);
+    // NOTE: 由SEQUENCES的写入保证可见性
+    private static final int[] EVENT_TYPES = new int[CAPACITY];
+
+    private static final AtomicLong TAIL = new AtomicLong();
+    // NOTE: 仅消费者访问, 由LookupEventQueue.class保证同一时刻只有一个消费者
+    private static long sHead = 0;
+
+    private static final AtomicLong DROPPED_COUNT = new AtomicLong();
+    private static long sReportedDroppedCount = 0;
+
+    private static final AtomicBoolean DRAIN_SCHEDULED = new AtomicBoolean(false);
+
+    private static final Runnable DRAIN_TASK = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private static final Runnable DRAIN_TRIGGER = new Runnable() {
+        @Override
+        public void run() {
+            DnsExecutors.WORK.execute(DRAIN_TASK);
+        }
+    };
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            SEQUENCES.set(i, i);
+        }
+    }
+
+    /**
+     * 写入解析方法调用事件
+     *
+     * @param statMerge 解析统计数据
+     */
+    public static void offerLookupMethodCalled(StatisticsMerge statMerge) {
+        if (null == statMerge) {
+            throw new IllegalArgumentException("statMerge".concat(Const.NULL_POINTER_TIPS));
+        }
+        offer(EVENT_LOOKUP_METHOD_CALLED, statMerge);
+    }
+
+    /**
+     * 写入命中缓存事件
+     *
+     * @param lookupResult 命中缓存的解析结果
+     */
+    public static void offerCacheHit(LookupResult lookupResult) {
+        if (null == lookupResult) {
+            throw new IllegalArgumentException("lookupResult".concat(Const.NULL_POINTER_TIPS));
+        }
+        offer(EVENT_CACHE_HIT, lookupResult);
+    }
+
+    /**
+     * 获取因队列满被丢弃的事件数
+     *
+     * @return 被丢弃的事件数
+     */
+    public static long droppedCount() {
+        return DROPPED_COUNT.get();
+    }
+
+    private static void offer(int eventType, Object event) {
+        long pos = TAIL.get();
+        int index;
+        while (true) {
+            index = (int) (pos & MASK);
+            long diff = SEQUENCES.get(index) - pos;
+            if (0 == diff) {
+                if (TAIL.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = TAIL.get();
+            } else if (0 > diff) {
+                // 队列已满
+                DROPPED_COUNT.incrementAndGet();
+                scheduleDrain();
+                return;
+            } else {
+                pos = TAIL.get();
+            }
+        }
+        EVENT_TYPES[index] = eventType;
+        EVENTS.lazySet(index, event);
+        SEQUENCES.set(index, pos + 1);
+        scheduleDrain();
+    }
+
+    private static void scheduleDrain() {
+        if (!DRAIN_SCHEDULED.get() && DRAIN_SCHEDULED.compareAndSet(false, true)) {
+            DnsExecutors.MAIN.schedule(DRAIN_TRIGGER, DRAIN_DELAY_MILLS);
+        }
+    }
+
+    private static synchronized void drain() {
+        do {
+            // 先清除标记, 之后写入的事件会重新调度, 不会遗漏
+            DRAIN_SCHEDULED.set(false);
+            while (true) {
+                int index = (int) (sHead & MASK);
+                if (SEQUENCES.get(index) != sHead + 1) {
+                    break;
+                }
+                int eventType = EVENT_TYPES[index];
+                Object event = EVENTS.get(index);
+                EVENTS.lazySet(index, null);
+                SEQUENCES.set(index, sHead + CAPACITY);
+                sHead++;
+                dispatch(eventType, event);
+            }
+        } while (!isEmpty() && DRAIN_SCHEDULED.compareAndSet(false, true));
+
+        long droppedCount = DROPPED_COUNT.get();
+        if (droppedCount != sReportedDroppedCount) {
+            DnsLog.w("%d lookup events dropped since queue is full", droppedCount - sReportedDroppedCount);
+            sReportedDroppedCount = droppedCount;
+        }
+    }
+
+    private static boolean isEmpty() {
+        return SEQUENCES.get((int) (sHead & MASK)) != sHead + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void dispatch(int eventType, Object event) {
+        try {
+            switch (eventType) {
+                case EVENT_LOOKUP_METHOD_CALLED:
+                    // 上报仅使用statisticsMerge类, IpSet使用IpSet.EMPTY传参
+                    ReportHelper.reportLookupMethodCalledEvent(
+                            new LookupResult<IStatisticsMerge>(IpSet.EMPTY, (StatisticsMerge) event));
+                    break;
+                case EVENT_CACHE_HIT:
+                    CacheStatisticsReport.add((LookupResult) event);
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            DnsLog.w(e, "Dispatch lookup event(%d) failed", eventType);
+        }
+    }
+}
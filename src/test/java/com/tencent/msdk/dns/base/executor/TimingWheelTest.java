@@ -0,0 +1,200 @@
+package com.tencent.msdk.dns.base.executor;
+
+import com.tencent.msdk.dns.base.utils.IClock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TimingWheelTest {
+
+    private static final long TICK_MILLS = 100;
+    private static final int WHEEL_SIZE = 8;
+
+    private final ManualExecutor mExecutor = new ManualExecutor();
+    // 每次回调的时间及到期的条目, 同一次回调中的条目按升序排列
+    private final List<String> mTimeouts = new ArrayList<>();
+
+    @Test
+    public void testExpireInBatchesWithoutEarlyTimeout() {
+        TimingWheel<Integer> wheel = newWheel(null);
+        for (int i = 0; i < 10; i++) {
+            // 310, 320, ..., 400向上取整到tick 4, 300到tick 3
+            wheel.schedule(i, 300 + i * 10);
+        }
+        Assert.assertEquals(10, wheel.size());
+        Assert.assertEquals(300, mExecutor.mDelay);
+
+        mExecutor.advanceTo(299);
+        Assert.assertTrue(mTimeouts.isEmpty());
+        mExecutor.advanceTo(1000);
+        Assert.assertEquals(Arrays.asList("300:[0]", "400:[1, 2, 3, 4, 5, 6, 7, 8, 9]"), mTimeouts);
+        Assert.assertEquals(0, wheel.size());
+        // 没有条目时不再唤醒
+        Assert.assertNull(mExecutor.mTask);
+    }
+
+    @Test
+    public void testWakeUpAfterOneLapWhenNextTimeoutIsFarther() {
+        TimingWheel<Integer> wheel = newWheel(null);
+        wheel.schedule(1, 200);
+        // 超过一圈(800ms), 与tick 7在同一个槽
+        wheel.schedule(2, 1500);
+
+        mExecutor.advanceTo(200);
+        Assert.assertEquals(Arrays.asList("200:[1]"), mTimeouts);
+        // NOTE: 一圈内没有到期的条目, 一圈后再唤醒检查
+        Assert.assertEquals(WHEEL_SIZE * TICK_MILLS, mExecutor.mDelay);
+
+        mExecutor.advanceTo(1000);
+        Assert.assertEquals(1, mTimeouts.size());
+        Assert.assertEquals(500, mExecutor.mDelay);
+
+        mExecutor.advanceTo(1500);
+        Assert.assertEquals(Arrays.asList("200:[1]", "1500:[2]"), mTimeouts);
+    }
+
+    @Test
+    public void testLateWakeUpSpanningMoreThanOneLap() {
+        TimingWheel<Integer> wheel = newWheel(null);
+        wheel.schedule(1, 200);
+        wheel.schedule(2, 500);
+        // 第三圈
+        wheel.schedule(3, 2000);
+        // tick 40, 与tick 0在同一个槽, 唤醒时尚未到期
+        wheel.schedule(4, 4000);
+
+        // 唤醒延迟了将近4圈
+        mExecutor.runLateAt(3000);
+        Assert.assertEquals(Arrays.asList("3000:[1, 2, 3]"), mTimeouts);
+        Assert.assertEquals(1, wheel.size());
+
+        mExecutor.advanceTo(3999);
+        Assert.assertEquals(1, mTimeouts.size());
+        mExecutor.advanceTo(4000);
+        Assert.assertEquals(Arrays.asList("3000:[1, 2, 3]", "4000:[4]"), mTimeouts);
+    }
+
+    @Test
+    public void testCancelAndRescheduleDuringExpiry() {
+        final List<TimingWheel.Timeout<Integer>> timeouts = new ArrayList<>();
+        final List<TimingWheel<Integer>> wheels = new ArrayList<>(1);
+        TimingWheel<Integer> wheel = newWheel(new TimingWheel.TimeoutListener<Integer>() {
+            @Override
+            public void onTimeout(List<Integer> items) {
+                // 只在第一次回调时取消及重新调度
+                if (1 == mTimeouts.size()) {
+                    TimingWheel<Integer> wheel = wheels.get(0);
+                    // 已到期的条目不能取消, 但可以重新调度
+                    Assert.assertFalse(wheel.cancel(timeouts.get(0)));
+                    wheel.reschedule(timeouts.get(0), 250);
+                    // 取消之后到期的条目
+                    Assert.assertTrue(wheel.cancel(timeouts.get(2)));
+                    // 同一tick到期的条目已全部出轮, 不能取消
+                    Assert.assertFalse(wheel.cancel(timeouts.get(1)));
+                }
+            }
+        });
+        wheels.add(wheel);
+        timeouts.add(wheel.schedule(0, 100));
+        timeouts.add(wheel.schedule(1, 100));
+        timeouts.add(wheel.schedule(2, 300));
+        timeouts.add(wheel.schedule(3, 300));
+
+        mExecutor.advanceTo(1000);
+        // 在100ms时重新调度的250ms向上取整到tick 4
+        Assert.assertEquals(Arrays.asList("100:[0, 1]", "300:[3]", "400:[0]"), mTimeouts);
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertFalse(wheel.cancel(timeouts.get(2)));
+    }
+
+    @Test
+    public void testRescheduleEarlierWakesUpEarlier() {
+        TimingWheel<Integer> wheel = newWheel(null);
+        TimingWheel.Timeout<Integer> timeout = wheel.schedule(1, 700);
+        Assert.assertEquals(700, mExecutor.mDelay);
+        wheel.reschedule(timeout, 150);
+        Assert.assertEquals(200, mExecutor.mDelay);
+        Assert.assertEquals(1, wheel.size());
+
+        mExecutor.advanceTo(1000);
+        Assert.assertEquals(Arrays.asList("200:[1]"), mTimeouts);
+    }
+
+    private TimingWheel<Integer> newWheel(final TimingWheel.TimeoutListener<Integer> listener) {
+        return new TimingWheel<>(TICK_MILLS, WHEEL_SIZE, new TimingWheel.TimeoutListener<Integer>() {
+            @Override
+            public void onTimeout(List<Integer> items) {
+                List<Integer> sortedItems = new ArrayList<>(items);
+                Collections.sort(sortedItems);
+                mTimeouts.add(mExecutor.mNow + ":" + sortedItems);
+                if (null != listener) {
+                    listener.onTimeout(items);
+                }
+            }
+        }, mExecutor, mExecutor);
+    }
+
+    // 手动推进时间的单线程执行器, 时间轮同一时刻只有一个唤醒任务
+    private static final class ManualExecutor implements IScheduledExecutor, IClock {
+
+        long mNow = 0;
+        Runnable mTask;
+        long mDueTime;
+        long mDelay;
+
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMills) {
+            mTask = task;
+            mDelay = delayMills;
+            mDueTime = mNow + Math.max(0, delayMills);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            if (task == mTask) {
+                mTask = null;
+            }
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        // 按时执行到期的唤醒任务
+        void advanceTo(long time) {
+            while (null != mTask && mDueTime <= time) {
+                mNow = mDueTime;
+                runTask();
+            }
+            mNow = time;
+        }
+
+        // 唤醒任务延迟到time才执行
+        void runLateAt(long time) {
+            mNow = time;
+            runTask();
+        }
+
+        private void runTask() {
+            Runnable task = mTask;
+            mTask = null;
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.tencent.msdk.dns.base.utils;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.security.KeyStore;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+
+/**
+ * 逐次新建连接 vs 复用连接的TCP建连及TLS握手次数, 参数为服务端PKCS12证书及密码, 客户端需信任该证书, 例如:
+ * <pre>
+ * keytool -genkeypair -alias server -keyalg RSA -dname CN=127.0.0.1 -storetype PKCS12 -keystore server.p12 -storepass secret
+ * keytool -exportcert -alias server -keystore server.p12 -storepass secret -file server.crt
+ * keytool -importcert -noprompt -alias server -file server.crt -storetype PKCS12 -keystore trust.p12 \
+ *     -storepass secret
+ * java -Djavax.net.ssl.trustStore=trust.p12 -Djavax.net.ssl.trustStorePassword=secret \
+ *     -cp ... com.tencent.msdk.dns.base.utils.HttpClientBenchmark server.p12 secret
+ * </pre>
+ */
+public final class HttpClientBenchmark {
+
+    private static final int REQUEST_COUNT = 50;
+    private static final int CLOSE_EVERY = 10;
+    private static final int CHUNKED_EVERY = 7;
+    private static final int TIMEOUT_MILLS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        if (2 > args.length) {
+            System.out.println("usage: HttpClientBenchmark <server keystore(PKCS12)> <password>");
+            return;
+        }
+        // 自签名证书只用于本地服务
+        HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
+            @Override
+            public boolean verify(String hostname, SSLSession session) {
+                return "127.0.0.1".equals(hostname);
+            }
+        });
+        final SSLServerSocket serverSocket = startServer(args[0], args[1].toCharArray());
+        String url = "https://127.0.0.1:" + serverSocket.getLocalPort() + "/d?dn=www.qq.com";
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            HttpClient.get(url, TIMEOUT_MILLS);
+            // 清空连接池, 模拟每次请求新建连接
+            HttpClient.flush();
+        }
+        long freshNanos = System.nanoTime() - startNanos;
+        long connectCount = HttpClient.connectCount();
+        long handshakeCount = TlsContext.handshakeCount();
+        long resumedCount = TlsContext.resumedHandshakeCount();
+        print("fresh connection per request", connectCount, handshakeCount, resumedCount, 0, freshNanos);
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            HttpClient.get(url, TIMEOUT_MILLS);
+        }
+        long pooledNanos = System.nanoTime() - startNanos;
+        print("pooled", HttpClient.connectCount() - connectCount, TlsContext.handshakeCount() - handshakeCount,
+                TlsContext.resumedHandshakeCount() - resumedCount, HttpClient.reuseCount(), pooledNanos);
+
+        HttpClient.flush();
+        serverSocket.close();
+    }
+
+    private static void print(String name, long connectCount, long handshakeCount, long resumedCount,
+                              long reuseCount, long nanos) {
+        System.out.printf("%-30s tcp=%d, tls=%d (%d resumed), reuse=%d, %.2f ms/request%n", name, connectCount,
+                handshakeCount, resumedCount, reuseCount, nanos / 1e6 / REQUEST_COUNT);
+    }
+
+    private static SSLServerSocket startServer(String keyStorePath, char[] password) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream keyStoreStream = new FileInputStream(keyStorePath);
+        try {
+            keyStore.load(keyStoreStream, password);
+        } finally {
+            keyStoreStream.close();
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        final SSLServerSocket serverSocket =
+                (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(0);
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        Thread connectionThread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                        connectionThread.setDaemon(true);
+                        connectionThread.start();
+                    } catch (Exception ignored) {
+                        return;
+                    }
+                }
+            }
+        });
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        return serverSocket;
+    }
+
+    private static void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            OutputStream outputStream = socket.getOutputStream();
+            int requestCount = 0;
+            String line;
+            while (null != (line = reader.readLine())) {
+                // 请求头以空行结束
+                if (!line.isEmpty()) {
+                    continue;
+                }
+                requestCount++;
+                String response;
+                if (0 == requestCount % CHUNKED_EVERY) {
+                    response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                            + "5\r\n1.2.3\r\n5\r\n.4,60\r\n0\r\n\r\n";
+                } else {
+                    String body = "1.2.3.4,60";
+                    response = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+                }
+                outputStream.write(response.getBytes("UTF-8"));
+                outputStream.flush();
+                if (CLOSE_EVERY == requestCount) {
+                    break;
+                }
+            }
+        } catch (Exception ignored) {
+        } finally {
+            CommonUtils.closeQuietly(socket);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.tencent.msdk.dns.base.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+public class HttpResponseDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String CONTENT_LENGTH_RESPONSE =
+            "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 26\r\n\r\n"
+                    + "1.2.3.4;5.6.7.8,60|9.9.9.9";
+    private static final String CHUNKED_RESPONSE =
+            "HTTP/1.1 200 OK\r\nTransfer-Encoding: gzip, Chunked\r\n\r\n"
+                    + "7;name=value\r\n1.2.3.4\r\n"
+                    + "A\r\n;5.6.7.8,6\r\n"
+                    + "0\r\nX-Trailer: a\r\nX-Other: b\r\n\r\n";
+    private static final String NO_CONTENT_RESPONSE = "HTTP/1.1 204 No Content\r\nContent-Length: 10\r\n\r\n";
+
+    @Test
+    public void testContentLengthByteByByte() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder(4);
+        byte[] bytes = CONTENT_LENGTH_RESPONSE.getBytes(UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertFalse(decoder.isComplete());
+            boolean complete = decoder.decode(ByteBuffer.wrap(bytes, i, 1));
+            Assert.assertEquals(i == bytes.length - 1, complete);
+        }
+        Assert.assertEquals(200, decoder.statusCode());
+        Assert.assertEquals("1.2.3.4;5.6.7.8,60|9.9.9.9", decoder.body());
+        Assert.assertEquals(bytes.length, decoder.decodedLength());
+        Assert.assertTrue(decoder.isFramed());
+        Assert.assertTrue(decoder.isKeepAlive());
+    }
+
+    @Test
+    public void testChunkedWithTrailers() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder();
+        byte[] bytes = CHUNKED_RESPONSE.getBytes(UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            decoder.decode(ByteBuffer.wrap(bytes, i, 1));
+        }
+        Assert.assertTrue(decoder.isComplete());
+        Assert.assertEquals("1.2.3.4;5.6.7.8,6", decoder.body());
+        Assert.assertEquals(bytes.length, decoder.decodedLength());
+        Assert.assertTrue(decoder.isKeepAlive());
+    }
+
+    @Test
+    public void testNoContent() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder();
+        // 204响应没有body, 即使带有Content-Length, 之后的数据属于下一个响应
+        ByteBuffer src = ByteBuffer.wrap((NO_CONTENT_RESPONSE + CONTENT_LENGTH_RESPONSE).getBytes(UTF_8));
+        Assert.assertTrue(decoder.decode(src));
+        Assert.assertEquals(204, decoder.statusCode());
+        Assert.assertEquals(0, decoder.bodyLength());
+        Assert.assertEquals(NO_CONTENT_RESPONSE.length(), src.position());
+        Assert.assertTrue(decoder.isKeepAlive());
+
+        decoder.reset();
+        Assert.assertTrue(decoder.decode(src));
+        Assert.assertEquals(200, decoder.statusCode());
+        Assert.assertEquals("1.2.3.4;5.6.7.8,60|9.9.9.9", decoder.body());
+        Assert.assertFalse(src.hasRemaining());
+    }
+
+    @Test
+    public void testReadUntilEof() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder();
+        byte[] bytes = "HTTP/1.0 200 OK\r\nServer: test\r\n\r\n1.2.3.4,60".getBytes(UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertFalse(decoder.decode(ByteBuffer.wrap(bytes, i, 1)));
+        }
+        Assert.assertTrue(decoder.isHeaderComplete());
+        Assert.assertFalse(decoder.isFramed());
+        Assert.assertTrue(decoder.finishOnEof());
+        Assert.assertEquals("1.2.3.4,60", decoder.body());
+        Assert.assertFalse(decoder.isKeepAlive());
+    }
+
+    @Test
+    public void testFinishOnEofBeforeBodyEnd() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder();
+        decoder.decode(ByteBuffer.wrap("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n1.2".getBytes(UTF_8)));
+        // 有Content-Length的响应不能以连接关闭结束
+        Assert.assertFalse(decoder.finishOnEof());
+        Assert.assertFalse(decoder.isComplete());
+    }
+
+    @Test
+    public void testInformationalResponseSkipped() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder();
+        String response = "HTTP/1.1 100 Continue\r\n\r\n" + CONTENT_LENGTH_RESPONSE;
+        Assert.assertTrue(decoder.decode(ByteBuffer.wrap(response.getBytes(UTF_8))));
+        Assert.assertEquals(200, decoder.statusCode());
+        Assert.assertEquals("1.2.3.4;5.6.7.8,60|9.9.9.9", decoder.body());
+        Assert.assertEquals(response.length(), decoder.decodedLength());
+    }
+
+    @Test
+    public void testConnectionClose() throws ProtocolException {
+        HttpResponseDecoder decoder = new HttpResponseDecoder();
+        Assert.assertTrue(decoder.decode(ByteBuffer.wrap(
+                "HTTP/1.1 200 OK\r\nconnection: Close\r\ncontent-length: 2\r\n\r\nok".getBytes(UTF_8))));
+        Assert.assertEquals("ok", decoder.body());
+        Assert.assertFalse(decoder.isKeepAlive());
+    }
+
+    @Test
+    public void testPipelinedResponsesSplitAtEveryBoundary() throws ProtocolException {
+        String stream = CONTENT_LENGTH_RESPONSE + CHUNKED_RESPONSE + NO_CONTENT_RESPONSE + CONTENT_LENGTH_RESPONSE;
+        byte[] bytes = stream.getBytes(UTF_8);
+        for (int split = 0; split <= bytes.length; split++) {
+            assertPipelinedResponses(bytes, new int[]{split});
+        }
+        Random random = new Random(20240101);
+        for (int i = 0; i < 500; i++) {
+            int[] splits = new int[1 + random.nextInt(8)];
+            for (int j = 0; j < splits.length; j++) {
+                splits[j] = random.nextInt(bytes.length + 1);
+            }
+            Arrays.sort(splits);
+            assertPipelinedResponses(bytes, splits);
+        }
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testInvalidStatusLine() throws ProtocolException {
+        new HttpResponseDecoder().decode(ByteBuffer.wrap("SSH-2.0-OpenSSH\r\n\r\n".getBytes(UTF_8)));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testInvalidChunkSize() throws ProtocolException {
+        new HttpResponseDecoder().decode(ByteBuffer.wrap(
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n".getBytes(UTF_8)));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testMissingCrlfAfterChunkData() throws ProtocolException {
+        new HttpResponseDecoder().decode(ByteBuffer.wrap(
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nokx\r\n".getBytes(UTF_8)));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testConflictingContentLength() throws ProtocolException {
+        new HttpResponseDecoder().decode(ByteBuffer.wrap(
+                "HTTP/1.1 200 OK\r\nContent-Length: 2\r\nContent-Length: 3\r\n\r\n".getBytes(UTF_8)));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void testBodyTooLarge() throws ProtocolException {
+        new HttpResponseDecoder().decode(ByteBuffer.wrap(
+                "HTTP/1.1 200 OK\r\nContent-Length: 99999999\r\n\r\n".getBytes(UTF_8)));
+    }
+
+    // 按splits切分后依次解析, 校验pipelining的4个响应都能完整解析, 且不会越过响应边界
+    private static void assertPipelinedResponses(byte[] bytes, int[] splits) throws ProtocolException {
+        String[] expectedBodies = {"1.2.3.4;5.6.7.8,60|9.9.9.9", "1.2.3.4;5.6.7.8,6", "",
+                "1.2.3.4;5.6.7.8,60|9.9.9.9"};
+        int[] expectedStatusCodes = {200, 200, 204, 200};
+        HttpResponseDecoder decoder = new HttpResponseDecoder(1);
+        int responseIndex = 0;
+        int start = 0;
+        for (int i = 0; i <= splits.length; i++) {
+            int end = i < splits.length ? splits[i] : bytes.length;
+            ByteBuffer src = ByteBuffer.wrap(bytes, start, end - start);
+            while (src.hasRemaining()) {
+                if (decoder.decode(src)) {
+                    String message = "split " + Arrays.toString(splits) + ", response " + responseIndex;
+                    Assert.assertEquals(message, expectedStatusCodes[responseIndex], decoder.statusCode());
+                    Assert.assertEquals(message, expectedBodies[responseIndex], decoder.body());
+                    Assert.assertTrue(message, decoder.isKeepAlive());
+                    responseIndex++;
+                    decoder.reset();
+                }
+            }
+            start = end;
+        }
+        Assert.assertEquals(expectedBodies.length, responseIndex);
+    }
+}
@@ -0,0 +1,95 @@
+package com.tencent.msdk.dns.base.utils;
+
+import java.util.regex.Pattern;
+
+/**
+ * IP校验的性能对比: 原正则表达式实现 vs IpAddress扫描实现, 在JVM上直接执行main, 结果仅用于比较数量级
+ */
+public final class IpValidatorBenchmark {
+
+    private static final String[] IPS = {
+            "120.14.67.201",
+            "2402:4e00:1011:1414:0:9226:71a3:83d2",
+            "www.qq.com:1.2.3.4",
+            "39.156.69.79",
+            "2412:4e30:1020:1474:0:9257:71ab:2b74",
+            "fe80::1"
+    };
+    private static final int WARM_UP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 2000000;
+
+    public static void main(String[] args) {
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            int validCount = 0;
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                String ip = IPS[i % IPS.length];
+                if (RegexIpValidator.isV4Ip(ip) || RegexIpValidator.isV6Ip(ip)) {
+                    validCount++;
+                }
+            }
+            long regexNanos = System.nanoTime() - startNanos;
+            startNanos = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                String ip = IPS[i % IPS.length];
+                if (IpValidator.isV4Ip(ip) || IpValidator.isV6Ip(ip)) {
+                    validCount++;
+                }
+            }
+            long scannerNanos = System.nanoTime() - startNanos;
+            if (0 <= round) {
+                // 输出校验通过的次数, 避免循环被优化掉
+                System.out.printf("round %d: regex %.0f ns/op, scanner %.0f ns/op (%d valid)%n", round,
+                        (double) regexNanos / ITERATIONS, (double) scannerNanos / ITERATIONS, validCount);
+            }
+        }
+    }
+
+    /**
+     * 改为扫描实现前的正则表达式实现, 仅用于对比
+     */
+    private static final class RegexIpValidator {
+
+        private static final Pattern IPV4_PATTERN = Pattern.compile(
+                "^(1\\d{2}|2[0-4]\\d|25[0-5]|[1-9]\\d|[1-9])\\."
+                        + "(1\\d{2}|2[0-4]\\d|25[0-5]|[1-9]\\d|\\d)\\."
+                        + "(1\\d{2}|2[0-4]\\d|25[0-5]|[1-9]\\d|\\d)\\."
+                        + "(1\\d{2}|2[0-4]\\d|25[0-5]|[1-9]\\d|\\d)$");
+        private static final Pattern IPV6_PATTERN = Pattern.compile(
+                "([0-9a-fA-F]{1,4}:){7}[0-9a-fA-F]{1,4}|"
+                        + "([0-9a-fA-F]{1,4}:){1,7}:|"
+                        + "([0-9a-fA-F]{1,4}:){1,6}:[0-9a-fA-F]{1,4}|"
+                        + "([0-9a-fA-F]{1,4}:){1,5}(:[0-9a-fA-F]{1,4}){1,2}|"
+                        + "([0-9a-fA-F]{1,4}:){1,4}(:[0-9a-fA-F]{1,4}){1,3}|"
+                        + "([0-9a-fA-F]{1,4}:){1,3}(:[0-9a-fA-F]{1,4}){1,4}|"
+                        + "([0-9a-fA-F]{1,4}:){1,2}(:[0-9a-fA-F]{1,4}){1,5}|"
+                        + "[0-9a-fA-F]{1,4}:((:[0-9a-fA-F]{1,4}){1,6})|"
+                        + ":((:[0-9a-fA-F]{1,4}){1,7}|:)|"
+                        + "fe80:(:[0-9a-fA-F]{0,4}){0,4}%[0-9a-zA-Z]+|"
+                        + "::ffff(:0{1,4})?:((25[0-5]|(2[0-4]|1?[0-9])?[0-9])\\\\.){3}(25[0-5]|(2[0-4]|1?[0-9])?[0-9])|"
+                        + "([0-9a-fA-F]{1,4}:){1,4}:((25[0-5]|(2[0-4]|1?[0-9])?[0-9])\\\\.){3}(25[0-5]|(2[0-4]|1?[0-9])"
+                        + "?[0-9])");
+
+        static boolean isV4Ip(String ip) {
+            String realIp = formatIp(ip);
+            return !isEmpty(realIp) && IPV4_PATTERN.matcher(realIp).matches();
+        }
+
+        static boolean isV6Ip(String ip) {
+            String realIp = formatIp(ip);
+            return !isEmpty(ip) && IPV6_PATTERN.matcher(ip).matches()
+                    || !isEmpty(realIp) && IPV6_PATTERN.matcher(realIp).matches();
+        }
+
+        // 带域名的ip转换适配批量查询
+        private static String formatIp(String ip) {
+            int i = ip.indexOf(':');
+            return -1 != i ? ip.substring(i + 1) : ip;
+        }
+
+        private static boolean isEmpty(String str) {
+            return null == str || 0 == str.length();
+        }
+    }
+}
@@ -8,5 +8,35 @@ public class IpValidatorTest {
     @Test
     public void testIsV6IP() {
         Assert.assertFalse(IpValidator.isV6Ip("p21.tcdn.qq.com."));
+        Assert.assertTrue(IpValidator.isV6Ip("2402:4e00:1011:1414:0:9226:71a3:83d2"));
+        Assert.assertTrue(IpValidator.isV6Ip("::1"));
+        Assert.assertTrue(IpValidator.isV6Ip("::ffff:1.2.3.4"));
+        Assert.assertTrue(IpValidator.isV6Ip("fe80::1%wlan0"));
+        Assert.assertTrue(IpValidator.isV6Ip("www.qq.com:2402:4e00::1"));
+        Assert.assertFalse(IpValidator.isV6Ip("1::2::3"));
+        Assert.assertFalse(IpValidator.isV6Ip("12345::"));
+        Assert.assertFalse(IpValidator.isV6Ip("1.2.3.4"));
+    }
+
+    @Test
+    public void testIsV4IP() {
+        Assert.assertTrue(IpValidator.isV4Ip("1.2.3.4"));
+        Assert.assertTrue(IpValidator.isV4Ip("255.255.255.255"));
+        Assert.assertTrue(IpValidator.isV4Ip("www.qq.com:1.2.3.4"));
+        Assert.assertFalse(IpValidator.isV4Ip("0.1.2.3"));
+        Assert.assertFalse(IpValidator.isV4Ip("256.1.1.1"));
+        Assert.assertFalse(IpValidator.isV4Ip("01.2.3.4"));
+        Assert.assertFalse(IpValidator.isV4Ip("1.2.3"));
+        Assert.assertFalse(IpValidator.isV4Ip("::1"));
+        Assert.assertFalse(IpValidator.isV4Ip(null));
+    }
+
+    @Test
+    public void testIpAddressFormat() {
+        Assert.assertEquals("2001:db8::1", IpAddress.ofV6(0x20010db800000000L, 1L).toString());
+        Assert.assertEquals("::1", IpAddress.ofV6(0, 1).toString());
+        Assert.assertEquals("1.2.3.4", IpAddress.ofV4(0x01020304).toString());
+        Assert.assertEquals(IpAddress.parse("2001:DB8:0:0:0:0:0:1"), IpAddress.parse("2001:db8::1"));
+        Assert.assertNull(IpAddress.parse("p21.tcdn.qq.com."));
     }
 }
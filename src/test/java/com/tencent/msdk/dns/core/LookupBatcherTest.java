@@ -0,0 +1,69 @@
+package com.tencent.msdk.dns.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LookupBatcherTest {
+
+    private static final String[] V4_IPS = {"1.1.1.1"};
+
+    @Test
+    public void testLandEveryFlightOfSameHostname() {
+        LookupFlight v4Flight = newFlight("same.batch.com", DnsDescription.Family.INET);
+        LookupFlight v6Flight = newFlight("same.batch.com", DnsDescription.Family.INET6);
+        LookupFlight otherFlight = newFlight("other.batch.com", DnsDescription.Family.INET);
+        // 不同key, 均为leader
+        Assert.assertNull(LookupFlight.launch(v4Flight, false));
+        Assert.assertNull(LookupFlight.launch(v6Flight, false));
+        Assert.assertNull(LookupFlight.launch(otherFlight, false));
+
+        LookupBatcher.Batch batch = new LookupBatcher(60 * 1000, 10).new Batch(null);
+        batch.add("same.batch.com", v4Flight);
+        batch.add("same.batch.com", v6Flight);
+        batch.add("other.batch.com", otherFlight);
+        Assert.assertEquals(2, batch.size());
+
+        Map<String, IpSet> ipSets = new LinkedHashMap<>();
+        ipSets.put("same.batch.com", new IpSet(V4_IPS, Const.EMPTY_IPS));
+        batch.land(new LookupResult<>(new IpSet(V4_IPS, Const.EMPTY_IPS, new BatchIpSet(ipSets)), newStat()));
+
+        // 已land的任务不再被后续解析请求加入
+        assertNotRunning("same.batch.com", DnsDescription.Family.INET);
+        assertNotRunning("same.batch.com", DnsDescription.Family.INET6);
+        assertNotRunning("other.batch.com", DnsDescription.Family.INET);
+    }
+
+    @Test
+    public void testLandEveryFlightOfSingleHostnameOnFailure() {
+        LookupFlight v4Flight = newFlight("single.batch.com", DnsDescription.Family.INET);
+        LookupFlight v6Flight = newFlight("single.batch.com", DnsDescription.Family.INET6);
+        Assert.assertNull(LookupFlight.launch(v4Flight, false));
+        Assert.assertNull(LookupFlight.launch(v6Flight, false));
+
+        LookupBatcher.Batch batch = new LookupBatcher(60 * 1000, 10).new Batch(null);
+        batch.add("single.batch.com", v4Flight);
+        batch.add("single.batch.com", v6Flight);
+        Assert.assertEquals(1, batch.size());
+        batch.land(null);
+
+        assertNotRunning("single.batch.com", DnsDescription.Family.INET);
+        assertNotRunning("single.batch.com", DnsDescription.Family.INET6);
+    }
+
+    private static LookupFlight newFlight(String hostname, int family) {
+        return new LookupFlight(hostname, family, Const.HTTPS_CHANNEL, false);
+    }
+
+    private static void assertNotRunning(String hostname, int family) {
+        LookupFlight lookupFlight = newFlight(hostname, family);
+        Assert.assertNull(LookupFlight.launch(lookupFlight, false));
+        lookupFlight.land(null);
+    }
+
+    private static IStatisticsMerge newStat() {
+        return IStatisticsMerge.IFactory.DEFAULT.create(IDns.ILookupExtra.class, null);
+    }
+}
@@ -0,0 +1,41 @@
+package com.tencent.msdk.dns.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LookupFlightTest {
+
+    @Test
+    public void testJoinRunningFlightUntilLanded() {
+        LookupFlight leader = newFlight("join.flight.com", DnsDescription.Family.INET);
+        Assert.assertNull(LookupFlight.launch(leader, false));
+        Assert.assertSame(leader, LookupFlight.launch(newFlight("join.flight.com", DnsDescription.Family.INET), false));
+        // key不同时不加入
+        LookupFlight v6Leader = newFlight("join.flight.com", DnsDescription.Family.INET6);
+        Assert.assertNull(LookupFlight.launch(v6Leader, false));
+
+        leader.land(null);
+        LookupFlight nextLeader = newFlight("join.flight.com", DnsDescription.Family.INET);
+        Assert.assertNull(LookupFlight.launch(nextLeader, false));
+        nextLeader.land(null);
+        v6Leader.land(null);
+    }
+
+    @Test
+    public void testReplacedFlightLandingKeepsNewLeader() {
+        LookupFlight oldLeader = newFlight("replace.flight.com", DnsDescription.Family.INET);
+        Assert.assertNull(LookupFlight.launch(oldLeader, false));
+        LookupFlight newLeader = newFlight("replace.flight.com", DnsDescription.Family.INET);
+        Assert.assertNull(LookupFlight.launch(newLeader, true));
+
+        // 被替换的任务结束时不能移除新的任务
+        oldLeader.land(null);
+        Assert.assertSame(newLeader,
+                LookupFlight.launch(newFlight("replace.flight.com", DnsDescription.Family.INET), false));
+        newLeader.land(null);
+    }
+
+    private static LookupFlight newFlight(String hostname, int family) {
+        return new LookupFlight(hostname, family, Const.HTTPS_CHANNEL, false);
+    }
+}
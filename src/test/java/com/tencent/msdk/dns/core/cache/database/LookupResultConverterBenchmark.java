@@ -0,0 +1,83 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * 缓存编码的性能对比: 原Java序列化 vs LookupResultConverter的大小及编解码耗时, 在JVM上直接执行main
+ */
+public final class LookupResultConverterBenchmark {
+
+    private static final String HOSTNAME = "www.qq.com";
+    private static final String[] IPS = {"120.14.67.201", "39.156.69.79", "123.59.226.2"};
+    private static final int WARM_UP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 200000;
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+        stat.ips = IPS;
+        stat.clientIp = "59.37.125.43";
+        stat.expiredTime = 123456789L;
+        stat.ttl.put(HOSTNAME, 300);
+        LookupResult lookupResult = new LookupResult<>(IPS, stat);
+
+        byte[] serialized = serialize(lookupResult);
+        byte[] encoded = LookupResultConverter.fromLookupResult(HOSTNAME, lookupResult);
+        System.out.printf("size: java %d bytes, binary %d bytes%n", serialized.length, encoded.length);
+
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            // 累加结果长度, 避免循环被优化掉
+            long sink = 0;
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += serialize(lookupResult).length;
+            }
+            long javaEncodeNanos = System.nanoTime() - startNanos;
+            startNanos = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += LookupResultConverter.fromLookupResult(HOSTNAME, lookupResult).length;
+            }
+            long binaryEncodeNanos = System.nanoTime() - startNanos;
+            startNanos = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += deserialize(serialized).ipSet.ips.length;
+            }
+            long javaDecodeNanos = System.nanoTime() - startNanos;
+            startNanos = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += LookupResultConverter.toLookupResult(HOSTNAME, encoded).ipSet.ips.length;
+            }
+            long binaryDecodeNanos = System.nanoTime() - startNanos;
+            if (0 <= round) {
+                System.out.printf("round %d: encode java %.0f ns/op, binary %.0f ns/op | "
+                                + "decode java %.0f ns/op, binary %.0f ns/op (%d)%n", round,
+                        (double) javaEncodeNanos / ITERATIONS, (double) binaryEncodeNanos / ITERATIONS,
+                        (double) javaDecodeNanos / ITERATIONS, (double) binaryDecodeNanos / ITERATIONS, sink);
+            }
+        }
+    }
+
+    private static byte[] serialize(LookupResult lookupResult) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(lookupResult);
+        oos.close();
+        return out.toByteArray();
+    }
+
+    private static LookupResult deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (LookupResult) ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LookupResultConverterTest {
+
+    private static final String HOSTNAME = "www.qq.com";
+
+    // 旧版本以Java序列化保存的LookupResult, 由改为二进制编码前的代码生成:
+    // ips=[1.2.3.4, 2402:4e00:1011:1414:0:9226:71a3:83d2], clientIp=59.37.125.43, expiredTime=123456789
+    private static final String LEGACY_HEX =
+        "aced000573720026636f6d2e74656e63656e742e6d73646b2e646e732e636f72652e4c6f6f6b7570526573756c744b3c"
+        + "4692de382bff0200024c000569705365747400214c636f6d2f74656e63656e742f6d73646b2f646e732f636f72652f49"
+        + "705365743b4c00047374617474002c4c636f6d2f74656e63656e742f6d73646b2f646e732f636f72652f49446e732449"
+        + "537461746973746963733b78707372001f636f6d2e74656e63656e742e6d73646b2e646e732e636f72652e4970536574"
+        + "6d006221f138ebff0200035b00036970737400135b4c6a6176612f6c616e672f537472696e673b5b0005763449707371"
+        + "007e00055b0005763649707371007e00057870757200135b4c6a6176612e6c616e672e537472696e673badd256e7e91d"
+        + "7b47020000787000000002740007312e322e332e34740024323430323a346530303a313031313a313431343a303a3932"
+        + "32363a373161333a3833643270707372003a636f6d2e74656e63656e742e6d73646b2e646e732e636f72652e72657374"
+        + "2e73686172652e41627352657374446e73245374617469737469637377a4f59e8f782dcb02000a5a000b6173796e634c"
+        + "6f6f6b75705a00066361636865644900096572726f72436f64654a000b6578706972656454696d655a00106861645061"
+        + "72744361636865644970735a000f6e65744368616e67654c6f6f6b757049000a726574727954696d657349000a737461"
+        + "747573436f64654c0008636c69656e7449707400124c6a6176612f6c616e672f537472696e673b4c00086572726f724d"
+        + "736771007e000c787000000000000000000000075bcd150000000000000000000074000c35392e33372e3132352e3433"
+        + "74000120";
+
+    @Test
+    public void testRoundTrip() {
+        String[] ips = {"1.2.3.4", "255.255.255.255", "2402:4e00:1011:1414:0:9226:71a3:83d2", "::1",
+                // 非RFC 5952格式的IPv6按原字符串保存
+                "2402:4E00::1", "fe80::1%wlan0"};
+        LookupResult lookupResult = newLookupResult(ips, "59.37.125.43", 300, 987654321L);
+        byte[] bytes = LookupResultConverter.fromLookupResult(HOSTNAME, lookupResult);
+        Assert.assertFalse(LookupResultConverter.isLegacy(bytes));
+
+        LookupResult decoded = LookupResultConverter.toLookupResult(HOSTNAME, bytes);
+        Assert.assertNotNull(decoded);
+        Assert.assertArrayEquals(ips, decoded.ipSet.ips);
+        AbsRestDns.Statistics stat = (AbsRestDns.Statistics) decoded.stat;
+        Assert.assertArrayEquals(ips, stat.ips);
+        Assert.assertEquals("59.37.125.43", stat.clientIp);
+        Assert.assertEquals(987654321L, stat.expiredTime);
+        Assert.assertEquals(Integer.valueOf(300), stat.ttl.get(HOSTNAME));
+        Assert.assertEquals(0, stat.errorCode);
+    }
+
+    @Test
+    public void testRoundTripWithoutTtl() {
+        LookupResult lookupResult = newLookupResult(new String[]{"1.2.3.4"}, "59.37.125.43", null, 0);
+        LookupResult decoded = LookupResultConverter.toLookupResult(HOSTNAME,
+                LookupResultConverter.fromLookupResult(HOSTNAME, lookupResult));
+        Assert.assertNotNull(decoded);
+        Assert.assertArrayEquals(new String[]{"1.2.3.4"}, decoded.ipSet.ips);
+        Assert.assertNotNull(((AbsRestDns.Statistics) decoded.stat).ttl);
+        Assert.assertTrue(((AbsRestDns.Statistics) decoded.stat).ttl.isEmpty());
+    }
+
+    @Test
+    public void testTtlOfOtherHostname() {
+        // 没有当前域名的ttl时取最小值
+        AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+        stat.ips = new String[]{"1.2.3.4"};
+        stat.ttl.put("a.com", 120);
+        stat.ttl.put("b.com", 60);
+        LookupResult decoded = LookupResultConverter.toLookupResult(HOSTNAME,
+                LookupResultConverter.fromLookupResult(HOSTNAME, new LookupResult<>(stat.ips, stat)));
+        Assert.assertNotNull(decoded);
+        Assert.assertEquals(Integer.valueOf(60), ((AbsRestDns.Statistics) decoded.stat).ttl.get(HOSTNAME));
+    }
+
+    @Test
+    public void testCompactSize() {
+        LookupResult lookupResult =
+                newLookupResult(new String[]{"1.2.3.4", "5.6.7.8", "9.10.11.12"}, "59.37.125.43", 300, 987654321L);
+        // 版本, 过期时间, ttl, clientIp, 3个IPv4
+        Assert.assertTrue(40 > LookupResultConverter.fromLookupResult(HOSTNAME, lookupResult).length);
+    }
+
+    @Test
+    public void testDecodeLegacy() {
+        byte[] bytes = fromHex(LEGACY_HEX);
+        Assert.assertTrue(LookupResultConverter.isLegacy(bytes));
+
+        LookupResult decoded = LookupResultConverter.toLookupResult(HOSTNAME, bytes);
+        Assert.assertNotNull(decoded);
+        Assert.assertArrayEquals(new String[]{"1.2.3.4", "2402:4e00:1011:1414:0:9226:71a3:83d2"}, decoded.ipSet.ips);
+        AbsRestDns.Statistics stat = (AbsRestDns.Statistics) decoded.stat;
+        Assert.assertEquals("59.37.125.43", stat.clientIp);
+        Assert.assertEquals(123456789L, stat.expiredTime);
+        // ttl为transient, 旧数据中没有ttl
+        Assert.assertNotNull(stat.ttl);
+        Assert.assertTrue(stat.ttl.isEmpty());
+
+        // 迁移: 旧数据重新编码后不再是Java序列化格式
+        byte[] migrated = LookupResultConverter.fromLookupResult(HOSTNAME, decoded);
+        Assert.assertFalse(LookupResultConverter.isLegacy(migrated));
+        LookupResult redecoded = LookupResultConverter.toLookupResult(HOSTNAME, migrated);
+        Assert.assertNotNull(redecoded);
+        Assert.assertArrayEquals(decoded.ipSet.ips, redecoded.ipSet.ips);
+        Assert.assertEquals(123456789L, ((AbsRestDns.Statistics) redecoded.stat).expiredTime);
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] bytes = LookupResultConverter.fromLookupResult(HOSTNAME,
+                newLookupResult(new String[]{"1.2.3.4", "2402:4e00::1", "2402:4E00::1"}, "59.37.125.43", 300, 1L));
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(bytes, 0, truncated, 0, length);
+            Assert.assertNull("length " + length, LookupResultConverter.toLookupResult(HOSTNAME, truncated));
+        }
+        byte[] legacy = fromHex(LEGACY_HEX);
+        byte[] truncatedLegacy = new byte[legacy.length / 2];
+        System.arraycopy(legacy, 0, truncatedLegacy, 0, truncatedLegacy.length);
+        Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME, truncatedLegacy));
+    }
+
+    @Test
+    public void testGarbage() {
+        Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME, null));
+        // 未知版本
+        Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME, new byte[]{2, 0, 0, 0, 0}));
+        // 未知的IP类型
+        Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME, new byte[]{1, 0, 0, 0, 1, 9}));
+        // 超长的varint
+        Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME,
+                new byte[]{1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1}));
+        // 长度超出数据的字符串
+        Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME, new byte[]{1, 0, 0, 100, 'a'}));
+
+        Random random = new Random(20240101);
+        for (int i = 0; i < 10000; i++) {
+            byte[] bytes = new byte[1 + random.nextInt(64)];
+            random.nextBytes(bytes);
+            // 随机数据可能恰好可以解码, 只要求不抛出异常
+            LookupResultConverter.toLookupResult(HOSTNAME, bytes);
+            bytes[0] = (byte) 0xAC;
+            Assert.assertNull(LookupResultConverter.toLookupResult(HOSTNAME, bytes));
+        }
+    }
+
+    private static LookupResult newLookupResult(String[] ips, String clientIp, Integer ttl, long expiredTime) {
+        AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+        stat.ips = ips;
+        stat.clientIp = clientIp;
+        stat.expiredTime = expiredTime;
+        if (null != ttl) {
+            Map<String, Integer> ttlMap = new HashMap<>();
+            ttlMap.put(HOSTNAME, ttl);
+            stat.ttl = ttlMap;
+        }
+        return new LookupResult<>(ips, stat);
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
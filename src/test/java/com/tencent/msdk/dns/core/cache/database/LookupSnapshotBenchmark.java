@@ -0,0 +1,93 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import com.tencent.msdk.dns.base.utils.IClock;
+import com.tencent.msdk.dns.core.DnsDescription;
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 冷启动恢复缓存的耗时: 快照文件 vs SQLite解码所有行(JVM上无SQLite, 为其下限), 参数为域名数, 默认为1000
+ */
+public final class LookupSnapshotBenchmark {
+
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int ROUNDS = 5;
+
+    private static final IClock CLOCK = new IClock() {
+        @Override
+        public long elapsedRealtime() {
+            return System.nanoTime() / 1000000;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        int hostCount = 0 < args.length ? Integer.parseInt(args[0]) : 1000;
+        File file = File.createTempFile("snapshot", ".benchmark");
+        file.deleteOnExit();
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        List<byte[]> rows = new ArrayList<>(hostCount);
+        for (int i = 0; i < hostCount; i++) {
+            String hostname = "host" + i + ".example.com";
+            LookupCache lookupCache = new LookupCache(hostname, DnsDescription.Family.INET,
+                    newLookupResult(hostname, "10.0." + (i / 256) % 256 + "." + i % 256, "10.1.0.1", "10.2.0.1"));
+            batch.put(lookupCache.key(), lookupCache);
+            rows.add(LookupResultConverter.fromLookupResult(hostname, lookupCache.lookupResult));
+        }
+        LookupSnapshot writer = new LookupSnapshot(file, CLOCK);
+        writer.open(true, 0);
+        writer.write(false, batch);
+        System.out.printf("hosts: %d, snapshot size: %d bytes%n", hostCount, file.length());
+
+        for (int round = -WARM_UP_ROUNDS; round < ROUNDS; round++) {
+            long startNanos = System.nanoTime();
+            LookupSnapshot snapshot = new LookupSnapshot(file, CLOCK);
+            snapshot.open(true, 0);
+            long openNanos = System.nanoTime() - startNanos;
+            int loadedCount = snapshot.loadAll().size();
+            long snapshotNanos = System.nanoTime() - startNanos;
+
+            startNanos = System.nanoTime();
+            int decodedCount = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                if (null != LookupResultConverter.toLookupResult("host" + i + ".example.com", rows.get(i))) {
+                    decodedCount++;
+                }
+            }
+            long sqliteNanos = System.nanoTime() - startNanos;
+            if (0 <= round) {
+                System.out.printf("round %d: snapshot open %.2f ms, load all %.2f ms (%d) | "
+                                + "sqlite decode all %.2f ms (%d)%n", round, openNanos / 1e6, snapshotNanos / 1e6,
+                        loadedCount, sqliteNanos / 1e6, decodedCount);
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static LookupResult newLookupResult(String hostname, String... ips) {
+        AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+        stat.ips = ips;
+        stat.clientIp = "59.37.125.43";
+        stat.expiredTime = CLOCK.elapsedRealtime() + 600 * 1000;
+        Map<String, Integer> ttl = new HashMap<>();
+        ttl.put(hostname, 600);
+        stat.ttl = ttl;
+        return new LookupResult<>(ips, stat);
+    }
+}
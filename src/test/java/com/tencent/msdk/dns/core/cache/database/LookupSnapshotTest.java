@@ -0,0 +1,309 @@
+package com.tencent.msdk.dns.core.cache.database;
+
+import com.tencent.msdk.dns.base.utils.IClock;
+import com.tencent.msdk.dns.core.DnsDescription;
+import com.tencent.msdk.dns.core.LookupResult;
+import com.tencent.msdk.dns.core.rest.share.AbsRestDns;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LookupSnapshotTest {
+
+    // 文件头: magic + version
+    private static final int HEADER_BYTES = 8;
+
+    private final ManualClock mClock = new ManualClock(1000, 1700000000000L);
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("snapshot", "");
+        Assert.assertTrue(mDir.delete() && mDir.mkdir());
+        mFile = new File(mDir, LookupSnapshot.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                // noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        mDir.delete();
+    }
+
+    @Test
+    public void testWriteAndReopen() {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1", "2.2.2.2");
+        put(batch, "a.com", DnsDescription.Family.INET6, 600, "::1");
+        put(batch, "b.com", DnsDescription.Family.INET, 600, "3.3.3.3");
+        put(batch, "gone.com", DnsDescription.Family.INET, 600, "4.4.4.4");
+        snapshot.write(false, batch);
+        batch.clear();
+        batch.put(LookupCache.key("gone.com", DnsDescription.Family.INET), null);
+        snapshot.write(false, batch);
+
+        LookupSnapshot reopened = open(false);
+        Assert.assertTrue(reopened.isUnloaded("a.com"));
+        Assert.assertTrue(reopened.isUnloaded("b.com"));
+        // 删除记录覆盖之前的记录
+        Assert.assertFalse(reopened.isUnloaded("gone.com"));
+        List<LookupCache> lookupCaches = reopened.load("a.com");
+        Assert.assertEquals(2, lookupCaches.size());
+        Assert.assertArrayEquals(new String[]{"1.1.1.1", "2.2.2.2"}, lookupCaches.get(0).lookupResult.ipSet.ips);
+        Assert.assertArrayEquals(new String[]{"::1"}, lookupCaches.get(1).lookupResult.ipSet.ips);
+        // 每个域名只返回一次
+        Assert.assertFalse(reopened.isUnloaded("a.com"));
+        Assert.assertTrue(reopened.load("a.com").isEmpty());
+    }
+
+    @Test
+    public void testLoadAllSkipsLoadedAndDiscarded() {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1");
+        put(batch, "a.com", DnsDescription.Family.INET6, 600, "::1");
+        put(batch, "b.com", DnsDescription.Family.INET, 600, "2.2.2.2");
+        put(batch, "c.com", DnsDescription.Family.INET, 600, "3.3.3.3");
+        snapshot.write(false, batch);
+
+        LookupSnapshot reopened = open(false);
+        Assert.assertEquals(1, reopened.load("b.com").size());
+        reopened.discard("c.com");
+        List<LookupCache> lookupCaches = reopened.loadAll();
+        Assert.assertEquals(2, lookupCaches.size());
+        Assert.assertEquals("a.com", lookupCaches.get(0).hostname);
+        Assert.assertEquals("a.com", lookupCaches.get(1).hostname);
+        Assert.assertFalse(reopened.isUnloaded("a.com"));
+        Assert.assertTrue(reopened.loadAll().isEmpty());
+    }
+
+    @Test
+    public void testTornTailTruncated() throws IOException {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1");
+        put(batch, "b.com", DnsDescription.Family.INET, 600, "2.2.2.2");
+        snapshot.write(false, batch);
+        long validSize = mFile.length();
+
+        // 追加记录时进程退出: 记录头完整但body不完整
+        batch.clear();
+        put(batch, "c.com", DnsDescription.Family.INET, 600, "3.3.3.3");
+        snapshot.write(false, batch);
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.setLength(mFile.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        LookupSnapshot reopened = open(false);
+        Assert.assertEquals(validSize, mFile.length());
+        Assert.assertTrue(reopened.isUnloaded("a.com"));
+        Assert.assertTrue(reopened.isUnloaded("b.com"));
+        Assert.assertFalse(reopened.isUnloaded("c.com"));
+
+        // 截断后追加的记录可以正常读取
+        put(batch, "c.com", DnsDescription.Family.INET, 600, "3.3.3.4");
+        reopened.write(false, batch);
+        List<LookupCache> lookupCaches = open(false).load("c.com");
+        Assert.assertEquals(1, lookupCaches.size());
+        Assert.assertArrayEquals(new String[]{"3.3.3.4"}, lookupCaches.get(0).lookupResult.ipSet.ips);
+    }
+
+    @Test
+    public void testInvalidRecordLengthTruncated() throws IOException {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1");
+        snapshot.write(false, batch);
+        long validSize = mFile.length();
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            // 记录长度超出文件大小
+            raf.seek(validSize);
+            raf.writeInt(Integer.MAX_VALUE);
+            raf.writeInt(0);
+            raf.write(new byte[16]);
+        } finally {
+            raf.close();
+        }
+
+        LookupSnapshot reopened = open(false);
+        Assert.assertEquals(validSize, mFile.length());
+        Assert.assertEquals(1, reopened.load("a.com").size());
+    }
+
+    @Test
+    public void testChecksumMismatchRejected() throws IOException {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1");
+        put(batch, "a.com", DnsDescription.Family.INET6, 600, "::1");
+        snapshot.write(false, batch);
+
+        // 破坏第一条记录(a.com的IPv4记录)的最后一个字节, 即IP的最后一个字节
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(HEADER_BYTES);
+            int recordLength = 8 + raf.readInt();
+            long lastByte = HEADER_BYTES + recordLength - 1;
+            raf.seek(lastByte);
+            int value = raf.read();
+            raf.seek(lastByte);
+            raf.write(value ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        LookupSnapshot reopened = open(false);
+        // NOTE: 打开时只扫描记录头, 解析结果在读取时才校验
+        Assert.assertTrue(reopened.isUnloaded("a.com"));
+        List<LookupCache> lookupCaches = reopened.load("a.com");
+        Assert.assertEquals(1, lookupCaches.size());
+        Assert.assertEquals(DnsDescription.Family.INET6, lookupCaches.get(0).family);
+        Assert.assertArrayEquals(new String[]{"::1"}, lookupCaches.get(0).lookupResult.ipSet.ips);
+    }
+
+    @Test
+    public void testCompact() {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "keep.com", DnsDescription.Family.INET, 600, "9.9.9.9");
+        snapshot.write(false, batch);
+        long maxSize = 0;
+        int compactCount = 0;
+        // 反复覆盖同一域名, 无效记录超过64KB且超过有效记录时重写文件
+        for (int i = 0; i < 2000; i++) {
+            long size = mFile.length();
+            batch.clear();
+            put(batch, "www.example.com", DnsDescription.Family.INET, 600, "10.0." + (i / 256) + "." + (i % 256));
+            snapshot.write(false, batch);
+            if (mFile.length() < size) {
+                compactCount++;
+                // 重写后只保留两个域名的有效记录
+                Assert.assertTrue(1024 > mFile.length());
+            }
+            maxSize = Math.max(maxSize, mFile.length());
+        }
+        Assert.assertTrue(0 < compactCount);
+        Assert.assertTrue(64 * 1024 < maxSize && maxSize < 66 * 1024);
+        Assert.assertFalse(new File(mFile.getPath() + ".tmp").exists());
+
+        // 重写后继续追加及读取使用新文件的位置
+        batch.clear();
+        put(batch, "new.com", DnsDescription.Family.INET, 600, "8.8.8.8");
+        snapshot.write(false, batch);
+
+        LookupSnapshot reopened = open(false);
+        Assert.assertArrayEquals(new String[]{"10.0.7.207"},
+                reopened.load("www.example.com").get(0).lookupResult.ipSet.ips);
+        Assert.assertArrayEquals(new String[]{"9.9.9.9"}, reopened.load("keep.com").get(0).lookupResult.ipSet.ips);
+        Assert.assertArrayEquals(new String[]{"8.8.8.8"}, reopened.load("new.com").get(0).lookupResult.ipSet.ips);
+    }
+
+    @Test
+    public void testExpiredTimeConvertedAcrossReboot() {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1");
+        put(batch, "short.com", DnsDescription.Family.INET, 10, "2.2.2.2");
+        snapshot.write(false, batch);
+
+        // 重启后elapsedRealtime重新计时, 墙上时间已过去30s
+        mClock.mElapsedRealtime = 50;
+        mClock.mCurrentTimeMillis += 30 * 1000;
+        LookupSnapshot reopened = open(false);
+        List<LookupCache> lookupCaches = reopened.load("a.com");
+        Assert.assertEquals(1, lookupCaches.size());
+        Assert.assertEquals(50 + 570 * 1000,
+                ((AbsRestDns.Statistics) lookupCaches.get(0).lookupResult.stat).expiredTime);
+        // 打开时丢弃已过期的记录
+        Assert.assertFalse(reopened.isUnloaded("short.com"));
+
+        // 不丢弃时保留已过期的记录, 过期时间早于当前时间
+        LookupSnapshot keepExpired = new LookupSnapshot(mFile, mClock);
+        keepExpired.open(false, 0);
+        lookupCaches = keepExpired.load("short.com");
+        Assert.assertEquals(1, lookupCaches.size());
+        Assert.assertEquals(50 - 20 * 1000,
+                ((AbsRestDns.Statistics) lookupCaches.get(0).lookupResult.stat).expiredTime);
+    }
+
+    @Test
+    public void testMaxHosts() {
+        LookupSnapshot snapshot = open(true);
+        Map<String, LookupCache> batch = new LinkedHashMap<>();
+        put(batch, "a.com", DnsDescription.Family.INET, 600, "1.1.1.1");
+        put(batch, "b.com", DnsDescription.Family.INET, 600, "2.2.2.2");
+        put(batch, "c.com", DnsDescription.Family.INET, 600, "3.3.3.3");
+        snapshot.write(false, batch);
+        batch.clear();
+        put(batch, "a.com", DnsDescription.Family.INET6, 600, "::1");
+        snapshot.write(false, batch);
+
+        // 超出时丢弃最早写入的域名
+        LookupSnapshot reopened = new LookupSnapshot(mFile, mClock);
+        reopened.open(true, 2);
+        Assert.assertFalse(reopened.isUnloaded("b.com"));
+        Assert.assertTrue(reopened.isUnloaded("c.com"));
+        Assert.assertTrue(reopened.isUnloaded("a.com"));
+    }
+
+    private LookupSnapshot open(boolean expectCreated) {
+        LookupSnapshot snapshot = new LookupSnapshot(mFile, mClock);
+        Assert.assertEquals(expectCreated, snapshot.open(true, 0));
+        return snapshot;
+    }
+
+    private void put(Map<String, LookupCache> batch, String hostname, int family, int ttl, String... ips) {
+        AbsRestDns.Statistics stat = new AbsRestDns.Statistics();
+        stat.ips = ips;
+        stat.clientIp = "59.37.125.43";
+        stat.expiredTime = mClock.elapsedRealtime() + ttl * 1000L;
+        Map<String, Integer> ttlMap = new HashMap<>();
+        ttlMap.put(hostname, ttl);
+        stat.ttl = ttlMap;
+        batch.put(LookupCache.key(hostname, family),
+                new LookupCache(hostname, family, new LookupResult<>(ips, stat)));
+    }
+
+    private static final class ManualClock implements IClock {
+
+        long mElapsedRealtime;
+        long mCurrentTimeMillis;
+
+        ManualClock(long elapsedRealtime, long currentTimeMillis) {
+            mElapsedRealtime = elapsedRealtime;
+            mCurrentTimeMillis = currentTimeMillis;
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return mElapsedRealtime;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mCurrentTimeMillis;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.tencent.msdk.dns.core.rest.share.rsp;
+
+import com.tencent.msdk.dns.core.DnsDescription;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponseParserTest {
+
+    @Test
+    public void testParseInetResponse() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.INET,
+                "123.59.226.2;123.59.226.3,303|59.37.125.43");
+        Assert.assertEquals("59.37.125.43", rsp.clientIp);
+        Assert.assertArrayEquals(new String[]{"123.59.226.2", "123.59.226.3"}, rsp.ips);
+        Assert.assertEquals(Integer.valueOf(303), rsp.ttl.get(Response.ONE_HOST));
+
+        Assert.assertEquals(1, rsp.records.length);
+        HostRecord record = rsp.records[0];
+        Assert.assertNull(record.host);
+        Assert.assertArrayEquals(new String[]{"123.59.226.2", "123.59.226.3"}, record.inet4Ips);
+        Assert.assertEquals(303, record.inet4Ttl);
+        Assert.assertEquals(0, record.inet6Ips.length);
+        Assert.assertEquals(HostRecord.NO_TTL, record.inet6Ttl);
+        Assert.assertEquals(303, record.ttl());
+    }
+
+    @Test
+    public void testParseInet6Response() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.INET6,
+                "2402:4e00:1011:1414:0:9226:71a3:83d2;1.1.1.1,60|127.0.0.1");
+        Assert.assertArrayEquals(new String[]{"2402:4e00:1011:1414:0:9226:71a3:83d2"}, rsp.ips);
+        Assert.assertEquals(0, rsp.records[0].inet4Ips.length);
+        Assert.assertEquals(60, rsp.records[0].inet6Ttl);
+    }
+
+    @Test
+    public void testParseUnspecificResponse() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.UN_SPECIFIC,
+                "120.14.67.201,120-2402:4e00:1011:1414:0:9226:71a3:83d2;2412:4e30:1020:1474:0:9257:71ab:2b74,60"
+                        + "|127.0.0.1");
+        Assert.assertEquals("127.0.0.1", rsp.clientIp);
+        Assert.assertArrayEquals(new String[]{"120.14.67.201", "2402:4e00:1011:1414:0:9226:71a3:83d2",
+                "2412:4e30:1020:1474:0:9257:71ab:2b74"}, rsp.ips);
+        // ttl按ipv4, ipv6的最小值
+        Assert.assertEquals(Integer.valueOf(60), rsp.ttl.get(Response.ONE_HOST));
+
+        HostRecord record = rsp.records[0];
+        Assert.assertEquals(120, record.inet4Ttl);
+        Assert.assertEquals(60, record.inet6Ttl);
+        Assert.assertArrayEquals(new String[]{"2402:4e00:1011:1414:0:9226:71a3:83d2",
+                "2412:4e30:1020:1474:0:9257:71ab:2b74"}, record.inet6Ips);
+    }
+
+    @Test
+    public void testParseBatchResponse() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.INET,
+                "www.qq.com.:120.14.67.201;1.2.3.4,120|127.0.0.1\nwww.baidu.com.:39.156.69.79,300|127.0.0.1");
+        Assert.assertEquals("127.0.0.1,", rsp.clientIp);
+        Assert.assertArrayEquals(new String[]{"www.qq.com:120.14.67.201", "www.qq.com:1.2.3.4",
+                "www.baidu.com:39.156.69.79"}, rsp.ips);
+        Assert.assertEquals(Integer.valueOf(120), rsp.ttl.get("www.qq.com"));
+        Assert.assertEquals(Integer.valueOf(300), rsp.ttl.get("www.baidu.com"));
+
+        Assert.assertEquals(2, rsp.records.length);
+        Assert.assertEquals("www.qq.com", rsp.records[0].host);
+        Assert.assertArrayEquals(new String[]{"120.14.67.201", "1.2.3.4"}, rsp.records[0].inet4Ips);
+        Assert.assertEquals("www.baidu.com", rsp.records[1].host);
+        Assert.assertEquals("127.0.0.1", rsp.records[1].clientIp);
+    }
+
+    @Test
+    public void testParseUnspecificBatchResponse() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.UN_SPECIFIC,
+                "www.qq.com.:120.14.67.201,120-2402:4e00:1011:1414:0:9226:71a3:83d2;"
+                        + "2412:4e30:1020:1474:0:9257:71ab:2b74,120|127.0.0.1\n"
+                        + "www.a.com.:1.1.1.1;2.2.2.2,30-0,0|127.0.0.1");
+        // 先放所有IPv4再放所有IPv6
+        Assert.assertArrayEquals(new String[]{"www.qq.com:120.14.67.201", "www.a.com:1.1.1.1", "www.a.com:2.2.2.2",
+                "www.qq.com:2402:4e00:1011:1414:0:9226:71a3:83d2",
+                "www.qq.com:2412:4e30:1020:1474:0:9257:71ab:2b74"}, rsp.ips);
+        Assert.assertEquals(Integer.valueOf(120), rsp.ttl.get("www.qq.com"));
+        Assert.assertEquals(Integer.valueOf(0), rsp.ttl.get("www.a.com"));
+
+        HostRecord record = rsp.records[1];
+        Assert.assertEquals("www.a.com", record.host);
+        Assert.assertEquals(30, record.inet4Ttl);
+        Assert.assertEquals(0, record.inet6Ips.length);
+        Assert.assertEquals(0, record.inet6Ttl);
+    }
+
+    @Test
+    public void testParseBatchResponseSkipsInvalidLine() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.INET,
+                "www.qq.com.:120.14.67.201,120|127.0.0.1\nbad line\nwww.a.com.:0,0|127.0.0.1\n");
+        Assert.assertArrayEquals(new String[]{"www.qq.com:120.14.67.201"}, rsp.ips);
+        Assert.assertEquals(2, rsp.records.length);
+        Assert.assertEquals(0, rsp.records[1].inet4Ips.length);
+    }
+
+    @Test
+    public void testParseNoRecordResponse() {
+        Response rsp = ResponseParser.parseResponse(DnsDescription.Family.INET, "0,0|1.1.1.1");
+        Assert.assertNotSame(Response.EMPTY, rsp);
+        Assert.assertEquals(0, rsp.ips.length);
+        Assert.assertEquals(Integer.valueOf(0), rsp.ttl.get(Response.ONE_HOST));
+    }
+
+    @Test
+    public void testParseInvalidResponse() {
+        Assert.assertSame(Response.EMPTY, ResponseParser.parseResponse(DnsDescription.Family.INET, null));
+        Assert.assertSame(Response.EMPTY, ResponseParser.parseResponse(DnsDescription.Family.INET, ""));
+        Assert.assertSame(Response.EMPTY, ResponseParser.parseResponse(DnsDescription.Family.INET, "garbage"));
+        Assert.assertSame(Response.EMPTY,
+                ResponseParser.parseResponse(DnsDescription.Family.UN_SPECIFIC, "1.1.1.1,60|127.0.0.1"));
+    }
+}